@@ -0,0 +1,129 @@
+package com.opower.hadoop.hbase.filter;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.MapMaker;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.opower.hadoop.fs.HdfsClassLoader;
+
+/**
+ * Caches the {@link HdfsClassLoader HdfsClassLoaders} created for deployed jars on a region server, so that
+ * deserializing a {@link DeployedFilter} only reads the jars and defines the filter class the first time.
+ * </p><p>
+ * Class loaders are keyed by the paths to the jars they load from, in order, along with the checksums of
+ * their contents.  The cache holds
+ * on to a bounded number of class loaders, evicting the least recently used ones as well as any that have
+ * not been used for a while.  Once evicted, a class loader is only weakly referenced; if filters created
+ * through it are still alive, then it is handed out again rather than defining the same classes a second
+ * time, and otherwise it is left for the garbage collector, which the
+ * {@code classLoadersCollected} metric will reflect.
+ *
+ * @author jeff@opower.com
+ */
+class DeployedClassLoaderCache {
+    private static final Log LOG = LogFactory.getLog(DeployedClassLoaderCache.class);
+
+    private final Configuration configuration;
+    private final DeployedFilterMetrics metrics;
+    private final Cache<String, HdfsClassLoader> recentlyUsed;
+    private final ConcurrentMap<String, HdfsClassLoader> reachable = new MapMaker().weakValues().makeMap();
+
+    /**
+     * @param configuration the configuration to create class loaders with and to read the cache settings from
+     * @param metrics where to record the instantiation and eviction of class loaders
+     */
+    DeployedClassLoaderCache(Configuration configuration, DeployedFilterMetrics metrics) {
+        this.configuration = configuration;
+        this.metrics = metrics;
+        this.recentlyUsed = CacheBuilder.newBuilder()
+            .maximumSize(configuration.getInt(DeployedFilterManager.CLASS_LOADER_CACHE_SIZE,
+                        DeployedFilterManager.DEFAULT_CLASS_LOADER_CACHE_SIZE))
+            .expireAfterAccess(configuration.getLong(DeployedFilterManager.CLASS_LOADER_CACHE_EXPIRY_MS,
+                        DeployedFilterManager.DEFAULT_CLASS_LOADER_CACHE_EXPIRY_MS), TimeUnit.MILLISECONDS)
+            .removalListener(new RemovalListener<String, HdfsClassLoader>() {
+                @Override
+                public void onRemoval(RemovalNotification<String, HdfsClassLoader> notification) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug(String.format("Evicted class loader for %s (%s)",
+                                    notification.getKey(), notification.getCause()));
+                    }
+                    if (notification.getValue() != null) {
+                        DeployedClassLoaderCache.this.metrics.classLoaderEvicted(notification.getValue());
+                    }
+                }
+            })
+            .build();
+    }
+
+    /**
+     * Get the class loader for a list of deployed jars, creating it if there is not one already
+     *
+     * @param jars the jars in HDFS, in the order in which they are to be searched
+     * @return a class loader that loads classes from the jars
+     * @throws IOException if the class loader cannot be created
+     */
+    HdfsClassLoader get(List<DeployedJar> jars) throws IOException {
+        final List<Path> jarPaths = new ArrayList<Path>(jars.size());
+        StringBuilder keyBuilder = new StringBuilder();
+        for (DeployedJar jar : jars) {
+            if (keyBuilder.length() > 0) {
+                keyBuilder.append(',');
+            }
+            keyBuilder.append(jar.getRemoteJarPath()).append('#').append(jar.getChecksum());
+            jarPaths.add(jar.getRemoteJarPath());
+        }
+        final String key = keyBuilder.toString();
+        try {
+            return this.recentlyUsed.get(key, new Callable<HdfsClassLoader>() {
+                @Override
+                public HdfsClassLoader call() {
+                    return getReachableOrCreate(key, jarPaths);
+                }
+            });
+        }
+        catch (ExecutionException ee) {
+            throw new IOException("Unable to create class loader for " + jarPaths, ee.getCause());
+        }
+    }
+
+    /**
+     * @return the number of class loaders held by the bounded part of the cache
+     */
+    long size() {
+        return this.recentlyUsed.size();
+    }
+
+    private HdfsClassLoader getReachableOrCreate(String key, List<Path> jarPaths) {
+        HdfsClassLoader classLoader = this.reachable.get(key);
+        if (classLoader != null) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(String.format("Reusing evicted class loader for %s, which is still in use", key));
+            }
+            this.metrics.classLoaderReused(classLoader);
+            return classLoader;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Creating class loader for %s", key));
+        }
+        classLoader = new HdfsClassLoader(this.configuration, jarPaths);
+        this.metrics.classLoaderInstantiated(classLoader);
+        this.reachable.put(key, classLoader);
+        return classLoader;
+    }
+}
@@ -0,0 +1,93 @@
+package com.opower.hadoop.hbase.filter;
+
+import org.apache.hadoop.fs.Path;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import com.opower.hadoop.fs.HdfsClassLoader;
+
+/**
+ * A snapshot of one class loader for deployed jars, as exposed through JMX by the
+ * {@link DeployedClassLoaderInventoryMXBean}.  The durations are in milliseconds, as of when the snapshot was taken.
+ *
+ * @author jeff@opower.com
+ */
+public final class DeployedClassLoaderInfo {
+    private final List<String> jars;
+    private final List<String> filterClasses;
+    private final int classesDefined;
+    private final long bytesRead;
+    private final long ageMs;
+    private final long idleMs;
+    private final boolean evicted;
+
+    DeployedClassLoaderInfo(HdfsClassLoader classLoader, Collection<String> filterClasses, long lastUsedMillis,
+            boolean evicted, long nowMillis) {
+        List<String> jarNames = new ArrayList<String>(classLoader.getJars().size());
+        for (Path jar : classLoader.getJars()) {
+            jarNames.add(jar.toString());
+        }
+        List<String> filterClassNames = new ArrayList<String>(filterClasses);
+        Collections.sort(filterClassNames);
+        this.jars = Collections.unmodifiableList(jarNames);
+        this.filterClasses = Collections.unmodifiableList(filterClassNames);
+        this.classesDefined = classLoader.getClassesDefined();
+        this.bytesRead = classLoader.getBytesRead();
+        this.ageMs = nowMillis - classLoader.getCreatedMillis();
+        this.idleMs = nowMillis - lastUsedMillis;
+        this.evicted = evicted;
+    }
+
+    /**
+     * @return the paths to the jars the class loader loads from, in the order in which they are searched
+     */
+    public List<String> getJars() {
+        return this.jars;
+    }
+
+    /**
+     * @return the names of the filter classes that have been loaded through the class loader
+     */
+    public List<String> getFilterClasses() {
+        return this.filterClasses;
+    }
+
+    /**
+     * @return the number of classes the class loader has defined from its jars
+     */
+    public int getClassesDefined() {
+        return this.classesDefined;
+    }
+
+    /**
+     * @return the number of bytes the class loader has read from HDFS
+     */
+    public long getBytesRead() {
+        return this.bytesRead;
+    }
+
+    /**
+     * @return how long ago the class loader was created
+     */
+    public long getAgeMs() {
+        return this.ageMs;
+    }
+
+    /**
+     * @return how long ago a filter was last loaded through the class loader, or its age if none ever was
+     */
+    public long getIdleMs() {
+        return this.idleMs;
+    }
+
+    /**
+     * @return whether the class loader has been evicted from the cache of class loaders, and is only still alive
+     * because something references it
+     */
+    public boolean isEvicted() {
+        return this.evicted;
+    }
+}
@@ -0,0 +1,123 @@
+package com.opower.hadoop.hbase.filter;
+
+import com.google.common.collect.MapMaker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.opower.common.metrics.Histogram;
+import com.opower.hadoop.fs.HdfsClassLoader;
+
+/**
+ * Keeps an inventory of the {@link HdfsClassLoader HdfsClassLoaders} created for deployed jars that are still alive
+ * on a region server, along with when each was last used, which filter classes were loaded through it, and whether
+ * it has been evicted from the {@link DeployedClassLoaderCache}.
+ * </p><p>
+ * The class loaders are only weakly referenced, so keeping the inventory does not keep them from being collected.
+ * Marking a class loader as used happens on the deserialization path of every scan, so it is a lookup and a volatile
+ * write, and only the first load of each filter class through a class loader adds to its set of names.
+ *
+ * @author jeff@opower.com
+ */
+class DeployedClassLoaderInventory implements DeployedClassLoaderInventoryMXBean {
+    private static final Comparator<DeployedClassLoaderInfo> OLDEST_FIRST = new Comparator<DeployedClassLoaderInfo>() {
+        @Override
+        public int compare(DeployedClassLoaderInfo left, DeployedClassLoaderInfo right) {
+            return left.getAgeMs() > right.getAgeMs() ? -1 : (left.getAgeMs() < right.getAgeMs() ? 1 : 0);
+        }
+    };
+
+    private final ConcurrentMap<HdfsClassLoader, Entry> entries = new MapMaker().weakKeys().makeMap();
+
+    /**
+     * @param classLoader a class loader that was just created
+     */
+    void created(HdfsClassLoader classLoader) {
+        this.entries.putIfAbsent(classLoader, new Entry(classLoader.getCreatedMillis()));
+    }
+
+    /**
+     * @param classLoader a class loader that a filter was just loaded through
+     * @param filterClassName the name of the filter class
+     */
+    void used(ClassLoader classLoader, String filterClassName) {
+        Entry entry = this.entries.get(classLoader);
+        if (entry != null) {
+            entry.lastUsedMillis = System.currentTimeMillis();
+            if (!entry.filterClasses.containsKey(filterClassName)) {
+                entry.filterClasses.putIfAbsent(filterClassName, Boolean.TRUE);
+            }
+        }
+    }
+
+    /**
+     * @param classLoader a class loader that was evicted from the cache, or handed out again after having been
+     * evicted
+     * @param evicted whether it is now evicted
+     */
+    void setEvicted(HdfsClassLoader classLoader, boolean evicted) {
+        Entry entry = this.entries.get(classLoader);
+        if (entry != null) {
+            entry.evicted = evicted;
+        }
+    }
+
+    @Override
+    public List<DeployedClassLoaderInfo> getClassLoaders() {
+        long now = System.currentTimeMillis();
+        List<DeployedClassLoaderInfo> classLoaders = new ArrayList<DeployedClassLoaderInfo>(this.entries.size());
+        for (Map.Entry<HdfsClassLoader, Entry> mapEntry : this.entries.entrySet()) {
+            Entry entry = mapEntry.getValue();
+            classLoaders.add(new DeployedClassLoaderInfo(mapEntry.getKey(), entry.filterClasses.keySet(),
+                        entry.lastUsedMillis, entry.evicted, now));
+        }
+        Collections.sort(classLoaders, OLDEST_FIRST);
+        return classLoaders;
+    }
+
+    @Override
+    public int getClassLoaderCount() {
+        return this.entries.size();
+    }
+
+    @Override
+    public int getEvictedClassLoaderCount() {
+        int evicted = 0;
+        for (Entry entry : this.entries.values()) {
+            if (entry.evicted) {
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * @param nowMillis the current time
+     * @return the distribution of the ages of the live class loaders, in milliseconds
+     */
+    Histogram.Snapshot getAgesMs(long nowMillis) {
+        Histogram ages = new Histogram();
+        for (HdfsClassLoader classLoader : this.entries.keySet()) {
+            ages.record(nowMillis - classLoader.getCreatedMillis());
+        }
+        return ages.snapshot();
+    }
+
+    /**
+     * What is known about a class loader beyond what it counts itself
+     */
+    private static final class Entry {
+        private final ConcurrentMap<String, Boolean> filterClasses = new ConcurrentHashMap<String, Boolean>();
+        private volatile long lastUsedMillis;
+        private volatile boolean evicted;
+
+        private Entry(long createdMillis) {
+            this.lastUsedMillis = createdMillis;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.opower.hadoop.hbase.filter;
+
+import java.util.List;
+
+/**
+ * Exposes the {@link com.opower.hadoop.fs.HdfsClassLoader HdfsClassLoaders} that are alive on a region server for
+ * {@link DeployedFilter DeployedFilters} over JMX, so that a class loader that should have been collected, or one
+ * that keeps being created, can be found without a heap dump.
+ *
+ * @author jeff@opower.com
+ */
+public interface DeployedClassLoaderInventoryMXBean {
+    /**
+     * @return every class loader for deployed jars that has not been garbage collected yet, oldest first
+     */
+    List<DeployedClassLoaderInfo> getClassLoaders();
+
+    /**
+     * @return the number of class loaders for deployed jars that have not been garbage collected yet
+     */
+    int getClassLoaderCount();
+
+    /**
+     * @return the number of class loaders that have been evicted from the cache of class loaders, but have not been
+     * garbage collected yet, which is a sign that filters created through them are still in use or have leaked
+     */
+    int getEvictedClassLoaderCount();
+}
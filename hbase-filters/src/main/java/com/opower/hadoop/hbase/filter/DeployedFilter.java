@@ -1,10 +1,7 @@
 package com.opower.hadoop.hbase.filter;
 
-import org.apache.hadoop.fs.Path;
-
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.filter.Filter;
-import org.apache.hadoop.hbase.util.Bytes;
 
 import java.io.DataInput;
 import java.io.DataOutput;
@@ -16,13 +13,20 @@ import java.util.List;
  * into an HBase cluster.  All of the {@link Filter} methods just delegate to the wrapped filter.  The
  * interesting work occurs during deserialization on the region server, when the
  * {@link DeployedFilterManager#loadFilter} method is called and the wrapped filter is loaded dynamically.
+ * </p><p>
+ * On the wire, the deployment is identified by nothing more than the handle it was registered under,
+ * preceded by a version byte, and followed by the wrapped filter itself.  The region server resolves
+ * the handle into the jars and the name of the filter class through
+ * {@link DeployedFilterManager#resolveHandle}, which caches what it has already resolved.
  *
  * @author jeff@opower.com
  */
 public class DeployedFilter implements Filter {
-    private Path remoteJarPath;
+    private static final byte WIRE_VERSION = 1;
+
+    private long handle;
+    private DeploymentDescriptor descriptor;
     private Filter wrappedFilter;
-    private String wrappedFilterName;
 
     /**
      * Required default constructor for serialization
@@ -32,22 +36,38 @@ public class DeployedFilter implements Filter {
     /**
      * Constructor meant to be used only by the {@link DeployedFilterManager}
      *
-     * @param remoteJarPath a Path to the jar in HDFS that holds the class definition for the wrapped filter
+     * @param handle the handle that the deployment is registered under
+     * @param descriptor the descriptor of the deployment, with the jars in HDFS needed to load the wrapped
+     * filter, starting with the one that holds the class definition for the wrapped filter
      * @param wrappedFilter the {@link Filter} to be deployed
      */
-    DeployedFilter(Path remoteJarPath, Filter wrappedFilter) {
-        this.remoteJarPath = remoteJarPath;
-        this.wrappedFilterName = wrappedFilter.getClass().getName();
+    DeployedFilter(long handle, DeploymentDescriptor descriptor, Filter wrappedFilter) {
+        this.handle = handle;
+        this.descriptor = descriptor;
         this.wrappedFilter = wrappedFilter;
     }
 
+    /**
+     * @return the handle that the deployment is registered under
+     */
+    long getHandle() {
+        return this.handle;
+    }
+
     /**
      * Meant to be used by the {@link DeployedFilterManager} during the undeploying phase
      *
-     * @return the Path to the jar in HDFS
+     * @return the jars in HDFS, in the order in which they are searched for classes
+     */
+    List<DeployedJar> getJars() {
+        return this.descriptor.getJars();
+    }
+
+    /**
+     * @return the binary name of the class of the wrapped filter
      */
-    Path getRemoteJarPath() {
-        return this.remoteJarPath;
+    String getWrappedFilterClassName() {
+        return this.descriptor.getFilterClassName();
     }
 
     public void reset() {
@@ -87,15 +107,29 @@ public class DeployedFilter implements Filter {
     }
 
     public void write(DataOutput out) throws IOException {
-        Bytes.writeByteArray(out, Bytes.toBytes(this.remoteJarPath.toString()));
-        Bytes.writeByteArray(out, Bytes.toBytes(this.wrappedFilterName));
+        out.writeByte(WIRE_VERSION);
+        out.writeLong(this.handle);
         this.wrappedFilter.write(out);
     }
 
     public void readFields(DataInput in) throws IOException {
-        this.remoteJarPath = new Path(Bytes.toString(Bytes.readByteArray(in)));
-        this.wrappedFilterName = Bytes.toString(Bytes.readByteArray(in));
-        this.wrappedFilter = DeployedFilterManager.loadFilter(this.remoteJarPath, this.wrappedFilterName);
-        this.wrappedFilter.readFields(in);
+        byte version = in.readByte();
+        if (version != WIRE_VERSION) {
+            throw new IOException("Unsupported DeployedFilter version " + version);
+        }
+        this.handle = in.readLong();
+        this.descriptor = DeployedFilterManager.resolveHandle(this.handle);
+        this.wrappedFilter = DeployedFilterManager.loadFilter(this.descriptor);
+        // Make the deployed jars visible to anything the wrapped filter instantiates by name while it is
+        // deserialized, such as the selector inside of a SelectorFilter
+        Thread currentThread = Thread.currentThread();
+        ClassLoader previousLoader = currentThread.getContextClassLoader();
+        currentThread.setContextClassLoader(this.wrappedFilter.getClass().getClassLoader());
+        try {
+            this.wrappedFilter.readFields(in);
+        }
+        finally {
+            currentThread.setContextClassLoader(previousLoader);
+        }
     }
 }
@@ -0,0 +1,268 @@
+package com.opower.hadoop.hbase.filter;
+
+import com.google.common.base.Objects;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+import org.apache.hadoop.hbase.HBaseConfiguration;
+
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cleans up after clients that died without undeploying their filters.  Every deployment holds a lease on the jars
+ * it references, which its {@link DeployedFilterManager} renews until the filter is undeployed.  The janitor
+ * releases the references whose leases have expired, and then deletes the jars that are left without references,
+ * using the same protocol as {@link DeployedFilterManager#undeployFilter}, so that it is safe to run while clients
+ * are deploying filters.  It also deletes the trash left behind by undeploys that did not finish, as well as the
+ * {@code <timestamp>-<random>} directories that deployments used to be copied to, once they are old enough.
+ * The handles of deployments are left in place, since they are tiny and may be resolved again by a later
+ * deployment of the same jars.
+ * </p><p>
+ * A reference is only released once its lease has been expired for a grace period, which defaults to how long a
+ * region server caches the class loader of a deployed jar.  By then, a region server that loaded the filter while
+ * the lease was held has either evicted the class loader or kept it in use, and since a class loader holds the
+ * contents of its jars in memory once it has loaded a class, it keeps working after the jar has been deleted.
+ * </p><p>
+ * Deployments are cleaned up in batches, pausing in between, to spread out the load on the NameNode.  The janitor
+ * can be embedded by calling {@link #clean} periodically, or run from the command line:
+ * </p>
+ * <pre>
+        hadoop jar hbase-filters.jar com.opower.hadoop.hbase.filter.DeployedFilterJanitor \
+            -D deployed.filter.path=/path/to/deployed/filters
+ * </pre>
+ *
+ * @author jeff@opower.com
+ */
+public class DeployedFilterJanitor {
+    /**
+     * A configuration option to specify how long, in milliseconds, a lease must have been expired before the
+     * janitor releases the reference.
+     */
+    public static final String JANITOR_GRACE_MS = "deployed.filter.janitor.grace.ms";
+
+    /**
+     * The default time a lease must have been expired, which is how long a region server may cache a class loader.
+     */
+    public static final long DEFAULT_JANITOR_GRACE_MS = DeployedFilterManager.DEFAULT_CLASS_LOADER_CACHE_EXPIRY_MS;
+
+    /**
+     * A configuration option to specify how many directories to clean up before pausing.
+     */
+    public static final String JANITOR_BATCH_SIZE = "deployed.filter.janitor.batch.size";
+
+    /**
+     * The default number of directories to clean up before pausing.
+     */
+    public static final int DEFAULT_JANITOR_BATCH_SIZE = 1000;
+
+    /**
+     * A configuration option to specify how long, in milliseconds, to pause between batches.
+     */
+    public static final String JANITOR_BATCH_PAUSE_MS = "deployed.filter.janitor.batch.pause.ms";
+
+    /**
+     * The default time to pause between batches.
+     */
+    public static final long DEFAULT_JANITOR_BATCH_PAUSE_MS = 1000L;
+
+    /**
+     * A configuration option to specify how old, in milliseconds, a {@code <timestamp>-<random>} directory from
+     * before deployments were leased must be before the janitor deletes it.
+     */
+    public static final String JANITOR_LEGACY_MAX_AGE_MS = "deployed.filter.janitor.legacy.max.age.ms";
+
+    /**
+     * The default age at which to delete a directory from before deployments were leased.
+     */
+    public static final long DEFAULT_JANITOR_LEGACY_MAX_AGE_MS = 24L * 60L * 60L * 1000L;
+
+    private static final Log LOG = LogFactory.getLog(DeployedFilterJanitor.class);
+    private static final Pattern LEGACY_DIRECTORY_PATTERN = Pattern.compile("(\\d+)--?\\d+");
+    private static final Pattern TRASHED_DIRECTORY_PATTERN = Pattern.compile(".+-(\\d+)--?\\d+");
+
+    private final Configuration configuration;
+    private final DeployedFilterManager filterManager;
+    private final long expiry;
+    private final long legacyMaxAge;
+    private final int batchSize;
+    private final long batchPause;
+
+    /**
+     * @param configuration the configuration with the path that filters are deployed to and the lease they are
+     * deployed with
+     */
+    public DeployedFilterJanitor(Configuration configuration) {
+        this.configuration = configuration;
+        this.filterManager = new DeployedFilterManager(configuration);
+        this.expiry = DeployedFilterManager.getLease(configuration)
+            + configuration.getLong(JANITOR_GRACE_MS, DEFAULT_JANITOR_GRACE_MS);
+        this.legacyMaxAge = configuration.getLong(JANITOR_LEGACY_MAX_AGE_MS, DEFAULT_JANITOR_LEGACY_MAX_AGE_MS);
+        this.batchSize = Math.max(1, configuration.getInt(JANITOR_BATCH_SIZE, DEFAULT_JANITOR_BATCH_SIZE));
+        this.batchPause = configuration.getLong(JANITOR_BATCH_PAUSE_MS, DEFAULT_JANITOR_BATCH_PAUSE_MS);
+    }
+
+    /**
+     * Make one pass over the deployed filters, cleaning up whatever has expired
+     *
+     * @return what was cleaned up
+     * @throws IOException if the deployed filters cannot be listed or deleted
+     * @throws InterruptedException if interrupted while pausing between batches
+     */
+    public Summary clean() throws IOException, InterruptedException {
+        FileSystem fs = FileSystem.get(this.configuration);
+        Path baseDirectory = DeployedFilterManager.getBaseDirectory(fs, this.configuration);
+        long expiredBefore = System.currentTimeMillis() - this.expiry;
+        Summary summary = new Summary();
+        Batch batch = new Batch();
+
+        for (FileStatus contentDirectory : DeployedFilterManager.listStatus(fs,
+                    new Path(baseDirectory, DeployedFilterManager.JARS_DIRECTORY))) {
+            batch.next();
+            summary.expiredReferences += releaseExpired(fs, contentDirectory.getPath(), expiredBefore);
+            if (this.filterManager.deleteIfUnreferenced(fs, contentDirectory.getPath())) {
+                summary.deletedJarDirectories++;
+            }
+        }
+        for (FileStatus trashedDirectory : DeployedFilterManager.listStatus(fs,
+                    new Path(baseDirectory, DeployedFilterManager.TRASH_DIRECTORY))) {
+            // The time in the name is when the directory was trashed, which a rename does not otherwise record
+            if (isCreatedBefore(TRASHED_DIRECTORY_PATTERN, trashedDirectory, expiredBefore)) {
+                batch.next();
+                if (fs.delete(trashedDirectory.getPath(), true)) {
+                    summary.deletedTrash++;
+                }
+            }
+        }
+        long legacyCreatedBefore = System.currentTimeMillis() - this.legacyMaxAge;
+        for (FileStatus directory : DeployedFilterManager.listStatus(fs, baseDirectory)) {
+            if (isCreatedBefore(LEGACY_DIRECTORY_PATTERN, directory, legacyCreatedBefore)) {
+                batch.next();
+                if (fs.delete(directory.getPath(), true)) {
+                    summary.deletedLegacyDirectories++;
+                }
+            }
+        }
+        LOG.info(String.format("Cleaned up deployed filters under %s: %s", baseDirectory, summary));
+        return summary;
+    }
+
+    /**
+     * Release the references to a deployed jar whose leases have expired
+     *
+     * @return the number of references released
+     */
+    private int releaseExpired(FileSystem fs, Path contentDirectory, long expiredBefore) throws IOException {
+        int released = 0;
+        for (FileStatus reference : DeployedFilterManager.listStatus(fs,
+                    new Path(contentDirectory, DeployedFilterManager.REFERENCES_DIRECTORY))) {
+            if (reference.getModificationTime() < expiredBefore) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(String.format("Releasing expired reference %s", reference.getPath()));
+                }
+                if (fs.delete(reference.getPath(), false)) {
+                    released++;
+                }
+            }
+        }
+        return released;
+    }
+
+    /**
+     * Tell if a directory is named after a unique name from before the given time, which is the time the unique
+     * name was made followed by a random number
+     */
+    private static boolean isCreatedBefore(Pattern namePattern, FileStatus directory, long createdBefore) {
+        Matcher matcher = namePattern.matcher(directory.getPath().getName());
+        if (!directory.isDir() || !matcher.matches()) {
+            return false;
+        }
+        try {
+            return Long.parseLong(matcher.group(1)) < createdBefore;
+        }
+        catch (NumberFormatException nfe) {
+            return false;
+        }
+    }
+
+    /**
+     * Counts the directories cleaned up, pausing each time a batch is full
+     */
+    private final class Batch {
+        private int size;
+
+        private void next() throws InterruptedException {
+            if (this.size == DeployedFilterJanitor.this.batchSize) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(String.format("Pausing for %d ms after a batch of %d",
+                                DeployedFilterJanitor.this.batchPause, this.size));
+                }
+                Thread.sleep(DeployedFilterJanitor.this.batchPause);
+                this.size = 0;
+            }
+            this.size++;
+        }
+    }
+
+    /**
+     * What one pass of the janitor cleaned up
+     */
+    public static final class Summary {
+        private int expiredReferences;
+        private int deletedJarDirectories;
+        private int deletedTrash;
+        private int deletedLegacyDirectories;
+
+        /**
+         * @return the number of references whose leases had expired that were released
+         */
+        public int getExpiredReferences() {
+            return this.expiredReferences;
+        }
+
+        /**
+         * @return the number of deployed jars that were deleted, along with their directories
+         */
+        public int getDeletedJarDirectories() {
+            return this.deletedJarDirectories;
+        }
+
+        /**
+         * @return the number of directories left in the trash by undeploys that did not finish that were deleted
+         */
+        public int getDeletedTrash() {
+            return this.deletedTrash;
+        }
+
+        /**
+         * @return the number of {@code <timestamp>-<random>} directories that were deleted
+         */
+        public int getDeletedLegacyDirectories() {
+            return this.deletedLegacyDirectories;
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this)
+                .add("expiredReferences", this.expiredReferences)
+                .add("deletedJarDirectories", this.deletedJarDirectories)
+                .add("deletedTrash", this.deletedTrash)
+                .add("deletedLegacyDirectories", this.deletedLegacyDirectories)
+                .toString();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration configuration = HBaseConfiguration.create();
+        new GenericOptionsParser(configuration, args);
+        System.out.println(new DeployedFilterJanitor(configuration).clean());
+    }
+}
@@ -1,22 +1,51 @@
 package com.opower.hadoop.hbase.filter;
 
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Sets;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.MD5Hash;
 
+import org.apache.hadoop.hbase.HBaseConfiguration;
 import org.apache.hadoop.hbase.filter.Filter;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
 import java.net.URL;
 import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
 
+import com.opower.common.reflect.ClassClosure;
+import com.opower.common.reflect.ConstructorCache;
 import com.opower.common.reflect.Reflection;
-import com.opower.hadoop.fs.HdfsClassLoader;
 
 /**
  * Responsible for managing the lifecycle of a {@link DeployedFilter} and, more importantly, the {@link Filter} it wraps.
@@ -49,7 +78,10 @@ import com.opower.hadoop.fs.HdfsClassLoader;
  */
 public class DeployedFilterManager {
     /**
-     * A configuration option to specify the base directory where jars will be copied to in HDFS temporarily.
+     * A configuration option to specify the base directory where jars will be copied to in HDFS.  Jars are
+     * stored under it by the checksum of their contents for as long as any deployment references them.  The
+     * handles of deployments are registered under it, too, and since region servers resolve handles there,
+     * they must be configured with the same path as the clients.
      */
     public static final String DEPLOY_FILTER_PATH = "deployed.filter.path";
 
@@ -58,10 +90,72 @@ public class DeployedFilterManager {
      */
     public static final String DEPLOY_FILTER_DEFAULT_PATH = "/tmp/com.opower.hadoop.hbase.filter.DeployedFilterManager";
 
+    /**
+     * A configuration option for the region servers to specify how many class loaders for deployed jars to cache.
+     */
+    public static final String CLASS_LOADER_CACHE_SIZE = "deployed.filter.classloader.cache.size";
+
+    /**
+     * The default number of class loaders for deployed jars to cache.
+     */
+    public static final int DEFAULT_CLASS_LOADER_CACHE_SIZE = 64;
+
+    /**
+     * A configuration option for the region servers to specify how long, in milliseconds, a cached class loader
+     * for a deployed jar may go unused before it is evicted.
+     */
+    public static final String CLASS_LOADER_CACHE_EXPIRY_MS = "deployed.filter.classloader.cache.expiry.ms";
+
+    /**
+     * The default time a cached class loader may go unused before it is evicted.
+     */
+    public static final long DEFAULT_CLASS_LOADER_CACHE_EXPIRY_MS = 60L * 60L * 1000L;
+
+    /**
+     * A configuration option for the region servers to specify how many resolved deployment handles to cache.
+     */
+    public static final String HANDLE_CACHE_SIZE = "deployed.filter.handle.cache.size";
+
+    /**
+     * The default number of resolved deployment handles to cache.
+     */
+    public static final int DEFAULT_HANDLE_CACHE_SIZE = 1024;
+
+    /**
+     * A configuration option to specify how long, in milliseconds, a deployment stays leased without being
+     * renewed.  Clients renew the leases of their deployments well within that time for as long as they have
+     * not undeployed them, and the {@link DeployedFilterJanitor} only cleans up deployments whose leases have
+     * expired, so clients and the janitor must be configured with the same lease.
+     */
+    public static final String DEPLOY_FILTER_LEASE_MS = "deployed.filter.lease.ms";
+
+    /**
+     * The default time a deployment stays leased without being renewed.
+     */
+    public static final long DEFAULT_DEPLOY_FILTER_LEASE_MS = 10L * 60L * 1000L;
+
     private static final Log LOG = LogFactory.getLog(DeployedFilterManager.class);
     private static final Random RANDOM = new Random();
+    static final String JARS_DIRECTORY = "jars";
+    static final String REFERENCES_DIRECTORY = "refs";
+    static final String TRASH_DIRECTORY = "trash";
+    private static final String HANDLES_DIRECTORY = "handles";
+    private static final int MAX_DEPLOY_ATTEMPTS = 3;
+    private static final String CLOSURE_JAR_SUFFIX = "-closure.jar";
+    private static final long CLOSURE_JAR_ENTRY_TIME = 0L;
+    private static final int LEASE_RENEWALS_PER_LEASE = 3;
     private static DeployedFilterMetrics metrics;
 
+    /**
+     * Filter classes that have already been resolved on this region server, held weakly so that they can
+     * still be unloaded; used to only warn about and count each dynamically loaded class once
+     */
+    private static final Set<Class<?>> LOADED_FILTER_CLASSES =
+        Sets.newSetFromMap(new MapMaker().weakKeys().<Class<?>, Boolean>makeMap());
+    private static final ConstructorCache FILTER_CONSTRUCTORS = new ConstructorCache();
+    private static DeployedClassLoaderCache classLoaderCache;
+    private static DeploymentHandleCache handleCache;
+
     /**
      * Prevent the metrics from being instantiated and triggered on the client by hiding
      * the instantiation in a static method.  Metrics should only be run on the server.
@@ -73,7 +167,34 @@ public class DeployedFilterManager {
         return metrics;
     }
 
+    /**
+     * Like the metrics, the class loader cache should only be instantiated on the server
+     */
+    private static synchronized DeployedClassLoaderCache getClassLoaderCache() {
+        if (classLoaderCache == null) {
+            // TODO: is creating a new configuration sufficient, or
+            // does it need to be serialized from the DeployedFilter?
+            classLoaderCache = new DeployedClassLoaderCache(HBaseConfiguration.create(), getMetrics());
+        }
+        return classLoaderCache;
+    }
+
+    /**
+     * Like the metrics, the handle cache should only be instantiated on the server
+     */
+    private static synchronized DeploymentHandleCache getHandleCache() {
+        if (handleCache == null) {
+            handleCache = new DeploymentHandleCache(HBaseConfiguration.create());
+        }
+        return handleCache;
+    }
+
     private final Configuration configuration;
+    private final ConcurrentMap<String, JarChecksum> checksums = new ConcurrentHashMap<String, JarChecksum>();
+    private final Set<DeployedFilter> leasedFilters =
+        Sets.newSetFromMap(new ConcurrentHashMap<DeployedFilter, Boolean>());
+    // Guarded by this; only running while there are leases to renew
+    private Timer leaseRenewalTimer;
 
     /**
      * Since the {@link DeployedFilterManager} writes a jar file to HDFS, it needs to have access to a {@link Configuration}
@@ -86,100 +207,200 @@ public class DeployedFilterManager {
 
     /**
      * Deploys a {@link Filter} to the HBase cluster by finding the jar file the class is defined in and
-     * copying it to a location in HDFS.  The location is unique for each deployment so that multiple
-     * operations will not interfere with each other.  To ensure that the deployed filter is cleaned up,
-     * you must call {@link #undeployFilter} when the operation is complete.  Use the filter returned by
-     * this method as the one set on a {@link org.apache.hadoop.hbase.client.Scan}.
+     * copying it to a location in HDFS.  The location is derived from the checksum of the jar's contents,
+     * so deploying the same jar again, whether from this process or any other, reuses the copy that is
+     * already there instead of uploading it again.  Each deployment holds a reference to the jar, and the
+     * jar is only removed once every deployment has released its reference, so to ensure that the deployed
+     * filter is cleaned up, you must call {@link #undeployFilter} when the operation is complete.  Use the
+     * filter returned by this method as the one set on a {@link org.apache.hadoop.hbase.client.Scan}.
+     * </p><p>
+     * A reference is also a lease, which this manager renews in the background until the filter is undeployed.
+     * Should this process die before undeploying the filter, then the lease runs out, and the
+     * {@link DeployedFilterJanitor} releases the reference in its place.
+     * </p><p>
+     * If the filter needs classes that are neither in its own jar nor on the region servers' class path,
+     * then name a class from each jar it needs as a dependency.  Those jars, and only those, are deployed
+     * along with the filter's jar in the same way, and the filter is loaded on the region servers by a
+     * single class loader that searches the filter's jar first and then the dependencies in the order given.
      *
      * @param wrappedFilter the {@link Filter} to deploy to the cluster
+     * @param dependencies classes whose jars also need to be deployed for the filter to be loaded
      * @return a filter representing the deployed one
      * @throws IOException in case the filter cannot be deployed
      */
-    public DeployedFilter deployFilter(Filter wrappedFilter)
+    public DeployedFilter deployFilter(Filter wrappedFilter, Class<?>... dependencies)
         throws IOException {
         if (wrappedFilter == null) {
             throw new IllegalArgumentException("Filter must not be null");
         }
         Reflection.checkDeserializable(wrappedFilter);
-        String filterJarUri = findContainingJar(wrappedFilter.getClass());
-        if (filterJarUri == null) {
-            throw new IllegalArgumentException(String.format(
-                "Unable to find jar for filter class %s", wrappedFilter.getClass()));
+        Map<File, String> localJars = new LinkedHashMap<File, String>();
+        addJar(localJars, findRequiredJar(wrappedFilter.getClass(), "filter"));
+        addDependencyJars(localJars, dependencies);
+        return deploy(wrappedFilter, localJars);
+    }
+
+    /**
+     * Deploys a {@link Filter} to the HBase cluster just like {@link #deployFilter}, except that instead of
+     * deploying the whole jar that the filter class is defined in, only the classes from that jar that the
+     * filter class refers to, directly or transitively, are packaged into a small jar and deployed.  Those
+     * classes are found by analyzing the class files, as described by {@link ClassClosure}, so any classes
+     * that are only ever instantiated by name, such as the
+     * {@link com.opower.hadoop.hbase.selector.Selector} inside of a
+     * {@link com.opower.hadoop.hbase.selector.SelectorFilter}, need to be included explicitly.  Deploying a closure costs about
+     * as much as the classes the filter needs, no matter how large the application jar it lives in is.
+     * </p><p>
+     * The closure jar is built the same way every time, so deploying the same closure again reuses the
+     * copy that is already in HDFS, just like any other jar.
+     *
+     * @param wrappedFilter the {@link Filter} to deploy to the cluster
+     * @param includedClassNames the binary names of any other classes from the filter's jar to include, along
+     *        with the classes they refer to
+     * @param dependencies classes whose jars also need to be deployed for the filter to be loaded
+     * @return a filter representing the deployed one
+     * @throws IOException in case the filter cannot be deployed
+     */
+    public DeployedFilter deployFilterClosure(Filter wrappedFilter, Collection<String> includedClassNames,
+                                              Class<?>... dependencies)
+        throws IOException {
+        if (wrappedFilter == null) {
+            throw new IllegalArgumentException("Filter must not be null");
+        }
+        Reflection.checkDeserializable(wrappedFilter);
+        Class<?> filterClass = wrappedFilter.getClass();
+        List<String> classNames = new ArrayList<String>();
+        classNames.add(filterClass.getName());
+        classNames.addAll(includedClassNames);
+        SortedMap<String, byte[]> closure;
+        try {
+            closure = ClassClosure.find(filterClass.getClassLoader(), ClassClosure.getLocation(filterClass), classNames);
         }
-        Path localJarPath = new Path(filterJarUri);
-        Path remoteJarPath = new Path(constructRemoteJarPath(this.configuration), localJarPath.getName());
+        catch (ClassNotFoundException cnfe) {
+            throw new IllegalArgumentException("Unable to find included class " + cnfe.getMessage(), cnfe);
+        }
+        byte[] closureJar = createJar(closure);
         if (LOG.isDebugEnabled()) {
-            LOG.debug(String.format("Deploying filter class from %s to %s", localJarPath, remoteJarPath));
+            LOG.debug(String.format("Packaged %d classes (%d bytes) for the closure of %s",
+                        closure.size(), closureJar.length, filterClass.getName()));
         }
-        FileSystem.get(this.configuration).copyFromLocalFile(localJarPath, remoteJarPath);
 
-        return new DeployedFilter(remoteJarPath, wrappedFilter);
+        // The name of the jar is part of where it is deployed, so it cannot be a random temporary file name
+        File closureDirectory = File.createTempFile(filterClass.getSimpleName(), "");
+        if (!closureDirectory.delete() || !closureDirectory.mkdir()) {
+            throw new IOException("Unable to create temporary directory " + closureDirectory);
+        }
+        File closureJarFile = new File(closureDirectory, filterClass.getName() + CLOSURE_JAR_SUFFIX);
+        try {
+            OutputStream out = new FileOutputStream(closureJarFile);
+            try {
+                out.write(closureJar);
+            }
+            finally {
+                out.close();
+            }
+            Map<File, String> localJars = new LinkedHashMap<File, String>();
+            localJars.put(closureJarFile, MD5Hash.digest(closureJar).toString());
+            addDependencyJars(localJars, dependencies);
+            return deploy(wrappedFilter, localJars);
+        }
+        finally {
+            closureJarFile.delete();
+            closureDirectory.delete();
+        }
     }
 
     /**
-     * Completes the lifecycle of a deployed filter by cleaning up the resources used during the deploy.
-     * This method removes the jar file from HDFS as well as the containing directory created to hold it.
+     * Completes the lifecycle of a deployed filter by releasing its references to the deployed jars.  If no
+     * other deployments still reference a jar, then the jar is removed from HDFS as well as the directory
+     * that holds it.
      *
      * @param filter the {@link DeployedFilter} that needs undeploying
      * @throws IOException in case the filter cannot be undeployed
      */
     public void undeployFilter(DeployedFilter filter) throws IOException {
-        Path remoteJarPath = filter.getRemoteJarPath();
-        if (LOG.isDebugEnabled()) {
-            LOG.debug(String.format("Deleting remote jar from %s", remoteJarPath));
+        checkDeployed(filter);
+        dropLease(filter);
+        for (DeployedJar jar : filter.getJars()) {
+            release(jar.getReferencePath().getFileSystem(this.configuration), jar);
         }
-        // The remoteJarPath is a path to a jar, so delete it, and then delete the directory that contains
-        // it, since that is meant to be temporary as well
-        remoteJarPath.getFileSystem(this.configuration).delete(remoteJarPath, true);
-        Path parent = remoteJarPath.getParent();
-        parent.getFileSystem(this.configuration).delete(parent, true);
     }
 
     /**
-     * Loads a filter from the jar in HDFS.  Meant to be called only by {@link DeployedFilter}.
-     * Since a new {@link ClassLoader} is created each time, just to load this one class, when
-     * the class is no longer needed and can be garbage collected, then the class loader will be
-     * collected as well.  If a new version of the {@link Filter} is desired, then it will be
-     * loaded the next time the filter is run, because it will be loaded by another instance of
-     * a class loader that is reading from a new version of the jar deployed into the cluster.
+     * Renews the lease on a deployed filter, which this manager otherwise does by itself every so often until the
+     * filter is undeployed.  The lease is kept in the modification time of each reference to a deployed jar.
      *
-     * @param jarPath the {@link Path} to the jar in HDFS
-     * @param filterClassName the binary name of the filter to load
+     * @param filter the {@link DeployedFilter} whose lease to renew
+     * @throws IOException if the lease has already expired and the deployment has been cleaned up, in which case
+     *         the filter needs to be deployed again, or if the lease cannot be renewed
+     */
+    public void renewLease(DeployedFilter filter) throws IOException {
+        checkDeployed(filter);
+        if (!renewHeldLease(filter)) {
+            throw new IOException("Lease on " + filter.getJars() + " has expired");
+        }
+    }
+
+    /**
+     * Resolves the handle of a deployment into its descriptor.  Meant to be called only by {@link DeployedFilter}.
+     * Descriptors are cached, so each handle is only read from HDFS the first time it is seen on a region server.
+     *
+     * @param handle the handle that the deployment was registered under
+     * @return the descriptor of the deployment
+     * @throws IOException if the handle is not registered or cannot be read
+     */
+    static DeploymentDescriptor resolveHandle(long handle) throws IOException {
+        return getHandleCache().get(handle);
+    }
+
+    /**
+     * Loads a filter from the jars in HDFS.  Meant to be called only by {@link DeployedFilter}.
+     * The {@link ClassLoader} for the jars is taken from a cache keyed by the jars' paths and checksums,
+     * so the jars are only read and the filter class only defined the first time it is needed on a region
+     * server.  When the class loader is evicted from the cache and its classes are no longer needed, then
+     * the class loader will be garbage collected.  If a new version of the {@link Filter} is desired, then
+     * it will be loaded the next time the filter is run, because a new version of the jar deployed into
+     * the cluster has a different checksum and is therefore loaded by another instance of a class loader.
+     *
+     * @param descriptor the descriptor of the deployment, with the jars in HDFS and the name of the filter class
      * @return a new instance of the {@link Filter} class
      * @throws RuntimeException if anything goes wrong
      */
-    static Filter loadFilter(Path jarPath, String filterClassName) {
+    static Filter loadFilter(DeploymentDescriptor descriptor) {
+        List<DeployedJar> jars = descriptor.getJars();
+        String filterClassName = descriptor.getFilterClassName();
         try {
             if (LOG.isDebugEnabled()) {
-                LOG.debug(String.format("Loading new filter %s from %s", filterClassName, jarPath));
+                LOG.debug(String.format("Loading new filter %s from %s", filterClassName, jars));
             }
-            // TODO: is creating a new configuration sufficient, or
-            // does it need to be serialized from the DeployedFilter?
-            ClassLoader filterLoader = new HdfsClassLoader(new Configuration(), jarPath);
-            getMetrics().classLoaderInstantiated(filterLoader);
-            Class<?> filterClass = Class.forName(filterClassName, true, filterLoader);
-            if (LOG.isDebugEnabled()) {
-                LOG.debug(String.format("Filter class: %s@%x",
-                            filterClass.getName(),
-                            System.identityHashCode(filterClass)));
-            }
-            if (!filterClass.getClassLoader().equals(filterLoader)) {
-                LOG.warn(String.format("Filter class (%s@%x) loaded by " +
-                    "unexpected class loader (%s), instead of %s.  This " +
-                    "is a likely result of the class being present in " +
-                    "another resource that a parent class loader has " +
-                    "access to.  You may not be using the freshest version " +
-                    "of your filter in this case.",
-                    filterClass.getName(),
-                    System.identityHashCode(filterClass),
-                    filterClass.getClassLoader(),
-                    filterLoader));
-            }
-            else {
-                getMetrics().filterDynamicallyLoaded(filterClass);
+            ClassLoader filterLoader = getClassLoaderCache().get(jars);
+            Constructor<? extends Filter> constructor =
+                FILTER_CONSTRUCTORS.getConstructor(filterClassName, filterLoader, Filter.class);
+            Class<?> filterClass = constructor.getDeclaringClass();
+            getMetrics().classLoaderUsed(filterLoader, filterClassName);
+            if (LOADED_FILTER_CLASSES.add(filterClass)) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(String.format("Filter class: %s@%x",
+                                filterClass.getName(),
+                                System.identityHashCode(filterClass)));
+                }
+                if (!filterClass.getClassLoader().equals(filterLoader)) {
+                    LOG.warn(String.format("Filter class (%s@%x) loaded by " +
+                        "unexpected class loader (%s), instead of %s.  This " +
+                        "is a likely result of the class being present in " +
+                        "another resource that a parent class loader has " +
+                        "access to.  You may not be using the freshest version " +
+                        "of your filter in this case.",
+                        filterClass.getName(),
+                        System.identityHashCode(filterClass),
+                        filterClass.getClassLoader(),
+                        filterLoader));
+                }
+                else {
+                    getMetrics().filterDynamicallyLoaded(filterClass);
+                }
             }
             getMetrics().filterInstantiated(filterClass);
-            return (Filter)filterClass.newInstance();
+            return constructor.newInstance();
         }
         catch (Exception e) {
             throw new RuntimeException(e);
@@ -221,19 +442,420 @@ public class DeployedFilterManager {
     }
 
     /**
-     * Construct a path to temporarily copy jars during deployment; the path will be roughly unique,
-     * as it is based on the current time as well as a random long.
+     * Find the jar that contains the class, which has to be in one in order to be deployed
      */
-    private static Path constructRemoteJarPath(Configuration configuration)
-        throws IOException {
-        String baseDirectory = configuration.get(DEPLOY_FILTER_PATH, DEPLOY_FILTER_DEFAULT_PATH);
-        baseDirectory +=
-            "/" + String.valueOf(System.currentTimeMillis()) +
-            "-" + String.valueOf(RANDOM.nextLong());
-        Path remoteJarPath = new Path(baseDirectory);
-        FileSystem fs = FileSystem.get(configuration);
-        remoteJarPath = remoteJarPath.makeQualified(fs);
-        fs.mkdirs(remoteJarPath);
-        return remoteJarPath;
+    private static String findRequiredJar(Class<?> clazz, String description) throws IOException {
+        String jarUri = findContainingJar(clazz);
+        if (jarUri == null) {
+            throw new IllegalArgumentException(String.format(
+                "Unable to find jar for %s class %s", description, clazz));
+        }
+        return jarUri;
+    }
+
+    /**
+     * Make sure that the filter was deployed by a manager, and therefore holds references to its jars
+     */
+    private static void checkDeployed(DeployedFilter filter) {
+        for (DeployedJar jar : filter.getJars()) {
+            if (jar.getReferencePath() == null) {
+                throw new IllegalArgumentException("Filter was not deployed by a DeployedFilterManager");
+            }
+        }
+    }
+
+    /**
+     * Renew the lease on the filter until it is undeployed, starting the timer that renews leases if need be
+     */
+    private synchronized void holdLease(DeployedFilter filter) {
+        this.leasedFilters.add(filter);
+        if (this.leaseRenewalTimer == null) {
+            long period = Math.max(1L, getLease(this.configuration) / LEASE_RENEWALS_PER_LEASE);
+            this.leaseRenewalTimer = new Timer("DeployedFilterManager lease renewal", true);
+            this.leaseRenewalTimer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    renewLeases();
+                }
+            }, period, period);
+        }
+    }
+
+    /**
+     * Stop renewing the lease on the filter, stopping the timer once there are no more leases to renew
+     */
+    private synchronized void dropLease(DeployedFilter filter) {
+        this.leasedFilters.remove(filter);
+        if (this.leasedFilters.isEmpty() && this.leaseRenewalTimer != null) {
+            this.leaseRenewalTimer.cancel();
+            this.leaseRenewalTimer = null;
+        }
+    }
+
+    /**
+     * Renew the lease on each of the filter's jars by touching its reference
+     *
+     * @return false if the lease had already expired
+     */
+    private boolean renewHeldLease(DeployedFilter filter) throws IOException {
+        for (DeployedJar jar : filter.getJars()) {
+            Path referencePath = jar.getReferencePath();
+            FileSystem fs = referencePath.getFileSystem(this.configuration);
+            if (!fs.exists(referencePath)) {
+                return false;
+            }
+            // Rewriting the empty reference updates its modification time on every file system
+            fs.create(referencePath, true).close();
+            if (!fs.exists(jar.getRemoteJarPath())) {
+                // The jar was cleaned up between checking the reference and rewriting it
+                fs.delete(referencePath, false);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Renew the leases on all of the filters that have not been undeployed yet.  A lease that has expired
+     * cannot be renewed again, so it is dropped.
+     */
+    private void renewLeases() {
+        for (DeployedFilter filter : this.leasedFilters) {
+            try {
+                if (!renewHeldLease(filter)) {
+                    LOG.warn(String.format("Lease on %s expired before it could be renewed", filter.getJars()));
+                    dropLease(filter);
+                }
+            }
+            catch (IOException ioe) {
+                LOG.warn(String.format("Unable to renew the lease on %s", filter.getJars()), ioe);
+            }
+        }
+    }
+
+    /**
+     * Get the time a deployment stays leased without being renewed
+     */
+    static long getLease(Configuration configuration) {
+        return configuration.getLong(DEPLOY_FILTER_LEASE_MS, DEFAULT_DEPLOY_FILTER_LEASE_MS);
+    }
+
+    /**
+     * Add the jars of the dependencies that are not already being deployed
+     */
+    private void addDependencyJars(Map<File, String> localJars, Class<?>... dependencies) throws IOException {
+        for (Class<?> dependency : dependencies) {
+            addJar(localJars, findRequiredJar(dependency, "dependency"));
+        }
+    }
+
+    /**
+     * Add the jar along with its checksum, unless it is already being deployed; several classes may come from
+     * the same jar, which only needs to be deployed once
+     */
+    private void addJar(Map<File, String> localJars, String localJarUri) throws IOException {
+        File localJar = new File(localJarUri);
+        if (!localJars.containsKey(localJar)) {
+            localJars.put(localJar, checksum(localJar));
+        }
+    }
+
+    /**
+     * Deploy the jars, in order, for the filter
+     */
+    private DeployedFilter deploy(Filter wrappedFilter, Map<File, String> localJars) throws IOException {
+        FileSystem fs = FileSystem.get(this.configuration);
+        List<DeployedJar> jars = new ArrayList<DeployedJar>(localJars.size());
+        boolean deployed = false;
+        try {
+            for (Map.Entry<File, String> localJar : localJars.entrySet()) {
+                jars.add(deployJar(fs, localJar.getKey(), localJar.getValue()));
+            }
+            DeploymentDescriptor descriptor = new DeploymentDescriptor(jars, wrappedFilter.getClass().getName());
+            long handle = registerHandle(fs, descriptor);
+            DeployedFilter filter = new DeployedFilter(handle, descriptor, wrappedFilter);
+            holdLease(filter);
+            deployed = true;
+            return filter;
+        }
+        finally {
+            if (!deployed) {
+                // Do not leave references behind to the jars that did make it
+                releaseQuietly(fs, jars);
+            }
+        }
+    }
+
+    /**
+     * Register the descriptor of a deployment under its handle, so that region servers can resolve the handle
+     * that the {@link DeployedFilter} is sent with.  The handle is derived from the contents of the descriptor,
+     * so if it is already registered, then there is nothing to do.  Registered handles are tiny and are left in
+     * place when the jars they refer to are undeployed, since another deployment may come along with the same
+     * jars and reuse them.
+     */
+    private long registerHandle(FileSystem fs, DeploymentDescriptor descriptor) throws IOException {
+        byte[] descriptorBytes = descriptor.toBytes();
+        long handle = DeploymentDescriptor.handleOf(descriptorBytes);
+        Path handlePath = getHandlePath(fs, this.configuration, handle);
+        if (fs.exists(handlePath)) {
+            return handle;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Registering %s under handle %x", descriptor, handle));
+        }
+        // Just like with jars, write the descriptor next to where it belongs and rename it into place, so that
+        // it is never seen partially written
+        Path temporaryPath = new Path(handlePath.getParent(), "." + handlePath.getName() + "." + uniqueName());
+        FSDataOutputStream out = fs.create(temporaryPath, false);
+        try {
+            out.write(descriptorBytes);
+        }
+        finally {
+            out.close();
+        }
+        if (!fs.rename(temporaryPath, handlePath)) {
+            fs.delete(temporaryPath, false);
+        }
+        if (!fs.exists(handlePath)) {
+            throw new IOException("Unable to register handle " + handlePath);
+        }
+        return handle;
+    }
+
+    /**
+     * Package the class files into a jar.  Every entry is given the same time, so that packaging the same
+     * classes always results in the same bytes, and therefore the same checksum.
+     */
+    private static byte[] createJar(SortedMap<String, byte[]> classFiles) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        JarOutputStream jarOut = new JarOutputStream(bytes);
+        try {
+            for (Map.Entry<String, byte[]> classFile : classFiles.entrySet()) {
+                JarEntry entry = new JarEntry(classFile.getKey());
+                entry.setTime(CLOSURE_JAR_ENTRY_TIME);
+                jarOut.putNextEntry(entry);
+                jarOut.write(classFile.getValue());
+                jarOut.closeEntry();
+            }
+        }
+        finally {
+            jarOut.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Deploy one jar by its checksum, taking out a reference to it
+     */
+    private DeployedJar deployJar(FileSystem fs, File localJar, String checksum) throws IOException {
+        Path localJarPath = new Path(localJar.getPath());
+        Path contentDirectory = new Path(getBaseDirectory(fs, this.configuration), JARS_DIRECTORY + "/" + checksum);
+        Path remoteJarPath = new Path(contentDirectory, localJarPath.getName());
+
+        for (int attempt = 1; attempt <= MAX_DEPLOY_ATTEMPTS; attempt++) {
+            // Take out the reference before looking for the jar, so that a concurrent undeploy of the
+            // last other deployment can tell that the jar is still needed
+            Path referencePath = new Path(contentDirectory, REFERENCES_DIRECTORY + "/" + uniqueName());
+            fs.createNewFile(referencePath);
+            boolean deployed = false;
+            try {
+                if (!fs.exists(remoteJarPath)) {
+                    uploadJar(fs, localJarPath, remoteJarPath);
+                }
+                else if (LOG.isDebugEnabled()) {
+                    LOG.debug(String.format("Reusing deployed jar %s for %s", remoteJarPath, localJarPath));
+                }
+                if (fs.exists(referencePath) && fs.exists(remoteJarPath)) {
+                    deployed = true;
+                    return new DeployedJar(remoteJarPath, checksum, referencePath);
+                }
+            }
+            finally {
+                if (!deployed) {
+                    // Nobody will ever release the reference of a failed attempt, so it would keep the jar forever
+                    deleteQuietly(fs, referencePath);
+                }
+            }
+            // An undeploy moved the directory out from under this deployment, so try again
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(String.format("Deployment of %s raced with an undeploy on attempt %d", remoteJarPath, attempt));
+            }
+        }
+        throw new IOException("Unable to deploy " + localJarPath + " to " + remoteJarPath);
+    }
+
+    /**
+     * Release the reference to a deployed jar, deleting the jar if nothing else references it
+     */
+    private void release(FileSystem fs, DeployedJar jar) throws IOException {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Releasing reference %s to %s", jar.getReferencePath(), jar.getRemoteJarPath()));
+        }
+        fs.delete(jar.getReferencePath(), false);
+        deleteIfUnreferenced(fs, jar.getRemoteJarPath().getParent());
+    }
+
+    /**
+     * Release the references to deployed jars without letting a failure mask whatever caused the release
+     */
+    private void releaseQuietly(FileSystem fs, List<DeployedJar> jars) {
+        for (DeployedJar jar : jars) {
+            try {
+                release(fs, jar);
+            }
+            catch (IOException ioe) {
+                LOG.warn(String.format("Unable to release reference %s", jar.getReferencePath()), ioe);
+            }
+        }
+    }
+
+    /**
+     * Delete a path without letting a failure mask whatever caused the delete
+     */
+    private static void deleteQuietly(FileSystem fs, Path path) {
+        try {
+            fs.delete(path, false);
+        }
+        catch (IOException ioe) {
+            LOG.warn(String.format("Unable to delete %s", path), ioe);
+        }
+    }
+
+    /**
+     * Get the fully qualified base directory under which jars are deployed
+     */
+    static Path getBaseDirectory(FileSystem fs, Configuration configuration) {
+        return new Path(configuration.get(DEPLOY_FILTER_PATH, DEPLOY_FILTER_DEFAULT_PATH)).makeQualified(fs);
+    }
+
+    /**
+     * Get the path that the descriptor of a deployment is registered at under its handle
+     */
+    static Path getHandlePath(FileSystem fs, Configuration configuration, long handle) {
+        return new Path(getBaseDirectory(fs, configuration), HANDLES_DIRECTORY + "/" + Long.toHexString(handle));
+    }
+
+    /**
+     * Construct a name that is unique to this deployment, based on the current time as well as a random long
+     */
+    private static String uniqueName() {
+        return String.valueOf(System.currentTimeMillis()) + "-" + String.valueOf(RANDOM.nextLong());
+    }
+
+    /**
+     * Upload the jar to a temporary file next to its final location and then rename it into place, so that
+     * nobody ever sees a partially written jar.  If another deployment renames its copy into place first,
+     * then this copy is simply discarded.
+     */
+    private static void uploadJar(FileSystem fs, Path localJarPath, Path remoteJarPath) throws IOException {
+        Path temporaryPath = new Path(remoteJarPath.getParent(), "." + remoteJarPath.getName() + "." + uniqueName());
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Deploying filter class from %s to %s", localJarPath, remoteJarPath));
+        }
+        fs.copyFromLocalFile(localJarPath, temporaryPath);
+        if (!fs.rename(temporaryPath, remoteJarPath)) {
+            fs.delete(temporaryPath, false);
+        }
+    }
+
+    /**
+     * Delete the directory of a deployed jar if no references to it remain.  The directory is first renamed
+     * to a unique name in the trash, which is atomic, and then checked once more for references that were
+     * taken out in the meantime.  Any such references, and the jar they need, are moved back into place.
+     *
+     * @return true if the directory was deleted
+     */
+    boolean deleteIfUnreferenced(FileSystem fs, Path contentDirectory) throws IOException {
+        if (listStatus(fs, new Path(contentDirectory, REFERENCES_DIRECTORY)).length > 0) {
+            return false;
+        }
+        Path trashDirectory = new Path(getBaseDirectory(fs, this.configuration), TRASH_DIRECTORY);
+        fs.mkdirs(trashDirectory);
+        Path trashedDirectory = new Path(trashDirectory, contentDirectory.getName() + "-" + uniqueName());
+        try {
+            if (!fs.rename(contentDirectory, trashedDirectory)) {
+                // Another undeploy got to it first
+                return false;
+            }
+        }
+        catch (FileNotFoundException fnfe) {
+            // Some file systems complain instead when another undeploy, or the janitor, got to it first
+            return false;
+        }
+        FileStatus[] lateReferences = listStatus(fs, new Path(trashedDirectory, REFERENCES_DIRECTORY));
+        boolean deleted = lateReferences.length == 0;
+        if (!deleted) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(String.format("Restoring %s for %d late references", contentDirectory, lateReferences.length));
+            }
+            Path referencesDirectory = new Path(contentDirectory, REFERENCES_DIRECTORY);
+            fs.mkdirs(referencesDirectory);
+            for (FileStatus reference : lateReferences) {
+                fs.rename(reference.getPath(), new Path(referencesDirectory, reference.getPath().getName()));
+            }
+            for (FileStatus content : listStatus(fs, trashedDirectory)) {
+                Path restoredPath = new Path(contentDirectory, content.getPath().getName());
+                if (!REFERENCES_DIRECTORY.equals(content.getPath().getName()) && !fs.exists(restoredPath)) {
+                    fs.rename(content.getPath(), restoredPath);
+                }
+            }
+        }
+        else if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Deleting unreferenced deployed jars in %s", contentDirectory));
+        }
+        fs.delete(trashedDirectory, true);
+        return deleted;
+    }
+
+    /**
+     * List the directory, treating a missing directory as an empty one
+     */
+    static FileStatus[] listStatus(FileSystem fs, Path directory) throws IOException {
+        try {
+            FileStatus[] statuses = fs.listStatus(directory);
+            return statuses == null ? new FileStatus[0] : statuses;
+        }
+        catch (FileNotFoundException fnfe) {
+            return new FileStatus[0];
+        }
+    }
+
+    /**
+     * Compute the checksum of the contents of a local jar.  Checksums are remembered for as long as the
+     * jar's size and modification time stay the same, so that repeated deployments do not rehash the jar.
+     */
+    private String checksum(File jarFile) throws IOException {
+        JarChecksum cached = this.checksums.get(jarFile.getPath());
+        if (cached != null && cached.matches(jarFile)) {
+            return cached.checksum;
+        }
+        InputStream in = new FileInputStream(jarFile);
+        try {
+            JarChecksum computed = new JarChecksum(jarFile, MD5Hash.digest(in).toString());
+            this.checksums.put(jarFile.getPath(), computed);
+            return computed.checksum;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * The checksum of a local jar along with what is needed to tell if the jar has changed since
+     */
+    private static final class JarChecksum {
+        private final long length;
+        private final long lastModified;
+        private final String checksum;
+
+        private JarChecksum(File jarFile, String checksum) {
+            this.length = jarFile.length();
+            this.lastModified = jarFile.lastModified();
+            this.checksum = checksum;
+        }
+
+        private boolean matches(File jarFile) {
+            return this.length == jarFile.length() && this.lastModified == jarFile.lastModified();
+        }
     }
 }
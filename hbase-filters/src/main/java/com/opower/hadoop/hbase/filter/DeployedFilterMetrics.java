@@ -1,5 +1,7 @@
 package com.opower.hadoop.hbase.filter;
 
+import com.google.common.collect.MapMaker;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -7,106 +9,178 @@ import org.apache.hadoop.metrics.MetricsContext;
 import org.apache.hadoop.metrics.MetricsRecord;
 import org.apache.hadoop.metrics.MetricsUtil;
 import org.apache.hadoop.metrics.Updater;
+import org.apache.hadoop.metrics.util.MBeanUtil;
 import org.apache.hadoop.metrics.util.MetricsBase;
 import org.apache.hadoop.metrics.util.MetricsLongValue;
 import org.apache.hadoop.metrics.util.MetricsRegistry;
 
-import java.lang.ref.PhantomReference;
-import java.lang.ref.Reference;
-import java.lang.ref.ReferenceQueue;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import com.opower.common.metrics.CollectionTracker;
+import com.opower.common.metrics.Histogram;
+import com.opower.common.metrics.StripedCounter;
+import com.opower.hadoop.fs.HdfsClassLoader;
 
 /**
  * Collects and emits metrics for the use of the {@link DeployedFilter}.
  * Metrics are added to the "extensions" context under the record named
  * "deployedFilter".
+ * </p><p>
+ * The events are counted on the deserialization path of every scan, so counting them never locks: each count is
+ * a {@link StripedCounter}, the counts per filter class are kept in a concurrent map that only weakly references
+ * the classes, so that they can still be unloaded, and collected classes and class loaders are counted by a
+ * background thread.  The names of the metrics are only put together, and the counts only summed, when the
+ * metrics are pushed.
+ * </p><p>
+ * The class loaders that are still alive are kept in a {@link DeployedClassLoaderInventory}, which is exposed through
+ * JMX, and whose size and distribution of ages are added to the record as well.
  *
  * @author jeff@opower.com
  */
 class DeployedFilterMetrics implements Updater {
     private static final Log LOG = LogFactory.getLog(DeployedFilterMetrics.class);
+    private static final String INSTANTIATED_PREFIX = "instantiated:";
 
     private final MetricsRegistry registry = new MetricsRegistry();
     private final MetricsRecord metricsRecord;
 
-    private final MetricsLongValue filtersDynamicallyLoaded = new MetricsLongValue("filtersDynamicallyLoaded", this.registry);
-    private final MetricsLongValue filtersCollected = new MetricsLongValue("filtersCollected", this.registry);
-
-    private final MetricsLongValue classLoadersInstantiated = new MetricsLongValue("classLoadersInstantiated", this.registry);
-    private final MetricsLongValue classLoadersCollected = new MetricsLongValue("classLoadersCollected", this.registry);
+    private final StripedCounter filtersDynamicallyLoaded = new StripedCounter();
+    private final StripedCounter filtersCollected = new StripedCounter();
+    private final StripedCounter classLoadersInstantiated = new StripedCounter();
+    private final StripedCounter classLoadersCollected = new StripedCounter();
+
+    private final MetricsLongValue filtersDynamicallyLoadedMetric =
+        new MetricsLongValue("filtersDynamicallyLoaded", this.registry);
+    private final MetricsLongValue filtersCollectedMetric = new MetricsLongValue("filtersCollected", this.registry);
+    private final MetricsLongValue classLoadersInstantiatedMetric =
+        new MetricsLongValue("classLoadersInstantiated", this.registry);
+    private final MetricsLongValue classLoadersCollectedMetric =
+        new MetricsLongValue("classLoadersCollected", this.registry);
+    private final MetricsLongValue jarBytesRead = new MetricsLongValue("jarBytesRead", this.registry);
+    private final MetricsLongValue classLoadersLive = new MetricsLongValue("classLoadersLive", this.registry);
+    private final MetricsLongValue classLoadersEvictedLive =
+        new MetricsLongValue("classLoadersEvictedLive", this.registry);
+    private final MetricsLongValue classLoaderAgeMedianMs =
+        new MetricsLongValue("classLoaderAgeMs.median", this.registry);
+    private final MetricsLongValue classLoaderAgeP99Ms = new MetricsLongValue("classLoaderAgeMs.p99", this.registry);
+    private final MetricsLongValue classLoaderAgeMaxMs = new MetricsLongValue("classLoaderAgeMs.max", this.registry);
+
+    private final DeployedClassLoaderInventory inventory = new DeployedClassLoaderInventory();
 
     /**
-     * Keep track of phantom references to class loaders to detect possible memory leaks
+     * Keep track of phantom references to filter classes and class loaders to detect possible memory leaks
      */
-    private final ReferenceQueue<ClassLoader> classLoaderQueue = new ReferenceQueue<ClassLoader>();
-    /**
-     * Keep track of phantom references to filter classes to detect possible memory leaks
-     */
-    private final ReferenceQueue<Class> filterClassQueue = new ReferenceQueue<Class>();
+    private final CollectionTracker collectionTracker = new CollectionTracker("DeployedFilterMetrics collection tracker");
 
-    private final Set<Reference> classLoaders = new HashSet<Reference>();
-    private final Set<Reference> filterClasses = new HashSet<Reference>();
+    private final ConcurrentMap<Class<?>, FilterClassCounts> filterClassCounts =
+        new MapMaker().weakKeys().makeMap();
 
     DeployedFilterMetrics() {
         MetricsContext context = MetricsUtil.getContext("extensions");
-        metricsRecord = MetricsUtil.createRecord(context, "deployedFilter");
+        this.metricsRecord = MetricsUtil.createRecord(context, "deployedFilter");
         context.registerUpdater(this);
+        try {
+            MBeanUtil.registerMBean("HBaseDeployedFilters", "ClassLoaderInventory", this.inventory);
+        }
+        catch (RuntimeException re) {
+            LOG.warn("Unable to register the class loader inventory with JMX", re);
+        }
     }
 
-    synchronized void filterDynamicallyLoaded(Class filterClass) {
-        this.filtersDynamicallyLoaded.set(this.filtersDynamicallyLoaded.get() + 1);
-        // Create a phantom reference so we can track when the filter class is garbage collected
-        this.filterClasses.add(new PhantomReference<Class>(filterClass, this.filterClassQueue));
+    void filterDynamicallyLoaded(Class filterClass) {
+        this.filtersDynamicallyLoaded.increment();
+        this.collectionTracker.track(filterClass, this.filtersCollected);
     }
 
-    synchronized void classLoaderInstantiated(ClassLoader classLoader) {
-        this.classLoadersInstantiated.set(this.classLoadersInstantiated.get() + 1);
-        // Create a phantom reference so we can track when the class loader is garbage collected
-        this.classLoaders.add(new PhantomReference<ClassLoader>(classLoader, this.classLoaderQueue));
+    void classLoaderInstantiated(HdfsClassLoader classLoader) {
+        this.classLoadersInstantiated.increment();
+        this.collectionTracker.track(classLoader, this.classLoadersCollected);
+        this.inventory.created(classLoader);
+    }
+
+    void classLoaderUsed(ClassLoader classLoader, String filterClassName) {
+        this.inventory.used(classLoader, filterClassName);
+    }
+
+    void classLoaderEvicted(HdfsClassLoader classLoader) {
+        this.inventory.setEvicted(classLoader, true);
+    }
+
+    void classLoaderReused(HdfsClassLoader classLoader) {
+        this.inventory.setEvicted(classLoader, false);
+    }
+
+    DeployedClassLoaderInventory getInventory() {
+        return this.inventory;
     }
 
     void filterInstantiated(Class filterClass) {
-        String filterClassName = filterClass.getName();
-        String metricName = "instantiated:" + filterClassName;
-        synchronized (this) {
-            MetricsLongValue metric = (MetricsLongValue)this.registry.get(metricName);
-            if (metric == null) {
-                metric = new MetricsLongValue(metricName, this.registry);
+        getFilterClassCounts(filterClass).instantiated.increment();
+    }
+
+    private FilterClassCounts getFilterClassCounts(Class<?> filterClass) {
+        FilterClassCounts counts = this.filterClassCounts.get(filterClass);
+        if (counts == null) {
+            counts = new FilterClassCounts();
+            FilterClassCounts existing = this.filterClassCounts.putIfAbsent(filterClass, counts);
+            if (existing != null) {
+                counts = existing;
             }
-            metric.set(metric.get() + 1);
         }
+        return counts;
     }
 
+    /**
+     * Only ever called by the metrics context's timer thread, which is the only thing that touches the registry
+     */
     public synchronized void doUpdates(MetricsContext caller) {
-        synchronized (this) {
-            // Determine how many classes and class loaders have been
-            // collected and add those counts to the respective metrics
-            incrementCollectedMetrics(this.classLoaders, this.classLoaderQueue, this.classLoadersCollected);
-            incrementCollectedMetrics(this.filterClasses, this.filterClassQueue, this.filtersCollected);
-
-            for (MetricsBase metric : this.registry.getMetricsList()) {
-                metric.pushMetric(this.metricsRecord);
-            }
+        this.filtersDynamicallyLoadedMetric.set(this.filtersDynamicallyLoaded.sum());
+        this.filtersCollectedMetric.set(this.filtersCollected.sum());
+        this.classLoadersInstantiatedMetric.set(this.classLoadersInstantiated.sum());
+        this.classLoadersCollectedMetric.set(this.classLoadersCollected.sum());
+        // The class loaders count their own reads from HDFS, so just take the latest total
+        this.jarBytesRead.set(HdfsClassLoader.getTotalBytesRead());
+        this.classLoadersLive.set(this.inventory.getClassLoaderCount());
+        this.classLoadersEvictedLive.set(this.inventory.getEvictedClassLoaderCount());
+        Histogram.Snapshot ages = this.inventory.getAgesMs(System.currentTimeMillis());
+        this.classLoaderAgeMedianMs.set(ages.getPercentile(50.0));
+        this.classLoaderAgeP99Ms.set(ages.getPercentile(99.0));
+        this.classLoaderAgeMaxMs.set(ages.getMax());
+
+        // Classes of the same name from different class loaders add up to the same metric
+        for (Map.Entry<Class<?>, FilterClassCounts> entry : this.filterClassCounts.entrySet()) {
+            String filterClassName = entry.getKey().getName();
+            FilterClassCounts counts = entry.getValue();
+            long instantiated = counts.instantiated.sum();
+            addToMetric(INSTANTIATED_PREFIX + filterClassName, instantiated - counts.reportedInstantiated);
+            counts.reportedInstantiated = instantiated;
+        }
+
+        for (MetricsBase metric : this.registry.getMetricsList()) {
+            metric.pushMetric(this.metricsRecord);
         }
         this.metricsRecord.update();
     }
 
-    private void incrementCollectedMetrics(Set<Reference> references, ReferenceQueue queue, MetricsLongValue metric) {
-        int count = 0;
-        Reference ref = null;
-        while ((ref = queue.poll()) != null) {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug(String.format("Found reference to be collected: %s; %s", ref, ref.get()));
+    private void addToMetric(String metricName, long delta) {
+        MetricsLongValue metric = (MetricsLongValue)this.registry.get(metricName);
+        if (metric == null) {
+            if (delta == 0) {
+                return;
             }
-            // be sure to clear the references so that they can actually be collected by the garbage collector
-            ref.clear();
-            references.remove(ref);
-            metric.set(metric.get() + 1);
-            count++;
-        }
-        if (LOG.isDebugEnabled()) {
-            LOG.debug(String.format("%d references collected for %s", count, metric.getName()));
+            metric = new MetricsLongValue(metricName, this.registry);
         }
+        metric.set(metric.get() + delta);
+    }
+
+    /**
+     * The counts for one filter class, along with how much of them has already been added to the metrics, which
+     * is only touched by {@link #doUpdates}.  The metrics are only ever added to, so they keep what a class counted
+     * up until the last push before it was collected.
+     */
+    private static final class FilterClassCounts {
+        private final StripedCounter instantiated = new StripedCounter();
+        private long reportedInstantiated;
     }
 }
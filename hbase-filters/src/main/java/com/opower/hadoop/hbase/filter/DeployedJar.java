@@ -0,0 +1,76 @@
+package com.opower.hadoop.hbase.filter;
+
+import com.google.common.base.Objects;
+
+import org.apache.hadoop.fs.Path;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * One of the jars that a {@link DeployedFilter} needs in order to be loaded on a region server: where it was
+ * deployed to in HDFS, along with the checksum of its contents.
+ *
+ * @author jeff@opower.com
+ */
+final class DeployedJar {
+    private final Path remoteJarPath;
+    private final String checksum;
+
+    // Only set on the client that deployed the jar; it is not serialized
+    private final Path referencePath;
+
+    /**
+     * @param remoteJarPath a Path to the jar in HDFS
+     * @param checksum the checksum of the contents of the jar
+     * @param referencePath a Path in HDFS that marks a deployment as a user of the jar, or null if there is none
+     */
+    DeployedJar(Path remoteJarPath, String checksum, Path referencePath) {
+        this.remoteJarPath = remoteJarPath;
+        this.checksum = checksum;
+        this.referencePath = referencePath;
+    }
+
+    /**
+     * @return the Path to the jar in HDFS
+     */
+    Path getRemoteJarPath() {
+        return this.remoteJarPath;
+    }
+
+    /**
+     * @return the checksum of the contents of the jar in HDFS
+     */
+    String getChecksum() {
+        return this.checksum;
+    }
+
+    /**
+     * @return the Path to the deployment's reference to the jar, or null if this jar was deserialized
+     */
+    Path getReferencePath() {
+        return this.referencePath;
+    }
+
+    void write(DataOutput out) throws IOException {
+        Bytes.writeByteArray(out, Bytes.toBytes(this.remoteJarPath.toString()));
+        Bytes.writeByteArray(out, Bytes.toBytes(this.checksum));
+    }
+
+    static DeployedJar read(DataInput in) throws IOException {
+        Path remoteJarPath = new Path(Bytes.toString(Bytes.readByteArray(in)));
+        String checksum = Bytes.toString(Bytes.readByteArray(in));
+        return new DeployedJar(remoteJarPath, checksum, null);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+            .add("remoteJarPath", this.remoteJarPath)
+            .add("checksum", this.checksum)
+            .toString();
+    }
+}
@@ -0,0 +1,96 @@
+package com.opower.hadoop.hbase.filter;
+
+import com.google.common.base.Objects;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.MD5Hash;
+import org.apache.hadoop.io.WritableUtils;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything a region server needs to know to load a deployed filter: the jars in HDFS, in the order in which
+ * they are searched, and the name of the filter class.  The descriptor is registered in HDFS under a handle
+ * that is derived from its contents, so a {@link DeployedFilter} only has to send the handle along with each
+ * scan, and the same deployment always gets the same handle no matter who deploys it.
+ *
+ * @author jeff@opower.com
+ */
+final class DeploymentDescriptor {
+    private final List<DeployedJar> jars;
+    private final String filterClassName;
+
+    /**
+     * @param jars the jars in HDFS, starting with the one that holds the filter class
+     * @param filterClassName the binary name of the filter class
+     */
+    DeploymentDescriptor(List<DeployedJar> jars, String filterClassName) {
+        this.jars = Collections.unmodifiableList(new ArrayList<DeployedJar>(jars));
+        this.filterClassName = filterClassName;
+    }
+
+    List<DeployedJar> getJars() {
+        return this.jars;
+    }
+
+    String getFilterClassName() {
+        return this.filterClassName;
+    }
+
+    /**
+     * @return the serialized form of this descriptor, which is what gets registered in HDFS
+     */
+    byte[] toBytes() throws IOException {
+        DataOutputBuffer out = new DataOutputBuffer();
+        write(out);
+        byte[] bytes = new byte[out.getLength()];
+        System.arraycopy(out.getData(), 0, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    /**
+     * @return the handle that this descriptor is registered under
+     */
+    long getHandle() throws IOException {
+        return handleOf(toBytes());
+    }
+
+    /**
+     * Derive the handle of a serialized descriptor from half of the MD5 hash of its bytes
+     */
+    static long handleOf(byte[] descriptorBytes) {
+        return MD5Hash.digest(descriptorBytes).halfDigest();
+    }
+
+    void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, this.jars.size());
+        for (DeployedJar jar : this.jars) {
+            jar.write(out);
+        }
+        Bytes.writeByteArray(out, Bytes.toBytes(this.filterClassName));
+    }
+
+    static DeploymentDescriptor read(DataInput in) throws IOException {
+        int jarCount = WritableUtils.readVInt(in);
+        List<DeployedJar> jars = new ArrayList<DeployedJar>(jarCount);
+        for (int i = 0; i < jarCount; i++) {
+            jars.add(DeployedJar.read(in));
+        }
+        return new DeploymentDescriptor(jars, Bytes.toString(Bytes.readByteArray(in)));
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+            .add("jars", this.jars)
+            .add("filterClassName", this.filterClassName)
+            .toString();
+    }
+}
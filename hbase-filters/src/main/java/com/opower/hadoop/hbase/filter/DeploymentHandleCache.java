@@ -0,0 +1,98 @@
+package com.opower.hadoop.hbase.filter;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Resolves the handles that {@link DeployedFilter DeployedFilters} are sent with into the
+ * {@link DeploymentDescriptor DeploymentDescriptors} registered for them in HDFS, caching them on the region
+ * server.  A handle is derived from the contents of its descriptor, so what it resolves to never changes, and
+ * the cache only needs to be bounded in size; each handle is read from HDFS once.
+ * </p><p>
+ * The handles are registered under the {@link DeployedFilterManager#DEPLOY_FILTER_PATH} of the configuration,
+ * so the region servers must be configured with the same path as the clients that deploy filters.
+ *
+ * @author jeff@opower.com
+ */
+class DeploymentHandleCache {
+    private static final Log LOG = LogFactory.getLog(DeploymentHandleCache.class);
+
+    private final Configuration configuration;
+    private final Cache<Long, DeploymentDescriptor> descriptors;
+
+    /**
+     * @param configuration the configuration to find the registered handles with and to read the cache size from
+     */
+    DeploymentHandleCache(Configuration configuration) {
+        this.configuration = configuration;
+        this.descriptors = CacheBuilder.newBuilder()
+            .maximumSize(configuration.getInt(DeployedFilterManager.HANDLE_CACHE_SIZE,
+                        DeployedFilterManager.DEFAULT_HANDLE_CACHE_SIZE))
+            .build();
+    }
+
+    /**
+     * Resolve a handle into the descriptor of its deployment, reading it from HDFS if it is not cached
+     *
+     * @param handle the handle of a registered deployment
+     * @return the descriptor of the deployment
+     * @throws IOException if the handle is not registered or cannot be read
+     */
+    DeploymentDescriptor get(final long handle) throws IOException {
+        try {
+            return this.descriptors.get(handle, new Callable<DeploymentDescriptor>() {
+                @Override
+                public DeploymentDescriptor call() throws IOException {
+                    return read(handle);
+                }
+            });
+        }
+        catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException)ee.getCause();
+            }
+            throw new IOException("Unable to resolve handle " + Long.toHexString(handle), ee.getCause());
+        }
+    }
+
+    /**
+     * @return the number of cached descriptors
+     */
+    long size() {
+        return this.descriptors.size();
+    }
+
+    private DeploymentDescriptor read(long handle) throws IOException {
+        FileSystem fs = FileSystem.get(this.configuration);
+        Path handlePath = DeployedFilterManager.getHandlePath(fs, this.configuration, handle);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Resolving handle %x from %s", handle, handlePath));
+        }
+        byte[] descriptorBytes = new byte[(int)fs.getFileStatus(handlePath).getLen()];
+        FSDataInputStream in = fs.open(handlePath);
+        try {
+            in.readFully(descriptorBytes);
+        }
+        finally {
+            in.close();
+        }
+        if (DeploymentDescriptor.handleOf(descriptorBytes) != handle) {
+            throw new IOException("Descriptor at " + handlePath + " does not match its handle");
+        }
+        return DeploymentDescriptor.read(new DataInputStream(new ByteArrayInputStream(descriptorBytes)));
+    }
+}
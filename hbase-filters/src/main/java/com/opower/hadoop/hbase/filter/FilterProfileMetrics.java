@@ -0,0 +1,159 @@
+package com.opower.hadoop.hbase.filter;
+
+import org.apache.hadoop.metrics.MetricsContext;
+import org.apache.hadoop.metrics.MetricsRecord;
+import org.apache.hadoop.metrics.MetricsUtil;
+import org.apache.hadoop.metrics.Updater;
+
+import org.apache.hadoop.hbase.filter.Filter.ReturnCode;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.opower.common.metrics.Histogram;
+import com.opower.common.metrics.StripedCounter;
+
+/**
+ * Collects and emits the profiles of {@link ProfilingFilter ProfilingFilters} on a region server.  Metrics are
+ * added to the "extensions" context under the record named "filterProfile", and each is named after the profile
+ * it belongs to, followed by the method of the filter and what was measured, for example
+ * {@code MyFilter.filterKeyValue.NEXT_ROW}.  Call counts are totals since the region server started, while the
+ * latency percentiles, in nanoseconds, only cover the calls that were sampled since the previous update.
+ *
+ * @author jeff@opower.com
+ */
+class FilterProfileMetrics implements Updater {
+    static final int FILTER_ROW_KEY = 0;
+    static final int FILTER_KEY_VALUE = 1;
+    static final int FILTER_ROW = 2;
+
+    static final int ROW_KEY_CALLS = 0;
+    static final int ROW_KEYS_FILTERED = 1;
+    static final int ROW_CALLS = 2;
+    static final int ROWS_FILTERED = 3;
+    static final int KEY_VALUE_RETURN_CODES = 4;
+    static final int COUNTERS = KEY_VALUE_RETURN_CODES + ReturnCode.values().length;
+
+    private static final String[] METHOD_NAMES = {"filterRowKey", "filterKeyValue", "filterRow"};
+    private static final String[] COUNTER_NAMES = counterNames();
+
+    private final MetricsRecord metricsRecord;
+    private final ConcurrentMap<String, Profile> profiles = new ConcurrentHashMap<String, Profile>();
+
+    FilterProfileMetrics() {
+        MetricsContext context = MetricsUtil.getContext("extensions");
+        this.metricsRecord = MetricsUtil.createRecord(context, "filterProfile");
+        context.registerUpdater(this);
+    }
+
+    /**
+     * @param profileName the name of the profile
+     * @return the profile of that name, which is created the first time it is asked for
+     */
+    Profile getProfile(String profileName) {
+        Profile profile = this.profiles.get(profileName);
+        if (profile == null) {
+            profile = new Profile();
+            Profile existing = this.profiles.putIfAbsent(profileName, profile);
+            if (existing != null) {
+                profile = existing;
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * @param profileName the name of the profile
+     * @return the profile of that name, or null if no filter has been profiled under it yet
+     */
+    Profile findProfile(String profileName) {
+        return this.profiles.get(profileName);
+    }
+
+    public synchronized void doUpdates(MetricsContext caller) {
+        for (Map.Entry<String, Profile> entry : this.profiles.entrySet()) {
+            String profileName = entry.getKey();
+            Profile profile = entry.getValue();
+            for (int i = 0; i < COUNTERS; i++) {
+                this.metricsRecord.setMetric(profileName + "." + COUNTER_NAMES[i], profile.getCount(i));
+            }
+            for (int i = 0; i < METHOD_NAMES.length; i++) {
+                Histogram.Snapshot latencies = profile.drainLatencies(i);
+                String prefix = profileName + "." + METHOD_NAMES[i] + ".";
+                this.metricsRecord.setMetric(prefix + "sampled", latencies.getCount());
+                this.metricsRecord.setMetric(prefix + "p50Nanos", latencies.getPercentile(50.0));
+                this.metricsRecord.setMetric(prefix + "p99Nanos", latencies.getPercentile(99.0));
+                this.metricsRecord.setMetric(prefix + "maxNanos", latencies.getMax());
+            }
+        }
+        this.metricsRecord.update();
+    }
+
+    private static String[] counterNames() {
+        String[] names = new String[COUNTERS];
+        names[ROW_KEY_CALLS] = "filterRowKey.calls";
+        names[ROW_KEYS_FILTERED] = "filterRowKey.filtered";
+        names[ROW_CALLS] = "filterRow.calls";
+        names[ROWS_FILTERED] = "filterRow.filtered";
+        for (ReturnCode returnCode : ReturnCode.values()) {
+            names[KEY_VALUE_RETURN_CODES + returnCode.ordinal()] = "filterKeyValue." + returnCode.name();
+        }
+        return names;
+    }
+
+    /**
+     * The counts and sampled latencies of all of the filters that share a profile name
+     */
+    static final class Profile {
+        private final StripedCounter[] counters = new StripedCounter[COUNTERS];
+        private final Histogram[] latencies = new Histogram[METHOD_NAMES.length];
+
+        private Profile() {
+            for (int i = 0; i < COUNTERS; i++) {
+                this.counters[i] = new StripedCounter();
+            }
+            for (int i = 0; i < METHOD_NAMES.length; i++) {
+                this.latencies[i] = new Histogram();
+            }
+        }
+
+        /**
+         * Add the counts that a filter has kept to itself to the profile, and then clear them
+         *
+         * @param counts the counts, indexed the same way as the counters of the profile
+         */
+        void flush(long[] counts) {
+            for (int i = 0; i < COUNTERS; i++) {
+                if (counts[i] != 0L) {
+                    this.counters[i].add(counts[i]);
+                    counts[i] = 0L;
+                }
+            }
+        }
+
+        /**
+         * @param method the method that was sampled
+         * @param nanos how long the call took
+         */
+        void sample(int method, long nanos) {
+            this.latencies[method].record(nanos);
+        }
+
+        /**
+         * @param counter the index of the counter
+         * @return the total count
+         */
+        long getCount(int counter) {
+            return this.counters[counter].sum();
+        }
+
+        /**
+         * @param method the method that was sampled
+         * @return the latencies sampled since the last time they were drained
+         */
+        Histogram.Snapshot drainLatencies(int method) {
+            return this.latencies[method].drain();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.opower.hadoop.hbase.filter;
+
+import org.apache.hadoop.io.Writable;
+
+import org.apache.hadoop.hbase.filter.Filter.ReturnCode;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The counts of the rows and {@code KeyValue}s that the filters profiled under a name have seen on a region server,
+ * as served by the {@link SelectivityEndpoint}.  The counts are totals since the region server started, so the
+ * counts of one server only ever grow, unless it restarts.
+ *
+ * @author jeff@opower.com
+ */
+public class FilterSelectivity implements Writable {
+    private String server;
+    private long rowsScanned;
+    private long rowsFiltered;
+    private long keyValuesScanned;
+    private long keyValuesIncluded;
+
+    /**
+     * Required default constructor for serialization
+     */
+    public FilterSelectivity() {}
+
+    /**
+     * @param server the name of the region server the counts come from
+     * @param rowsScanned the number of rows that the filters were asked about
+     * @param rowsFiltered the number of rows that the filters filtered out
+     * @param keyValuesScanned the number of {@code KeyValue}s that the filters were asked about
+     * @param keyValuesIncluded the number of {@code KeyValue}s that the filters included
+     */
+    public FilterSelectivity(String server, long rowsScanned, long rowsFiltered, long keyValuesScanned,
+                             long keyValuesIncluded) {
+        this.server = server;
+        this.rowsScanned = rowsScanned;
+        this.rowsFiltered = rowsFiltered;
+        this.keyValuesScanned = keyValuesScanned;
+        this.keyValuesIncluded = keyValuesIncluded;
+    }
+
+    FilterSelectivity(String server, FilterProfileMetrics.Profile profile) {
+        this.server = server;
+        this.rowsScanned = profile.getCount(FilterProfileMetrics.ROW_KEY_CALLS);
+        this.rowsFiltered = profile.getCount(FilterProfileMetrics.ROW_KEYS_FILTERED)
+            + profile.getCount(FilterProfileMetrics.ROWS_FILTERED);
+        for (ReturnCode returnCode : ReturnCode.values()) {
+            this.keyValuesScanned += profile.getCount(FilterProfileMetrics.KEY_VALUE_RETURN_CODES + returnCode.ordinal());
+        }
+        this.keyValuesIncluded = profile.getCount(FilterProfileMetrics.KEY_VALUE_RETURN_CODES
+                + ReturnCode.INCLUDE.ordinal());
+    }
+
+    /**
+     * @return the name of the region server the counts come from
+     */
+    public String getServer() {
+        return this.server;
+    }
+
+    /**
+     * @return the number of rows that the filters were asked about
+     */
+    public long getRowsScanned() {
+        return this.rowsScanned;
+    }
+
+    /**
+     * @return the number of rows that the filters filtered out, by their row key or once the whole row was seen
+     */
+    public long getRowsFiltered() {
+        return this.rowsFiltered;
+    }
+
+    /**
+     * @return the number of {@code KeyValue}s that the filters were asked about
+     */
+    public long getKeyValuesScanned() {
+        return this.keyValuesScanned;
+    }
+
+    /**
+     * @return the number of {@code KeyValue}s that the filters included, rather than skipping or seeking past
+     */
+    public long getKeyValuesIncluded() {
+        return this.keyValuesIncluded;
+    }
+
+    public void write(DataOutput out) throws IOException {
+        Bytes.writeByteArray(out, Bytes.toBytes(this.server));
+        out.writeLong(this.rowsScanned);
+        out.writeLong(this.rowsFiltered);
+        out.writeLong(this.keyValuesScanned);
+        out.writeLong(this.keyValuesIncluded);
+    }
+
+    public void readFields(DataInput in) throws IOException {
+        this.server = Bytes.toString(Bytes.readByteArray(in));
+        this.rowsScanned = in.readLong();
+        this.rowsFiltered = in.readLong();
+        this.keyValuesScanned = in.readLong();
+        this.keyValuesIncluded = in.readLong();
+    }
+}
@@ -0,0 +1,272 @@
+package com.opower.hadoop.hbase.filter;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.opower.common.reflect.ConstructorCache;
+import com.opower.common.reflect.Reflection;
+
+/**
+ * Wraps another {@link Filter} to profile what it costs on the region servers.  Every call to
+ * {@link #filterRowKey}, {@link #filterKeyValue} and {@link #filterRow} is counted, along with how often rows
+ * were filtered and which {@link ReturnCode ReturnCodes} were returned, and the duration of one call in every
+ * {@code sampleEvery} is recorded into a latency histogram.  The profiles are published by
+ * {@link FilterProfileMetrics} through the "extensions" metrics context, and their counts are also served to
+ * clients by the {@link SelectivityEndpoint}, when it is loaded.
+ * </p><p>
+ * Profiling is meant to be cheap enough to leave on.  The counts are kept in the filter itself, which only one
+ * scanner uses at a time, and are only added to the shared profile whenever the filter is {@link #reset}, which
+ * happens once per row.  With sampling off, the clock is never read.
+ * </p><p>
+ * Filters are profiled under a name, and all of the filters with the same name share a profile.  The name
+ * defaults to the class of the wrapped filter, or, for a {@link DeployedFilter}, the class of the filter that it
+ * deploys.  The wrapped filter is serialized along with its class name, so any filter that the region servers can
+ * load will do, including a {@link DeployedFilter} or a {@link com.opower.hadoop.hbase.selector.SelectorFilter}.
+ *
+ * @author jeff@opower.com
+ */
+public class ProfilingFilter implements Filter {
+    private static final byte WIRE_VERSION = 1;
+    private static final ConstructorCache FILTER_CONSTRUCTORS = new ConstructorCache();
+    private static FilterProfileMetrics metrics;
+
+    private String profileName;
+    private int sampleEvery;
+    private Filter wrappedFilter;
+
+    // Only used on the region server, by the scanner that is running this filter
+    private FilterProfileMetrics.Profile profile;
+    private final long[] counts = new long[FilterProfileMetrics.COUNTERS];
+    private int callsUntilSample;
+
+    /**
+     * Prevent the metrics from being instantiated and triggered on the client by hiding
+     * the instantiation in a static method.  Metrics should only be run on the server.
+     */
+    static synchronized FilterProfileMetrics getMetrics() {
+        if (metrics == null) {
+            metrics = new FilterProfileMetrics();
+        }
+        return metrics;
+    }
+
+    /**
+     * Required default constructor for serialization
+     */
+    public ProfilingFilter() {}
+
+    /**
+     * Profile a filter under the name of its class
+     *
+     * @param wrappedFilter the {@link Filter} to profile
+     * @param sampleEvery how many calls to make for every one that is timed, or 0 to not time any
+     */
+    public ProfilingFilter(Filter wrappedFilter, int sampleEvery) {
+        this(profileNameOf(wrappedFilter), wrappedFilter, sampleEvery);
+    }
+
+    /**
+     * @param profileName the name of the profile to add to
+     * @param wrappedFilter the {@link Filter} to profile, which must be of a publicly accessible class
+     * @param sampleEvery how many calls to make for every one that is timed, or 0 to not time any
+     */
+    public ProfilingFilter(String profileName, Filter wrappedFilter, int sampleEvery) {
+        if (profileName == null) {
+            throw new IllegalArgumentException("Profile name must not be null");
+        }
+        if (wrappedFilter == null) {
+            throw new IllegalArgumentException("Filter must not be null");
+        }
+        if (sampleEvery < 0) {
+            throw new IllegalArgumentException("Sampling rate must not be negative: " + sampleEvery);
+        }
+        Reflection.checkDeserializable(wrappedFilter);
+        this.profileName = profileName;
+        this.wrappedFilter = wrappedFilter;
+        this.sampleEvery = sampleEvery;
+        this.callsUntilSample = sampleEvery;
+    }
+
+    /**
+     * Profile every filter in a tree of {@link FilterList FilterLists}, rebuilding the lists around the profiled
+     * filters, each under the name of its own class
+     *
+     * @param filter the filter to profile, which may be null
+     * @param sampleEvery how many calls to make for every one that is timed, or 0 to not time any
+     * @return the profiled filter, or null if there was none
+     */
+    public static Filter profileAll(Filter filter, int sampleEvery) {
+        if (filter == null || filter instanceof ProfilingFilter) {
+            return filter;
+        }
+        if (filter instanceof FilterList) {
+            FilterList filterList = (FilterList)filter;
+            List<Filter> profiledFilters = new ArrayList<Filter>(filterList.getFilters().size());
+            for (Filter listedFilter : filterList.getFilters()) {
+                profiledFilters.add(profileAll(listedFilter, sampleEvery));
+            }
+            return new FilterList(filterList.getOperator(), profiledFilters);
+        }
+        return new ProfilingFilter(filter, sampleEvery);
+    }
+
+    String getProfileName() {
+        return this.profileName;
+    }
+
+    Filter getWrappedFilter() {
+        return this.wrappedFilter;
+    }
+
+    public void reset() {
+        this.wrappedFilter.reset();
+        flush();
+    }
+
+    public boolean filterRowKey(byte[] buffer, int offset, int length) {
+        boolean filtered;
+        if (sampleNext()) {
+            long start = System.nanoTime();
+            filtered = this.wrappedFilter.filterRowKey(buffer, offset, length);
+            getProfile().sample(FilterProfileMetrics.FILTER_ROW_KEY, System.nanoTime() - start);
+        }
+        else {
+            filtered = this.wrappedFilter.filterRowKey(buffer, offset, length);
+        }
+        this.counts[FilterProfileMetrics.ROW_KEY_CALLS]++;
+        if (filtered) {
+            this.counts[FilterProfileMetrics.ROW_KEYS_FILTERED]++;
+        }
+        return filtered;
+    }
+
+    public boolean filterAllRemaining() {
+        boolean allRemainingFiltered = this.wrappedFilter.filterAllRemaining();
+        if (allRemainingFiltered) {
+            // The scan is over, so there may not be another reset
+            flush();
+        }
+        return allRemainingFiltered;
+    }
+
+    public ReturnCode filterKeyValue(KeyValue v) {
+        ReturnCode returnCode;
+        if (sampleNext()) {
+            long start = System.nanoTime();
+            returnCode = this.wrappedFilter.filterKeyValue(v);
+            getProfile().sample(FilterProfileMetrics.FILTER_KEY_VALUE, System.nanoTime() - start);
+        }
+        else {
+            returnCode = this.wrappedFilter.filterKeyValue(v);
+        }
+        this.counts[FilterProfileMetrics.KEY_VALUE_RETURN_CODES + returnCode.ordinal()]++;
+        return returnCode;
+    }
+
+    public KeyValue transform(KeyValue v) {
+        return this.wrappedFilter.transform(v);
+    }
+
+    public void filterRow(List<KeyValue> kvs) {
+        this.wrappedFilter.filterRow(kvs);
+    }
+
+    public boolean hasFilterRow() {
+        return this.wrappedFilter.hasFilterRow();
+    }
+
+    public boolean filterRow() {
+        boolean filtered;
+        if (sampleNext()) {
+            long start = System.nanoTime();
+            filtered = this.wrappedFilter.filterRow();
+            getProfile().sample(FilterProfileMetrics.FILTER_ROW, System.nanoTime() - start);
+        }
+        else {
+            filtered = this.wrappedFilter.filterRow();
+        }
+        this.counts[FilterProfileMetrics.ROW_CALLS]++;
+        if (filtered) {
+            this.counts[FilterProfileMetrics.ROWS_FILTERED]++;
+        }
+        return filtered;
+    }
+
+    public KeyValue getNextKeyHint(KeyValue currentKV) {
+        return this.wrappedFilter.getNextKeyHint(currentKV);
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(WIRE_VERSION);
+        Bytes.writeByteArray(out, Bytes.toBytes(this.profileName));
+        out.writeInt(this.sampleEvery);
+        Bytes.writeByteArray(out, Bytes.toBytes(this.wrappedFilter.getClass().getName()));
+        this.wrappedFilter.write(out);
+    }
+
+    public void readFields(DataInput in) throws IOException {
+        byte version = in.readByte();
+        if (version != WIRE_VERSION) {
+            throw new IOException("Unsupported ProfilingFilter version " + version);
+        }
+        this.profileName = Bytes.toString(Bytes.readByteArray(in));
+        this.sampleEvery = in.readInt();
+        this.callsUntilSample = this.sampleEvery;
+        this.profile = null;
+        String className = Bytes.toString(Bytes.readByteArray(in));
+        try {
+            this.wrappedFilter = FILTER_CONSTRUCTORS.newInstance(className, ProfilingFilter.class.getClassLoader(),
+                    Filter.class);
+        }
+        catch (Exception e) {
+            throw new IOException("Error instantiating class " + className, e);
+        }
+        this.wrappedFilter.readFields(in);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ProfilingFilter(%s, 1 in %d) {%s}", this.profileName, this.sampleEvery,
+                this.wrappedFilter);
+    }
+
+    /**
+     * Decide whether to time the next call, counting down to it without ever reading the clock
+     */
+    private boolean sampleNext() {
+        if (this.sampleEvery == 0 || --this.callsUntilSample > 0) {
+            return false;
+        }
+        this.callsUntilSample = this.sampleEvery;
+        return true;
+    }
+
+    /**
+     * Add the counts kept so far to the shared profile
+     */
+    private void flush() {
+        getProfile().flush(this.counts);
+    }
+
+    private FilterProfileMetrics.Profile getProfile() {
+        if (this.profile == null) {
+            this.profile = getMetrics().getProfile(this.profileName);
+        }
+        return this.profile;
+    }
+
+    private static String profileNameOf(Filter filter) {
+        if (filter instanceof DeployedFilter) {
+            return ((DeployedFilter)filter).getWrappedFilterClassName();
+        }
+        return filter.getClass().getName();
+    }
+}
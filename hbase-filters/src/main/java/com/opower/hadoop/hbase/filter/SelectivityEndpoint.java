@@ -0,0 +1,40 @@
+package com.opower.hadoop.hbase.filter;
+
+import org.apache.hadoop.hbase.coprocessor.BaseEndpointCoprocessor;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Serves the counts that {@link ProfilingFilter ProfilingFilters} keep on a region server to clients, so that they
+ * can tell how many of the rows and {@code KeyValue}s their filters see are actually returned.  The counts are kept
+ * per region server rather than per region, so every region of a server answers with the same counts, along with
+ * the name of the server, which a client uses to count each server only once.
+ * </p><p>
+ * The endpoint is opt-in, and is loaded into every region of the region servers by adding it to the
+ * configuration of the cluster:
+ * </p>
+ * <pre>
+        &lt;property&gt;
+            &lt;name&gt;hbase.coprocessor.region.classes&lt;/name&gt;
+            &lt;value&gt;com.opower.hadoop.hbase.filter.SelectivityEndpoint&lt;/value&gt;
+        &lt;/property&gt;
+ * </pre>
+ *
+ * @author jeff@opower.com
+ */
+public class SelectivityEndpoint extends BaseEndpointCoprocessor implements SelectivityProtocol {
+    /**
+     * The name of the process, which is unique to a region server
+     */
+    private static final String SERVER = ManagementFactory.getRuntimeMXBean().getName();
+
+    @Override
+    public FilterSelectivity getSelectivity(String profileName) throws IOException {
+        FilterProfileMetrics.Profile profile = ProfilingFilter.getMetrics().findProfile(profileName);
+        if (profile == null) {
+            return new FilterSelectivity(SERVER, 0L, 0L, 0L, 0L);
+        }
+        return new FilterSelectivity(SERVER, profile);
+    }
+}
@@ -0,0 +1,23 @@
+package com.opower.hadoop.hbase.filter;
+
+import org.apache.hadoop.hbase.ipc.CoprocessorProtocol;
+
+import java.io.IOException;
+
+/**
+ * Lets clients ask a region server how selective the filters they have run there were, by way of the
+ * {@link SelectivityEndpoint} coprocessor
+ *
+ * @author jeff@opower.com
+ */
+public interface SelectivityProtocol extends CoprocessorProtocol {
+    /**
+     * Get the counts of the rows and {@code KeyValue}s that the filters profiled under a name have seen on the
+     * region server, since it started
+     *
+     * @param profileName the name that the filters were profiled under by a {@link ProfilingFilter}
+     * @return the counts, which are all zero if no filter has been profiled under the name on the region server
+     * @throws IOException in case of RPC badness
+     */
+    FilterSelectivity getSelectivity(String profileName) throws IOException;
+}
@@ -3,17 +3,22 @@ package com.opower.hadoop.hbase.query;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.ServerName;
 import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.MetaScanner;
+import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.ResultScanner;
 import org.apache.hadoop.hbase.client.Scan;
-import org.apache.hadoop.hbase.filter.Filter;
-import org.apache.hadoop.hbase.filter.FilterList;
 import org.apache.hadoop.hbase.util.Bytes;
 
 import java.math.BigDecimal;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.NavigableMap;
+
+import com.opower.hadoop.hbase.filter.ProfilingFilter;
 
 /**
  * Default implementation of a {@link Query}, which collaborates with the {@link DefaultQueryPlanner}
@@ -25,14 +30,34 @@ public class DefaultQuery implements Query {
 
     private final DefaultQueryPlanner queryPlanner;
     private final QueryBuilder queryBuilder;
+    private final String template;
     private final Map<String, byte[]> parameters = new HashMap<String, byte[]>();
     private final Map<String, Long> timestamps = new HashMap<String, Long>();
+    private final Integer filterSampleEvery;
+    private final QueryMetrics.TemplateMetrics metrics;
+    private final SlowQueryLog slowQueryLog;
+    private final Long selectivityRefreshMs;
 
     private HTableInterface hTable;
 
-    DefaultQuery(DefaultQueryPlanner queryPlanner, QueryBuilder queryBuilder) {
+    /**
+     * @param template the normalized text of this query
+     * @param filterSampleEvery if not null, then the filters of the scan are profiled, timing one call in this many
+     * @param metrics the metrics of the template of this query
+     * @param slowQueryLog if not null, then the log to record runs of this query in when they are slow
+     * @param selectivityRefreshMs if not null, then the selectivity of the filters of the scan is learned and used
+     * to plan it, fetching it from the region servers at most once in this many milliseconds
+     */
+    DefaultQuery(DefaultQueryPlanner queryPlanner, QueryBuilder queryBuilder, String template,
+                 Integer filterSampleEvery, QueryMetrics.TemplateMetrics metrics, SlowQueryLog slowQueryLog,
+                 Long selectivityRefreshMs) {
         this.queryPlanner = queryPlanner;
         this.queryBuilder = queryBuilder;
+        this.template = template;
+        this.filterSampleEvery = filterSampleEvery;
+        this.metrics = metrics;
+        this.slowQueryLog = slowQueryLog;
+        this.selectivityRefreshMs = selectivityRefreshMs;
     }
 
     public void close() throws IOException {
@@ -43,25 +68,122 @@ public class DefaultQuery implements Query {
     }
 
     /**
-     * Plan and run the query, resulting in a scan operation on HBase
+     * Plan and run the query, resulting in a scan operation on HBase.  The scanner that is returned records the
+     * execution metrics of the query as it is read from, until it is exhausted or closed, when the query is also
+     * checked against the slow query log of the planner, if it has one.
      *
      * {@inheritDoc}
      */
     @Override
     public ResultScanner scan() throws IOException {
+        return openScanner();
+    }
+
+    /**
+     * Plan the query the same way that {@link #scan} does, profiled filters and all, and look up the regions of its
+     * table, which is a scan of the META table
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public QueryPlan explain() throws IOException {
+        return new QueryPlan(this.queryBuilder.getTableName(), planScan(), getRegionStartKeys());
+    }
+
+    /**
+     * Plan and run the query, the same way that {@link #scan} does, so that the run is recorded in the execution
+     * metrics of the query as well.  The regions of the table are looked up before the query is run, so that the
+     * lookup is not part of the timings.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public QueryAnalysis explainAnalyze() throws IOException {
+        QueryPlan plan = explain();
+        InstrumentedResultScanner scanner = openScanner();
+        try {
+            Result result = scanner.next();
+            while (result != null) {
+                result = scanner.next();
+            }
+        }
+        finally {
+            scanner.close();
+        }
+        return new QueryAnalysis(plan, scanner);
+    }
+
+    private InstrumentedResultScanner openScanner() throws IOException {
+        long startNanos = System.nanoTime();
+        Scan scan = planScan();
+        long planNanos = System.nanoTime() - startNanos;
+        this.metrics.planned(planNanos);
+        SlowQueryLog.Execution execution = null;
+        if (this.slowQueryLog != null) {
+            execution = this.slowQueryLog.newExecution(this.template, this.queryBuilder, this.parameters,
+                    this.timestamps);
+        }
+        ResultScanner scanner = getTable().getScanner(scan);
+        if (this.selectivityRefreshMs != null) {
+            this.queryPlanner.refreshSelectivity(this.queryBuilder.getTableName(), this.template, this.metrics,
+                    this.selectivityRefreshMs);
+        }
+        return new InstrumentedResultScanner(scanner, this.metrics, startNanos, planNanos,
+                System.nanoTime() - startNanos, execution);
+    }
+
+    /**
+     * Package-private so that planning can be measured on its own, without a table to run the scan against
+     */
+    Scan planScan() {
         if (LOG.isDebugEnabled()) {
             LOG.debug(String.format("Planning scan with parameters (%s) and timestamps (%s)",
                         this.parameters, this.timestamps));
         }
         Scan scan = this.queryBuilder.planScan(this.parameters, this.timestamps);
+        if (this.filterSampleEvery != null) {
+            scan.setFilter(ProfilingFilter.profileAll(scan.getFilter(), this.filterSampleEvery));
+        }
+        if (this.selectivityRefreshMs != null && scan.getFilter() != null) {
+            int caching = DefaultQueryPlanner.chooseCaching(this.metrics.getSelectivity(),
+                    this.metrics.getRowsPerScan().snapshot());
+            if (caching > 0) {
+                scan.setCaching(caching);
+            }
+            scan.setFilter(new ProfilingFilter(QueryMetrics.selectivityProfileName(this.template), scan.getFilter(), 0));
+        }
         if (LOG.isDebugEnabled()) {
-            LOG.debug(String.format("Scan: %s, filter: %s", scan, inspectFilter(scan.getFilter())));
+            LOG.debug(String.format("Scan: %s, filter: %s", scan, scan.getFilter() == null ? null
+                        : new QueryPlan.FilterNode(scan.getFilter())));
         }
-        if (LOG.isTraceEnabled()) {
-            LOG.trace(String.format("Getting table named '%s'", this.queryBuilder.getTableName()));
+        return scan;
+    }
+
+    /**
+     * The table is taken from the planner the first time it is needed, and is held until the query is closed
+     */
+    private HTableInterface getTable() {
+        if (this.hTable == null) {
+            if (LOG.isTraceEnabled()) {
+                LOG.trace(String.format("Getting table named '%s'", this.queryBuilder.getTableName()));
+            }
+            this.hTable = this.queryPlanner.getTable(this.queryBuilder.getTableName());
         }
-        this.hTable = this.queryPlanner.getTable(this.queryBuilder.getTableName());
-        return this.hTable.getScanner(scan);
+        return this.hTable;
+    }
+
+    /**
+     * @return the start keys of the regions of the table, in order, by way of the META table
+     */
+    private byte[][] getRegionStartKeys() throws IOException {
+        NavigableMap<HRegionInfo, ServerName> regions = MetaScanner.allTableRegions(
+                getTable().getConfiguration(), Bytes.toBytes(this.queryBuilder.getTableName()), false);
+        byte[][] startKeys = new byte[regions.size()][];
+        int i = 0;
+        for (HRegionInfo region : regions.keySet()) {
+            startKeys[i++] = region.getStartKey();
+        }
+        return startKeys;
     }
 
     public Query setTimestamp(String parameter, long timestamp) {
@@ -118,22 +240,4 @@ public class DefaultQuery implements Query {
         this.parameters.put(parameter, Bytes.toBytesBinary(value));
         return this;
     }
-
-    private static String inspectFilter(Filter filter) {
-        if (filter == null) {
-            return "null";
-        }
-        if (filter instanceof FilterList) {
-            return inspectFilter((FilterList)filter);
-        }
-        return filter.toString();
-    }
-
-    private static String inspectFilter(FilterList filterList) {
-        StringBuilder buf = new StringBuilder();
-        for (Filter filter : filterList.getFilters()) {
-            buf.append(inspectFilter(filter)).append(", ");
-        }
-        return "FilterList(" + filterList.getOperator() + ") {" + buf + "}";
-    }
 }
@@ -3,24 +3,67 @@ package com.opower.hadoop.hbase.query;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.ServerName;
 import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.HTablePool;
+import org.apache.hadoop.hbase.client.MetaScanner;
+import org.apache.hadoop.hbase.util.Bytes;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.opower.common.metrics.Histogram;
+import com.opower.hadoop.hbase.filter.FilterSelectivity;
+import com.opower.hadoop.hbase.filter.SelectivityProtocol;
 
 /**
  * A default implementation of the {@link QueryPlanner} that is the main entry-point for
  * running queries against HBase.
+ * </p><p>
+ * The queries are measured as they run, from parsing to closing their scanners, and the measurements are
+ * grouped by the normalized text of the query and exposed through JMX and the "extensions" metrics context,
+ * as described by {@link QueryMetricsMXBean}.
  *
  * @author jeff@opower.com
  */
 public class DefaultQueryPlanner implements QueryPlanner {
+    /**
+     * About how many rows a region server should scan for each batch of results it returns, once the selectivity
+     * of the filters of a query is known
+     */
+    static final long ROWS_SCANNED_PER_FETCH = 10000L;
+
+    /**
+     * The most rows to fetch from a region server at a time, no matter how selective the filters are
+     */
+    static final long MAX_CACHING = 1000L;
+
     private static final Log LOG = LogFactory.getLog(DefaultQueryPlanner.class);
+    private static final int SELECTIVITY_REFRESH_QUEUE_SIZE = 64;
 
     private final HTablePool hTablePool;
+    private final QueryMetrics queryMetrics;
+    private volatile Integer filterSampleEvery;
+    private volatile SlowQueryLog slowQueryLog;
+    private volatile Long selectivityRefreshMs;
+    private ExecutorService selectivityRefresher;
 
     public DefaultQueryPlanner(HTablePool hTablePool) {
+        this(hTablePool, QueryMetrics.getInstance());
+    }
+
+    DefaultQueryPlanner(HTablePool hTablePool, QueryMetrics queryMetrics) {
         this.hTablePool = hTablePool;
+        this.queryMetrics = queryMetrics;
     }
 
     /**
@@ -33,8 +76,167 @@ public class DefaultQueryPlanner implements QueryPlanner {
         if (LOG.isDebugEnabled()) {
             LOG.debug(String.format("Parsing '%s'", query));
         }
+        long startNanos = System.nanoTime();
         QueryBuilder builder = QueryBuilder.parse(query);
-        return new DefaultQuery(this, builder);
+        String template = QueryMetrics.normalize(query);
+        QueryMetrics.TemplateMetrics metrics = this.queryMetrics.getTemplate(template);
+        metrics.parsed(System.nanoTime() - startNanos);
+        return new DefaultQuery(this, builder, template, this.filterSampleEvery, metrics, this.slowQueryLog,
+                this.selectivityRefreshMs);
+    }
+
+    /**
+     * Profile the filters of the queries that this planner parses from now on, by wrapping each one in a
+     * {@link com.opower.hadoop.hbase.filter.ProfilingFilter}, so that what they cost on the region servers shows up
+     * in the metrics there.
+     *
+     * @param sampleEvery how many filter calls to make for every one that is timed, or 0 to only count them
+     */
+    public void enableFilterProfiling(int sampleEvery) {
+        if (sampleEvery < 0) {
+            throw new IllegalArgumentException("Sampling rate must not be negative: " + sampleEvery);
+        }
+        this.filterSampleEvery = sampleEvery;
+    }
+
+    /**
+     * Stop profiling the filters of the queries that this planner parses
+     */
+    public void disableFilterProfiling() {
+        this.filterSampleEvery = null;
+    }
+
+    /**
+     * Learn how selective the filters of the queries that this planner parses from now on are, and plan their scans
+     * accordingly.  The filters of each query are profiled on the region servers under a name derived from its
+     * template, and whenever a query is run, the counts of its template are fetched from each region server that
+     * hosts its table, in the background, unless they were fetched less than {@code refreshMs} ago.  This requires
+     * the {@link com.opower.hadoop.hbase.filter.SelectivityEndpoint} coprocessor to be loaded on the region servers.
+     * </p><p>
+     * Once the counts of a template are known, the caching of its scans is chosen so that a region server scans
+     * about {@link #ROWS_SCANNED_PER_FETCH} rows for each batch of results it returns, rather than returning a
+     * fixed number of rows per batch, which for a very selective filter could take longer than the scanner lease.
+     * The caching is also capped at the number of rows that queries of the template usually return.
+     *
+     * @param refreshMs how long to wait, in milliseconds, before fetching the counts of a template again
+     */
+    public void enableSelectivityStatistics(long refreshMs) {
+        if (refreshMs < 0L) {
+            throw new IllegalArgumentException("Refresh interval must not be negative: " + refreshMs);
+        }
+        this.selectivityRefreshMs = refreshMs;
+    }
+
+    /**
+     * Stop learning how selective the filters of the queries that this planner parses are
+     */
+    public void disableSelectivityStatistics() {
+        this.selectivityRefreshMs = null;
+    }
+
+    /**
+     * Choose how many rows the scanner of a query fetches from a region server at a time, by how selective the
+     * filters of its template have been
+     *
+     * @param selectivity the counts of the filters of the template, or null if they are unknown
+     * @param rowsPerScan the rows that scans of the template have returned
+     * @return the caching to use for the scan, or 0 to leave it as configured
+     */
+    static int chooseCaching(FilterSelectivity selectivity, Histogram.Snapshot rowsPerScan) {
+        if (selectivity == null || selectivity.getRowsScanned() == 0L) {
+            return 0;
+        }
+        double returnedRatio = (double)(selectivity.getRowsScanned() - selectivity.getRowsFiltered())
+            / selectivity.getRowsScanned();
+        long caching = (long)(ROWS_SCANNED_PER_FETCH * returnedRatio);
+        if (rowsPerScan.getCount() > 0L) {
+            // One more than usual, so that the scanner finds out that it is done without another round trip
+            caching = Math.min(caching, rowsPerScan.getPercentile(99.0) + 1L);
+        }
+        return (int)Math.max(1L, Math.min(caching, MAX_CACHING));
+    }
+
+    /**
+     * Fetch the counts of the filters of a template from the region servers in the background, unless they were
+     * fetched recently enough.  This method is meant to be called by a {@link Query} when it is run.
+     *
+     * @param tableName the name of the table that the query runs against
+     * @param template the normalized text of the query
+     * @param metrics the metrics of the template, to store the counts in
+     * @param refreshMs how long to wait, in milliseconds, before fetching the counts of a template again
+     */
+    void refreshSelectivity(final String tableName, String template, final QueryMetrics.TemplateMetrics metrics,
+                            long refreshMs) {
+        if (!metrics.claimSelectivityRefresh(System.currentTimeMillis(), refreshMs)) {
+            return;
+        }
+        final String profileName = QueryMetrics.selectivityProfileName(template);
+        getSelectivityRefresher().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    metrics.updateSelectivity(fetchSelectivity(tableName, profileName));
+                }
+                catch (IOException ioe) {
+                    LOG.warn(String.format("Unable to fetch the selectivity of %s from the servers of %s",
+                                profileName, tableName), ioe);
+                }
+            }
+        });
+    }
+
+    /**
+     * Ask each region server that hosts a region of the table for its counts, by way of one of those regions
+     */
+    private List<FilterSelectivity> fetchSelectivity(String tableName, String profileName) throws IOException {
+        HTableInterface table = getTable(tableName);
+        try {
+            Map<ServerName, byte[]> rowsByServer = new HashMap<ServerName, byte[]>();
+            for (Map.Entry<HRegionInfo, ServerName> region : MetaScanner.allTableRegions(
+                        table.getConfiguration(), Bytes.toBytes(tableName), false).entrySet()) {
+                if (region.getValue() != null && !rowsByServer.containsKey(region.getValue())) {
+                    rowsByServer.put(region.getValue(), region.getKey().getStartKey());
+                }
+            }
+            List<FilterSelectivity> selectivities = new ArrayList<FilterSelectivity>(rowsByServer.size());
+            for (byte[] row : rowsByServer.values()) {
+                selectivities.add(table.coprocessorProxy(SelectivityProtocol.class, row).getSelectivity(profileName));
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(String.format("Fetched the selectivity of %s from %d servers", profileName,
+                            selectivities.size()));
+            }
+            return selectivities;
+        }
+        finally {
+            putTable(table);
+        }
+    }
+
+    private synchronized ExecutorService getSelectivityRefresher() {
+        if (this.selectivityRefresher == null) {
+            // One refresh at a time, and any that do not fit in the queue are dropped, to be claimed again later
+            this.selectivityRefresher = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(SELECTIVITY_REFRESH_QUEUE_SIZE), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "query-selectivity-refresher");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    }, new ThreadPoolExecutor.DiscardPolicy());
+        }
+        return this.selectivityRefresher;
+    }
+
+    /**
+     * Record the queries that this planner parses from now on in the given log when they run slow.  The log is not
+     * closed along with the planner, so that it may be shared by several planners.
+     *
+     * @param slowQueryLog the log to record slow queries in, or null to stop recording them
+     */
+    public void setSlowQueryLog(SlowQueryLog slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
     }
 
     /**
@@ -42,6 +244,11 @@ public class DefaultQueryPlanner implements QueryPlanner {
      */
     @Override
     public void close() throws IOException {
+        synchronized (this) {
+            if (this.selectivityRefresher != null) {
+                this.selectivityRefresher.shutdownNow();
+            }
+        }
         if (LOG.isTraceEnabled()) {
             LOG.trace("Closing HTablePool");
         }
@@ -0,0 +1,56 @@
+package com.opower.hadoop.hbase.query;
+
+import com.opower.common.metrics.Histogram;
+
+/**
+ * A summary of the values recorded into a {@link Histogram}, as exposed through JMX.  The percentiles are upper
+ * bounds that are at most twice the actual values.
+ *
+ * @author jeff@opower.com
+ */
+public final class DistributionStatistics {
+    private final long count;
+    private final long median;
+    private final long percentile99;
+    private final long max;
+
+    DistributionStatistics(Histogram.Snapshot snapshot) {
+        this.count = snapshot.getCount();
+        this.median = snapshot.getPercentile(50.0);
+        this.percentile99 = snapshot.getPercentile(99.0);
+        this.max = snapshot.getMax();
+    }
+
+    /**
+     * @return the number of values recorded
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+    /**
+     * @return the median value
+     */
+    public long getMedian() {
+        return this.median;
+    }
+
+    /**
+     * @return the value at the 99th percentile
+     */
+    public long getPercentile99() {
+        return this.percentile99;
+    }
+
+    /**
+     * @return the largest value
+     */
+    public long getMax() {
+        return this.max;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d, median=%d, p99=%d, max=%d", this.count, this.median, this.percentile99, this.max);
+    }
+}
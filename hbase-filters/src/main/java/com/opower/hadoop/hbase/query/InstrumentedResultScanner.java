@@ -0,0 +1,181 @@
+package com.opower.hadoop.hbase.query;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Wraps the {@link ResultScanner} of a query to record its execution metrics: how long it took to get the first
+ * {@link Result}, how long the whole scan took, and how many rows, {@link KeyValue KeyValues} and bytes it returned.
+ * The counts are kept in the scanner itself, which only one thread reads from, and are recorded once, when the
+ * scanner is exhausted or closed, whichever comes first, which is also when the query is checked against the
+ * {@link SlowQueryLog}, if there is one.
+ *
+ * @author jeff@opower.com
+ */
+class InstrumentedResultScanner implements ResultScanner {
+    private final ResultScanner scanner;
+    private final QueryMetrics.TemplateMetrics metrics;
+    private final long startNanos;
+    private final long planNanos;
+    private final long openScannerNanos;
+    private final SlowQueryLog.Execution execution;
+
+    private long firstResultNanos = -1L;
+    private long scanNanos = -1L;
+    private long rows;
+    private long keyValues;
+    private long bytes;
+
+    /**
+     * @param scanner the scanner to instrument
+     * @param metrics the metrics of the template of the query being scanned
+     * @param startNanos when the query started to be run, by {@link System#nanoTime}
+     * @param planNanos how long it took to plan the scan
+     * @param openScannerNanos how long it took until the scanner was opened, since the query started
+     * @param execution the execution to check against the slow query log once the scan is finished, or null
+     */
+    InstrumentedResultScanner(ResultScanner scanner, QueryMetrics.TemplateMetrics metrics, long startNanos,
+                              long planNanos, long openScannerNanos, SlowQueryLog.Execution execution) {
+        this.scanner = scanner;
+        this.metrics = metrics;
+        this.startNanos = startNanos;
+        this.planNanos = planNanos;
+        this.openScannerNanos = openScannerNanos;
+        this.execution = execution;
+        metrics.scannerOpened();
+    }
+
+    @Override
+    public Result next() throws IOException {
+        Result result = this.scanner.next();
+        if (result == null) {
+            finish();
+        }
+        else {
+            count(result);
+        }
+        return result;
+    }
+
+    @Override
+    public Result[] next(int nbRows) throws IOException {
+        Result[] results = this.scanner.next(nbRows);
+        if (results == null || results.length == 0) {
+            finish();
+        }
+        else {
+            for (Result result : results) {
+                count(result);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public void close() {
+        finish();
+        this.scanner.close();
+    }
+
+    /**
+     * Iterate through the results by way of {@link #next()}, so that they are counted
+     */
+    @Override
+    public Iterator<Result> iterator() {
+        return new Iterator<Result>() {
+            private Result next;
+
+            @Override
+            public boolean hasNext() {
+                if (this.next == null) {
+                    try {
+                        this.next = InstrumentedResultScanner.this.next();
+                    }
+                    catch (IOException ioe) {
+                        throw new RuntimeException(ioe);
+                    }
+                }
+                return this.next != null;
+            }
+
+            @Override
+            public Result next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Result result = this.next;
+                this.next = null;
+                return result;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private void count(Result result) {
+        if (this.firstResultNanos < 0L) {
+            this.firstResultNanos = System.nanoTime() - this.startNanos;
+            this.metrics.firstResult(this.firstResultNanos);
+        }
+        this.rows++;
+        KeyValue[] raw = result.raw();
+        if (raw != null) {
+            this.keyValues += raw.length;
+            for (KeyValue keyValue : raw) {
+                this.bytes += keyValue.getLength();
+            }
+        }
+    }
+
+    private void finish() {
+        if (this.scanNanos < 0L) {
+            this.scanNanos = System.nanoTime() - this.startNanos;
+            this.metrics.scanned(this.scanNanos, this.rows, this.keyValues, this.bytes);
+            if (this.execution != null) {
+                this.execution.finished(this);
+            }
+        }
+    }
+
+    long getPlanNanos() {
+        return this.planNanos;
+    }
+
+    long getOpenScannerNanos() {
+        return this.openScannerNanos;
+    }
+
+    /**
+     * @return how long it took to get the first result since the query started, or -1 if there has not been one
+     */
+    long getFirstResultNanos() {
+        return this.firstResultNanos;
+    }
+
+    /**
+     * @return how long the scan took since the query started, or -1 if it has not been exhausted or closed yet
+     */
+    long getScanNanos() {
+        return this.scanNanos;
+    }
+
+    long getRows() {
+        return this.rows;
+    }
+
+    long getKeyValues() {
+        return this.keyValues;
+    }
+
+    long getBytes() {
+        return this.bytes;
+    }
+}
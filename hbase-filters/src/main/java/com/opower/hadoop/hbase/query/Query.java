@@ -21,6 +21,22 @@ public interface Query extends Closeable {
      */
     ResultScanner scan() throws IOException;
 
+    /**
+     * Plan the query without running it, to see what it would do
+     *
+     * @return the plan of the scan that the query would run, with the parameters that have been set so far
+     * @throws IOException in case of RPC badness while looking up the regions of the table
+     */
+    QueryPlan explain() throws IOException;
+
+    /**
+     * Plan the query and run it, reading through all of its results, to see what it does and what it costs
+     *
+     * @return the plan of the scan that the query ran, along with how long each stage took and how much came back
+     * @throws IOException in case of RPC badness
+     */
+    QueryAnalysis explainAnalyze() throws IOException;
+
     /**
      * Set a timestamp parameter that corresponds to a named parameter
      * in the raw query
@@ -0,0 +1,114 @@
+package com.opower.hadoop.hbase.query;
+
+/**
+ * The result of running a {@link Query} by way of {@link Query#explainAnalyze}, which is the {@link QueryPlan} of the
+ * query along with what actually happened when it was run: how long each stage took and how much came back.  The
+ * durations are in nanoseconds, and all but the planning are measured from when the query started to be planned,
+ * so that each one includes the stages before it.
+ * </p><p>
+ * The results themselves are read and thrown away, so the durations include reading all of them from the region
+ * servers, but not whatever a caller would have done with them.  What the filters cost on the region servers is not
+ * known to the client, and shows up in the metrics there when the planner profiles them.
+ *
+ * @author jeff@opower.com
+ */
+public final class QueryAnalysis {
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private final QueryPlan plan;
+    private final long planNanos;
+    private final long openScannerNanos;
+    private final long firstResultNanos;
+    private final long scanNanos;
+    private final long rows;
+    private final long keyValues;
+    private final long bytes;
+
+    QueryAnalysis(QueryPlan plan, InstrumentedResultScanner scanner) {
+        this.plan = plan;
+        this.planNanos = scanner.getPlanNanos();
+        this.openScannerNanos = scanner.getOpenScannerNanos();
+        this.firstResultNanos = scanner.getFirstResultNanos();
+        this.scanNanos = scanner.getScanNanos();
+        this.rows = scanner.getRows();
+        this.keyValues = scanner.getKeyValues();
+        this.bytes = scanner.getBytes();
+    }
+
+    /**
+     * @return the plan of the query that was run
+     */
+    public QueryPlan getPlan() {
+        return this.plan;
+    }
+
+    /**
+     * @return how long it took to plan the scan
+     */
+    public long getPlanNanos() {
+        return this.planNanos;
+    }
+
+    /**
+     * @return how long it took until the scanner was opened on the first region
+     */
+    public long getOpenScannerNanos() {
+        return this.openScannerNanos;
+    }
+
+    /**
+     * @return how long it took until the first row came back, or -1 if no rows did
+     */
+    public long getFirstResultNanos() {
+        return this.firstResultNanos;
+    }
+
+    /**
+     * @return how long it took until every row came back
+     */
+    public long getScanNanos() {
+        return this.scanNanos;
+    }
+
+    /**
+     * @return the number of rows that came back
+     */
+    public long getRows() {
+        return this.rows;
+    }
+
+    /**
+     * @return the number of {@code KeyValue}s that came back
+     */
+    public long getKeyValues() {
+        return this.keyValues;
+    }
+
+    /**
+     * @return the number of bytes of {@code KeyValue}s that came back
+     */
+    public long getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * @return the plan followed by the actual stages, as indented text meant to be read by a person
+     */
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        this.plan.appendTo(buf);
+        buf.append("Actual\n");
+        buf.append(String.format("  plan: %.3f ms\n", this.planNanos / NANOS_PER_MILLI));
+        buf.append(String.format("  open scanner: %.3f ms\n", this.openScannerNanos / NANOS_PER_MILLI));
+        if (this.firstResultNanos < 0L) {
+            buf.append("  first result: none\n");
+        }
+        else {
+            buf.append(String.format("  first result: %.3f ms\n", this.firstResultNanos / NANOS_PER_MILLI));
+        }
+        buf.append(String.format("  scan: %.3f ms, %d rows, %d key values, %d bytes\n",
+                    this.scanNanos / NANOS_PER_MILLI, this.rows, this.keyValues, this.bytes));
+        return buf.toString();
+    }
+}
@@ -0,0 +1,308 @@
+package com.opower.hadoop.hbase.query;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.apache.hadoop.metrics.MetricsContext;
+import org.apache.hadoop.metrics.MetricsRecord;
+import org.apache.hadoop.metrics.MetricsUtil;
+import org.apache.hadoop.metrics.Updater;
+import org.apache.hadoop.metrics.util.MBeanUtil;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import com.opower.common.metrics.Histogram;
+import com.opower.common.metrics.StripedCounter;
+import com.opower.hadoop.hbase.filter.FilterSelectivity;
+
+/**
+ * Collects the execution metrics of the queries run through {@link DefaultQueryPlanner DefaultQueryPlanners} in
+ * this process, grouped by query template, which is the text of the query with its whitespace normalized.  The
+ * metrics are exposed through JMX as a {@link QueryMetricsMXBean}, and are added to the "extensions" metrics context
+ * under the record named "query", with one row per template, tagged with the template.
+ * </p><p>
+ * Durations and sizes are recorded into {@link Histogram Histograms}, which cost a single atomic increment, so the
+ * metrics are always on.  JMX shows everything since the process started, while the metrics context only gets the
+ * distributions of what was recorded since its previous update.  To keep a process that builds its queries from
+ * user input from growing without bound, only the first {@link #MAX_TEMPLATES} templates are tracked on their own,
+ * and any others are lumped together under {@link #OTHER_TEMPLATES}.
+ *
+ * @author jeff@opower.com
+ */
+final class QueryMetrics implements QueryMetricsMXBean, Updater {
+    /**
+     * The most templates to track on their own
+     */
+    static final int MAX_TEMPLATES = 256;
+
+    /**
+     * The template that any templates beyond the first {@link #MAX_TEMPLATES} are tracked under
+     */
+    static final String OTHER_TEMPLATES = "(other)";
+
+    private static final Log LOG = LogFactory.getLog(QueryMetrics.class);
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static QueryMetrics instance;
+
+    private final ConcurrentMap<String, TemplateMetrics> templates = new ConcurrentHashMap<String, TemplateMetrics>();
+    private MetricsRecord metricsRecord;
+
+    /**
+     * The metrics are shared by every planner in the process, and are only registered once
+     */
+    static synchronized QueryMetrics getInstance() {
+        if (instance == null) {
+            instance = new QueryMetrics();
+            instance.register();
+        }
+        return instance;
+    }
+
+    /**
+     * Create metrics that are not registered anywhere, which is meant for tests
+     */
+    QueryMetrics() {}
+
+    private void register() {
+        MetricsContext context = MetricsUtil.getContext("extensions");
+        this.metricsRecord = MetricsUtil.createRecord(context, "query");
+        context.registerUpdater(this);
+        try {
+            MBeanUtil.registerMBean("HBaseQuery", "QueryMetrics", this);
+        }
+        catch (RuntimeException re) {
+            LOG.warn("Unable to register the query metrics with JMX", re);
+        }
+    }
+
+    /**
+     * @param query the text of a query
+     * @return the text with leading and trailing whitespace removed, and all other whitespace collapsed into a space
+     */
+    static String normalize(String query) {
+        return WHITESPACE.matcher(query.trim()).replaceAll(" ");
+    }
+
+    /**
+     * @param template the normalized text of a query
+     * @return the name to profile the filters of queries of the template under, to learn how selective they are
+     */
+    static String selectivityProfileName(String template) {
+        return "query-" + Integer.toHexString(template.hashCode());
+    }
+
+    /**
+     * @param template the normalized text of a query
+     * @return the metrics of the template, or of {@link #OTHER_TEMPLATES} if there are too many templates already
+     */
+    TemplateMetrics getTemplate(String template) {
+        TemplateMetrics metrics = this.templates.get(template);
+        if (metrics == null) {
+            if (this.templates.size() >= MAX_TEMPLATES) {
+                template = OTHER_TEMPLATES;
+            }
+            metrics = new TemplateMetrics();
+            TemplateMetrics existing = this.templates.putIfAbsent(template, metrics);
+            if (existing != null) {
+                metrics = existing;
+            }
+        }
+        return metrics;
+    }
+
+    @Override
+    public List<QueryTemplateStatistics> getQueryTemplates() {
+        List<QueryTemplateStatistics> statistics = new ArrayList<QueryTemplateStatistics>(this.templates.size());
+        for (Map.Entry<String, TemplateMetrics> entry : this.templates.entrySet()) {
+            statistics.add(new QueryTemplateStatistics(entry.getKey(), entry.getValue()));
+        }
+        return statistics;
+    }
+
+    @Override
+    public int getQueryTemplateCount() {
+        return this.templates.size();
+    }
+
+    public synchronized void doUpdates(MetricsContext caller) {
+        for (Map.Entry<String, TemplateMetrics> entry : this.templates.entrySet()) {
+            TemplateMetrics metrics = entry.getValue();
+            this.metricsRecord.setTag("template", entry.getKey());
+            this.metricsRecord.setMetric("scannersOpened", metrics.getScannersOpened());
+            this.metricsRecord.setMetric("rows", metrics.getRows());
+            this.metricsRecord.setMetric("keyValues", metrics.getKeyValues());
+            this.metricsRecord.setMetric("bytes", metrics.getBytes());
+            for (int i = 0; i < TemplateMetrics.HISTOGRAM_NAMES.length; i++) {
+                Histogram.Snapshot snapshot = metrics.histograms[i].snapshot();
+                Histogram.Snapshot interval = snapshot.minus(metrics.previousSnapshots[i]);
+                metrics.previousSnapshots[i] = snapshot;
+                String prefix = TemplateMetrics.HISTOGRAM_NAMES[i] + ".";
+                this.metricsRecord.setMetric(prefix + "count", interval.getCount());
+                this.metricsRecord.setMetric(prefix + "median", interval.getPercentile(50.0));
+                this.metricsRecord.setMetric(prefix + "p99", interval.getPercentile(99.0));
+                this.metricsRecord.setMetric(prefix + "max", interval.getMax());
+            }
+            this.metricsRecord.update();
+        }
+    }
+
+    /**
+     * The metrics of one query template
+     */
+    static final class TemplateMetrics {
+        private static final int PARSE_NANOS = 0;
+        private static final int PLAN_NANOS = 1;
+        private static final int FIRST_RESULT_NANOS = 2;
+        private static final int SCAN_NANOS = 3;
+        private static final int ROWS_PER_SCAN = 4;
+        private static final int KEY_VALUES_PER_SCAN = 5;
+        private static final int BYTES_PER_SCAN = 6;
+        private static final String ALL_SERVERS = "*";
+        private static final String[] HISTOGRAM_NAMES = {
+            "parseNanos", "planNanos", "firstResultNanos", "scanNanos", "rowsPerScan", "keyValuesPerScan",
+            "bytesPerScan",
+        };
+
+        private final StripedCounter scannersOpened = new StripedCounter();
+        private final StripedCounter rows = new StripedCounter();
+        private final StripedCounter keyValues = new StripedCounter();
+        private final StripedCounter bytes = new StripedCounter();
+        private final Histogram[] histograms = new Histogram[HISTOGRAM_NAMES.length];
+        private final ConcurrentMap<String, FilterSelectivity> selectivityByServer =
+            new ConcurrentHashMap<String, FilterSelectivity>();
+        private final AtomicLong selectivityRefreshMillis = new AtomicLong();
+        // Only touched by doUpdates
+        private final Histogram.Snapshot[] previousSnapshots = new Histogram.Snapshot[HISTOGRAM_NAMES.length];
+
+        private TemplateMetrics() {
+            for (int i = 0; i < HISTOGRAM_NAMES.length; i++) {
+                this.histograms[i] = new Histogram();
+                this.previousSnapshots[i] = this.histograms[i].snapshot();
+            }
+        }
+
+        void parsed(long nanos) {
+            this.histograms[PARSE_NANOS].record(nanos);
+        }
+
+        void planned(long nanos) {
+            this.histograms[PLAN_NANOS].record(nanos);
+        }
+
+        void scannerOpened() {
+            this.scannersOpened.increment();
+        }
+
+        void firstResult(long nanos) {
+            this.histograms[FIRST_RESULT_NANOS].record(nanos);
+        }
+
+        /**
+         * Record a scan that has been closed or exhausted
+         */
+        void scanned(long nanos, long scannedRows, long scannedKeyValues, long scannedBytes) {
+            this.histograms[SCAN_NANOS].record(nanos);
+            this.histograms[ROWS_PER_SCAN].record(scannedRows);
+            this.histograms[KEY_VALUES_PER_SCAN].record(scannedKeyValues);
+            this.histograms[BYTES_PER_SCAN].record(scannedBytes);
+            this.rows.add(scannedRows);
+            this.keyValues.add(scannedKeyValues);
+            this.bytes.add(scannedBytes);
+        }
+
+        /**
+         * Claim the next refresh of the selectivity of the filters, so that only one is in flight at a time
+         *
+         * @param nowMillis the current time
+         * @param refreshMs how long to wait in between refreshes
+         * @return true if the caller should refresh the selectivity, or false if it was refreshed recently enough
+         */
+        boolean claimSelectivityRefresh(long nowMillis, long refreshMs) {
+            long refreshedMillis = this.selectivityRefreshMillis.get();
+            return nowMillis - refreshedMillis >= refreshMs
+                && this.selectivityRefreshMillis.compareAndSet(refreshedMillis, nowMillis);
+        }
+
+        /**
+         * Replace the selectivity of the filters with the latest counts from the region servers
+         *
+         * @param selectivities the counts, where the last ones from each server win
+         */
+        void updateSelectivity(Collection<FilterSelectivity> selectivities) {
+            for (FilterSelectivity selectivity : selectivities) {
+                this.selectivityByServer.put(selectivity.getServer(), selectivity);
+            }
+        }
+
+        /**
+         * @return the counts of the filters summed over the region servers, or null if there are no counts yet
+         */
+        FilterSelectivity getSelectivity() {
+            if (this.selectivityByServer.isEmpty()) {
+                return null;
+            }
+            long rowsScanned = 0L;
+            long rowsFiltered = 0L;
+            long keyValuesScanned = 0L;
+            long keyValuesIncluded = 0L;
+            for (FilterSelectivity selectivity : this.selectivityByServer.values()) {
+                rowsScanned += selectivity.getRowsScanned();
+                rowsFiltered += selectivity.getRowsFiltered();
+                keyValuesScanned += selectivity.getKeyValuesScanned();
+                keyValuesIncluded += selectivity.getKeyValuesIncluded();
+            }
+            return new FilterSelectivity(ALL_SERVERS, rowsScanned, rowsFiltered, keyValuesScanned, keyValuesIncluded);
+        }
+
+        long getScannersOpened() {
+            return this.scannersOpened.sum();
+        }
+
+        long getRows() {
+            return this.rows.sum();
+        }
+
+        long getKeyValues() {
+            return this.keyValues.sum();
+        }
+
+        long getBytes() {
+            return this.bytes.sum();
+        }
+
+        Histogram getParseNanos() {
+            return this.histograms[PARSE_NANOS];
+        }
+
+        Histogram getPlanNanos() {
+            return this.histograms[PLAN_NANOS];
+        }
+
+        Histogram getFirstResultNanos() {
+            return this.histograms[FIRST_RESULT_NANOS];
+        }
+
+        Histogram getScanNanos() {
+            return this.histograms[SCAN_NANOS];
+        }
+
+        Histogram getRowsPerScan() {
+            return this.histograms[ROWS_PER_SCAN];
+        }
+
+        Histogram getKeyValuesPerScan() {
+            return this.histograms[KEY_VALUES_PER_SCAN];
+        }
+
+        Histogram getBytesPerScan() {
+            return this.histograms[BYTES_PER_SCAN];
+        }
+    }
+}
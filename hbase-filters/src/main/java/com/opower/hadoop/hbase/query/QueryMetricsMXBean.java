@@ -0,0 +1,21 @@
+package com.opower.hadoop.hbase.query;
+
+import java.util.List;
+
+/**
+ * Exposes the execution metrics of the queries run through a {@link DefaultQueryPlanner} over JMX, grouped by the
+ * normalized text of the query, which is its template, since the values of a query are passed as parameters.
+ *
+ * @author jeff@opower.com
+ */
+public interface QueryMetricsMXBean {
+    /**
+     * @return the statistics of every query template that has been parsed so far
+     */
+    List<QueryTemplateStatistics> getQueryTemplates();
+
+    /**
+     * @return the number of query templates that have been parsed so far
+     */
+    int getQueryTemplateCount();
+}
@@ -0,0 +1,336 @@
+package com.opower.hadoop.hbase.query;
+
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.CompareFilter;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.InclusiveStopFilter;
+import org.apache.hadoop.hbase.io.TimeRange;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+
+/**
+ * The plan of a {@link Query}, as returned by {@link Query#explain}, which describes the scan that the query runs
+ * against HBase: the range of row keys it covers, the families and columns it asks for, its time range and maximum
+ * number of versions, the tree of filters it applies, and an estimate of how many regions of the table it touches.
+ * </p><p>
+ * The estimate only goes by the start and stop rows of the scan, so a query whose row constraint is enforced by a
+ * filter, such as {@code rowkey <= {id}}, is counted as touching every region from its start row on, even though
+ * the scan will stop as soon as the filter is done with it.  Row keys are shown the way that
+ * {@link Bytes#toStringBinary} shows them, which is also how they may be written into the text of a query.
+ *
+ * @author jeff@opower.com
+ */
+public final class QueryPlan {
+    /**
+     * The number of regions when they could not be looked up
+     */
+    public static final int UNKNOWN_REGIONS = -1;
+
+    private final String tableName;
+    private final byte[] startRow;
+    private final byte[] stopRow;
+    private final Map<String, List<String>> columns;
+    private final long minTimestamp;
+    private final long maxTimestamp;
+    private final int maxVersions;
+    private final FilterNode filter;
+    private final int regions;
+    private final int totalRegions;
+
+    /**
+     * @param tableName the name of the table that is scanned
+     * @param scan the scan that the query runs
+     * @param regionStartKeys the start keys of the regions of the table, in order, or null if they are unknown
+     */
+    QueryPlan(String tableName, Scan scan, byte[][] regionStartKeys) {
+        this.tableName = tableName;
+        this.startRow = scan.getStartRow();
+        this.stopRow = scan.getStopRow();
+        this.columns = describeColumns(scan);
+        TimeRange timeRange = scan.getTimeRange();
+        this.minTimestamp = timeRange.getMin();
+        this.maxTimestamp = timeRange.getMax();
+        this.maxVersions = scan.getMaxVersions();
+        this.filter = scan.getFilter() == null ? null : new FilterNode(scan.getFilter());
+        if (regionStartKeys == null) {
+            this.regions = UNKNOWN_REGIONS;
+            this.totalRegions = UNKNOWN_REGIONS;
+        }
+        else {
+            this.regions = countRegions(regionStartKeys, this.startRow, this.stopRow);
+            this.totalRegions = regionStartKeys.length;
+        }
+    }
+
+    /**
+     * Count the regions whose row keys overlap those from the start row, inclusive, to the stop row, exclusive, where
+     * an empty start or stop row is unbounded, as it is in a {@link Scan}
+     *
+     * @param regionStartKeys the start keys of the regions, in order, where the first one is empty
+     */
+    static int countRegions(byte[][] regionStartKeys, byte[] startRow, byte[] stopRow) {
+        int count = 0;
+        for (int i = 0; i < regionStartKeys.length; i++) {
+            boolean startsBeforeStop = stopRow.length == 0 || Bytes.compareTo(regionStartKeys[i], stopRow) < 0;
+            boolean endsAfterStart = i == regionStartKeys.length - 1
+                || Bytes.compareTo(regionStartKeys[i + 1], startRow) > 0;
+            if (startsBeforeStop && endsAfterStart) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static Map<String, List<String>> describeColumns(Scan scan) {
+        Map<String, List<String>> columns = new LinkedHashMap<String, List<String>>();
+        for (Map.Entry<byte[], NavigableSet<byte[]>> entry : scan.getFamilyMap().entrySet()) {
+            List<String> qualifiers = new ArrayList<String>();
+            if (entry.getValue() != null) {
+                for (byte[] qualifier : entry.getValue()) {
+                    qualifiers.add(Bytes.toStringBinary(qualifier));
+                }
+            }
+            columns.put(Bytes.toStringBinary(entry.getKey()), Collections.unmodifiableList(qualifiers));
+        }
+        return Collections.unmodifiableMap(columns);
+    }
+
+    /**
+     * @return the name of the table that is scanned
+     */
+    public String getTableName() {
+        return this.tableName;
+    }
+
+    /**
+     * @return the first row key that is scanned, or an empty array if the scan starts at the beginning of the table
+     */
+    public byte[] getStartRow() {
+        return this.startRow;
+    }
+
+    /**
+     * @return the row key that the scan stops before, or an empty array if the scan runs to the end of the table
+     */
+    public byte[] getStopRow() {
+        return this.stopRow;
+    }
+
+    /**
+     * The families that are scanned, mapped to the qualifiers that are asked for explicitly.  When no qualifiers are
+     * listed for a family, all of the columns of the family are read, and are narrowed down by the filters, if at
+     * all.  When no families are listed, all of the families of the table are read.
+     *
+     * @return the qualifiers, keyed by family
+     */
+    public Map<String, List<String>> getColumns() {
+        return this.columns;
+    }
+
+    /**
+     * @return the smallest timestamp of the cells that are scanned
+     */
+    public long getMinTimestamp() {
+        return this.minTimestamp;
+    }
+
+    /**
+     * @return the timestamp that the cells that are scanned are older than
+     */
+    public long getMaxTimestamp() {
+        return this.maxTimestamp;
+    }
+
+    /**
+     * @return the most versions of each column that are scanned
+     */
+    public int getMaxVersions() {
+        return this.maxVersions;
+    }
+
+    /**
+     * @return the root of the tree of filters of the scan, or null if there are no filters
+     */
+    public FilterNode getFilter() {
+        return this.filter;
+    }
+
+    /**
+     * @return the estimated number of regions that the scan touches, or {@link #UNKNOWN_REGIONS}
+     */
+    public int getRegions() {
+        return this.regions;
+    }
+
+    /**
+     * @return the number of regions in the table, or {@link #UNKNOWN_REGIONS}
+     */
+    public int getTotalRegions() {
+        return this.totalRegions;
+    }
+
+    /**
+     * @return the plan as indented text, meant to be read by a person
+     */
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        appendTo(buf);
+        return buf.toString();
+    }
+
+    void appendTo(StringBuilder buf) {
+        buf.append("Scan ").append(this.tableName).append('\n');
+        buf.append("  rows: [").append(describeRow(this.startRow)).append(", ")
+            .append(describeRow(this.stopRow)).append(")\n");
+        buf.append("  columns: ");
+        if (this.columns.isEmpty()) {
+            buf.append("*");
+        }
+        else {
+            String separator = "";
+            for (Map.Entry<String, List<String>> entry : this.columns.entrySet()) {
+                if (entry.getValue().isEmpty()) {
+                    buf.append(separator).append(entry.getKey()).append(":*");
+                    separator = ", ";
+                }
+                for (String qualifier : entry.getValue()) {
+                    buf.append(separator).append(entry.getKey()).append(':').append(qualifier);
+                    separator = ", ";
+                }
+            }
+        }
+        buf.append('\n');
+        buf.append("  time range: [").append(this.minTimestamp).append(", ").append(describeTimestamp(this.maxTimestamp))
+            .append(")\n");
+        buf.append("  max versions: ").append(this.maxVersions).append('\n');
+        buf.append("  regions: ");
+        if (this.regions == UNKNOWN_REGIONS) {
+            buf.append("unknown");
+        }
+        else {
+            buf.append(this.regions).append(" of ").append(this.totalRegions);
+        }
+        buf.append('\n');
+        buf.append("  filter:");
+        if (this.filter == null) {
+            buf.append(" none\n");
+        }
+        else {
+            buf.append('\n');
+            this.filter.appendTo(buf, "    ");
+        }
+    }
+
+    private static String describeRow(byte[] row) {
+        return row.length == 0 ? "*" : "'" + Bytes.toStringBinary(row) + "'";
+    }
+
+    private static String describeTimestamp(long timestamp) {
+        return timestamp == HConstants.LATEST_TIMESTAMP ? "*" : String.valueOf(timestamp);
+    }
+
+    /**
+     * A filter in the tree of filters of a scan, where only a {@link FilterList} has children
+     */
+    public static final class FilterNode {
+        private final String type;
+        private final String description;
+        private final FilterList.Operator operator;
+        private final List<FilterNode> children;
+
+        FilterNode(Filter filter) {
+            this.type = filter.getClass().getName();
+            if (filter instanceof FilterList) {
+                FilterList filterList = (FilterList)filter;
+                this.description = "FilterList(" + filterList.getOperator() + ")";
+                this.operator = filterList.getOperator();
+                List<FilterNode> nodes = new ArrayList<FilterNode>(filterList.getFilters().size());
+                for (Filter child : filterList.getFilters()) {
+                    nodes.add(new FilterNode(child));
+                }
+                this.children = Collections.unmodifiableList(nodes);
+            }
+            else {
+                this.description = describe(filter);
+                this.operator = null;
+                this.children = Collections.emptyList();
+            }
+        }
+
+        /**
+         * The filters that HBase ships with do not describe themselves, so the ones the planner uses are described
+         * here, and any others that do not override {@link Object#toString} are described by their class alone
+         */
+        private static String describe(Filter filter) {
+            String name = filter.getClass().getSimpleName();
+            if (filter instanceof CompareFilter) {
+                CompareFilter compareFilter = (CompareFilter)filter;
+                return name + "(" + compareFilter.getOperator() + ", '"
+                    + Bytes.toStringBinary(compareFilter.getComparator().getValue()) + "')";
+            }
+            if (filter instanceof InclusiveStopFilter) {
+                return name + "('" + Bytes.toStringBinary(((InclusiveStopFilter)filter).getStopRowKey()) + "')";
+            }
+            try {
+                if (filter.getClass().getMethod("toString").getDeclaringClass() == Object.class) {
+                    return name;
+                }
+            }
+            catch (NoSuchMethodException nsme) {
+                throw new IllegalStateException("Every class has a toString method", nsme);
+            }
+            return filter.toString();
+        }
+
+        /**
+         * @return the name of the class of the filter
+         */
+        public String getType() {
+            return this.type;
+        }
+
+        /**
+         * @return what the filter does, such as the column it selects or the row key it compares to
+         */
+        public String getDescription() {
+            return this.description;
+        }
+
+        /**
+         * @return how the children of a {@link FilterList} are combined, or null if this is not a list
+         */
+        public FilterList.Operator getOperator() {
+            return this.operator;
+        }
+
+        /**
+         * @return the filters in a {@link FilterList}, or an empty list if this is not a list
+         */
+        public List<FilterNode> getChildren() {
+            return this.children;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder buf = new StringBuilder();
+            appendTo(buf, "");
+            return buf.toString();
+        }
+
+        private void appendTo(StringBuilder buf, String indent) {
+            buf.append(indent).append(this.description).append('\n');
+            for (FilterNode child : this.children) {
+                child.appendTo(buf, indent + "  ");
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.opower.hadoop.hbase.query;
+
+import com.opower.hadoop.hbase.filter.FilterSelectivity;
+
+/**
+ * The execution metrics of all of the queries that share a template, as exposed through JMX.  The durations are
+ * in nanoseconds, and the distributions per scan only cover the scans that have been closed or exhausted.  The
+ * counts of what the filters saw on the region servers are only known while the planner collects them, as described
+ * by {@link DefaultQueryPlanner#enableSelectivityStatistics}.
+ *
+ * @author jeff@opower.com
+ */
+public final class QueryTemplateStatistics {
+    private final String template;
+    private final long scannersOpened;
+    private final long rows;
+    private final long keyValues;
+    private final long bytes;
+    private final DistributionStatistics parseNanos;
+    private final DistributionStatistics planNanos;
+    private final DistributionStatistics firstResultNanos;
+    private final DistributionStatistics scanNanos;
+    private final DistributionStatistics rowsPerScan;
+    private final DistributionStatistics keyValuesPerScan;
+    private final DistributionStatistics bytesPerScan;
+    private final long filterRowsScanned;
+    private final long filterRowsFiltered;
+    private final long filterKeyValuesScanned;
+    private final long filterKeyValuesIncluded;
+
+    QueryTemplateStatistics(String template, QueryMetrics.TemplateMetrics metrics) {
+        this.template = template;
+        this.scannersOpened = metrics.getScannersOpened();
+        this.rows = metrics.getRows();
+        this.keyValues = metrics.getKeyValues();
+        this.bytes = metrics.getBytes();
+        this.parseNanos = new DistributionStatistics(metrics.getParseNanos().snapshot());
+        this.planNanos = new DistributionStatistics(metrics.getPlanNanos().snapshot());
+        this.firstResultNanos = new DistributionStatistics(metrics.getFirstResultNanos().snapshot());
+        this.scanNanos = new DistributionStatistics(metrics.getScanNanos().snapshot());
+        this.rowsPerScan = new DistributionStatistics(metrics.getRowsPerScan().snapshot());
+        this.keyValuesPerScan = new DistributionStatistics(metrics.getKeyValuesPerScan().snapshot());
+        this.bytesPerScan = new DistributionStatistics(metrics.getBytesPerScan().snapshot());
+        FilterSelectivity selectivity = metrics.getSelectivity();
+        if (selectivity == null) {
+            this.filterRowsScanned = -1L;
+            this.filterRowsFiltered = -1L;
+            this.filterKeyValuesScanned = -1L;
+            this.filterKeyValuesIncluded = -1L;
+        }
+        else {
+            this.filterRowsScanned = selectivity.getRowsScanned();
+            this.filterRowsFiltered = selectivity.getRowsFiltered();
+            this.filterKeyValuesScanned = selectivity.getKeyValuesScanned();
+            this.filterKeyValuesIncluded = selectivity.getKeyValuesIncluded();
+        }
+    }
+
+    /**
+     * @return the normalized text of the query
+     */
+    public String getTemplate() {
+        return this.template;
+    }
+
+    /**
+     * @return the number of scanners that were opened for queries of this template
+     */
+    public long getScannersOpened() {
+        return this.scannersOpened;
+    }
+
+    /**
+     * @return the number of rows returned
+     */
+    public long getRows() {
+        return this.rows;
+    }
+
+    /**
+     * @return the number of {@code KeyValue}s returned
+     */
+    public long getKeyValues() {
+        return this.keyValues;
+    }
+
+    /**
+     * @return the number of bytes of {@code KeyValue}s returned
+     */
+    public long getBytes() {
+        return this.bytes;
+    }
+
+    public DistributionStatistics getParseNanos() {
+        return this.parseNanos;
+    }
+
+    public DistributionStatistics getPlanNanos() {
+        return this.planNanos;
+    }
+
+    public DistributionStatistics getFirstResultNanos() {
+        return this.firstResultNanos;
+    }
+
+    public DistributionStatistics getScanNanos() {
+        return this.scanNanos;
+    }
+
+    public DistributionStatistics getRowsPerScan() {
+        return this.rowsPerScan;
+    }
+
+    public DistributionStatistics getKeyValuesPerScan() {
+        return this.keyValuesPerScan;
+    }
+
+    public DistributionStatistics getBytesPerScan() {
+        return this.bytesPerScan;
+    }
+
+    /**
+     * @return the number of rows that the filters of the queries saw on the region servers, or -1 if unknown
+     */
+    public long getFilterRowsScanned() {
+        return this.filterRowsScanned;
+    }
+
+    /**
+     * @return the number of rows that the filters of the queries filtered out on the region servers, or -1 if unknown
+     */
+    public long getFilterRowsFiltered() {
+        return this.filterRowsFiltered;
+    }
+
+    /**
+     * @return the number of {@code KeyValue}s that the filters of the queries saw on the region servers, or -1 if
+     * unknown
+     */
+    public long getFilterKeyValuesScanned() {
+        return this.filterKeyValuesScanned;
+    }
+
+    /**
+     * @return the number of {@code KeyValue}s that the filters of the queries included on the region servers, or -1
+     * if unknown
+     */
+    public long getFilterKeyValuesIncluded() {
+        return this.filterKeyValuesIncluded;
+    }
+}
@@ -0,0 +1,517 @@
+package com.opower.hadoop.hbase.query;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.apache.hadoop.conf.Configuration;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes a record of every query that runs slower than a threshold to a local file, so that it can be reproduced
+ * later.  A query is slow when it takes too long to get its first row, takes too long to read all of its rows, or
+ * returns too many rows, where each threshold is set in the {@link Configuration} and any one of them may be turned
+ * off by setting it to a negative number.  The log is given to a {@link DefaultQueryPlanner} by way of
+ * {@link DefaultQueryPlanner#setSlowQueryLog}, and the queries it parses from then on are checked once their
+ * scanners are exhausted or closed.
+ * </p><p>
+ * Each record is a line of JSON with the normalized text of the query, the parameters that were bound to it, the
+ * plan of its scan, how long each stage took, in nanoseconds, and how much came back.  The values of parameters
+ * and timestamps may hold personal information, so the ones named in {@link #SLOW_QUERY_LOG_REDACT} are written as
+ * {@code <redacted>}, and the plan, which holds them as well, is left out when any of them are.  The log rolls over
+ * to a new file once it grows past {@link #SLOW_QUERY_LOG_MAX_BYTES}, keeping as many old files as
+ * {@link #SLOW_QUERY_LOG_MAX_FILES}, named after the log with a {@code .1}, {@code .2}, and so on appended, from the
+ * newest to the oldest.
+ * </p><p>
+ * Nothing is written on the thread that runs the query.  A slow query is handed off to a bounded queue, which a
+ * daemon thread takes from to plan the query again and write the record, and if the queue is full, the record is
+ * dropped and counted instead of making the query wait.
+ *
+ * @author jeff@opower.com
+ */
+public final class SlowQueryLog implements Closeable {
+    /**
+     * A configuration option to specify the path of the local file to write the log to, which is required.
+     */
+    public static final String SLOW_QUERY_LOG_PATH = "slow.query.log.path";
+
+    /**
+     * A configuration option to specify how long, in milliseconds, a query may take to get its first row before it
+     * is logged, or a negative number to not log queries by the time to their first row.
+     */
+    public static final String SLOW_QUERY_FIRST_RESULT_MS = "slow.query.first.result.ms";
+
+    /**
+     * The default time a query may take to get its first row.
+     */
+    public static final long DEFAULT_SLOW_QUERY_FIRST_RESULT_MS = 1000L;
+
+    /**
+     * A configuration option to specify how long, in milliseconds, a query may take to read all of its rows before it
+     * is logged, or a negative number to not log queries by their total time.
+     */
+    public static final String SLOW_QUERY_TOTAL_MS = "slow.query.total.ms";
+
+    /**
+     * The default time a query may take to read all of its rows.
+     */
+    public static final long DEFAULT_SLOW_QUERY_TOTAL_MS = 10000L;
+
+    /**
+     * A configuration option to specify how many rows a query may return before it is logged, or a negative number
+     * to not log queries by the number of rows they return.
+     */
+    public static final String SLOW_QUERY_ROWS = "slow.query.rows";
+
+    /**
+     * By default, queries are not logged by the number of rows they return.
+     */
+    public static final long DEFAULT_SLOW_QUERY_ROWS = -1L;
+
+    /**
+     * A configuration option to specify the names of the parameters whose values are not written to the log, as a
+     * comma-separated list, or {@code *} to not write any values.
+     */
+    public static final String SLOW_QUERY_LOG_REDACT = "slow.query.log.redact";
+
+    /**
+     * A configuration option to specify how large, in bytes, the log may grow before it rolls over.
+     */
+    public static final String SLOW_QUERY_LOG_MAX_BYTES = "slow.query.log.max.bytes";
+
+    /**
+     * The default size the log may grow to.
+     */
+    public static final long DEFAULT_SLOW_QUERY_LOG_MAX_BYTES = 64L * 1024L * 1024L;
+
+    /**
+     * A configuration option to specify how many rolled over files of the log to keep.
+     */
+    public static final String SLOW_QUERY_LOG_MAX_FILES = "slow.query.log.max.files";
+
+    /**
+     * The default number of rolled over files to keep.
+     */
+    public static final int DEFAULT_SLOW_QUERY_LOG_MAX_FILES = 5;
+
+    /**
+     * A configuration option to specify how many slow queries may wait to be written before more are dropped.
+     */
+    public static final String SLOW_QUERY_LOG_QUEUE_SIZE = "slow.query.log.queue.size";
+
+    /**
+     * The default number of slow queries that may wait to be written.
+     */
+    public static final int DEFAULT_SLOW_QUERY_LOG_QUEUE_SIZE = 1024;
+
+    private static final Log LOG = LogFactory.getLog(SlowQueryLog.class);
+    private static final String REDACT_ALL = "*";
+    private static final String REDACTED = "<redacted>";
+    private static final long NANOS_PER_MILLI = 1000000L;
+    private static final long POLL_MS = 1000L;
+
+    private final File file;
+    private final long firstResultNanos;
+    private final long totalNanos;
+    private final long rows;
+    private final Set<String> redacted;
+    private final long maxBytes;
+    private final int maxFiles;
+    private final BlockingQueue<Execution> queue;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writerThread;
+    private volatile boolean closed;
+
+    // Only touched by the writer thread
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+    private OutputStream out;
+    private long bytesWritten;
+
+    /**
+     * Start the thread that writes the log
+     *
+     * @param configuration the configuration that holds the thresholds and the path of the log
+     * @throws IllegalArgumentException if no path is configured
+     */
+    public SlowQueryLog(Configuration configuration) {
+        String path = configuration.get(SLOW_QUERY_LOG_PATH);
+        if (path == null) {
+            throw new IllegalArgumentException("No path configured for the slow query log in " + SLOW_QUERY_LOG_PATH);
+        }
+        this.file = new File(path);
+        this.firstResultNanos = toNanos(configuration.getLong(SLOW_QUERY_FIRST_RESULT_MS,
+                    DEFAULT_SLOW_QUERY_FIRST_RESULT_MS));
+        this.totalNanos = toNanos(configuration.getLong(SLOW_QUERY_TOTAL_MS, DEFAULT_SLOW_QUERY_TOTAL_MS));
+        this.rows = configuration.getLong(SLOW_QUERY_ROWS, DEFAULT_SLOW_QUERY_ROWS);
+        this.redacted = new HashSet<String>();
+        for (String parameter : configuration.getStringCollection(SLOW_QUERY_LOG_REDACT)) {
+            this.redacted.add(parameter.trim());
+        }
+        this.maxBytes = configuration.getLong(SLOW_QUERY_LOG_MAX_BYTES, DEFAULT_SLOW_QUERY_LOG_MAX_BYTES);
+        this.maxFiles = configuration.getInt(SLOW_QUERY_LOG_MAX_FILES, DEFAULT_SLOW_QUERY_LOG_MAX_FILES);
+        this.queue = new ArrayBlockingQueue<Execution>(configuration.getInt(SLOW_QUERY_LOG_QUEUE_SIZE,
+                    DEFAULT_SLOW_QUERY_LOG_QUEUE_SIZE));
+        this.writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeUntilClosed();
+            }
+        }, "slow-query-log-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    private static long toNanos(long millis) {
+        return millis < 0L ? -1L : millis * NANOS_PER_MILLI;
+    }
+
+    /**
+     * Start tracking an execution of a query, copying its parameters as they are when its scanner is opened
+     *
+     * @param template the normalized text of the query
+     * @param queryBuilder the builder that the query was parsed into, which is used to plan it again for the record
+     * @param parameters the parameters bound to the query
+     * @param timestamps the timestamps bound to the query
+     */
+    Execution newExecution(String template, QueryBuilder queryBuilder, Map<String, byte[]> parameters,
+                           Map<String, Long> timestamps) {
+        return new Execution(template, queryBuilder, new HashMap<String, byte[]>(parameters),
+                new HashMap<String, Long>(timestamps));
+    }
+
+    /**
+     * @return the number of slow queries that were not logged because too many were waiting to be written already
+     */
+    public long getDropped() {
+        return this.dropped.get();
+    }
+
+    /**
+     * Stop taking slow queries, write the ones that are waiting, and close the file
+     */
+    @Override
+    public void close() throws IOException {
+        this.closed = true;
+        try {
+            this.writerThread.join();
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the slow query log to be written", ie);
+        }
+    }
+
+    private void offer(Execution execution) {
+        if (this.closed || !this.queue.offer(execution)) {
+            this.dropped.incrementAndGet();
+        }
+    }
+
+    private void writeUntilClosed() {
+        try {
+            while (!this.closed || !this.queue.isEmpty()) {
+                Execution execution = this.queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                if (execution != null) {
+                    write(execution);
+                }
+            }
+        }
+        catch (InterruptedException ie) {
+            LOG.warn("Slow query log writer was interrupted, so it is stopping");
+        }
+        finally {
+            closeFile();
+        }
+    }
+
+    private void write(Execution execution) {
+        byte[] line = Bytes.toBytes(execution.toJson(this.dateFormat, this.redacted) + "\n");
+        try {
+            if (this.out != null && this.bytesWritten + line.length > this.maxBytes) {
+                closeFile();
+                roll();
+            }
+            if (this.out == null) {
+                this.bytesWritten = this.file.length();
+                this.out = new BufferedOutputStream(new FileOutputStream(this.file, true));
+            }
+            this.out.write(line);
+            this.bytesWritten += line.length;
+            if (this.queue.isEmpty()) {
+                this.out.flush();
+            }
+        }
+        catch (IOException ioe) {
+            LOG.warn(String.format("Unable to write slow query to %s", this.file), ioe);
+            closeFile();
+        }
+    }
+
+    private void roll() {
+        for (int i = this.maxFiles - 1; i >= 0; i--) {
+            File from = i == 0 ? this.file : rolledFile(i);
+            File to = rolledFile(i + 1);
+            if (from.exists() && (!to.exists() || to.delete()) && !from.renameTo(to)) {
+                LOG.warn(String.format("Unable to roll %s over to %s", from, to));
+            }
+        }
+        if (this.maxFiles <= 0 && !this.file.delete()) {
+            LOG.warn(String.format("Unable to delete %s to roll it over", this.file));
+        }
+    }
+
+    private File rolledFile(int index) {
+        return new File(this.file.getPath() + "." + index);
+    }
+
+    private void closeFile() {
+        if (this.out != null) {
+            try {
+                this.out.close();
+            }
+            catch (IOException ioe) {
+                LOG.warn(String.format("Unable to close %s", this.file), ioe);
+            }
+            this.out = null;
+        }
+    }
+
+    /**
+     * One run of a query, which is logged once its scanner is exhausted or closed if it turns out to be slow
+     */
+    final class Execution {
+        private final long startMillis = System.currentTimeMillis();
+        private final String template;
+        private final QueryBuilder queryBuilder;
+        private final Map<String, byte[]> parameters;
+        private final Map<String, Long> timestamps;
+
+        private long planNanos;
+        private long openScannerNanos;
+        private long firstResultNanos;
+        private long scanNanos;
+        private long rows;
+        private long keyValues;
+        private long bytes;
+
+        private Execution(String template, QueryBuilder queryBuilder, Map<String, byte[]> parameters,
+                          Map<String, Long> timestamps) {
+            this.template = template;
+            this.queryBuilder = queryBuilder;
+            this.parameters = parameters;
+            this.timestamps = timestamps;
+        }
+
+        /**
+         * Log the execution if it was slow
+         *
+         * @param scanner the scanner of the query, which has been exhausted or closed
+         */
+        void finished(InstrumentedResultScanner scanner) {
+            this.firstResultNanos = scanner.getFirstResultNanos();
+            this.scanNanos = scanner.getScanNanos();
+            this.rows = scanner.getRows();
+            if (exceeds(this.firstResultNanos, SlowQueryLog.this.firstResultNanos)
+                    || exceeds(this.scanNanos, SlowQueryLog.this.totalNanos)
+                    || exceeds(this.rows, SlowQueryLog.this.rows)) {
+                this.planNanos = scanner.getPlanNanos();
+                this.openScannerNanos = scanner.getOpenScannerNanos();
+                this.keyValues = scanner.getKeyValues();
+                this.bytes = scanner.getBytes();
+                offer(this);
+            }
+        }
+
+        private boolean exceeds(long value, long threshold) {
+            return threshold >= 0L && value > threshold;
+        }
+
+        /**
+         * Format the record, planning the query again to describe its scan, which is only done on the writer thread
+         */
+        private String toJson(SimpleDateFormat dateFormat, Set<String> redacted) {
+            StringBuilder buf = new StringBuilder();
+            buf.append("{\"time\":");
+            appendString(buf, dateFormat.format(new Date(this.startMillis)));
+            buf.append(",\"query\":");
+            appendString(buf, this.template);
+            buf.append(",\"parameters\":{");
+            String separator = "";
+            for (Map.Entry<String, byte[]> entry : this.parameters.entrySet()) {
+                buf.append(separator);
+                appendString(buf, entry.getKey());
+                buf.append(':');
+                appendString(buf, isRedacted(entry.getKey(), redacted) ? REDACTED
+                        : Bytes.toStringBinary(entry.getValue()));
+                separator = ",";
+            }
+            buf.append("},\"timestamps\":{");
+            separator = "";
+            for (Map.Entry<String, Long> entry : this.timestamps.entrySet()) {
+                buf.append(separator);
+                appendString(buf, entry.getKey());
+                buf.append(':');
+                if (isRedacted(entry.getKey(), redacted)) {
+                    appendString(buf, REDACTED);
+                }
+                else {
+                    buf.append(entry.getValue());
+                }
+                separator = ",";
+            }
+            buf.append("},\"plan\":");
+            appendPlan(buf, redacted);
+            buf.append(",\"planNanos\":").append(this.planNanos);
+            buf.append(",\"openScannerNanos\":").append(this.openScannerNanos);
+            buf.append(",\"firstResultNanos\":").append(this.firstResultNanos);
+            buf.append(",\"scanNanos\":").append(this.scanNanos);
+            buf.append(",\"rows\":").append(this.rows);
+            buf.append(",\"keyValues\":").append(this.keyValues);
+            buf.append(",\"bytes\":").append(this.bytes);
+            buf.append('}');
+            return buf.toString();
+        }
+
+        /**
+         * The row keys and filters of the plan come from the parameters, and its time range from the timestamps, so
+         * the plan is left out when any of either are redacted
+         */
+        private void appendPlan(StringBuilder buf, Set<String> redacted) {
+            if (isAnyRedacted(this.parameters.keySet(), redacted) || isAnyRedacted(this.timestamps.keySet(), redacted)) {
+                appendString(buf, REDACTED);
+                return;
+            }
+            QueryPlan plan;
+            try {
+                plan = new QueryPlan(this.queryBuilder.getTableName(),
+                        this.queryBuilder.planScan(this.parameters, this.timestamps), null);
+            }
+            catch (RuntimeException re) {
+                LOG.warn(String.format("Unable to plan slow query '%s' again", this.template), re);
+                buf.append("null");
+                return;
+            }
+            buf.append("{\"table\":");
+            appendString(buf, plan.getTableName());
+            buf.append(",\"startRow\":");
+            appendString(buf, Bytes.toStringBinary(plan.getStartRow()));
+            buf.append(",\"stopRow\":");
+            appendString(buf, Bytes.toStringBinary(plan.getStopRow()));
+            buf.append(",\"columns\":{");
+            String separator = "";
+            for (Map.Entry<String, List<String>> entry : plan.getColumns().entrySet()) {
+                buf.append(separator);
+                appendString(buf, entry.getKey());
+                buf.append(':');
+                appendStrings(buf, entry.getValue());
+                separator = ",";
+            }
+            buf.append("},\"minTimestamp\":").append(plan.getMinTimestamp());
+            buf.append(",\"maxTimestamp\":").append(plan.getMaxTimestamp());
+            buf.append(",\"maxVersions\":").append(plan.getMaxVersions());
+            buf.append(",\"filter\":");
+            appendFilter(buf, plan.getFilter());
+            buf.append('}');
+        }
+
+        private void appendFilter(StringBuilder buf, QueryPlan.FilterNode filter) {
+            if (filter == null) {
+                buf.append("null");
+                return;
+            }
+            buf.append("{\"description\":");
+            appendString(buf, filter.getDescription());
+            if (!filter.getChildren().isEmpty()) {
+                buf.append(",\"children\":[");
+                String separator = "";
+                for (QueryPlan.FilterNode child : filter.getChildren()) {
+                    buf.append(separator);
+                    appendFilter(buf, child);
+                    separator = ",";
+                }
+                buf.append(']');
+            }
+            buf.append('}');
+        }
+    }
+
+    private static boolean isRedacted(String parameter, Set<String> redacted) {
+        return redacted.contains(parameter) || redacted.contains(REDACT_ALL);
+    }
+
+    private static boolean isAnyRedacted(Set<String> parameters, Set<String> redacted) {
+        if (!redacted.isEmpty()) {
+            for (String parameter : parameters) {
+                if (isRedacted(parameter, redacted)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void appendStrings(StringBuilder buf, Collection<String> strings) {
+        buf.append('[');
+        String separator = "";
+        for (String string : strings) {
+            buf.append(separator);
+            appendString(buf, string);
+            separator = ",";
+        }
+        buf.append(']');
+    }
+
+    /**
+     * Append a string as a JSON string literal
+     */
+    static void appendString(StringBuilder buf, String string) {
+        buf.append('"');
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            switch (c) {
+                case '"':
+                    buf.append("\\\"");
+                    break;
+                case '\\':
+                    buf.append("\\\\");
+                    break;
+                case '\n':
+                    buf.append("\\n");
+                    break;
+                case '\r':
+                    buf.append("\\r");
+                    break;
+                case '\t':
+                    buf.append("\\t");
+                    break;
+                default:
+                    if (c < ' ') {
+                        buf.append(String.format("\\u%04x", (int)c));
+                    }
+                    else {
+                        buf.append(c);
+                    }
+            }
+        }
+        buf.append('"');
+    }
+}
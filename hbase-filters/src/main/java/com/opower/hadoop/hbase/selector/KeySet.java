@@ -0,0 +1,145 @@
+package com.opower.hadoop.hbase.selector;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.WritableUtils;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * An immutable, sorted set of row keys decoded from a file written by a {@link KeySetWriter}.  All of the keys
+ * are packed into a single byte array with an array of offsets into it, so that membership checks are a binary
+ * search without any per-key objects on the heap.  Instances are shared between scans and regions by the
+ * {@link KeySetCache}, which is why this class must remain immutable.
+ *
+ * @author jeff@opower.com
+ */
+final class KeySet {
+    private final byte[] keys;
+    private final int[] offsets;
+    private final long checksum;
+
+    private KeySet(byte[] keys, int[] offsets, long checksum) {
+        this.keys = keys;
+        this.offsets = offsets;
+        this.checksum = checksum;
+    }
+
+    /**
+     * Read and decode a key set from a file
+     *
+     * @param fs the file system holding the key set
+     * @param path the path to the key set file
+     * @return the decoded key set
+     * @throws IOException if the file cannot be read or is corrupt
+     */
+    static KeySet read(FileSystem fs, Path path) throws IOException {
+        long fileLength = fs.getFileStatus(path).getLen();
+        if (fileLength < KeySetWriter.HEADER_SIZE + KeySetWriter.TRAILER_SIZE) {
+            throw new IOException("Key set file " + path + " is too short to be valid");
+        }
+        FSDataInputStream fileIn = fs.open(path);
+        try {
+            // Read the trailer first, so that the arrays can be sized exactly
+            fileIn.seek(fileLength - KeySetWriter.TRAILER_SIZE);
+            long keyCount = fileIn.readLong();
+            long keyBytes = fileIn.readLong();
+            long checksum = fileIn.readLong();
+            int trailerMagic = fileIn.readInt();
+            if (trailerMagic != KeySetWriter.MAGIC) {
+                throw new IOException("Key set file " + path + " has a corrupt trailer");
+            }
+            if (keyCount >= Integer.MAX_VALUE || keyBytes > Integer.MAX_VALUE) {
+                throw new IOException(String.format("Key set file %s is too large to load (%d keys, %d bytes)",
+                            path, keyCount, keyBytes));
+            }
+
+            fileIn.seek(0);
+            if (fileIn.readInt() != KeySetWriter.MAGIC) {
+                throw new IOException("Key set file " + path + " has a corrupt header");
+            }
+            int version = fileIn.readInt();
+            if (version != KeySetWriter.VERSION) {
+                throw new IOException("Wrong version of key set file. Expected " + KeySetWriter.VERSION +
+                        "; found " + version);
+            }
+
+            CRC32 crc = new CRC32();
+            DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(fileIn), crc));
+            byte[] keys = new byte[(int)keyBytes];
+            int[] offsets = new int[(int)keyCount + 1];
+            int position = 0;
+            for (int i = 0; i < keyCount; i++) {
+                int length = WritableUtils.readVInt(in);
+                offsets[i] = position;
+                in.readFully(keys, position, length);
+                position += length;
+            }
+            offsets[(int)keyCount] = position;
+            if (crc.getValue() != checksum) {
+                throw new IOException("Checksum mismatch reading key set file " + path);
+            }
+            return new KeySet(keys, offsets, checksum);
+        }
+        finally {
+            fileIn.close();
+        }
+    }
+
+    /**
+     * @return the checksum of the key section of the file this set was read from
+     */
+    long getChecksum() {
+        return this.checksum;
+    }
+
+    /**
+     * @return the number of keys in the set
+     */
+    int size() {
+        return this.offsets.length - 1;
+    }
+
+    /**
+     * @return the approximate number of bytes of heap this set occupies
+     */
+    long heapSize() {
+        return this.keys.length + ((long)this.offsets.length * Bytes.SIZEOF_INT);
+    }
+
+    /**
+     * Determine whether or not the key is a member of the set
+     *
+     * @param buffer a buffer containing the key
+     * @param offset offset into buffer where the key starts
+     * @param length length of the key
+     * @return true if the key is in the set
+     */
+    boolean contains(byte[] buffer, int offset, int length) {
+        int low = 0;
+        int high = size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midOffset = this.offsets[mid];
+            int comparison = Bytes.compareTo(this.keys, midOffset, this.offsets[mid + 1] - midOffset,
+                    buffer, offset, length);
+            if (comparison < 0) {
+                low = mid + 1;
+            }
+            else if (comparison > 0) {
+                high = mid - 1;
+            }
+            else {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,123 @@
+package com.opower.hadoop.hbase.selector;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+
+import org.apache.hadoop.hbase.HBaseConfiguration;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the {@link KeySet KeySets} referenced by {@link RowKeyInHdfsSetSelector RowKeyInHdfsSetSelectors}
+ * on a region server, so that a key set is read from HDFS once and then shared by every scan and region
+ * that refers to it.  Entries are keyed by path and checksum, so rewriting a key set file in place results
+ * in a fresh load, and the least recently used sets are evicted once the configured number of bytes is
+ * exceeded.
+ *
+ * @author jeff@opower.com
+ */
+final class KeySetCache {
+    /**
+     * A configuration option for the maximum number of bytes of key sets to hold on a region server
+     */
+    static final String MAX_BYTES = "keyset.cache.max.bytes";
+    static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    /**
+     * A configuration option for how long a key set may go unused before it is evicted
+     */
+    static final String EXPIRE_AFTER_ACCESS_MS = "keyset.cache.expire.after.access.ms";
+    static final long DEFAULT_EXPIRE_AFTER_ACCESS_MS = TimeUnit.HOURS.toMillis(1);
+
+    private static final Log LOG = LogFactory.getLog(KeySetCache.class);
+    private static KeySetCache instance;
+
+    /**
+     * Hide the creation of the shared cache in a static method, so that nothing is allocated
+     * on clients that never deserialize a selector.
+     */
+    static synchronized KeySetCache getInstance() {
+        if (instance == null) {
+            instance = new KeySetCache(HBaseConfiguration.create());
+        }
+        return instance;
+    }
+
+    private final Configuration configuration;
+    private final Cache<String, KeySet> cache;
+
+    KeySetCache(Configuration configuration) {
+        this.configuration = configuration;
+        this.cache = CacheBuilder.newBuilder()
+            .maximumWeight(configuration.getLong(MAX_BYTES, DEFAULT_MAX_BYTES))
+            .weigher(new Weigher<String, KeySet>() {
+                @Override
+                public int weigh(String key, KeySet keySet) {
+                    return (int)Math.min(Integer.MAX_VALUE, keySet.heapSize());
+                }
+            })
+            .expireAfterAccess(configuration.getLong(EXPIRE_AFTER_ACCESS_MS, DEFAULT_EXPIRE_AFTER_ACCESS_MS),
+                    TimeUnit.MILLISECONDS)
+            .removalListener(new RemovalListener<String, KeySet>() {
+                @Override
+                public void onRemoval(RemovalNotification<String, KeySet> notification) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug(String.format("Evicted key set %s (%s)", notification.getKey(), notification.getCause()));
+                    }
+                }
+            })
+            .build();
+    }
+
+    /**
+     * Get the key set stored at the path, loading it if it is not already cached
+     *
+     * @param path a fully qualified path to the key set file
+     * @param checksum the checksum the key set is expected to have
+     * @return the key set
+     * @throws IOException if the key set cannot be loaded or its checksum does not match
+     */
+    KeySet get(final Path path, final long checksum) throws IOException {
+        String cacheKey = path.toString() + "#" + Long.toHexString(checksum);
+        try {
+            return this.cache.get(cacheKey, new Callable<KeySet>() {
+                @Override
+                public KeySet call() throws IOException {
+                    return load(path, checksum);
+                }
+            });
+        }
+        catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException)ee.getCause();
+            }
+            throw new IOException("Unable to load key set from " + path, ee.getCause());
+        }
+    }
+
+    private KeySet load(Path path, long checksum) throws IOException {
+        long start = System.currentTimeMillis();
+        KeySet keySet = KeySet.read(path.getFileSystem(this.configuration), path);
+        if (keySet.getChecksum() != checksum) {
+            throw new IOException(String.format("Key set %s has checksum %x, but %x was expected",
+                        path, keySet.getChecksum(), checksum));
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Loaded %d keys (%d bytes) from %s in %d ms",
+                        keySet.size(), keySet.heapSize(), path, System.currentTimeMillis() - start));
+        }
+        return keySet;
+    }
+}
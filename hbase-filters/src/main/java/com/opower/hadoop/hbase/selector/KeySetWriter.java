@@ -0,0 +1,167 @@
+package com.opower.hadoop.hbase.selector;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.WritableUtils;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Writes a set of row keys to a file that can be referenced by a {@link RowKeyInHdfsSetSelector}.  Keys are
+ * streamed straight to the output, so the set never has to be held in memory on the client, but that means
+ * the keys must be added in ascending order according to {@link Bytes#compareTo(byte[], byte[])}, which is
+ * the order they would come out of an HBase scan anyway.  Duplicate keys are silently dropped.
+ * </p><p>
+ * The file layout is a small header, followed by each key written as a vint length and the key bytes,
+ * followed by a fixed size trailer holding the number of keys, the total number of key bytes, and a CRC32
+ * checksum of the key section.  That checksum is what identifies the contents of the set when it is
+ * referenced by a selector.
+ *
+ * @author jeff@opower.com
+ */
+public class KeySetWriter implements Closeable {
+    private static final Log LOG = LogFactory.getLog(KeySetWriter.class);
+
+    static final int MAGIC = 0x4b534554; // "KSET"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = Bytes.SIZEOF_INT + Bytes.SIZEOF_INT;
+    static final int TRAILER_SIZE = Bytes.SIZEOF_LONG + Bytes.SIZEOF_LONG + Bytes.SIZEOF_LONG + Bytes.SIZEOF_INT;
+
+    private final DataOutputStream out;
+    private final CRC32 crc = new CRC32();
+    private final DataOutputStream keyOut;
+
+    private byte[] previousKey;
+    private long keyCount = 0;
+    private long keyBytes = 0;
+    private boolean closed = false;
+
+    /**
+     * Create a writer that writes the key set to the given stream.  The stream will be closed
+     * when the writer is closed.
+     *
+     * @param outputStream where to write the key set
+     * @throws IOException if the header cannot be written
+     */
+    public KeySetWriter(OutputStream outputStream) throws IOException {
+        this.out = new DataOutputStream(outputStream);
+        this.out.writeInt(MAGIC);
+        this.out.writeInt(VERSION);
+        this.keyOut = new DataOutputStream(new CheckedOutputStream(this.out, this.crc));
+    }
+
+    /**
+     * Write a full key set to a file in a {@link FileSystem}, typically HDFS, consuming the keys one at a time.
+     * The trailer is only written once every key has been, so if anything fails along the way, then the partial
+     * file is deleted rather than being left behind looking like a complete, smaller set.
+     *
+     * @param configuration the configuration used to find the file system
+     * @param path where to write the key set; any existing file is overwritten
+     * @param keys the keys, in ascending order
+     * @return the checksum of the key set, to be handed to a {@link RowKeyInHdfsSetSelector}
+     * @throws IOException if the file cannot be written
+     * @throws IllegalArgumentException if the keys are not in ascending order
+     */
+    public static long write(Configuration configuration, Path path, Iterator<byte[]> keys) throws IOException {
+        FileSystem fs = path.getFileSystem(configuration);
+        FSDataOutputStream fileOut = fs.create(path, true);
+        boolean written = false;
+        try {
+            KeySetWriter writer = new KeySetWriter(fileOut);
+            while (keys.hasNext()) {
+                writer.add(keys.next());
+            }
+            writer.close();
+            written = true;
+            return writer.getChecksum();
+        }
+        finally {
+            if (!written) {
+                // Closing the file directly leaves out the trailer, so nothing would accept it even if the delete fails
+                IOUtils.closeStream(fileOut);
+                try {
+                    fs.delete(path, false);
+                }
+                catch (IOException ioe) {
+                    LOG.warn("Unable to delete partial key set " + path, ioe);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a key to the set.  The key must not sort before the previously added key.
+     *
+     * @param key the row key to add
+     * @throws IOException if the key cannot be written
+     * @throws IllegalArgumentException if the key is out of order
+     * @throws IllegalStateException if the writer has been closed
+     */
+    public void add(byte[] key) throws IOException {
+        if (this.closed) {
+            throw new IllegalStateException("Key set writer is already closed");
+        }
+        if (this.previousKey != null) {
+            int comparison = Bytes.compareTo(this.previousKey, key);
+            if (comparison == 0) {
+                return;
+            }
+            if (comparison > 0) {
+                throw new IllegalArgumentException(String.format("Key %s added after %s; keys must be in ascending order",
+                            Bytes.toStringBinary(key), Bytes.toStringBinary(this.previousKey)));
+            }
+        }
+        WritableUtils.writeVInt(this.keyOut, key.length);
+        this.keyOut.write(key);
+        this.previousKey = key;
+        this.keyCount++;
+        this.keyBytes += key.length;
+    }
+
+    /**
+     * @return the number of distinct keys added so far
+     */
+    public long getKeyCount() {
+        return this.keyCount;
+    }
+
+    /**
+     * @return the checksum of the keys added so far; only final once the writer is closed
+     */
+    public long getChecksum() {
+        return this.crc.getValue();
+    }
+
+    /**
+     * Write the trailer and close the underlying stream
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        this.keyOut.flush();
+        this.out.writeLong(this.keyCount);
+        this.out.writeLong(this.keyBytes);
+        this.out.writeLong(this.crc.getValue());
+        this.out.writeInt(MAGIC);
+        this.out.close();
+    }
+}
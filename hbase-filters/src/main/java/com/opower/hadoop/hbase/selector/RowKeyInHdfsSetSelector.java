@@ -0,0 +1,104 @@
+package com.opower.hadoop.hbase.selector;
+
+import com.google.common.base.Objects;
+
+import org.apache.hadoop.fs.Path;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A {@link Selector} that checks for the existence of a row key in a set stored in HDFS, giving functionality
+ * similar to that of an "in" clause in SQL.
+ * </p><p>
+ * Unlike the {@link RowKeyInSetSelector}, which serializes its whole set into every scan, this selector only
+ * carries the path to a key set file written by a {@link KeySetWriter} along with the checksum of that file.
+ * The region server loads the set once and shares it between scans and regions through the
+ * {@link KeySetCache}, so it is well suited to sets with millions of keys.  Membership checks are exact.
+ * </p><p>
+ * Example usage:
+ * </p>
+ * <pre>
+        Path keySetPath = new Path("/user/campaigns/2012-11/customers.kset");
+        long checksum = KeySetWriter.write(configuration, keySetPath, sortedCustomerIds);
+        scan.setFilter(new SelectorFilter(new RowKeyInHdfsSetSelector(keySetPath, checksum)));
+ * </pre>
+ *
+ * @author jeff@opower.com
+ */
+public class RowKeyInHdfsSetSelector extends AbstractRowSelector {
+    private Path keySetPath;
+    private long checksum;
+
+    // transient field, resolved through the cache on first use
+    private KeySet keySet;
+
+    /**
+     * Default constructor needed for serialization; use {@link #RowKeyInHdfsSetSelector(Path, long)}
+     * when you want to create one for real
+     */
+    public RowKeyInHdfsSetSelector() {}
+
+    /**
+     * @param keySetPath the path to a key set file written by a {@link KeySetWriter}; it should be fully
+     *        qualified, since it will be resolved on the region servers
+     * @param checksum the checksum of the key set, as returned by {@link KeySetWriter#write} or
+     *        {@link KeySetWriter#getChecksum}
+     */
+    public RowKeyInHdfsSetSelector(Path keySetPath, long checksum) {
+        if (keySetPath == null) {
+            throw new IllegalArgumentException("Key set path must not be null");
+        }
+        this.keySetPath = keySetPath;
+        this.checksum = checksum;
+    }
+
+    public Path getKeySetPath() {
+        return this.keySetPath;
+    }
+
+    public long getChecksum() {
+        return this.checksum;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+            .add("keySetPath", this.keySetPath)
+            .add("checksum", Long.toHexString(this.checksum))
+            .toString();
+    }
+
+    /**
+     * Only includes rows that are in the referenced key set
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean includeRow(byte[] buffer, int offset, int length) {
+        if (this.keySet == null) {
+            // Only happens when the selector is used without having been serialized first, such as in tests
+            try {
+                this.keySet = KeySetCache.getInstance().get(this.keySetPath, this.checksum);
+            }
+            catch (IOException ioe) {
+                throw new RuntimeException(ioe);
+            }
+        }
+        return this.keySet.contains(buffer, offset, length);
+    }
+
+    public void write(DataOutput out) throws IOException {
+        Bytes.writeByteArray(out, Bytes.toBytes(this.keySetPath.toString()));
+        out.writeLong(this.checksum);
+    }
+
+    public void readFields(DataInput in) throws IOException {
+        this.keySetPath = new Path(Bytes.toString(Bytes.readByteArray(in)));
+        this.checksum = in.readLong();
+        this.keySet = KeySetCache.getInstance().get(this.keySetPath, this.checksum);
+    }
+}
@@ -87,12 +87,11 @@ public class RowKeyInSetSelector extends AbstractRowSelector {
         // Write out the meta data that will be used to reconstruct the
         // bloom filter on the server
         this.bloomFilter.getMetaWriter().write(out);
-        // Now write out the actual bloom filter bytes
-        // The size is stored as a long but is documented to be required to fit
-        // in the space of an int and is cast to an int before allocating the
-        // internal byte buffer.
-        out.writeInt((int)this.bloomFilter.getByteSize());
-        this.bloomFilter.getDataWriter().write(out);
+        // Now write out the actual bloom filter bytes.  They are written from
+        // the bloom bits rather than the bloom filter itself, because a
+        // deserialized bloom filter never allocates its own copy of them.
+        out.writeInt(this.bloomBits.limit());
+        out.write(this.bloomBits.array(), this.bloomBits.arrayOffset(), this.bloomBits.limit());
     }
 
     public void readFields(DataInput in) throws IOException {
@@ -105,12 +104,15 @@ public class RowKeyInSetSelector extends AbstractRowSelector {
             throw new IllegalArgumentException("Wrong version of ByteBloomFilter. Expected " +
                     ByteBloomFilter.VERSION + "; found " + version);
         }
-        // Create the bloom filter using the meta data
+        // Create the bloom filter using the meta data.  Its own buffer is not
+        // allocated, since the bits are always passed in from the bloom bits.
         this.bloomFilter = new ByteBloomFilter(in);
-        // allocate the buffer to make sure we can actually use it
-        this.bloomFilter.allocBloom();
 
         int numBytesInData = in.readInt();
+        if (numBytesInData != this.bloomFilter.getByteSize()) {
+            throw new IllegalArgumentException("Bloom filter data is " + numBytesInData +
+                    " bytes; expected " + this.bloomFilter.getByteSize());
+        }
         byte[] rawBloom = new byte[numBytesInData];
         in.readFully(rawBloom);
         this.bloomBits = ByteBuffer.wrap(rawBloom);
@@ -9,6 +9,7 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 
+import com.opower.common.reflect.ConstructorCache;
 import com.opower.common.reflect.Reflection;
 
 /**
@@ -19,6 +20,8 @@ import com.opower.common.reflect.Reflection;
  * @author jeff@opower.com
  */
 public class SelectorFilter extends FilterBase {
+    private static final ConstructorCache SELECTORS = new ConstructorCache();
+
     private Selector selector;
 
     // transient field to track progress through the filter lifecycle
@@ -73,15 +76,37 @@ public class SelectorFilter extends FilterBase {
     public void readFields(DataInput in) throws IOException {
         // Do not use WritableFactories.newInstance, because it uses ReflectionUtils which caches
         // constructors, which in turn means these classes will never be garbage collected, which
-        // is pretty bad if you want them to be used in a deployed filter context.
+        // is pretty bad if you want them to be used in a deployed filter context.  The
+        // ConstructorCache never keeps a deployed jar's class loader alive, so it is safe to use here.
         String className = Bytes.toString(Bytes.readByteArray(in));
         try {
-            Class selectorClass = Class.forName(className);
-            this.selector = (Selector)selectorClass.newInstance();
+            this.selector = newSelector(className);
             this.selector.readFields(in);
         }
+        catch (IOException ioe) {
+            throw ioe;
+        }
         catch (Exception e) {
             throw new IOException("Error instantiating class " + className, e);
         }
     }
+
+    /**
+     * Instantiate the selector through the thread's context class loader first, which is the class loader of
+     * the deployed jar when this filter is being deserialized inside of a
+     * {@link com.opower.hadoop.hbase.filter.DeployedFilter}, and then through the class loader of this class.
+     */
+    private static Selector newSelector(String className) throws Exception {
+        ClassLoader contextLoader = Thread.currentThread().getContextClassLoader();
+        ClassLoader localLoader = SelectorFilter.class.getClassLoader();
+        if (contextLoader != null && contextLoader != localLoader) {
+            try {
+                return SELECTORS.newInstance(className, contextLoader, Selector.class);
+            }
+            catch (ClassNotFoundException cnfe) {
+                // This exception can be ignored, because the local class loader will be tried below
+            }
+        }
+        return SELECTORS.newInstance(className, localLoader, Selector.class);
+    }
 }
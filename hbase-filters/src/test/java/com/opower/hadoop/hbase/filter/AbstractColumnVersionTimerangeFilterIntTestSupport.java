@@ -1,6 +1,5 @@
 package com.opower.hadoop.hbase.filter;
 
-import org.apache.hadoop.hbase.HBaseTestingUtility;
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.client.HTable;
 import org.apache.hadoop.hbase.client.Put;
@@ -9,10 +8,10 @@ import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.filter.Filter;
 import org.apache.hadoop.hbase.util.Bytes;
 
-import org.junit.AfterClass;
-import org.junit.BeforeClass;
 import org.junit.runner.RunWith;
 
+import java.io.IOException;
+
 import com.opower.hadoop.hbase.test.HBaseTestRunner;
 
 import static org.junit.Assert.assertThat;
@@ -20,13 +19,14 @@ import static org.hamcrest.CoreMatchers.*;
 
 /**
  * Abstract base class to help with tests for the {@link AbstractColumnVersionTimerangeFilter}
- * in a live HBase cluster
+ * in a live HBase cluster.  Test classes run at the same time and static fields here would be shared by all of
+ * them, so each subclass takes its own table from a static {@link com.opower.hadoop.hbase.test.PooledTable}
+ * field, loads it with {@link #loadRecords(HTable)} before its tests, and hands it back through {@link #getTable()}.
  *
  * @author jeff@opower.com
  */
 @RunWith(HBaseTestRunner.class)
 public abstract class AbstractColumnVersionTimerangeFilterIntTestSupport {
-    protected static final String TABLE_NAME = AbstractColumnVersionTimerangeFilterIntTestSupport.class.getName();
     protected static final byte[] FAMILY = Bytes.toBytes("d");
     protected static final byte[] FAMILY_2 = Bytes.toBytes("e");
     // row, family, qualifier, timestamp, value
@@ -86,13 +86,13 @@ public abstract class AbstractColumnVersionTimerangeFilterIntTestSupport {
         { "row-B", "e", "qual-B", 7L, "value-B7" },
     };
 
-    private static HBaseTestingUtility hbaseTestingUtility;
-    private static HTable table;
-
-    @BeforeClass
-    public static void setUpClass() throws Exception {
-        byte[] tableName = Bytes.toBytes(TABLE_NAME);
-        table = hbaseTestingUtility.createTable(tableName, new byte[][] { FAMILY, FAMILY_2 }, 100);
+    /**
+     * Load the {@link #RECORDS} into a table with the column families {@code d} and {@code e}, which keep 100 versions
+     *
+     * @param table the table of the test class
+     * @throws IOException if the records cannot be loaded
+     */
+    protected static void loadRecords(HTable table) throws IOException {
         table.setAutoFlush(false);
         for (Object[] record : RECORDS) {
             int i = 0;
@@ -108,10 +108,10 @@ public abstract class AbstractColumnVersionTimerangeFilterIntTestSupport {
         table.flushCommits();
     }
 
-    @AfterClass
-    public static void tearDownClass() throws Exception {
-        hbaseTestingUtility.deleteTable(Bytes.toBytes(TABLE_NAME));
-    }
+    /**
+     * @return the table that {@link #loadRecords(HTable)} loaded for the test class
+     */
+    protected abstract HTable getTable();
 
     protected void runFilterAssertions(Filter filter, Object[][] expectedResults, int expectedNumRows) throws Exception {
         Scan scan = new Scan();
@@ -120,7 +120,7 @@ public abstract class AbstractColumnVersionTimerangeFilterIntTestSupport {
         int numRows = 0;
         int numKeyValues = 0;
         int resultIndex = 0;
-        for (Result result : table.getScanner(scan)) {
+        for (Result result : getTable().getScanner(scan)) {
             KeyValue[] keyValues = result.raw();
             for (KeyValue keyValue : keyValues) {
                 String expectedRowKey    = (String)expectedResults[resultIndex][0];
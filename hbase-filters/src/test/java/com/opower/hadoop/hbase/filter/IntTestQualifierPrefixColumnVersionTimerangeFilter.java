@@ -1,16 +1,33 @@
 package com.opower.hadoop.hbase.filter;
 
+import org.apache.hadoop.hbase.client.HTable;
 import org.apache.hadoop.hbase.filter.FilterList;
 import org.apache.hadoop.hbase.util.Bytes;
 
+import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.opower.hadoop.hbase.test.PooledTable;
+
 /**
  * Tests the {@link QualifierPrefixColumnVersionTimerangeFilter} in a live HBase cluster
  *
  * @author jeff@opower.com
  */
 public class IntTestQualifierPrefixColumnVersionTimerangeFilter extends AbstractColumnVersionTimerangeFilterIntTestSupport {
+    @PooledTable(families = { "d", "e" }, maxVersions = 100)
+    private static HTable table;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        loadRecords(table);
+    }
+
+    @Override
+    protected HTable getTable() {
+        return table;
+    }
+
     @Test
     public void testMaxVersions() throws Exception {
         Object[][] expectedResults = new Object[][] {
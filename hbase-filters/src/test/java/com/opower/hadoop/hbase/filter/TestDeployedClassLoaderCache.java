@@ -0,0 +1,106 @@
+package com.opower.hadoop.hbase.filter;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.opower.hadoop.fs.HdfsClassLoader;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link DeployedClassLoaderCache}
+ *
+ * @author jeff@opower.com
+ */
+public class TestDeployedClassLoaderCache {
+    private static final Path JAR_A = new Path("file:///deployed/a/filter.jar");
+    private static final Path JAR_B = new Path("file:///deployed/b/filter.jar");
+    private static final Path DEPENDENCY = new Path("file:///deployed/c/dependency.jar");
+
+    private DeployedFilterMetrics metrics;
+    private DeployedClassLoaderCache cache;
+
+    @Before
+    public void setUp() {
+        Configuration configuration = new Configuration();
+        configuration.setInt(DeployedFilterManager.CLASS_LOADER_CACHE_SIZE, 1);
+        this.metrics = new DeployedFilterMetrics();
+        this.cache = new DeployedClassLoaderCache(configuration, this.metrics);
+    }
+
+    @Test
+    public void testSameJarAndChecksumShareAClassLoader() throws Exception {
+        assertSame(this.cache.get(jars(JAR_A, "abc")), this.cache.get(jars(JAR_A, "abc")));
+    }
+
+    @Test
+    public void testDifferentChecksumGetsANewClassLoader() throws Exception {
+        assertNotSame(this.cache.get(jars(JAR_A, "abc")), this.cache.get(jars(JAR_A, "def")));
+    }
+
+    @Test
+    public void testEvictedClassLoaderIsReusedWhileStillReachable() throws Exception {
+        HdfsClassLoader first = this.cache.get(jars(JAR_A, "abc"));
+        // the cache only holds one class loader, so this evicts the first
+        this.cache.get(jars(JAR_B, "abc"));
+        assertEquals(1, this.cache.size());
+        assertSame(first, this.cache.get(jars(JAR_A, "abc")));
+    }
+
+    @Test
+    public void testDependenciesArePartOfTheKey() throws Exception {
+        HdfsClassLoader withDependency = this.cache.get(jars(JAR_A, "abc", DEPENDENCY, "ghi"));
+        assertNotSame(this.cache.get(jars(JAR_A, "abc")), withDependency);
+        assertEquals(Arrays.asList(JAR_A, DEPENDENCY), withDependency.getJars());
+    }
+
+    @Test
+    public void testInventoryTracksEvictionAndUse() throws Exception {
+        DeployedClassLoaderInventory inventory = this.metrics.getInventory();
+        HdfsClassLoader first = this.cache.get(jars(JAR_A, "abc"));
+        this.metrics.classLoaderUsed(first, "com.example.FirstFilter");
+        this.metrics.classLoaderUsed(first, "com.example.FirstFilter");
+        this.cache.get(jars(JAR_B, "abc"));
+        assertEquals(2, inventory.getClassLoaderCount());
+        assertEquals(1, inventory.getEvictedClassLoaderCount());
+
+        List<DeployedClassLoaderInfo> classLoaders = inventory.getClassLoaders();
+        assertEquals(2, classLoaders.size());
+        for (DeployedClassLoaderInfo info : classLoaders) {
+            if (info.getJars().equals(Arrays.asList(JAR_A.toString()))) {
+                assertTrue(info.isEvicted());
+                assertEquals(Arrays.asList("com.example.FirstFilter"), info.getFilterClasses());
+            }
+            else {
+                assertFalse(info.isEvicted());
+                assertEquals(Arrays.asList(JAR_B.toString()), info.getJars());
+                assertTrue(info.getFilterClasses().isEmpty());
+            }
+            assertEquals(0, info.getClassesDefined());
+            assertTrue(info.getAgeMs() >= 0L);
+        }
+
+        // handing the first class loader out again evicts the second
+        assertSame(first, this.cache.get(jars(JAR_A, "abc")));
+        assertEquals(1, inventory.getEvictedClassLoaderCount());
+        assertEquals(2L, inventory.getAgesMs(System.currentTimeMillis()).getCount());
+    }
+
+    /**
+     * Build a list of deployed jars from alternating paths and checksums
+     */
+    private static List<DeployedJar> jars(Object... pathsAndChecksums) {
+        List<DeployedJar> jars = new ArrayList<DeployedJar>();
+        for (int i = 0; i < pathsAndChecksums.length; i += 2) {
+            jars.add(new DeployedJar((Path)pathsAndChecksums[i], (String)pathsAndChecksums[i + 1], null));
+        }
+        return jars;
+    }
+}
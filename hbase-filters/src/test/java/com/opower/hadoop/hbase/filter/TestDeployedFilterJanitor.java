@@ -0,0 +1,162 @@
+package com.opower.hadoop.hbase.filter;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link DeployedFilterJanitor} and the leases it relies on against the local file system
+ *
+ * @author jeff@opower.com
+ */
+public class TestDeployedFilterJanitor {
+    private static final long LEASE_MS = 60L * 1000L;
+    private static final long EXPIRED_MS = 2L * LEASE_MS;
+
+    private Configuration configuration;
+    private FileSystem fs;
+    private Path deployPath;
+    private DeployedFilterManager filterManager;
+    private DeployedFilterJanitor janitor;
+
+    @Before
+    public void setUp() throws Exception {
+        File deployDirectory = File.createTempFile(getClass().getSimpleName(), "");
+        deployDirectory.delete();
+        this.deployPath = new Path(deployDirectory.toURI());
+        this.configuration = new Configuration();
+        this.configuration.set(DeployedFilterManager.DEPLOY_FILTER_PATH, this.deployPath.toString());
+        this.configuration.setLong(DeployedFilterManager.DEPLOY_FILTER_LEASE_MS, LEASE_MS);
+        this.configuration.setLong(DeployedFilterJanitor.JANITOR_GRACE_MS, 0L);
+        this.configuration.setInt(DeployedFilterJanitor.JANITOR_BATCH_SIZE, 1);
+        this.configuration.setLong(DeployedFilterJanitor.JANITOR_BATCH_PAUSE_MS, 0L);
+        this.fs = FileSystem.getLocal(this.configuration);
+        this.filterManager = new DeployedFilterManager(this.configuration);
+        this.janitor = new DeployedFilterJanitor(this.configuration);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.fs.delete(this.deployPath, true);
+    }
+
+    @Test
+    public void testLeasedDeploymentIsKept() throws Exception {
+        DeployedFilter filter = this.filterManager.deployFilter(new KeyOnlyFilter());
+        DeployedFilterJanitor.Summary summary = this.janitor.clean();
+        assertEquals(0, summary.getExpiredReferences());
+        assertEquals(0, summary.getDeletedJarDirectories());
+        assertTrue(this.fs.exists(getOnlyJar(filter).getRemoteJarPath()));
+        this.filterManager.undeployFilter(filter);
+    }
+
+    @Test
+    public void testExpiredDeploymentIsCleanedUp() throws Exception {
+        DeployedFilter abandoned = this.filterManager.deployFilter(new KeyOnlyFilter());
+        expire(abandoned);
+        DeployedFilterJanitor.Summary summary = this.janitor.clean();
+        assertEquals(1, summary.getExpiredReferences());
+        assertEquals(1, summary.getDeletedJarDirectories());
+        assertFalse(this.fs.exists(getOnlyJar(abandoned).getRemoteJarPath().getParent()));
+    }
+
+    @Test
+    public void testJarIsKeptForAnotherLeasedDeployment() throws Exception {
+        DeployedFilter abandoned = this.filterManager.deployFilter(new KeyOnlyFilter());
+        DeployedFilter leased = this.filterManager.deployFilter(new KeyOnlyFilter());
+        expire(abandoned);
+        DeployedFilterJanitor.Summary summary = this.janitor.clean();
+        assertEquals(1, summary.getExpiredReferences());
+        assertEquals(0, summary.getDeletedJarDirectories());
+        assertFalse(this.fs.exists(getOnlyJar(abandoned).getReferencePath()));
+        assertTrue(this.fs.exists(getOnlyJar(leased).getReferencePath()));
+        assertTrue(this.fs.exists(getOnlyJar(leased).getRemoteJarPath()));
+        this.filterManager.undeployFilter(leased);
+    }
+
+    @Test
+    public void testRenewedLeaseIsKept() throws Exception {
+        DeployedFilter filter = this.filterManager.deployFilter(new KeyOnlyFilter());
+        expire(filter);
+        this.filterManager.renewLease(filter);
+        assertEquals(0, this.janitor.clean().getExpiredReferences());
+        assertTrue(this.fs.exists(getOnlyJar(filter).getRemoteJarPath()));
+        this.filterManager.undeployFilter(filter);
+    }
+
+    @Test(expected = IOException.class)
+    public void testExpiredLeaseCannotBeRenewed() throws Exception {
+        DeployedFilter filter = this.filterManager.deployFilter(new KeyOnlyFilter());
+        expire(filter);
+        this.janitor.clean();
+        this.filterManager.renewLease(filter);
+    }
+
+    @Test
+    public void testUndeployAfterCleanup() throws Exception {
+        DeployedFilter filter = this.filterManager.deployFilter(new KeyOnlyFilter());
+        expire(filter);
+        this.janitor.clean();
+        this.filterManager.undeployFilter(filter);
+        assertFalse(this.fs.exists(getOnlyJar(filter).getRemoteJarPath()));
+    }
+
+    @Test
+    public void testOldLegacyDirectoriesAreDeleted() throws Exception {
+        long legacyMaxAge = DeployedFilterJanitor.DEFAULT_JANITOR_LEGACY_MAX_AGE_MS;
+        Path oldDirectory = createLegacyDirectory(System.currentTimeMillis() - 2L * legacyMaxAge, -1L);
+        Path newDirectory = createLegacyDirectory(System.currentTimeMillis(), 1L);
+        Path otherDirectory = new Path(this.deployPath, "other");
+        this.fs.mkdirs(otherDirectory);
+
+        assertEquals(1, this.janitor.clean().getDeletedLegacyDirectories());
+        assertFalse(this.fs.exists(oldDirectory));
+        assertTrue(this.fs.exists(newDirectory));
+        assertTrue(this.fs.exists(otherDirectory));
+    }
+
+    @Test
+    public void testOldTrashIsDeleted() throws Exception {
+        Path trashPath = new Path(this.deployPath, DeployedFilterManager.TRASH_DIRECTORY);
+        Path oldTrash = new Path(trashPath, "abc-" + (System.currentTimeMillis() - EXPIRED_MS) + "-1");
+        Path newTrash = new Path(trashPath, "abc-" + System.currentTimeMillis() + "--1");
+        this.fs.mkdirs(oldTrash);
+        this.fs.mkdirs(newTrash);
+
+        assertEquals(1, this.janitor.clean().getDeletedTrash());
+        assertFalse(this.fs.exists(oldTrash));
+        assertTrue(this.fs.exists(newTrash));
+    }
+
+    private Path createLegacyDirectory(long timestamp, long random) throws IOException {
+        Path directory = new Path(this.deployPath, timestamp + "-" + random);
+        this.fs.createNewFile(new Path(directory, "filter.jar"));
+        return directory;
+    }
+
+    /**
+     * Backdate the references of the deployment as though its client had died a while ago
+     */
+    private void expire(DeployedFilter filter) {
+        for (DeployedJar jar : filter.getJars()) {
+            File reference = new File(jar.getReferencePath().toUri());
+            assertTrue(reference.setLastModified(System.currentTimeMillis() - EXPIRED_MS));
+        }
+    }
+
+    private static DeployedJar getOnlyJar(DeployedFilter filter) {
+        assertEquals(1, filter.getJars().size());
+        return filter.getJars().get(0);
+    }
+}
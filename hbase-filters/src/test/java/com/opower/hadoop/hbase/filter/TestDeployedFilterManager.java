@@ -0,0 +1,174 @@
+package com.opower.hadoop.hbase.filter;
+
+import com.google.common.collect.Lists;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterBase;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the deployment lifecycle of the {@link DeployedFilterManager} against the local file system
+ *
+ * @author jeff@opower.com
+ */
+public class TestDeployedFilterManager {
+    private Configuration configuration;
+    private FileSystem fs;
+    private Path deployPath;
+    private DeployedFilterManager filterManager;
+
+    @Before
+    public void setUp() throws Exception {
+        File deployDirectory = File.createTempFile(getClass().getSimpleName(), "");
+        deployDirectory.delete();
+        this.deployPath = new Path(deployDirectory.toURI());
+        this.configuration = new Configuration();
+        this.configuration.set(DeployedFilterManager.DEPLOY_FILTER_PATH, this.deployPath.toString());
+        this.fs = FileSystem.getLocal(this.configuration);
+        this.filterManager = new DeployedFilterManager(this.configuration);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.fs.delete(this.deployPath, true);
+    }
+
+    @Test
+    public void testDeployingTheSameJarTwiceReusesIt() throws Exception {
+        DeployedJar first = getOnlyJar(this.filterManager.deployFilter(new KeyOnlyFilter()));
+        DeployedJar second = getOnlyJar(this.filterManager.deployFilter(new KeyOnlyFilter()));
+        assertEquals(first.getRemoteJarPath(), second.getRemoteJarPath());
+        assertEquals(first.getChecksum(), second.getChecksum());
+        assertFalse(first.getReferencePath().equals(second.getReferencePath()));
+        assertTrue(this.fs.exists(first.getRemoteJarPath()));
+        assertEquals(2, this.fs.listStatus(first.getReferencePath().getParent()).length);
+    }
+
+    @Test
+    public void testJarIsRetainedUntilTheLastUndeploy() throws Exception {
+        DeployedFilter first = this.filterManager.deployFilter(new KeyOnlyFilter());
+        DeployedFilter second = this.filterManager.deployFilter(new KeyOnlyFilter());
+        Path remoteJarPath = getOnlyJar(first).getRemoteJarPath();
+
+        this.filterManager.undeployFilter(first);
+        assertFalse(this.fs.exists(getOnlyJar(first).getReferencePath()));
+        assertTrue(this.fs.exists(remoteJarPath));
+
+        this.filterManager.undeployFilter(second);
+        assertFalse(this.fs.exists(remoteJarPath));
+        assertFalse(this.fs.exists(remoteJarPath.getParent()));
+    }
+
+    @Test
+    public void testRedeployAfterUndeploy() throws Exception {
+        DeployedFilter first = this.filterManager.deployFilter(new KeyOnlyFilter());
+        this.filterManager.undeployFilter(first);
+        DeployedFilter second = this.filterManager.deployFilter(new KeyOnlyFilter());
+        assertEquals(getOnlyJar(first).getRemoteJarPath(), getOnlyJar(second).getRemoteJarPath());
+        assertTrue(this.fs.exists(getOnlyJar(second).getRemoteJarPath()));
+        this.filterManager.undeployFilter(second);
+    }
+
+    @Test
+    public void testDependenciesAreDeployedOnceInOrder() throws Exception {
+        // Filter is in the same jar as KeyOnlyFilter, so that jar should not be deployed twice
+        DeployedFilter filter = this.filterManager.deployFilter(new KeyOnlyFilter(),
+                Filter.class, Lists.class, Filter.class);
+        List<DeployedJar> jars = filter.getJars();
+        assertEquals(2, jars.size());
+        assertFalse(jars.get(0).getChecksum().equals(jars.get(1).getChecksum()));
+        for (DeployedJar jar : jars) {
+            assertTrue(this.fs.exists(jar.getRemoteJarPath()));
+        }
+
+        this.filterManager.undeployFilter(filter);
+        for (DeployedJar jar : jars) {
+            assertFalse(this.fs.exists(jar.getRemoteJarPath()));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDependencyOutsideOfAJar() throws Exception {
+        this.filterManager.deployFilter(new KeyOnlyFilter(), getClass());
+    }
+
+    @Test
+    public void testDeployingAClosure() throws Exception {
+        DeployedFilter first = this.filterManager.deployFilterClosure(new KeyOnlyFilter(),
+                Collections.<String>emptyList());
+        DeployedFilter second = this.filterManager.deployFilterClosure(new KeyOnlyFilter(),
+                Collections.<String>emptyList());
+        DeployedJar closureJar = getOnlyJar(first);
+        assertEquals(closureJar.getRemoteJarPath(), getOnlyJar(second).getRemoteJarPath());
+
+        JarFile jarFile = new JarFile(new File(closureJar.getRemoteJarPath().toUri()));
+        try {
+            assertNotNull(jarFile.getEntry(KeyOnlyFilter.class.getName().replace('.', '/') + ".class"));
+            assertNotNull(jarFile.getEntry(FilterBase.class.getName().replace('.', '/') + ".class"));
+        }
+        finally {
+            jarFile.close();
+        }
+        DeployedJar wholeJar = getOnlyJar(this.filterManager.deployFilter(new KeyOnlyFilter()));
+        assertTrue(this.fs.getFileStatus(closureJar.getRemoteJarPath()).getLen()
+                < this.fs.getFileStatus(wholeJar.getRemoteJarPath()).getLen());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testClosureWithUnknownIncludedClass() throws Exception {
+        this.filterManager.deployFilterClosure(new KeyOnlyFilter(), Collections.singletonList("com.opower.DoesNotExist"));
+    }
+
+    @Test
+    public void testFailedUploadLeavesNoReference() throws Exception {
+        this.configuration.setClass("fs.file.impl", FailingUploadFileSystem.class, FileSystem.class);
+        this.configuration.setBoolean("fs.file.impl.disable.cache", true);
+        try {
+            new DeployedFilterManager(this.configuration).deployFilter(new KeyOnlyFilter());
+            fail("The upload should have failed");
+        }
+        catch (IOException ioe) {
+            assertEquals(FailingUploadFileSystem.MESSAGE, ioe.getMessage());
+        }
+        Path jarsPath = new Path(this.deployPath, DeployedFilterManager.JARS_DIRECTORY);
+        for (FileStatus contentDirectory : this.fs.listStatus(jarsPath)) {
+            Path referencesPath = new Path(contentDirectory.getPath(), DeployedFilterManager.REFERENCES_DIRECTORY);
+            assertEquals(0, this.fs.listStatus(referencesPath).length);
+        }
+    }
+
+    /**
+     * A local file system that fails every upload
+     */
+    public static class FailingUploadFileSystem extends LocalFileSystem {
+        static final String MESSAGE = "Failing the upload";
+
+        @Override
+        public void copyFromLocalFile(boolean delSrc, Path src, Path dst) throws IOException {
+            throw new IOException(MESSAGE);
+        }
+    }
+
+    private static DeployedJar getOnlyJar(DeployedFilter filter) {
+        assertEquals(1, filter.getJars().size());
+        return filter.getJars().get(0);
+    }
+}
@@ -0,0 +1,99 @@
+package com.opower.hadoop.hbase.filter;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
+
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the registration of deployments under handles by the {@link DeployedFilterManager} and their
+ * resolution by the {@link DeploymentHandleCache}
+ *
+ * @author jeff@opower.com
+ */
+public class TestDeploymentHandleCache {
+    private Configuration configuration;
+    private FileSystem fs;
+    private Path deployPath;
+    private DeployedFilterManager filterManager;
+    private DeploymentHandleCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        File deployDirectory = File.createTempFile(getClass().getSimpleName(), "");
+        deployDirectory.delete();
+        this.deployPath = new Path(deployDirectory.toURI());
+        this.configuration = new Configuration();
+        this.configuration.set(DeployedFilterManager.DEPLOY_FILTER_PATH, this.deployPath.toString());
+        this.fs = FileSystem.getLocal(this.configuration);
+        this.filterManager = new DeployedFilterManager(this.configuration);
+        this.cache = new DeploymentHandleCache(this.configuration);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.fs.delete(this.deployPath, true);
+    }
+
+    @Test
+    public void testHandleResolvesToTheDeployment() throws Exception {
+        DeployedFilter filter = this.filterManager.deployFilter(new KeyOnlyFilter());
+        DeploymentDescriptor descriptor = this.cache.get(filter.getHandle());
+        assertEquals(KeyOnlyFilter.class.getName(), descriptor.getFilterClassName());
+        assertEquals(1, descriptor.getJars().size());
+        assertEquals(filter.getJars().get(0).getRemoteJarPath(), descriptor.getJars().get(0).getRemoteJarPath());
+        assertEquals(filter.getJars().get(0).getChecksum(), descriptor.getJars().get(0).getChecksum());
+        assertSame(descriptor, this.cache.get(filter.getHandle()));
+        assertEquals(1, this.cache.size());
+    }
+
+    @Test
+    public void testSameDeploymentGetsTheSameHandle() throws Exception {
+        DeployedFilter first = this.filterManager.deployFilter(new KeyOnlyFilter());
+        DeployedFilter second = this.filterManager.deployFilter(new KeyOnlyFilter());
+        assertEquals(first.getHandle(), second.getHandle());
+    }
+
+    @Test
+    public void testWireFormatOnlyCarriesTheHandle() throws Exception {
+        KeyOnlyFilter wrappedFilter = new KeyOnlyFilter();
+        DataOutputBuffer wrappedOut = new DataOutputBuffer();
+        wrappedFilter.write(wrappedOut);
+        DeployedFilter filter = this.filterManager.deployFilter(wrappedFilter);
+        DataOutputBuffer out = new DataOutputBuffer();
+        filter.write(out);
+        // one byte for the version and eight for the handle, followed by the wrapped filter
+        assertEquals(1 + 8 + wrappedOut.getLength(), out.getLength());
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnregisteredHandle() throws Exception {
+        this.cache.get(42L);
+    }
+
+    @Test(expected = IOException.class)
+    public void testDescriptorThatDoesNotMatchItsHandle() throws Exception {
+        DeployedFilter filter = this.filterManager.deployFilter(new KeyOnlyFilter());
+        Path handlePath = DeployedFilterManager.getHandlePath(this.fs, this.configuration, filter.getHandle());
+        FSDataOutputStream out = this.fs.create(handlePath, true);
+        try {
+            new DeploymentDescriptor(filter.getJars(), "com.opower.SomeOtherFilter").write(out);
+        }
+        finally {
+            out.close();
+        }
+        this.cache.get(filter.getHandle());
+    }
+}
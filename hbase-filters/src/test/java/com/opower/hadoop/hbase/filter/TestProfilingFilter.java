@@ -0,0 +1,104 @@
+package com.opower.hadoop.hbase.filter;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.Filter.ReturnCode;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.PrefixFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link ProfilingFilter}
+ *
+ * @author jeff@opower.com
+ */
+public class TestProfilingFilter {
+    private static final byte[] ROW = Bytes.toBytes("row");
+    private static final byte[] OTHER_ROW = Bytes.toBytes("other");
+
+    @Test
+    public void testCallsAreCountedOnReset() throws Exception {
+        String profileName = uniqueProfileName();
+        ProfilingFilter filter = new ProfilingFilter(profileName, new PrefixFilter(ROW), 0);
+        FilterProfileMetrics.Profile profile = ProfilingFilter.getMetrics().getProfile(profileName);
+
+        assertFalse(filter.filterRowKey(ROW, 0, ROW.length));
+        assertEquals(ReturnCode.INCLUDE, filter.filterKeyValue(new KeyValue(ROW, 0L)));
+        assertEquals(ReturnCode.INCLUDE, filter.filterKeyValue(new KeyValue(ROW, 0L)));
+        assertFalse(filter.filterRow());
+        assertEquals(0L, profile.getCount(FilterProfileMetrics.ROW_KEY_CALLS));
+
+        filter.reset();
+        assertTrue(filter.filterRowKey(OTHER_ROW, 0, OTHER_ROW.length));
+        filter.reset();
+        assertEquals(2L, profile.getCount(FilterProfileMetrics.ROW_KEY_CALLS));
+        assertEquals(1L, profile.getCount(FilterProfileMetrics.ROW_KEYS_FILTERED));
+        assertEquals(1L, profile.getCount(FilterProfileMetrics.ROW_CALLS));
+        assertEquals(0L, profile.getCount(FilterProfileMetrics.ROWS_FILTERED));
+        assertEquals(2L, profile.getCount(FilterProfileMetrics.KEY_VALUE_RETURN_CODES + ReturnCode.INCLUDE.ordinal()));
+        assertEquals(0L, profile.drainLatencies(FilterProfileMetrics.FILTER_ROW_KEY).getCount());
+    }
+
+    @Test
+    public void testOneCallInNIsSampled() throws Exception {
+        String profileName = uniqueProfileName();
+        ProfilingFilter filter = new ProfilingFilter(profileName, new PrefixFilter(ROW), 3);
+        for (int i = 0; i < 7; i++) {
+            filter.filterKeyValue(new KeyValue(ROW, 0L));
+        }
+        FilterProfileMetrics.Profile profile = ProfilingFilter.getMetrics().getProfile(profileName);
+        assertEquals(2L, profile.drainLatencies(FilterProfileMetrics.FILTER_KEY_VALUE).getCount());
+        assertEquals(0L, profile.drainLatencies(FilterProfileMetrics.FILTER_ROW_KEY).getCount());
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        String profileName = uniqueProfileName();
+        ProfilingFilter written = new ProfilingFilter(profileName, new PrefixFilter(ROW), 10);
+        DataOutputBuffer out = new DataOutputBuffer();
+        written.write(out);
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(out.getData(), out.getLength());
+        ProfilingFilter read = new ProfilingFilter();
+        read.readFields(in);
+
+        assertEquals(profileName, read.getProfileName());
+        assertTrue(read.getWrappedFilter() instanceof PrefixFilter);
+        assertFalse(read.filterRowKey(ROW, 0, ROW.length));
+        assertTrue(read.filterRowKey(OTHER_ROW, 0, OTHER_ROW.length));
+    }
+
+    @Test
+    public void testProfileAllWrapsEveryFilterInTheTree() {
+        Filter filter = new FilterList(FilterList.Operator.MUST_PASS_ALL, Arrays.<Filter>asList(
+                    new PrefixFilter(ROW),
+                    new FilterList(FilterList.Operator.MUST_PASS_ONE, Arrays.<Filter>asList(new KeyOnlyFilter()))));
+        FilterList profiled = (FilterList)ProfilingFilter.profileAll(filter, 0);
+        assertEquals(FilterList.Operator.MUST_PASS_ALL, profiled.getOperator());
+        ProfilingFilter prefixFilter = (ProfilingFilter)profiled.getFilters().get(0);
+        assertEquals(PrefixFilter.class.getName(), prefixFilter.getProfileName());
+        FilterList nested = (FilterList)profiled.getFilters().get(1);
+        assertTrue(nested.getFilters().get(0) instanceof ProfilingFilter);
+        assertNull(ProfilingFilter.profileAll(null, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeSamplingRate() {
+        new ProfilingFilter(new KeyOnlyFilter(), -1);
+    }
+
+    private static String uniqueProfileName() {
+        return "test-" + UUID.randomUUID();
+    }
+}
@@ -0,0 +1,67 @@
+package com.opower.hadoop.hbase.filter;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.filter.PrefixFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link SelectivityEndpoint} and the {@link FilterSelectivity} it serves
+ *
+ * @author jeff@opower.com
+ */
+public class TestSelectivityEndpoint {
+    private static final byte[] ROW = Bytes.toBytes("row");
+    private static final byte[] OTHER_ROW = Bytes.toBytes("other");
+
+    @Test
+    public void testUnknownProfileHasNoCounts() throws Exception {
+        FilterSelectivity selectivity = new SelectivityEndpoint().getSelectivity(UUID.randomUUID().toString());
+        assertNotNull(selectivity.getServer());
+        assertEquals(0L, selectivity.getRowsScanned());
+        assertEquals(0L, selectivity.getKeyValuesScanned());
+    }
+
+    @Test
+    public void testCountsOfProfile() throws Exception {
+        String profileName = UUID.randomUUID().toString();
+        ProfilingFilter filter = new ProfilingFilter(profileName, new PrefixFilter(ROW), 0);
+        filter.filterRowKey(ROW, 0, ROW.length);
+        filter.filterKeyValue(new KeyValue(ROW, 0L));
+        filter.filterRow();
+        filter.reset();
+        filter.filterRowKey(OTHER_ROW, 0, OTHER_ROW.length);
+        filter.reset();
+
+        FilterSelectivity selectivity = new SelectivityEndpoint().getSelectivity(profileName);
+        assertEquals(2L, selectivity.getRowsScanned());
+        assertEquals(1L, selectivity.getRowsFiltered());
+        assertEquals(1L, selectivity.getKeyValuesScanned());
+        assertEquals(1L, selectivity.getKeyValuesIncluded());
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        FilterSelectivity written = new FilterSelectivity("server", 10L, 4L, 30L, 12L);
+        DataOutputBuffer out = new DataOutputBuffer();
+        written.write(out);
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(out.getData(), out.getLength());
+        FilterSelectivity read = new FilterSelectivity();
+        read.readFields(in);
+
+        assertEquals("server", read.getServer());
+        assertEquals(10L, read.getRowsScanned());
+        assertEquals(4L, read.getRowsFiltered());
+        assertEquals(30L, read.getKeyValuesScanned());
+        assertEquals(12L, read.getKeyValuesIncluded());
+    }
+}
@@ -11,6 +11,7 @@ import org.apache.hadoop.hbase.client.HTablePool;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.filter.InclusiveStopFilter;
 import org.apache.hadoop.hbase.util.Bytes;
 
 import org.junit.After;
@@ -20,6 +21,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import com.opower.hadoop.hbase.filter.ProfilingFilter;
 import com.opower.hadoop.hbase.test.HBaseTestRunner;
 
 import static org.junit.Assert.assertThat;
@@ -184,6 +186,45 @@ public class IntTestDefaultQueryPlanner {
         runScanAssertions(query, makeMostRecentExpectedResults(ROWS), ROWS.length);
     }
 
+    @Test
+    public void testExplainAnalyze() throws Exception {
+        Query query = this.queryPlanner.parse("scan familyA:oneValueA from " + TABLE_NAME + " where rowkey < {id}");
+        query.setString("id", "cherry");
+        try {
+            QueryPlan plan = query.explain();
+            assertThat(plan.getTableName(), is(TABLE_NAME));
+            assertThat(plan.getRegions(), is(1));
+            assertThat(plan.getTotalRegions(), is(1));
+
+            QueryAnalysis analysis = query.explainAnalyze();
+            assertThat(analysis.getRows(), is(4L));
+            assertThat(analysis.getKeyValues(), is(4L));
+            assertThat(analysis.getFirstResultNanos() >= analysis.getOpenScannerNanos(), is(true));
+            assertThat(analysis.getScanNanos() >= analysis.getFirstResultNanos(), is(true));
+        }
+        finally {
+            query.close();
+        }
+    }
+
+    @Test
+    public void testExplainShowsTheFiltersThatRun() throws Exception {
+        DefaultQueryPlanner profilingPlanner =
+            new DefaultQueryPlanner(new HTablePool(hbaseTestingUtility.getConfiguration(), 1, tableFactory));
+        profilingPlanner.enableFilterProfiling(0);
+        Query query = profilingPlanner.parse("scan from " + TABLE_NAME + " where rowkey <= {id}");
+        query.setString("id", "cherry");
+        try {
+            QueryPlan.FilterNode filter = query.explain().getFilter();
+            assertThat(filter.getType(), is(ProfilingFilter.class.getName()));
+            assertThat(filter.getDescription().contains(InclusiveStopFilter.class.getSimpleName()), is(true));
+        }
+        finally {
+            query.close();
+            profilingPlanner.close();
+        }
+    }
+
     @Test
     public void testSingleRowScan() throws Exception {
         Query query = this.queryPlanner.parse("scan from " + TABLE_NAME + " where rowkey = {id}");
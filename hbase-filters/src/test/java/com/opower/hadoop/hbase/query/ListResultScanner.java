@@ -0,0 +1,61 @@
+package com.opower.hadoop.hbase.query;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A scanner over results that are already in memory
+ *
+ * @author jeff@opower.com
+ */
+final class ListResultScanner implements ResultScanner {
+    private static final byte[] FAMILY = Bytes.toBytes("d");
+    private static final byte[] QUALIFIER = Bytes.toBytes("q");
+
+    private final Iterator<Result> results;
+
+    ListResultScanner(Result... results) {
+        this.results = Arrays.asList(results).iterator();
+    }
+
+    /**
+     * @return a result for the row, with the given number of versions of a single column
+     */
+    static Result createResult(String row, int keyValues) {
+        KeyValue[] raw = new KeyValue[keyValues];
+        for (int i = 0; i < keyValues; i++) {
+            raw[i] = new KeyValue(Bytes.toBytes(row), FAMILY, QUALIFIER, i, Bytes.toBytes(i));
+        }
+        return new Result(raw);
+    }
+
+    @Override
+    public Result next() throws IOException {
+        return this.results.hasNext() ? this.results.next() : null;
+    }
+
+    @Override
+    public Result[] next(int nbRows) throws IOException {
+        List<Result> batch = new ArrayList<Result>();
+        while (batch.size() < nbRows && this.results.hasNext()) {
+            batch.add(this.results.next());
+        }
+        return batch.toArray(new Result[batch.size()]);
+    }
+
+    @Override
+    public void close() {}
+
+    @Override
+    public Iterator<Result> iterator() {
+        return this.results;
+    }
+}
@@ -0,0 +1,71 @@
+package com.opower.hadoop.hbase.query;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import com.opower.common.metrics.Histogram;
+import com.opower.hadoop.hbase.filter.FilterSelectivity;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests how the {@link DefaultQueryPlanner} plans scans by the selectivity of their filters
+ *
+ * @author jeff@opower.com
+ */
+public class TestDefaultQueryPlanner {
+    private static final Histogram.Snapshot NO_SCANS = new Histogram().snapshot();
+
+    @Test
+    public void testCachingIsLeftAloneWithoutSelectivity() {
+        assertEquals(0, DefaultQueryPlanner.chooseCaching(null, NO_SCANS));
+        assertEquals(0, DefaultQueryPlanner.chooseCaching(new FilterSelectivity("s", 0L, 0L, 0L, 0L), NO_SCANS));
+    }
+
+    @Test
+    public void testCachingFollowsSelectivity() {
+        // Half of the rows are returned, which would be 5000 rows per fetch, but that is capped
+        assertEquals((int)DefaultQueryPlanner.MAX_CACHING, DefaultQueryPlanner.chooseCaching(
+                    new FilterSelectivity("s", 1000L, 500L, 0L, 0L), NO_SCANS));
+        // One in a thousand rows is returned
+        assertEquals(10, DefaultQueryPlanner.chooseCaching(
+                    new FilterSelectivity("s", 1000000L, 999000L, 0L, 0L), NO_SCANS));
+        // Nothing is ever returned, but every fetch still returns something
+        assertEquals(1, DefaultQueryPlanner.chooseCaching(
+                    new FilterSelectivity("s", 1000L, 1000L, 0L, 0L), NO_SCANS));
+    }
+
+    @Test
+    public void testCachingIsCappedByRowsPerScan() {
+        Histogram rowsPerScan = new Histogram();
+        rowsPerScan.record(5L);
+        rowsPerScan.record(6L);
+        // 6 falls in the bucket that goes up to 7
+        assertEquals(8, DefaultQueryPlanner.chooseCaching(
+                    new FilterSelectivity("s", 1000L, 0L, 0L, 0L), rowsPerScan.snapshot()));
+    }
+
+    @Test
+    public void testSelectivityIsSummedOverServers() {
+        QueryMetrics.TemplateMetrics metrics = new QueryMetrics().getTemplate("scan from t");
+        assertNull(metrics.getSelectivity());
+        metrics.updateSelectivity(Arrays.asList(new FilterSelectivity("a", 10L, 5L, 20L, 10L),
+                    new FilterSelectivity("b", 1L, 1L, 2L, 0L)));
+        metrics.updateSelectivity(Arrays.asList(new FilterSelectivity("a", 20L, 10L, 40L, 20L)));
+
+        FilterSelectivity selectivity = metrics.getSelectivity();
+        assertEquals(21L, selectivity.getRowsScanned());
+        assertEquals(11L, selectivity.getRowsFiltered());
+        assertEquals(42L, selectivity.getKeyValuesScanned());
+        assertEquals(20L, selectivity.getKeyValuesIncluded());
+    }
+
+    @Test
+    public void testSelectivityRefreshIsClaimedOnce() {
+        QueryMetrics.TemplateMetrics metrics = new QueryMetrics().getTemplate("scan from t");
+        assertTrue(metrics.claimSelectivityRefresh(100000L, 1000L));
+        assertFalse(metrics.claimSelectivityRefresh(100500L, 1000L));
+        assertTrue(metrics.claimSelectivityRefresh(101000L, 1000L));
+    }
+}
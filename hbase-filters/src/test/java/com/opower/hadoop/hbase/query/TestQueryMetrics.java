@@ -0,0 +1,98 @@
+package com.opower.hadoop.hbase.query;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link QueryMetrics} along with the {@link InstrumentedResultScanner} that feeds them
+ *
+ * @author jeff@opower.com
+ */
+public class TestQueryMetrics {
+    private QueryMetrics queryMetrics;
+
+    @Before
+    public void setUp() {
+        this.queryMetrics = new QueryMetrics();
+    }
+
+    @Test
+    public void testNormalize() {
+        assertEquals("scan from t where rowkey = {id}",
+                QueryMetrics.normalize("  scan from\tt\n  where rowkey =   {id} "));
+    }
+
+    @Test
+    public void testParsedQueriesAreGroupedByTemplate() {
+        DefaultQueryPlanner planner = new DefaultQueryPlanner(null, this.queryMetrics);
+        planner.parse("scan from t where rowkey = {id}");
+        planner.parse("scan   from t\nwhere rowkey = {id}");
+        planner.parse("scan from other");
+
+        assertEquals(2, this.queryMetrics.getQueryTemplateCount());
+        QueryTemplateStatistics statistics = getTemplate("scan from t where rowkey = {id}");
+        assertEquals(2L, statistics.getParseNanos().getCount());
+        assertEquals(0L, statistics.getScannersOpened());
+    }
+
+    @Test
+    public void testTemplatesAreBounded() {
+        for (int i = 0; i < QueryMetrics.MAX_TEMPLATES + 10; i++) {
+            this.queryMetrics.getTemplate("scan from t" + i);
+        }
+        assertEquals(QueryMetrics.MAX_TEMPLATES + 1, this.queryMetrics.getQueryTemplateCount());
+        assertNotNull(getTemplate(QueryMetrics.OTHER_TEMPLATES));
+    }
+
+    @Test
+    public void testScannerIsMeasuredOnceExhausted() throws Exception {
+        QueryMetrics.TemplateMetrics metrics = this.queryMetrics.getTemplate("scan from t");
+        ResultScanner scanner = new InstrumentedResultScanner(new ListResultScanner(
+                    ListResultScanner.createResult("a", 2), ListResultScanner.createResult("b", 1)),
+                metrics, System.nanoTime(), 0L, 0L, null);
+        int rows = 0;
+        for (Result result : scanner) {
+            rows++;
+        }
+        assertEquals(2, rows);
+        scanner.close();
+
+        QueryTemplateStatistics statistics = getTemplate("scan from t");
+        assertEquals(1L, statistics.getScannersOpened());
+        assertEquals(2L, statistics.getRows());
+        assertEquals(3L, statistics.getKeyValues());
+        assertTrue(statistics.getBytes() > 0L);
+        assertEquals(1L, statistics.getFirstResultNanos().getCount());
+        assertEquals(1L, statistics.getScanNanos().getCount());
+        assertEquals(3L, statistics.getRowsPerScan().getMax());
+    }
+
+    @Test
+    public void testScannerClosedEarlyIsMeasured() throws Exception {
+        QueryMetrics.TemplateMetrics metrics = this.queryMetrics.getTemplate("scan from t");
+        ResultScanner scanner = new InstrumentedResultScanner(new ListResultScanner(
+                    ListResultScanner.createResult("a", 1), ListResultScanner.createResult("b", 1)),
+                metrics, System.nanoTime(), 0L, 0L, null);
+        assertEquals(1, scanner.next(1).length);
+        scanner.close();
+
+        QueryTemplateStatistics statistics = getTemplate("scan from t");
+        assertEquals(1L, statistics.getRows());
+        assertEquals(1L, statistics.getScanNanos().getCount());
+    }
+
+    private QueryTemplateStatistics getTemplate(String template) {
+        for (QueryTemplateStatistics statistics : this.queryMetrics.getQueryTemplates()) {
+            if (statistics.getTemplate().equals(template)) {
+                return statistics;
+            }
+        }
+        fail("No statistics for " + template);
+        return null;
+    }
+}
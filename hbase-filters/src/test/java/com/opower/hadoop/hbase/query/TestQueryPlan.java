@@ -0,0 +1,114 @@
+package com.opower.hadoop.hbase.query;
+
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link QueryPlan} of queries planned by the {@link QueryBuilder}
+ *
+ * @author jeff@opower.com
+ */
+public class TestQueryPlan {
+    private static final byte[][] REGION_START_KEYS = new byte[][] {
+        HConstants.EMPTY_START_ROW,
+        Bytes.toBytes("c"),
+        Bytes.toBytes("m"),
+        Bytes.toBytes("t"),
+    };
+
+    private final Map<String, byte[]> parameters = new HashMap<String, byte[]>();
+    private final Map<String, Long> timestamps = new HashMap<String, Long>();
+
+    private QueryPlan explain(String query) {
+        Scan scan = QueryBuilder.parse(query).planScan(this.parameters, this.timestamps);
+        return new QueryPlan("t", scan, REGION_START_KEYS);
+    }
+
+    @Test
+    public void testCountRegions() {
+        byte[] empty = HConstants.EMPTY_START_ROW;
+        assertEquals(4, QueryPlan.countRegions(REGION_START_KEYS, empty, empty));
+        assertEquals(1, QueryPlan.countRegions(REGION_START_KEYS, Bytes.toBytes("a"), Bytes.toBytes("b")));
+        assertEquals(1, QueryPlan.countRegions(REGION_START_KEYS, Bytes.toBytes("c"), Bytes.toBytes("d")));
+        assertEquals(1, QueryPlan.countRegions(REGION_START_KEYS, Bytes.toBytes("a"), Bytes.toBytes("c")));
+        assertEquals(2, QueryPlan.countRegions(REGION_START_KEYS, Bytes.toBytes("b"), Bytes.toBytes("d")));
+        assertEquals(3, QueryPlan.countRegions(REGION_START_KEYS, Bytes.toBytes("d"), empty));
+        assertEquals(2, QueryPlan.countRegions(REGION_START_KEYS, empty, Bytes.toBytes("m")));
+        assertEquals(1, QueryPlan.countRegions(REGION_START_KEYS, Bytes.toBytes("z"), empty));
+    }
+
+    @Test
+    public void testSingleRowQuery() {
+        this.parameters.put("id", Bytes.toBytes("nectarine"));
+        QueryPlan plan = explain("scan from t where rowkey = {id}");
+
+        assertEquals("t", plan.getTableName());
+        assertArrayEquals(Bytes.toBytes("nectarine"), plan.getStartRow());
+        assertArrayEquals(Bytes.add(Bytes.toBytes("nectarine"), new byte[] { 0 }), plan.getStopRow());
+        assertTrue(plan.getColumns().isEmpty());
+        assertNull(plan.getFilter());
+        assertEquals(1, plan.getRegions());
+        assertEquals(4, plan.getTotalRegions());
+        assertEquals("Scan t\n"
+                + "  rows: ['nectarine', 'nectarine\\x00')\n"
+                + "  columns: *\n"
+                + "  time range: [0, *)\n"
+                + "  max versions: 1\n"
+                + "  regions: 1 of 4\n"
+                + "  filter: none\n",
+                plan.toString());
+    }
+
+    @Test
+    public void testColumnsAndFilterTree() {
+        this.parameters.put("id", Bytes.toBytes("cherry"));
+        this.timestamps.put("start", 100L);
+        this.timestamps.put("stop", 200L);
+        QueryPlan plan = explain("scan 2 versions of a:x between {start} and {stop}, all versions of b:p* between "
+                + "{start} and {stop} from t where rowkey > {id}");
+
+        assertEquals(3, plan.getRegions());
+        assertEquals(100L, plan.getMinTimestamp());
+        assertEquals(200L, plan.getMaxTimestamp());
+        assertEquals(Integer.MAX_VALUE, plan.getMaxVersions());
+        assertEquals(Arrays.asList("a", "b"), Arrays.asList(plan.getColumns().keySet().toArray()));
+
+        QueryPlan.FilterNode root = plan.getFilter();
+        assertEquals(FilterList.class.getName(), root.getType());
+        assertEquals(FilterList.Operator.MUST_PASS_ALL, root.getOperator());
+        List<QueryPlan.FilterNode> children = root.getChildren();
+        assertEquals(2, children.size());
+        assertEquals("RowFilter(GREATER, 'cherry')", children.get(0).getDescription());
+        assertEquals(Collections.emptyList(), children.get(0).getChildren());
+        assertEquals(FilterList.Operator.MUST_PASS_ONE, children.get(1).getOperator());
+        assertEquals(2, children.get(1).getChildren().size());
+        assertTrue(plan.toString().contains("  filter:\n    FilterList(MUST_PASS_ALL)\n"
+                    + "      RowFilter(GREATER, 'cherry')\n      FilterList(MUST_PASS_ONE)\n"));
+    }
+
+    @Test
+    public void testUnknownRegions() {
+        Scan scan = new Scan();
+        scan.addColumn(Bytes.toBytes("a"), Bytes.toBytes("x"));
+        scan.addFamily(Bytes.toBytes("b"));
+        QueryPlan plan = new QueryPlan("t", scan, null);
+
+        assertEquals(QueryPlan.UNKNOWN_REGIONS, plan.getRegions());
+        assertEquals(Arrays.asList("x"), plan.getColumns().get("a"));
+        assertEquals(Collections.emptyList(), plan.getColumns().get("b"));
+        assertTrue(plan.toString().contains("  columns: a:x, b:*\n"));
+        assertTrue(plan.toString().contains("  regions: unknown\n"));
+    }
+}
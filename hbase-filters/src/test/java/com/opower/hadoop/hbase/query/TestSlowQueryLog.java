@@ -0,0 +1,179 @@
+package com.opower.hadoop.hbase.query;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link SlowQueryLog}
+ *
+ * @author jeff@opower.com
+ */
+public class TestSlowQueryLog {
+    private static final String QUERY = "scan from t where rowkey = {id}";
+    private static final String TIMESTAMP_QUERY = "scan f:q between {start} and {stop} from t where rowkey = {id}";
+
+    private File directory;
+    private File logFile;
+    private Configuration configuration;
+    private QueryMetrics.TemplateMetrics metrics;
+
+    @Before
+    public void setUp() throws IOException {
+        this.directory = File.createTempFile("slow-query-log", "");
+        this.directory.delete();
+        this.directory.mkdirs();
+        this.logFile = new File(this.directory, "slow.log");
+        this.configuration = new Configuration(false);
+        this.configuration.set(SlowQueryLog.SLOW_QUERY_LOG_PATH, this.logFile.getPath());
+        this.configuration.setLong(SlowQueryLog.SLOW_QUERY_FIRST_RESULT_MS, -1L);
+        this.configuration.setLong(SlowQueryLog.SLOW_QUERY_TOTAL_MS, -1L);
+        this.configuration.setLong(SlowQueryLog.SLOW_QUERY_ROWS, 1L);
+        this.metrics = new QueryMetrics().getTemplate(QUERY);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtil.fullyDelete(this.directory);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPathIsRequired() {
+        new SlowQueryLog(new Configuration(false));
+    }
+
+    @Test
+    public void testOnlySlowQueriesAreLogged() throws Exception {
+        SlowQueryLog slowQueryLog = new SlowQueryLog(this.configuration);
+        run(slowQueryLog, "fast", 1);
+        run(slowQueryLog, "slow\"one", 2);
+        slowQueryLog.close();
+
+        List<String> lines = readLines(this.logFile);
+        assertEquals(1, lines.size());
+        String line = lines.get(0);
+        assertTrue(line, line.startsWith("{\"time\":\""));
+        assertTrue(line, line.contains(",\"query\":\"" + QUERY + "\",\"parameters\":{\"id\":\"slow\\\"one\"}"));
+        assertTrue(line, line.contains(",\"plan\":{\"table\":\"t\",\"startRow\":\"slow\\\"one\","));
+        assertTrue(line, line.contains(",\"planNanos\":5,\"openScannerNanos\":7,"));
+        assertTrue(line, line.contains(",\"rows\":2,\"keyValues\":2,"));
+        assertEquals(0L, slowQueryLog.getDropped());
+    }
+
+    @Test
+    public void testRedactedParametersAreNotLogged() throws Exception {
+        this.configuration.set(SlowQueryLog.SLOW_QUERY_LOG_REDACT, "other, id");
+        SlowQueryLog slowQueryLog = new SlowQueryLog(this.configuration);
+        run(slowQueryLog, "secret", 2);
+        slowQueryLog.close();
+
+        String line = readLines(this.logFile).get(0);
+        assertFalse(line, line.contains("secret"));
+        assertTrue(line, line.contains("\"parameters\":{\"id\":\"<redacted>\"}"));
+        assertTrue(line, line.contains("\"plan\":\"<redacted>\""));
+    }
+
+    @Test
+    public void testPlanIsNotLoggedWhenATimestampIsRedacted() throws Exception {
+        this.configuration.set(SlowQueryLog.SLOW_QUERY_LOG_REDACT, "start");
+        SlowQueryLog slowQueryLog = new SlowQueryLog(this.configuration);
+        Map<String, Long> timestamps = new HashMap<String, Long>();
+        timestamps.put("start", 31415926L);
+        timestamps.put("stop", 27182818L);
+        run(slowQueryLog, TIMESTAMP_QUERY, "row", timestamps, 2);
+        slowQueryLog.close();
+
+        String line = readLines(this.logFile).get(0);
+        assertFalse(line, line.contains("31415926"));
+        assertTrue(line, line.contains("\"timestamps\":{"));
+        assertTrue(line, line.contains("\"stop\":27182818"));
+        assertTrue(line, line.contains("\"plan\":\"<redacted>\""));
+    }
+
+    @Test
+    public void testLogRollsOver() throws Exception {
+        this.configuration.setLong(SlowQueryLog.SLOW_QUERY_LOG_MAX_BYTES, 1L);
+        this.configuration.setInt(SlowQueryLog.SLOW_QUERY_LOG_MAX_FILES, 2);
+        SlowQueryLog slowQueryLog = new SlowQueryLog(this.configuration);
+        for (int i = 0; i < 4; i++) {
+            run(slowQueryLog, "row" + i, 2);
+        }
+        slowQueryLog.close();
+
+        assertTrue(readLines(this.logFile).get(0).contains("row3"));
+        assertTrue(readLines(new File(this.logFile.getPath() + ".1")).get(0).contains("row2"));
+        assertTrue(readLines(new File(this.logFile.getPath() + ".2")).get(0).contains("row1"));
+        assertFalse(new File(this.logFile.getPath() + ".3").exists());
+    }
+
+    @Test
+    public void testQueriesAreDroppedOnceClosed() throws Exception {
+        SlowQueryLog slowQueryLog = new SlowQueryLog(this.configuration);
+        slowQueryLog.close();
+        run(slowQueryLog, "late", 2);
+        assertEquals(1L, slowQueryLog.getDropped());
+        assertFalse(this.logFile.exists());
+    }
+
+    @Test
+    public void testAppendString() {
+        StringBuilder buf = new StringBuilder();
+        SlowQueryLog.appendString(buf, "a\"b\\c\nd\u0001");
+        assertEquals("\"a\\\"b\\\\c\\nd\\u0001\"", buf.toString());
+    }
+
+    private void run(SlowQueryLog slowQueryLog, String id, int rows) throws IOException {
+        run(slowQueryLog, QUERY, id, new HashMap<String, Long>(), rows);
+    }
+
+    private void run(SlowQueryLog slowQueryLog, String query, String id, Map<String, Long> timestamps, int rows)
+        throws IOException {
+        Map<String, byte[]> parameters = new HashMap<String, byte[]>();
+        parameters.put("id", Bytes.toBytes(id));
+        SlowQueryLog.Execution execution = slowQueryLog.newExecution(query, QueryBuilder.parse(query), parameters,
+                timestamps);
+        Result[] results = new Result[rows];
+        for (int i = 0; i < rows; i++) {
+            results[i] = ListResultScanner.createResult(id, 1);
+        }
+        InstrumentedResultScanner scanner = new InstrumentedResultScanner(new ListResultScanner(results), this.metrics,
+                System.nanoTime(), 5L, 7L, execution);
+        assertEquals(rows, scanner.next(rows + 1).length);
+        assertEquals(0, scanner.next(1).length);
+        scanner.close();
+    }
+
+    private static List<String> readLines(File file) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line = reader.readLine();
+            while (line != null) {
+                lines.add(line);
+                line = reader.readLine();
+            }
+        }
+        finally {
+            reader.close();
+        }
+        return lines;
+    }
+}
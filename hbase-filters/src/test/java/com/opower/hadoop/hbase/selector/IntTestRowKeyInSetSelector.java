@@ -8,8 +8,6 @@ import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.filter.Filter;
 import org.apache.hadoop.hbase.util.Bytes;
 
-import org.junit.After;
-import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -17,6 +15,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import com.opower.hadoop.hbase.test.HBaseTestRunner;
+import com.opower.hadoop.hbase.test.PooledTable;
 
 import static org.junit.Assert.*;
 
@@ -29,20 +28,10 @@ import static org.junit.Assert.*;
 public class IntTestRowKeyInSetSelector {
     private HBaseTestingUtility hbaseTestingUtility;
 
-    private byte[] tableName = Bytes.toBytes("row_key_in_set_filter");
     private byte[] family = new byte[] { 'd' };
+    @PooledTable(families = "d", maxVersions = 30)
     private HTable table;
 
-    @Before
-    public void setUp() throws Exception {
-        this.table = hbaseTestingUtility.createTable(this.tableName, this.family, 30);
-    }
-
-    @After
-    public void tearDown() throws Exception {
-        this.hbaseTestingUtility.deleteTable(this.tableName);
-    }
-
     @Test
     public void testRowsInSetWithSimpleCells() throws Exception {
         // loadTable loads rows from 'aaa' to 'zzz'
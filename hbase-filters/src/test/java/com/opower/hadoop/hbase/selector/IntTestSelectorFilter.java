@@ -10,7 +10,6 @@ import org.apache.hadoop.hbase.filter.Filter;
 import org.apache.hadoop.hbase.filter.Filter.ReturnCode;
 import org.apache.hadoop.hbase.util.Bytes;
 
-import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -20,6 +19,7 @@ import java.io.DataOutput;
 import java.io.IOException;
 
 import com.opower.hadoop.hbase.test.HBaseTestRunner;
+import com.opower.hadoop.hbase.test.TableNamespace;
 
 import static org.junit.Assert.*;
 
@@ -31,9 +31,8 @@ import static org.junit.Assert.*;
 @RunWith(HBaseTestRunner.class)
 public class IntTestSelectorFilter {
     private static HBaseTestingUtility hbaseTestingUtility;
+    private static TableNamespace tableNamespace;
 
-    private static byte[] tableNameSimple = Bytes.toBytes("filter_test_simple");
-    private static byte[] tableNameComplex = Bytes.toBytes("filter_test_complex");
     private static byte[] family = new byte[] { 'd' };
     private static HTable tableSimple;
     private static HTable tableComplex;
@@ -42,18 +41,12 @@ public class IntTestSelectorFilter {
 
     @BeforeClass
     public static void setUpClass() throws Exception {
-        tableSimple = hbaseTestingUtility.createTable(tableNameSimple, family, 30);
-        tableComplex = hbaseTestingUtility.createTable(tableNameComplex, family, 30);
+        tableSimple = tableNamespace.createTable("filter_test_simple", new byte[][] { family }, 30);
+        tableComplex = tableNamespace.createTable("filter_test_complex", new byte[][] { family }, 30);
         rowsSimple = loadSimpleTable(tableSimple, family);
         rowsComplex = loadComplexTable(tableComplex, family);
     }
 
-    @AfterClass
-    public static void tearDown() throws Exception {
-        hbaseTestingUtility.deleteTable(tableNameSimple);
-        hbaseTestingUtility.deleteTable(tableNameComplex);
-    }
-
     @Test
     public void testAllRowsWithSimpleCells() throws Exception {
         runFilteredScanTest(new AllRowSelector(), tableSimple, family, rowsSimple);
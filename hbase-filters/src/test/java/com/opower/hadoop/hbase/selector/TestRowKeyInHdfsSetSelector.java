@@ -0,0 +1,132 @@
+package com.opower.hadoop.hbase.selector;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link RowKeyInHdfsSetSelector} and the {@link KeySetWriter} that creates its key sets
+ *
+ * @author jeff@opower.com
+ */
+public class TestRowKeyInHdfsSetSelector {
+    private Configuration configuration;
+    private File keySetFile;
+    private Path keySetPath;
+    private List<byte[]> inSet;
+
+    @Before
+    public void setUp() throws Exception {
+        this.configuration = new Configuration();
+        this.keySetFile = File.createTempFile(getClass().getSimpleName(), ".kset");
+        this.keySetPath = new Path(this.keySetFile.toURI());
+        this.inSet = new ArrayList<byte[]>();
+        for (int i = 0; i < 1000; i += 2) {
+            this.inSet.add(Bytes.toBytes(String.format("row-%05d", i)));
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        // deleting through the local file system also removes the checksum file it creates
+        FileSystem.getLocal(this.configuration).delete(this.keySetPath, false);
+    }
+
+    @Test
+    public void testRowsInSetAreIncluded() throws Exception {
+        long checksum = KeySetWriter.write(this.configuration, this.keySetPath, this.inSet.iterator());
+        Selector selector = roundTrip(new RowKeyInHdfsSetSelector(this.keySetPath, checksum));
+        for (byte[] rowKey : this.inSet) {
+            assertTrue(Bytes.toString(rowKey), selector.includeRow(rowKey, 0, rowKey.length));
+        }
+    }
+
+    @Test
+    public void testRowsNotInSetAreExcluded() throws Exception {
+        long checksum = KeySetWriter.write(this.configuration, this.keySetPath, this.inSet.iterator());
+        Selector selector = roundTrip(new RowKeyInHdfsSetSelector(this.keySetPath, checksum));
+        for (int i = 1; i < 1000; i += 2) {
+            byte[] rowKey = Bytes.toBytes(String.format("row-%05d", i));
+            assertFalse(Bytes.toString(rowKey), selector.includeRow(rowKey, 0, rowKey.length));
+        }
+        byte[] before = Bytes.toBytes("a");
+        byte[] after = Bytes.toBytes("z");
+        assertFalse(selector.includeRow(before, 0, before.length));
+        assertFalse(selector.includeRow(after, 0, after.length));
+    }
+
+    @Test
+    public void testRowKeyWithinLargerBuffer() throws Exception {
+        long checksum = KeySetWriter.write(this.configuration, this.keySetPath, this.inSet.iterator());
+        Selector selector = roundTrip(new RowKeyInHdfsSetSelector(this.keySetPath, checksum));
+        byte[] buffer = Bytes.add(Bytes.toBytes("xx"), Bytes.toBytes("row-00042"), Bytes.toBytes("yy"));
+        assertTrue(selector.includeRow(buffer, 2, 9));
+        assertFalse(selector.includeRow(buffer, 2, 8));
+    }
+
+    @Test
+    public void testEmptySet() throws Exception {
+        long checksum = KeySetWriter.write(this.configuration, this.keySetPath, new ArrayList<byte[]>().iterator());
+        Selector selector = roundTrip(new RowKeyInHdfsSetSelector(this.keySetPath, checksum));
+        byte[] rowKey = this.inSet.get(0);
+        assertFalse(selector.includeRow(rowKey, 0, rowKey.length));
+    }
+
+    @Test
+    public void testDuplicateKeysAreDropped() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        KeySetWriter writer = new KeySetWriter(bytes);
+        writer.add(Bytes.toBytes("a"));
+        writer.add(Bytes.toBytes("a"));
+        writer.add(Bytes.toBytes("b"));
+        writer.close();
+        assertEquals(2, writer.getKeyCount());
+    }
+
+    @Test
+    public void testKeysOutOfOrderAreRejected() throws Exception {
+        List<byte[]> keys = Arrays.asList(Bytes.toBytes("b"), Bytes.toBytes("a"));
+        try {
+            KeySetWriter.write(this.configuration, this.keySetPath, keys.iterator());
+            fail("Keys out of order should be rejected");
+        }
+        catch (IllegalArgumentException iae) {
+            // the partial key set must not be left behind for a selector to load
+            assertFalse(this.keySetFile.exists());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testChecksumMismatchFailsDeserialization() throws Exception {
+        long checksum = KeySetWriter.write(this.configuration, this.keySetPath, this.inSet.iterator());
+        roundTrip(new RowKeyInHdfsSetSelector(this.keySetPath, checksum + 1));
+    }
+
+    private Selector roundTrip(Selector selector) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        selector.write(out);
+        out.close();
+        Selector deserialized = new RowKeyInHdfsSetSelector();
+        deserialized.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        return deserialized;
+    }
+}
@@ -1,5 +1,8 @@
 package com.opower.hadoop.hbase.selector;
 
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+
 import org.apache.hadoop.hbase.util.ByteBloomFilter;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.Hash;
@@ -55,6 +58,24 @@ public class TestRowKeyInSetSelector {
         runRowsInSetTest(selector);
     }
 
+    @Test
+    public void testDeserializedSelector() throws Exception {
+        Selector selector = roundTrip(new RowKeyInSetSelector(this.inSet));
+        runRowsInSetTest(selector);
+        runRowsNotInSetTest(selector);
+        runRowsInSetTest(selector);
+    }
+
+    private static RowKeyInSetSelector roundTrip(RowKeyInSetSelector written) throws Exception {
+        DataOutputBuffer out = new DataOutputBuffer();
+        written.write(out);
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(out.getData(), out.getLength());
+        RowKeyInSetSelector read = new RowKeyInSetSelector();
+        read.readFields(in);
+        return read;
+    }
+
     private void runRowsInSetTest(Selector selector) {
         for (String rowKey : this.inSet) {
             byte[] rowKeyBytes = Bytes.toBytesBinary(rowKey);
@@ -7,19 +7,51 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.InputStream;
 import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
 
+import com.opower.common.reflect.ConstructorScope;
+
 /**
- * A {@link ClassLoader} that reads its class data from a jar file stored in HDFS.
+ * A {@link ClassLoader} that reads its class data from one or more jar files stored in HDFS.  The jars are read
+ * from HDFS once, the first time a class or resource is needed from them, and their entries are indexed by name
+ * in memory, so finding any further classes or resources does not go back to HDFS.  When more than one of the
+ * jars has an entry with the same name, the entry from the jar that comes first is the one that is used, just
+ * as with a class path.
+ * </p><p>
+ * The class loader is parallel capable.  Rather than synchronizing on the class loader itself, loading a class
+ * only locks on its name, so threads loading different classes from the same jar do not wait on each other.
+ * Registering as parallel capable requires Java 7; on older JVMs the class loader still works, but the JVM
+ * itself serializes class loading on it.
+ * </p><p>
+ * The class loader is a {@link ConstructorScope}, so the constructors of its classes that a
+ * {@link com.opower.common.reflect.ConstructorCache} resolves are kept here, and are dropped along with it.
  *
  * @author jeff@opower.com
  */
-public class HdfsClassLoader extends ClassLoader {
+public class HdfsClassLoader extends ClassLoader implements ConstructorScope {
     /**
      * A configuration option to indicate whether or not to skip the standard {@link ClassLoader} hierarchical
      * search and look at the configured jar first.  Defaults to {@code false} so that the standard search is performed,
@@ -28,44 +60,83 @@ public class HdfsClassLoader extends ClassLoader {
     public static final String ATTEMPT_LOCAL_LOAD_FIRST = "hdfs.classloader.attemptLocalFirst";
 
     private static final Log LOG = LogFactory.getLog(HdfsClassLoader.class);
+    private static final AtomicLong TOTAL_BYTES_READ = new AtomicLong();
+    private static final String RESOURCE_PROTOCOL = "hdfsjar";
+    private static final String RESOURCE_SEPARATOR = "!/";
+
+    static {
+        registerParallelCapable();
+    }
 
     private final Configuration configuration;
-    private final Path jar;
+    private final List<Path> jars;
+    private final boolean attemptLocalLoadFirst;
+    private final long createdMillis = System.currentTimeMillis();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicInteger classesDefined = new AtomicInteger();
+    private final ConcurrentMap<String, Object> classLoadingLocks = new ConcurrentHashMap<String, Object>();
+    private final ConcurrentMap<String, Constructor<?>> constructors = new ConcurrentHashMap<String, Constructor<?>>();
+    private final URLStreamHandler resourceHandler = new EntryStreamHandler();
+
+    private volatile Map<String, IndexedEntry> entries;
 
     /**
      * @param configuration The Hadoop configuration to use to read from HDFS
      * @param jar A path to a jar file containing classes to load
      */
     public HdfsClassLoader(Configuration configuration, Path jar) {
+        this(configuration, Collections.singletonList(jar));
+    }
+
+    /**
+     * @param configuration The Hadoop configuration to use to read from HDFS
+     * @param jars Paths to jar files containing classes to load, in the order in which to search them
+     */
+    public HdfsClassLoader(Configuration configuration, List<Path> jars) {
         super(HdfsClassLoader.class.getClassLoader());
+        if (jars.isEmpty()) {
+            throw new IllegalArgumentException("At least one jar is required");
+        }
         this.configuration = configuration;
-        this.jar = jar;
+        this.jars = Collections.unmodifiableList(new ArrayList<Path>(jars));
+        this.attemptLocalLoadFirst = configuration.getBoolean(ATTEMPT_LOCAL_LOAD_FIRST, false);
     }
 
     /**
      * Override to allow for checking the local jar first instead of the standard search which would check
-     * the parent class loader first.
+     * the parent class loader first, and to only lock on the name of the class being loaded instead of the
+     * whole class loader.
      *
      * {@inheritDoc}
      */
     @Override
-    public Class loadClass(String className) throws ClassNotFoundException {
-        if (this.configuration.getBoolean(ATTEMPT_LOCAL_LOAD_FIRST, false)) {
-            try {
-                return findClass(className);
+    protected Class<?> loadClass(String className, boolean resolve) throws ClassNotFoundException {
+        synchronized (getLoadingLock(className)) {
+            Class<?> clazz = findLoadedClass(className);
+            if (clazz == null) {
+                if (this.attemptLocalLoadFirst) {
+                    try {
+                        clazz = findClass(className);
+                    }
+                    catch (ClassNotFoundException cnfe) {
+                        // This exception can be ignored, because the standard
+                        // case will be attempted below
+                    }
+                }
+                if (clazz == null) {
+                    // try the standard approach
+                    clazz = loadClassParentFirst(className);
+                }
             }
-            catch (ClassNotFoundException cnfe) {
-                // This exception can be ignored, because the standard
-                // case will be attempted below
+            if (resolve) {
+                resolveClass(clazz);
             }
+            return clazz;
         }
-
-        // try the standard approach
-        return super.loadClass(className);
     }
 
     /**
-     * Search for the class in the configured jar file stored in HDFS.
+     * Search for the class in the configured jar files stored in HDFS.
      *
      * {@inheritDoc}
      */
@@ -73,35 +144,223 @@ public class HdfsClassLoader extends ClassLoader {
     public Class findClass(String className) throws ClassNotFoundException {
         String classPath = convertNameToPath(className);
         if (LOG.isDebugEnabled()) {
-            LOG.debug(String.format("Searching for class %s (%s) in path %s", className, classPath, this.jar));
+            LOG.debug(String.format("Searching for class %s (%s) in paths %s", className, classPath, this.jars));
+        }
+        synchronized (getLoadingLock(className)) {
+            // Guard against defining the class twice if this is called directly instead of through loadClass
+            Class<?> clazz = findLoadedClass(className);
+            if (clazz != null) {
+                return clazz;
+            }
+            IndexedEntry classEntry;
+            try {
+                classEntry = getEntries().get(classPath);
+            }
+            catch (IOException ioe) {
+                throw new ClassNotFoundException(
+                        "Unable to find " + className + " in paths " + this.jars, ioe);
+            }
+            if (classEntry == null) {
+                throw new ClassNotFoundException("Unable to find " + className + " in paths " + this.jars);
+            }
+            clazz = defineClass(className, classEntry.bytes, 0, classEntry.bytes.length);
+            this.classesDefined.incrementAndGet();
+            return clazz;
+        }
+    }
+
+    /**
+     * Override to allow for checking the local jar first, just as when loading classes.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public URL getResource(String name) {
+        if (this.attemptLocalLoadFirst) {
+            URL resource = findResource(name);
+            if (resource != null) {
+                return resource;
+            }
+        }
+        return super.getResource(name);
+    }
+
+    /**
+     * Search for the resource in the configured jar files stored in HDFS.  The returned {@link URL} reads the
+     * resource out of the in-memory index of the jars, so opening it does not go back to HDFS.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    protected URL findResource(String name) {
+        try {
+            IndexedEntry entry = getEntries().get(name);
+            if (entry != null) {
+                return new URL(RESOURCE_PROTOCOL, null, -1,
+                        entry.jar.toUri().toString() + RESOURCE_SEPARATOR + name, this.resourceHandler);
+            }
         }
-        FileSystem fs = null;
+        catch (IOException ioe) {
+            LOG.warn(String.format("Unable to find resource %s in paths %s", name, this.jars), ioe);
+        }
+        return null;
+    }
+
+    /**
+     * Only the first entry with a given name is indexed, so there is at most one resource.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    protected Enumeration<URL> findResources(String name) {
+        URL resource = findResource(name);
+        if (resource == null) {
+            return Collections.enumeration(Collections.<URL>emptyList());
+        }
+        return Collections.enumeration(Collections.singletonList(resource));
+    }
+
+    /**
+     * @return the number of bytes this class loader has read from HDFS
+     */
+    public long getBytesRead() {
+        return this.bytesRead.get();
+    }
+
+    /**
+     * @return the number of classes this class loader has defined from its jars, as opposed to those it delegated
+     * to its parent
+     */
+    public int getClassesDefined() {
+        return this.classesDefined.get();
+    }
+
+    /**
+     * @return when this class loader was created, in milliseconds since the epoch
+     */
+    public long getCreatedMillis() {
+        return this.createdMillis;
+    }
+
+    /**
+     * @return the number of bytes all instances of this class loader have read from HDFS
+     */
+    public static long getTotalBytesRead() {
+        return TOTAL_BYTES_READ.get();
+    }
+
+    /**
+     * @return the paths to the jars this class loader loads from, in the order in which they are searched
+     */
+    public List<Path> getJars() {
+        return this.jars;
+    }
+
+    @Override
+    public ConcurrentMap<String, Constructor<?>> getConstructors() {
+        return this.constructors;
+    }
+
+    /**
+     * Get the index of the jars' entries, reading the jars from HDFS the first time it is needed.  Reading
+     * the whole jars once means that every class or resource after the first is a lookup instead of another
+     * open and linear scan of each jar.
+     */
+    private Map<String, IndexedEntry> getEntries() throws IOException {
+        Map<String, IndexedEntry> index = this.entries;
+        return index != null ? index : getEntriesOnce();
+    }
+
+    /**
+     * Only one thread reads the jars; any others wait for it to finish.  If the read fails, then it will be
+     * attempted again next time.
+     */
+    private synchronized Map<String, IndexedEntry> getEntriesOnce() throws IOException {
+        if (this.entries == null) {
+            this.entries = readEntries();
+        }
+        return this.entries;
+    }
+
+    /**
+     * Load the class through the parent class loader, and then the jars if the parent does not have it.
+     * This is the standard search done by {@link ClassLoader#loadClass(String, boolean)}, without its
+     * locking on the whole class loader when running on JVMs that do not support parallel capable loaders.
+     */
+    private Class<?> loadClassParentFirst(String className) throws ClassNotFoundException {
+        ClassLoader parent = getParent();
+        try {
+            return parent != null ? parent.loadClass(className) : findSystemClass(className);
+        }
+        catch (ClassNotFoundException cnfe) {
+            return findClass(className);
+        }
+    }
+
+    /**
+     * Get the object to lock on while loading the named class
+     */
+    private Object getLoadingLock(String className) {
+        Object lock = new Object();
+        Object existingLock = this.classLoadingLocks.putIfAbsent(className, lock);
+        return existingLock != null ? existingLock : lock;
+    }
+
+    /**
+     * Register this class loader as parallel capable.  {@code ClassLoader.registerAsParallelCapable} is only
+     * available as of Java 7, so it is called reflectively.
+     */
+    private static void registerParallelCapable() {
+        try {
+            Method register = ClassLoader.class.getDeclaredMethod("registerAsParallelCapable");
+            register.setAccessible(true);
+            register.invoke(null);
+        }
+        catch (NoSuchMethodException nsme) {
+            LOG.debug("Unable to register as parallel capable before Java 7");
+        }
+        catch (Exception e) {
+            LOG.warn("Unable to register as parallel capable", e);
+        }
+    }
+
+    /**
+     * Read every entry out of the jars into a map keyed by entry name
+     */
+    private Map<String, IndexedEntry> readEntries() throws IOException {
+        long start = System.currentTimeMillis();
+        Map<String, IndexedEntry> jarEntries = new HashMap<String, IndexedEntry>();
+        for (Path jar : this.jars) {
+            readEntries(jar, jarEntries);
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Indexed %d entries (%d bytes read) from %s in %d ms",
+                        jarEntries.size(), this.bytesRead.get(), this.jars, System.currentTimeMillis() - start));
+        }
+        return jarEntries;
+    }
+
+    /**
+     * Read the entries out of one jar, skipping any that an earlier jar already has
+     */
+    private void readEntries(Path jar, Map<String, IndexedEntry> jarEntries) throws IOException {
         JarInputStream jarIn = null;
         try {
-            fs = this.jar.getFileSystem(this.configuration);
-            jarIn = new JarInputStream(fs.open(this.jar));
+            // While you would think it would be prudent to close the filesystem that you opened,
+            // it turns out that this filesystem is shared with HBase, so when you close this one,
+            // it becomes closed for HBase, too.  Therefore, there is no call to closeQuietly(fs);
+            FileSystem fs = jar.getFileSystem(this.configuration);
+            jarIn = new JarInputStream(new CountingInputStream(fs.open(jar)));
             JarEntry currentEntry = null;
             while ((currentEntry = jarIn.getNextJarEntry()) != null) {
-                if (LOG.isTraceEnabled()) {
-                    LOG.trace(String.format("Comparing %s to entry %s", classPath, currentEntry.getName()));
-                }
-                if (currentEntry.getName().equals(classPath)) {
-                    byte[] classBytes = readEntry(jarIn);
-                    return defineClass(className, classBytes, 0, classBytes.length);
+                if (!currentEntry.isDirectory() && !jarEntries.containsKey(currentEntry.getName())) {
+                    jarEntries.put(currentEntry.getName(), new IndexedEntry(jar, readEntry(jarIn)));
                 }
             }
         }
-        catch (IOException ioe) {
-            throw new ClassNotFoundException(
-                    "Unable to find " + className + " in path " + this.jar, ioe);
-        }
         finally {
             closeQuietly(jarIn);
-            // While you would think it would be prudent to close the filesystem that you opened,
-            // it turns out that this filesystem is shared with HBase, so when you close this one,
-            // it becomes closed for HBase, too.  Therefore, there is no call to closeQuietly(fs);
         }
-        throw new ClassNotFoundException("Unable to find " + className + " in path " + this.jar);
     }
 
     /**
@@ -129,6 +388,82 @@ public class HdfsClassLoader extends ClassLoader {
         return out.toByteArray();
     }
 
+    /**
+     * Counts the bytes read from HDFS, for this class loader as well as for all of them
+     */
+    private class CountingInputStream extends FilterInputStream {
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        private void count(int read) {
+            HdfsClassLoader.this.bytesRead.addAndGet(read);
+            TOTAL_BYTES_READ.addAndGet(read);
+        }
+    }
+
+    /**
+     * The contents of an entry along with the jar it was read from
+     */
+    private static final class IndexedEntry {
+        private final Path jar;
+        private final byte[] bytes;
+
+        private IndexedEntry(Path jar, byte[] bytes) {
+            this.jar = jar;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Opens the {@link URL URLs} for resources by reading them out of the index of the jar's entries
+     */
+    private class EntryStreamHandler extends URLStreamHandler {
+        @Override
+        protected URLConnection openConnection(URL url) throws IOException {
+            String file = url.getFile();
+            String name = file.substring(file.lastIndexOf(RESOURCE_SEPARATOR) + RESOURCE_SEPARATOR.length());
+            final IndexedEntry entry = getEntries().get(name);
+            if (entry == null) {
+                throw new FileNotFoundException("Unable to find " + name + " in paths " + HdfsClassLoader.this.jars);
+            }
+            return new URLConnection(url) {
+                @Override
+                public void connect() {
+                    this.connected = true;
+                }
+
+                @Override
+                public int getContentLength() {
+                    return entry.bytes.length;
+                }
+
+                @Override
+                public InputStream getInputStream() {
+                    return new ByteArrayInputStream(entry.bytes);
+                }
+            };
+        }
+    }
+
     /**
      * Close the {@link Closeable} without any exceptions
      */
@@ -0,0 +1,177 @@
+package com.opower.hadoop.fs;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link HdfsClassLoader} against a jar on the local file system
+ *
+ * @author jeff@opower.com
+ */
+public class TestHdfsClassLoader {
+    private static final String[] JAR_CLASSES = {
+        "com/opower/hadoop/fs/HdfsClassLoader.class",
+        "com/opower/hadoop/fs/HdfsClassLoader$CountingInputStream.class",
+    };
+
+    private static final String RESOURCE = "com/opower/hadoop/fs/lookup.txt";
+    private static final String DEPENDENCY_RESOURCE = "com/opower/hadoop/fs/dependency.txt";
+    private static final String RESOURCE_CONTENTS = "lookup table";
+    private static final int THREADS = 8;
+
+    private File jarFile;
+    private File dependencyJarFile;
+    private HdfsClassLoader classLoader;
+
+    @Before
+    public void setUp() throws Exception {
+        this.jarFile = File.createTempFile(getClass().getSimpleName(), ".jar");
+        JarOutputStream jarOut = new JarOutputStream(new FileOutputStream(this.jarFile));
+        try {
+            for (String jarClass : JAR_CLASSES) {
+                jarOut.putNextEntry(new JarEntry(jarClass));
+                InputStream in = getClass().getClassLoader().getResourceAsStream(jarClass);
+                try {
+                    byte[] buffer = new byte[1024];
+                    int read;
+                    while ((read = in.read(buffer)) > 0) {
+                        jarOut.write(buffer, 0, read);
+                    }
+                }
+                finally {
+                    in.close();
+                }
+            }
+            jarOut.putNextEntry(new JarEntry(RESOURCE));
+            jarOut.write(RESOURCE_CONTENTS.getBytes("UTF-8"));
+        }
+        finally {
+            jarOut.close();
+        }
+        this.classLoader = new HdfsClassLoader(new Configuration(), new Path(this.jarFile.toURI()));
+
+        this.dependencyJarFile = File.createTempFile(getClass().getSimpleName(), ".jar");
+        jarOut = new JarOutputStream(new FileOutputStream(this.dependencyJarFile));
+        try {
+            jarOut.putNextEntry(new JarEntry(RESOURCE));
+            jarOut.write("shadowed".getBytes("UTF-8"));
+            jarOut.putNextEntry(new JarEntry(DEPENDENCY_RESOURCE));
+            jarOut.write(RESOURCE_CONTENTS.getBytes("UTF-8"));
+        }
+        finally {
+            jarOut.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        this.jarFile.delete();
+        this.dependencyJarFile.delete();
+    }
+
+    @Test
+    public void testFindClassDefinesTheClassFromTheJar() throws Exception {
+        Class<?> clazz = this.classLoader.findClass(HdfsClassLoader.class.getName());
+        assertEquals(HdfsClassLoader.class.getName(), clazz.getName());
+        assertSame(this.classLoader, clazz.getClassLoader());
+    }
+
+    @Test
+    public void testJarIsOnlyReadOnce() throws Exception {
+        assertEquals(0, this.classLoader.getBytesRead());
+        this.classLoader.findClass(HdfsClassLoader.class.getName());
+        long bytesRead = this.classLoader.getBytesRead();
+        assertTrue(bytesRead > 0);
+
+        this.classLoader.findClass(HdfsClassLoader.class.getName() + "$CountingInputStream");
+        try {
+            this.classLoader.findClass("com.opower.hadoop.fs.DoesNotExist");
+            fail("Expected the class to not be found");
+        }
+        catch (ClassNotFoundException cnfe) {
+            // expected
+        }
+        assertEquals(bytesRead, this.classLoader.getBytesRead());
+        assertEquals(2, this.classLoader.getClassesDefined());
+    }
+
+    @Test
+    public void testResourcesAreServedFromTheJar() throws Exception {
+        assertEquals(RESOURCE_CONTENTS, readResource(this.classLoader, RESOURCE));
+        assertEquals(1, Collections.list(this.classLoader.getResources(RESOURCE)).size());
+        assertNull(this.classLoader.getResource("com/opower/hadoop/fs/missing.txt"));
+    }
+
+    @Test
+    public void testEarlierJarsWin() throws Exception {
+        HdfsClassLoader multiJarLoader = new HdfsClassLoader(new Configuration(),
+                Arrays.asList(new Path(this.jarFile.toURI()), new Path(this.dependencyJarFile.toURI())));
+        assertEquals(RESOURCE_CONTENTS, readResource(multiJarLoader, RESOURCE));
+        assertEquals(RESOURCE_CONTENTS, readResource(multiJarLoader, DEPENDENCY_RESOURCE));
+        assertSame(multiJarLoader, multiJarLoader.findClass(HdfsClassLoader.class.getName()).getClassLoader());
+    }
+
+    @Test
+    public void testConcurrentLoadsDefineTheClassOnce() throws Exception {
+        Configuration configuration = new Configuration();
+        configuration.setBoolean(HdfsClassLoader.ATTEMPT_LOCAL_LOAD_FIRST, true);
+        final HdfsClassLoader localFirstLoader = new HdfsClassLoader(configuration, new Path(this.jarFile.toURI()));
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Class<?>>> loads = new ArrayList<Future<Class<?>>>();
+            for (int i = 0; i < THREADS; i++) {
+                loads.add(executor.submit(new Callable<Class<?>>() {
+                    @Override
+                    public Class<?> call() throws Exception {
+                        start.await();
+                        return localFirstLoader.loadClass(HdfsClassLoader.class.getName());
+                    }
+                }));
+            }
+            start.countDown();
+            Class<?> loaded = loads.get(0).get();
+            assertSame(localFirstLoader, loaded.getClassLoader());
+            for (Future<Class<?>> load : loads) {
+                assertSame(loaded, load.get());
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static String readResource(ClassLoader loader, String name) throws Exception {
+        InputStream in = loader.getResourceAsStream(name);
+        assertNotNull(in);
+        try {
+            return new BufferedReader(new InputStreamReader(in, "UTF-8")).readLine();
+        }
+        finally {
+            in.close();
+        }
+    }
+}
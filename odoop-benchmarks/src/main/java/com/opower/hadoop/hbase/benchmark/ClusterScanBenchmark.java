@@ -0,0 +1,185 @@
+package com.opower.hadoop.hbase.benchmark;
+
+import org.apache.hadoop.conf.Configuration;
+
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.HTablePool;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import com.opower.hadoop.hbase.filter.DeployedFilter;
+import com.opower.hadoop.hbase.filter.DeployedFilterManager;
+import com.opower.hadoop.hbase.filter.QualifierPrefixColumnVersionTimerangeFilter;
+import com.opower.hadoop.hbase.query.DefaultQueryPlanner;
+import com.opower.hadoop.hbase.query.Query;
+import com.opower.hadoop.hbase.test.CustomerTableLoader;
+import com.opower.hadoop.hbase.test.HBaseTestRunner;
+import com.opower.hadoop.hbase.test.Workload;
+import com.opower.hadoop.hbase.test.WorkloadResult;
+import com.opower.hadoop.hbase.test.WorkloadRunner;
+
+/**
+ * Runs queries and deployed filters end to end against the mini cluster of the {@link HBaseTestRunner}, at each of
+ * a list of concurrencies, and prints the throughput and latency percentiles of each.  The customer table is loaded
+ * by a {@link CustomerTableLoader} first, so the whole path is measured: planning, the client, the RPCs, and the
+ * filters on the region server.  The mini cluster runs in the same process, so the numbers are for comparing one
+ * build against another on the same machine, not for predicting a real cluster.
+ * </p><p>
+ * Everything is set through system properties, with the defaults given here:
+ * <pre>
+ * java -Drows=10000 -Dversions=30 -Dqualifiers=50 -DvalueSize=64 -Dseed=0 -Dregions=4 -DrangeRows=100 \
+ *     -Dthreads=1,4,16 -DwarmUp=20 -Doperations=200 \
+ *     -cp target/benchmarks.jar com.opower.hadoop.hbase.benchmark.ClusterScanBenchmark
+ * </pre>
+ *
+ * @author jeff@opower.com
+ */
+public final class ClusterScanBenchmark {
+    private static final String TABLE_NAME = "customer";
+    private static final String SINGLE_ROW_QUERY = "scan d:address, all versions of d:clicks between {start} and "
+        + "{stop} from " + TABLE_NAME + " where rowkey = {id}";
+    private static final String ROW_RANGE_QUERY = "scan d:address, d:predictions* from " + TABLE_NAME
+        + " where rowkey between {low} and {high}";
+
+    private final int rows;
+    private final int rangeRows;
+    private final long clicksStart;
+    private final HTablePool hTablePool;
+    private final DefaultQueryPlanner queryPlanner;
+    private final DeployedFilter deployedFilter;
+
+    private ClusterScanBenchmark(HBaseTestingUtility testingUtility, CustomerTableLoader loader, int rangeRows)
+        throws Exception {
+        this.rows = loader.getRows();
+        this.rangeRows = rangeRows;
+        // Query the newest half of the clicks
+        this.clicksStart = CustomerTableLoader.NEWEST_TIMESTAMP
+            - (loader.getVersions() / 2) * CustomerTableLoader.VERSION_INTERVAL;
+        this.hTablePool = new HTablePool(testingUtility.getConfiguration(), Integer.MAX_VALUE);
+        this.queryPlanner = new DefaultQueryPlanner(this.hTablePool);
+        // The region server reads deployed filters through a configuration of its own, which knows nothing of the
+        // mini cluster's HDFS, so deploy them to the local file system that both share instead
+        Configuration deployConfiguration = new Configuration(testingUtility.getConfiguration());
+        deployConfiguration.set("fs.default.name", "file:///");
+        this.deployedFilter = new DeployedFilterManager(deployConfiguration).deployFilterClosure(
+                new QualifierPrefixColumnVersionTimerangeFilter(CustomerTableLoader.FAMILY,
+                    Bytes.toBytes(CustomerTableLoader.PREDICTIONS_PREFIX), 1),
+                Collections.<String>emptyList());
+    }
+
+    public static void main(String[] args) throws Exception {
+        CustomerTableLoader loader = new CustomerTableLoader()
+            .setRows(Integer.getInteger("rows", 10000))
+            .setVersions(Integer.getInteger("versions", 30))
+            .setQualifiers(Integer.getInteger("qualifiers", 50))
+            .setValueSize(Integer.getInteger("valueSize", 64))
+            .setSeed(Long.getLong("seed", 0L))
+            .setRegions(Integer.getInteger("regions", 4));
+        HBaseTestingUtility testingUtility = HBaseTestRunner.getTestingUtility();
+        HTable table = loader.createTable(testingUtility, TABLE_NAME);
+        long cells = loader.load(table);
+        table.close();
+        System.out.println(String.format("Loaded %d cells in %d rows", cells, loader.getRows()));
+
+        ClusterScanBenchmark benchmark = new ClusterScanBenchmark(testingUtility, loader,
+                Integer.getInteger("rangeRows", 100));
+        List<WorkloadResult> results = new ArrayList<WorkloadResult>();
+        for (String threads : System.getProperty("threads", "1,4,16").split(",")) {
+            WorkloadRunner runner = new WorkloadRunner(Integer.parseInt(threads.trim()),
+                    Integer.getInteger("warmUp", 20), Integer.getInteger("operations", 200));
+            results.add(runner.run("single-row query", benchmark.singleRowQuery()));
+            results.add(runner.run("row-range query", benchmark.rowRangeQuery()));
+            results.add(runner.run("row-range deployed filter", benchmark.rowRangeDeployedFilter()));
+        }
+        for (WorkloadResult result : results) {
+            System.out.println(result);
+        }
+        // The mini cluster is shut down by the runner's shutdown hook
+        System.exit(0);
+    }
+
+    private Workload singleRowQuery() {
+        return new Workload() {
+            @Override
+            public long run(int thread, int operation) throws Exception {
+                Query query = ClusterScanBenchmark.this.queryPlanner.parse(SINGLE_ROW_QUERY);
+                try {
+                    query.setString("id", CustomerTableLoader.rowKey(randomRow(thread, operation, 1)));
+                    query.setTimestamp("start", ClusterScanBenchmark.this.clicksStart);
+                    query.setTimestamp("stop", CustomerTableLoader.NEWEST_TIMESTAMP + 1L);
+                    return drain(query.scan());
+                }
+                finally {
+                    query.close();
+                }
+            }
+        };
+    }
+
+    private Workload rowRangeQuery() {
+        return new Workload() {
+            @Override
+            public long run(int thread, int operation) throws Exception {
+                Query query = ClusterScanBenchmark.this.queryPlanner.parse(ROW_RANGE_QUERY);
+                try {
+                    long low = randomRow(thread, operation, ClusterScanBenchmark.this.rangeRows);
+                    query.setString("low", CustomerTableLoader.rowKey(low));
+                    query.setString("high", CustomerTableLoader.rowKey(low + ClusterScanBenchmark.this.rangeRows));
+                    return drain(query.scan());
+                }
+                finally {
+                    query.close();
+                }
+            }
+        };
+    }
+
+    private Workload rowRangeDeployedFilter() {
+        return new Workload() {
+            @Override
+            public long run(int thread, int operation) throws Exception {
+                long low = randomRow(thread, operation, ClusterScanBenchmark.this.rangeRows);
+                Scan scan = new Scan(Bytes.toBytes(CustomerTableLoader.rowKey(low)),
+                        Bytes.toBytes(CustomerTableLoader.rowKey(low + ClusterScanBenchmark.this.rangeRows)));
+                scan.setFilter(ClusterScanBenchmark.this.deployedFilter);
+                HTableInterface table = ClusterScanBenchmark.this.hTablePool.getTable(TABLE_NAME);
+                try {
+                    return drain(table.getScanner(scan));
+                }
+                finally {
+                    table.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Pick a row for an operation, so that the same operation of the same thread always reads the same rows
+     */
+    private long randomRow(int thread, int operation, int rowsNeeded) {
+        Random random = new Random(((long)thread << 32) | operation);
+        return random.nextInt(Math.max(1, this.rows - rowsNeeded + 1));
+    }
+
+    private static long drain(ResultScanner scanner) throws Exception {
+        long rowsRead = 0L;
+        try {
+            for (Result result = scanner.next(); result != null; result = scanner.next()) {
+                rowsRead++;
+            }
+        }
+        finally {
+            scanner.close();
+        }
+        return rowsRead;
+    }
+}
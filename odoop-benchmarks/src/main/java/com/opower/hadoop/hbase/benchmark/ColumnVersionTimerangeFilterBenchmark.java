@@ -0,0 +1,84 @@
+package com.opower.hadoop.hbase.benchmark;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import com.opower.hadoop.hbase.filter.ColumnVersionTimerangeFilter;
+import com.opower.hadoop.hbase.filter.FamilyOnlyColumnVersionTimerangeFilter;
+import com.opower.hadoop.hbase.filter.QualifierPrefixColumnVersionTimerangeFilter;
+
+/**
+ * Measures the {@link ColumnVersionTimerangeFilter} and its variants over rows of every {@link RowShape}, each row
+ * having two families of which the filters only select from the first.  An operation is filtering one row, and the
+ * time range covers the newest half of the versions, with at most {@link #MAX_VERSIONS} of them included.
+ *
+ * @author jeff@opower.com
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(ColumnVersionTimerangeFilterBenchmark.ROWS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ColumnVersionTimerangeFilterBenchmark {
+    static final int ROWS = 16;
+    private static final int MAX_VERSIONS = 5;
+    private static final long SEED = 42L;
+    private static final int VALUE_SIZE = 16;
+    private static final byte[] FAMILY = Bytes.toBytes("a");
+    private static final byte[] OTHER_FAMILY = Bytes.toBytes("b");
+
+    // CHECKSTYLE:OFF VisibilityModifier - JMH sets parameters through public fields
+    @Param
+    public RowShape shape;
+    // CHECKSTYLE:ON VisibilityModifier
+
+    private SyntheticRows rows;
+    private ColumnVersionTimerangeFilter columnFilter;
+    private FamilyOnlyColumnVersionTimerangeFilter familyOnlyFilter;
+    private QualifierPrefixColumnVersionTimerangeFilter qualifierPrefixFilter;
+
+    @Setup
+    public void setUp() {
+        this.rows = new SyntheticRows(SEED, ROWS, new byte[][] { FAMILY, OTHER_FAMILY }, this.shape, VALUE_SIZE);
+        long stop = SyntheticRows.NEWEST_TIMESTAMP + 1L;
+        long start = stop - (this.shape.getVersions() + 1) / 2 * SyntheticRows.VERSION_INTERVAL;
+        // Pick a qualifier from the middle of the row, so that the filter has to look past half of the family
+        byte[] qualifier = this.rows.getKeyValues()[this.shape.getQualifiers() / 2 * this.shape.getVersions()]
+            .getQualifier();
+        this.columnFilter = new ColumnVersionTimerangeFilter(FAMILY, qualifier, MAX_VERSIONS, start, stop);
+        this.familyOnlyFilter = new FamilyOnlyColumnVersionTimerangeFilter(FAMILY, MAX_VERSIONS, start, stop);
+        this.qualifierPrefixFilter = new QualifierPrefixColumnVersionTimerangeFilter(FAMILY,
+                SyntheticRows.getQualifierPrefix(0), MAX_VERSIONS, start, stop);
+    }
+
+    @Benchmark
+    public int columnVersionTimerange() {
+        return FilterDriver.scan(this.columnFilter, this.rows);
+    }
+
+    @Benchmark
+    public int familyOnlyColumnVersionTimerange() {
+        return FilterDriver.scan(this.familyOnlyFilter, this.rows);
+    }
+
+    @Benchmark
+    public int qualifierPrefixColumnVersionTimerange() {
+        return FilterDriver.scan(this.qualifierPrefixFilter, this.rows);
+    }
+}
@@ -0,0 +1,58 @@
+package com.opower.hadoop.hbase.benchmark;
+
+/**
+ * The shapes of the rows in a {@link SyntheticRows} stream, chosen to stress the different parts of the filters'
+ * state machines: many versions of a few columns exercise the counting of versions, wide rows exercise the
+ * matching of families and qualifiers, and many prefixes exercise the comparison of qualifier prefixes.
+ *
+ * @author jeff@opower.com
+ */
+public enum RowShape {
+    /**
+     * A handful of columns with a single version each, like a table of customer attributes
+     */
+    NARROW(10, 1, 1),
+    /**
+     * A handful of columns with a long history of versions, like a table of readings kept for years
+     */
+    VERSIONED(10, 1, 100),
+    /**
+     * Many columns under a single prefix with a few versions each, like a table of clicks by time
+     */
+    WIDE(1000, 1, 3),
+    /**
+     * Many columns spread across many prefixes with a few versions each, like a table of predictions by model
+     */
+    PREFIXED(1000, 100, 3);
+
+    private final int qualifiers;
+    private final int prefixes;
+    private final int versions;
+
+    private RowShape(int qualifiers, int prefixes, int versions) {
+        this.qualifiers = qualifiers;
+        this.prefixes = prefixes;
+        this.versions = versions;
+    }
+
+    /**
+     * @return the number of qualifiers in each family of a row
+     */
+    public int getQualifiers() {
+        return this.qualifiers;
+    }
+
+    /**
+     * @return the number of distinct prefixes the qualifiers are spread across
+     */
+    public int getPrefixes() {
+        return this.prefixes;
+    }
+
+    /**
+     * @return the number of versions of each column
+     */
+    public int getVersions() {
+        return this.versions;
+    }
+}
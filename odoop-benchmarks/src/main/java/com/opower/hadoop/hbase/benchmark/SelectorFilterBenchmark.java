@@ -0,0 +1,73 @@
+package com.opower.hadoop.hbase.benchmark;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.opower.hadoop.hbase.selector.RowKeyInSetSelector;
+import com.opower.hadoop.hbase.selector.SelectorFilter;
+
+/**
+ * Measures the {@link SelectorFilter} wrapping a {@link RowKeyInSetSelector} over rows of every {@link RowShape},
+ * with the set holding a given percentage of the rows.  An operation is filtering one row, so the narrower the rows
+ * and the fewer of them selected, the more the cost of checking the row key against the set dominates.
+ *
+ * @author jeff@opower.com
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(SelectorFilterBenchmark.ROWS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SelectorFilterBenchmark {
+    static final int ROWS = 100;
+    private static final long SEED = 42L;
+    private static final int VALUE_SIZE = 16;
+    private static final byte[] FAMILY = Bytes.toBytes("a");
+
+    // CHECKSTYLE:OFF VisibilityModifier - JMH sets parameters through public fields
+    @Param
+    public RowShape shape;
+
+    @Param({ "1", "25", "100" })
+    public int selectedPercent;
+    // CHECKSTYLE:ON VisibilityModifier
+
+    private SyntheticRows rows;
+    private SelectorFilter filter;
+
+    @Setup
+    public void setUp() {
+        this.rows = new SyntheticRows(SEED, ROWS, new byte[][] { FAMILY }, this.shape, VALUE_SIZE);
+        List<String> selected = new ArrayList<String>();
+        String[] rowKeys = this.rows.getRowKeys();
+        for (int i = 0; i < rowKeys.length; i++) {
+            if (i * this.selectedPercent / 100 != (i + 1) * this.selectedPercent / 100) {
+                selected.add(rowKeys[i]);
+            }
+        }
+        this.filter = new SelectorFilter(new RowKeyInSetSelector(selected));
+    }
+
+    @Benchmark
+    public int rowKeyInSet() {
+        return FilterDriver.scan(this.filter, this.rows);
+    }
+}
@@ -0,0 +1,118 @@
+package com.opower.hadoop.hbase.benchmark;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A stream of {@link KeyValue KeyValues} in the order a region scanner hands them to a filter: by row, then
+ * family, then qualifier, then newest version first.  The contents are generated from a seed, so every run of a
+ * benchmark sees the same stream, and are all created up front, so that generating them is not measured.
+ * </p><p>
+ * Qualifiers are named {@code pNNN.qNNNNN}, where the first number is the prefix the qualifier falls under, so a
+ * {@link #getQualifierPrefix prefix} matches an even share of the columns in every family.  Versions are spaced
+ * {@link #VERSION_INTERVAL} apart, going back from {@link #NEWEST_TIMESTAMP}, with a little jitter so that they
+ * are not all aligned.
+ *
+ * @author jeff@opower.com
+ */
+public final class SyntheticRows {
+    /**
+     * The timestamp of the newest version of every column
+     */
+    public static final long NEWEST_TIMESTAMP = 1350000000000L;
+    /**
+     * The time between versions of a column, which is a day
+     */
+    public static final long VERSION_INTERVAL = 86400000L;
+
+    private static final int ROW_KEY_GAP = 1000;
+
+    private final KeyValue[] keyValues;
+    private final int[] rowStarts;
+    private final String[] rowKeys;
+
+    /**
+     * @param seed the seed for the generated row keys, timestamps and values
+     * @param rows the number of rows to generate
+     * @param families the families each row has, in sorted order
+     * @param shape the number of qualifiers, prefixes and versions in each family
+     * @param valueSize the number of bytes in each value
+     */
+    public SyntheticRows(long seed, int rows, byte[][] families, RowShape shape, int valueSize) {
+        Random random = new Random(seed);
+        String[] qualifierNames = new String[shape.getQualifiers()];
+        for (int i = 0; i < qualifierNames.length; i++) {
+            qualifierNames[i] = String.format("p%03d.q%05d", i % shape.getPrefixes(), i);
+        }
+        Arrays.sort(qualifierNames);
+        byte[][] qualifiers = new byte[qualifierNames.length][];
+        for (int i = 0; i < qualifiers.length; i++) {
+            qualifiers[i] = Bytes.toBytes(qualifierNames[i]);
+        }
+
+        List<KeyValue> generated = new ArrayList<KeyValue>();
+        this.rowStarts = new int[rows + 1];
+        this.rowKeys = new String[rows];
+        long rowId = 0L;
+        for (int row = 0; row < rows; row++) {
+            rowId += 1 + random.nextInt(ROW_KEY_GAP);
+            this.rowKeys[row] = String.format("customer%012d", rowId);
+            byte[] rowKey = Bytes.toBytes(this.rowKeys[row]);
+            this.rowStarts[row] = generated.size();
+            for (byte[] family : families) {
+                for (byte[] qualifier : qualifiers) {
+                    for (int version = 0; version < shape.getVersions(); version++) {
+                        long timestamp = NEWEST_TIMESTAMP - version * VERSION_INTERVAL
+                            - random.nextInt((int)(VERSION_INTERVAL / 2));
+                        byte[] value = new byte[valueSize];
+                        random.nextBytes(value);
+                        generated.add(new KeyValue(rowKey, family, qualifier, timestamp, value));
+                    }
+                }
+            }
+        }
+        this.rowStarts[rows] = generated.size();
+        this.keyValues = generated.toArray(new KeyValue[generated.size()]);
+    }
+
+    /**
+     * @return every key/value in the stream, in order
+     */
+    public KeyValue[] getKeyValues() {
+        return this.keyValues;
+    }
+
+    /**
+     * @return the index of the first key/value of each row, followed by the number of key/values
+     */
+    public int[] getRowStarts() {
+        return this.rowStarts;
+    }
+
+    /**
+     * @return the number of rows in the stream
+     */
+    public int getRowCount() {
+        return this.rowKeys.length;
+    }
+
+    /**
+     * @return the keys of the rows in the stream, in order
+     */
+    public String[] getRowKeys() {
+        return this.rowKeys;
+    }
+
+    /**
+     * @param prefix which of the shape's prefixes
+     * @return the qualifier prefix that the columns with that prefix share
+     */
+    public static byte[] getQualifierPrefix(int prefix) {
+        return Bytes.toBytes(String.format("p%03d.", prefix));
+    }
+}
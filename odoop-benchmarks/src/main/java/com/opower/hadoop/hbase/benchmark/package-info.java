@@ -0,0 +1,8 @@
+/**
+ * JMH benchmarks of the hot paths in the filters, selectors and query planner.  Build the module with
+ * {@code mvn package} and run {@code java -jar target/benchmarks.jar}, passing a regular expression to pick
+ * benchmarks and {@code -h} for the rest of JMH's options.  The {@link com.opower.hadoop.hbase.benchmark.BenchmarkRunner}
+ * adds JMH's garbage collection profiler unless another profiler is asked for, so every benchmark reports the
+ * bytes it allocates per operation as {@code gc.alloc.rate.norm} alongside its operations per second.
+ */
+package com.opower.hadoop.hbase.benchmark;
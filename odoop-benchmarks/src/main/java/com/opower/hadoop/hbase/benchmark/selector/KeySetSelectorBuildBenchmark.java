@@ -0,0 +1,84 @@
+package com.opower.hadoop.hbase.benchmark.selector;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.opower.hadoop.hbase.selector.Selector;
+
+/**
+ * Measures building a selector for a set of row keys on the client, and deserializing it on the region server,
+ * for sets from a thousand to fifty million keys.  Building one of the largest sets takes seconds, so each
+ * operation is timed on its own rather than in a loop.  The keys are generated as the selector takes them, which
+ * is a small part of the time to build it.
+ * </p><p>
+ * Deserializing reads into a new selector every time, just as the
+ * {@link com.opower.hadoop.hbase.selector.SelectorFilter} does on a region server.
+ *
+ * @author jeff@opower.com
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Thread)
+public class KeySetSelectorBuildBenchmark {
+    // CHECKSTYLE:OFF VisibilityModifier - JMH sets parameters through public fields
+    @Param({ "1000", "100000", "1000000", "10000000", "50000000" })
+    public int keys;
+
+    @Param({ KeySetSelectors.DEFAULT, "bloom:0.0001:murmur:10", "bloom:0.001:jenkins:10" })
+    public String selector;
+    // CHECKSTYLE:ON VisibilityModifier
+
+    private KeySetSelectorFactory factory;
+    private SyntheticKeySet keySet;
+    private byte[] serialized;
+    private Selector deserialized;
+    private final DataInputBuffer in = new DataInputBuffer();
+
+    @Setup
+    public void setUp() throws Exception {
+        this.factory = KeySetSelectors.getFactory(this.selector);
+        this.keySet = new SyntheticKeySet(this.keys);
+        Selector built = this.factory.create(this.keySet);
+        DataOutputBuffer out = new DataOutputBuffer();
+        built.write(out);
+        this.serialized = new byte[out.getLength()];
+        System.arraycopy(out.getData(), 0, this.serialized, 0, out.getLength());
+        this.deserialized = built.getClass().newInstance();
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareToDeserialize() throws Exception {
+        this.deserialized = this.deserialized.getClass().newInstance();
+        this.in.reset(this.serialized, this.serialized.length);
+    }
+
+    @Benchmark
+    public Selector build() {
+        return this.factory.create(this.keySet);
+    }
+
+    @Benchmark
+    public Selector readFields() throws IOException {
+        this.deserialized.readFields(this.in);
+        return this.deserialized;
+    }
+}
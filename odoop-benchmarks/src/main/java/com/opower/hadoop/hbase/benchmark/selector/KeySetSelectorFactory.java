@@ -0,0 +1,21 @@
+package com.opower.hadoop.hbase.benchmark.selector;
+
+import java.util.Collection;
+
+import com.opower.hadoop.hbase.selector.Selector;
+
+/**
+ * Creates a {@link Selector} that includes the rows whose keys are in a set, so that different ways of selecting
+ * a set of rows can be put through the same benchmarks.  Implementations need a public no argument constructor, so
+ * that they can be named by class on the command line, as described by {@link KeySetSelectors#getFactory}.
+ *
+ * @author jeff@opower.com
+ */
+public interface KeySetSelectorFactory {
+    /**
+     * @param rowKeys the keys of the rows to include, which are generated as they are iterated over, so iterate
+     * over them only once
+     * @return a selector that includes those rows, and as few others as it can
+     */
+    Selector create(Collection<String> rowKeys);
+}
@@ -0,0 +1,85 @@
+package com.opower.hadoop.hbase.benchmark.selector;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.opower.hadoop.hbase.selector.Selector;
+
+/**
+ * Measures {@link Selector#includeRow} for sets from a thousand to fifty million keys, probing either with keys
+ * in the set or with keys that are not, which for a bloom filter differ in how many of the hashes are checked
+ * before it gives up.  An operation is one probe, and the probes are picked at random, so that the larger sets
+ * do not fit in the processor's caches.
+ *
+ * @author jeff@opower.com
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(KeySetSelectorProbeBenchmark.PROBES)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Thread)
+public class KeySetSelectorProbeBenchmark {
+    static final int PROBES = 4096;
+    private static final long SEED = 42L;
+
+    /**
+     * Whether the probes are keys that are in the set, or keys that are not
+     */
+    public enum Probes {
+        MEMBERS, DISJOINT
+    }
+
+    // CHECKSTYLE:OFF VisibilityModifier - JMH sets parameters through public fields
+    @Param({ "1000", "100000", "1000000", "10000000", "50000000" })
+    public int keys;
+
+    @Param({ KeySetSelectors.DEFAULT, "bloom:0.0001:murmur:10", "bloom:0.001:jenkins:10" })
+    public String selector;
+
+    @Param
+    public Probes probes;
+    // CHECKSTYLE:ON VisibilityModifier
+
+    private Selector built;
+    private byte[][] probeKeys;
+
+    @Setup
+    public void setUp() {
+        SyntheticKeySet keySet = new SyntheticKeySet(this.keys);
+        this.built = KeySetSelectors.getFactory(this.selector).create(keySet);
+        SyntheticKeySet probeSet = this.probes == Probes.MEMBERS ? keySet : keySet.disjoint();
+        Random random = new Random(SEED);
+        this.probeKeys = new byte[PROBES][];
+        for (int i = 0; i < PROBES; i++) {
+            this.probeKeys[i] = Bytes.toBytes(probeSet.get(random.nextInt(this.keys)));
+        }
+    }
+
+    @Benchmark
+    public int includeRow() {
+        int included = 0;
+        for (byte[] probeKey : this.probeKeys) {
+            if (this.built.includeRow(probeKey, 0, probeKey.length)) {
+                included++;
+            }
+        }
+        return included;
+    }
+}
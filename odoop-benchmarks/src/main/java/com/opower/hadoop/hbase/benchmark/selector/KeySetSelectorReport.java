@@ -0,0 +1,65 @@
+package com.opower.hadoop.hbase.benchmark.selector;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.DataOutputBuffer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.opower.hadoop.hbase.selector.Selector;
+
+/**
+ * Reports what the benchmarks cannot time: how large each selector is once serialized into a scan, and how
+ * often it includes a row that is not in its set, which is measured by probing it with a million keys from the
+ * disjoint set.  Run it with the names of the selectors to compare, in the form described by
+ * {@link KeySetSelectors}, and optionally the sizes of the sets as a comma separated list in the {@code keys}
+ * system property:
+ * <pre>
+ * java -Dkeys=1000,1000000 -cp target/benchmarks.jar \
+ *     com.opower.hadoop.hbase.benchmark.selector.KeySetSelectorReport default bloom:0.001:murmur:10
+ * </pre>
+ *
+ * @author jeff@opower.com
+ */
+public final class KeySetSelectorReport {
+    private static final String DEFAULT_KEYS = "1000,100000,1000000,10000000,50000000";
+    private static final int PROBES = 1000000;
+
+    private KeySetSelectorReport() {}
+
+    public static void main(String[] args) throws IOException {
+        List<String> selectors = args.length == 0 ? Arrays.asList(KeySetSelectors.DEFAULT) : Arrays.asList(args);
+        List<Integer> sizes = new ArrayList<Integer>();
+        for (String size : System.getProperty("keys", DEFAULT_KEYS).split(",")) {
+            sizes.add(Integer.valueOf(size.trim()));
+        }
+        System.out.println(String.format("%-30s %12s %16s %14s %20s",
+                    "selector", "keys", "serialized bytes", "bits per key", "false positive rate"));
+        for (String selector : selectors) {
+            KeySetSelectorFactory factory = KeySetSelectors.getFactory(selector);
+            for (int size : sizes) {
+                SyntheticKeySet keySet = new SyntheticKeySet(size);
+                Selector built = factory.create(keySet);
+                DataOutputBuffer out = new DataOutputBuffer();
+                built.write(out);
+                System.out.println(String.format("%-30s %12d %16d %14.2f %20.6f",
+                            selector, size, out.getLength(), out.getLength() * 8.0 / size,
+                            falsePositiveRate(built, keySet.disjoint())));
+            }
+        }
+    }
+
+    private static double falsePositiveRate(Selector selector, SyntheticKeySet disjoint) {
+        int probes = Math.min(PROBES, disjoint.size());
+        int falsePositives = 0;
+        for (int i = 0; i < probes; i++) {
+            byte[] key = Bytes.toBytes(disjoint.get(i));
+            if (selector.includeRow(key, 0, key.length)) {
+                falsePositives++;
+            }
+        }
+        return (double)falsePositives / probes;
+    }
+}
@@ -0,0 +1,87 @@
+package com.opower.hadoop.hbase.benchmark.selector;
+
+import org.apache.hadoop.hbase.util.ByteBloomFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Hash;
+
+import java.util.Collection;
+
+import com.opower.hadoop.hbase.selector.RowKeyInSetSelector;
+import com.opower.hadoop.hbase.selector.Selector;
+
+/**
+ * Looks up the {@link KeySetSelectorFactory} for a name given as a benchmark parameter, which is one of:
+ * <ul>
+ * <li>{@code default}, for a {@link RowKeyInSetSelector} built from the row keys, with its hard-coded error rate,
+ * hash and fold factor</li>
+ * <li>{@code bloom:<error rate>:<jenkins|murmur>:<fold factor>}, for a {@link RowKeyInSetSelector} built from a
+ * {@link ByteBloomFilter} with those settings, such as {@code bloom:0.0001:jenkins:10} for the default</li>
+ * <li>the name of a class that implements {@link KeySetSelectorFactory}, for any other kind of selector</li>
+ * </ul>
+ *
+ * @author jeff@opower.com
+ */
+public final class KeySetSelectors {
+    /**
+     * The name of the factory of the selector the library uses
+     */
+    public static final String DEFAULT = "default";
+
+    private static final String BLOOM_PREFIX = "bloom:";
+
+    private KeySetSelectors() {}
+
+    /**
+     * @param name the name of a factory
+     * @return the factory
+     * @throws IllegalArgumentException if there is no such factory
+     */
+    public static KeySetSelectorFactory getFactory(String name) {
+        if (DEFAULT.equals(name)) {
+            return new KeySetSelectorFactory() {
+                @Override
+                public Selector create(Collection<String> rowKeys) {
+                    return new RowKeyInSetSelector(rowKeys);
+                }
+            };
+        }
+        if (name.startsWith(BLOOM_PREFIX)) {
+            return bloomFactory(name.substring(BLOOM_PREFIX.length()).split(":"), name);
+        }
+        try {
+            return Class.forName(name).asSubclass(KeySetSelectorFactory.class).newInstance();
+        }
+        catch (ClassNotFoundException cnfe) {
+            throw new IllegalArgumentException("Unknown key set selector " + name, cnfe);
+        }
+        catch (InstantiationException ie) {
+            throw new IllegalArgumentException("Unable to create key set selector factory " + name, ie);
+        }
+        catch (IllegalAccessException iae) {
+            throw new IllegalArgumentException("Unable to create key set selector factory " + name, iae);
+        }
+    }
+
+    private static KeySetSelectorFactory bloomFactory(String[] settings, String name) {
+        if (settings.length != 3) {
+            throw new IllegalArgumentException("Expected bloom:<error rate>:<hash>:<fold factor>, but got " + name);
+        }
+        final double errorRate = Double.parseDouble(settings[0]);
+        final int hashType = Hash.parseHashType(settings[1]);
+        if (hashType == Hash.INVALID_HASH) {
+            throw new IllegalArgumentException("Unknown hash " + settings[1] + " in " + name);
+        }
+        final int foldFactor = Integer.parseInt(settings[2]);
+        return new KeySetSelectorFactory() {
+            @Override
+            public Selector create(Collection<String> rowKeys) {
+                ByteBloomFilter bloomFilter = new ByteBloomFilter(rowKeys.size(), errorRate, hashType, foldFactor);
+                bloomFilter.allocBloom();
+                for (String rowKey : rowKeys) {
+                    bloomFilter.add(Bytes.toBytes(rowKey));
+                }
+                return new RowKeyInSetSelector(bloomFilter);
+            }
+        };
+    }
+}
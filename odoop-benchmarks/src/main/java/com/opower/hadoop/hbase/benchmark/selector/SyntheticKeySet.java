@@ -0,0 +1,86 @@
+package com.opower.hadoop.hbase.benchmark.selector;
+
+import java.util.AbstractCollection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A set of row keys shaped like the keys of the customer table, {@code customer} followed by a zero-padded
+ * identifier, which are generated as they are iterated over, so that sets of tens of millions of keys can be
+ * handed to a selector without holding all of them in memory.  The keys of the members of a set have even
+ * identifiers, and the keys of the {@link #disjoint} set of the same size have odd ones, so probing a selector
+ * with the disjoint keys counts its false positives.
+ *
+ * @author jeff@opower.com
+ */
+public final class SyntheticKeySet extends AbstractCollection<String> {
+    private static final char[] PREFIX = "customer".toCharArray();
+    private static final int DIGITS = 12;
+
+    private final int size;
+    private final int parity;
+
+    /**
+     * @param size the number of keys in the set
+     */
+    public SyntheticKeySet(int size) {
+        this(size, 0);
+    }
+
+    private SyntheticKeySet(int size, int parity) {
+        this.size = size;
+        this.parity = parity;
+    }
+
+    /**
+     * @return a set of the same size that has none of the keys of this one
+     */
+    public SyntheticKeySet disjoint() {
+        return new SyntheticKeySet(this.size, 1 - this.parity);
+    }
+
+    /**
+     * @param index which key of the set, from 0 up to its size
+     * @return the key
+     */
+    public String get(int index) {
+        long id = 2L * index + this.parity;
+        char[] key = new char[PREFIX.length + DIGITS];
+        System.arraycopy(PREFIX, 0, key, 0, PREFIX.length);
+        for (int i = key.length - 1; i >= PREFIX.length; i--) {
+            key[i] = (char)('0' + id % 10);
+            id /= 10;
+        }
+        return new String(key);
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return this.next < SyntheticKeySet.this.size;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return get(this.next++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,116 @@
+package com.opower.hadoop.hbase.query;
+
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.client.HTablePool;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what it costs to turn the text of a query into a {@link Scan}, which happens for every query run through
+ * a {@link DefaultQueryPlanner}: parsing the text with the {@link QueryParser}, planning the scan from the parsed
+ * query with {@link QueryBuilder#planScan}, and both together the way the planner does them, including recording
+ * the parse in the query metrics and setting the parameters through the {@link Query}.  No table is needed, since
+ * the planner only takes one from its pool when a scan is run.
+ * </p><p>
+ * The queries get more complex in steps, from a single row with every column, up to a range of rows with columns
+ * that each need their own filter, so that the cost of each part of the grammar can be told apart.
+ *
+ * @author jeff@opower.com
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class QueryPlanningBenchmark {
+    /**
+     * Queries over the customer table described in the documentation of the query planner
+     */
+    public enum Complexity {
+        SINGLE_ROW("scan from customer where rowkey = {id}"),
+        COLUMNS("scan d:address, d:clicks, d:predictions from customer where rowkey = {id}"),
+        TIME_RANGE("scan d:address, all versions of d:clicks between {start} and {stop} from customer "
+                + "where rowkey = {id}"),
+        MIXED("scan 4 versions of d:address, all versions of d:clicks between {start} and {stop}, "
+                + "2 versions of d:predictions* between {start} and {stop}, e:* from customer "
+                + "where rowkey between {low} and {high}");
+
+        private final String query;
+
+        private Complexity(String query) {
+            this.query = query;
+        }
+    }
+
+    private static final long START = 1350000000000L;
+    private static final long STOP = 1360000000000L;
+
+    // CHECKSTYLE:OFF VisibilityModifier - JMH sets parameters through public fields
+    @Param
+    public Complexity complexity;
+    // CHECKSTYLE:ON VisibilityModifier
+
+    private String query;
+    private QueryBuilder queryBuilder;
+    private final Map<String, byte[]> parameters = new HashMap<String, byte[]>();
+    private final Map<String, Long> timestamps = new HashMap<String, Long>();
+    private DefaultQueryPlanner queryPlanner;
+
+    @Setup
+    public void setUp() {
+        this.query = this.complexity.query;
+        this.queryBuilder = QueryBuilder.parse(this.query);
+        this.parameters.put("id", Bytes.toBytes("customer000000001234"));
+        this.parameters.put("low", Bytes.toBytes("customer000000001000"));
+        this.parameters.put("high", Bytes.toBytes("customer000000002000"));
+        this.timestamps.put("start", START);
+        this.timestamps.put("stop", STOP);
+        this.queryPlanner = new DefaultQueryPlanner(new HTablePool(HBaseConfiguration.create(), 1));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        this.queryPlanner.close();
+    }
+
+    @Benchmark
+    public QueryBuilder parse() {
+        return QueryBuilder.parse(this.query);
+    }
+
+    @Benchmark
+    public Scan planScan() {
+        return this.queryBuilder.planScan(this.parameters, this.timestamps);
+    }
+
+    @Benchmark
+    public Scan parseAndPlan() {
+        DefaultQuery parsed = (DefaultQuery)this.queryPlanner.parse(this.query);
+        for (Map.Entry<String, byte[]> parameter : this.parameters.entrySet()) {
+            parsed.setBytes(parameter.getKey(), parameter.getValue());
+        }
+        for (Map.Entry<String, Long> timestamp : this.timestamps.entrySet()) {
+            parsed.setTimestamp(timestamp.getKey(), timestamp.getValue());
+        }
+        return parsed.planScan();
+    }
+}
@@ -0,0 +1,84 @@
+package com.opower.common.metrics;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counts objects as they are garbage collected, which helps to detect leaks of things like class loaders.  Each
+ * tracked object is watched through a phantom reference, and a daemon thread waits for the references to be
+ * enqueued and increments the counter that the object was tracked with.  Neither tracking an object nor the
+ * collection itself ever waits on the thread that does the counting, and whoever reads the counters never has to
+ * drain anything first.
+ *
+ * @author jeff@opower.com
+ */
+public final class CollectionTracker {
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<Object>();
+    // The references need to be reachable themselves in order to be enqueued
+    private final Set<CountedReference> references =
+        Collections.newSetFromMap(new ConcurrentHashMap<CountedReference, Boolean>());
+
+    /**
+     * Start the daemon thread that counts collected objects
+     *
+     * @param name the name of the thread
+     */
+    public CollectionTracker(String name) {
+        Thread counter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                countCollected();
+            }
+        }, name);
+        counter.setDaemon(true);
+        counter.start();
+    }
+
+    /**
+     * Increment the counter once the object has been garbage collected
+     *
+     * @param object the object to watch
+     * @param collectedCounter the counter to increment
+     */
+    public void track(Object object, StripedCounter collectedCounter) {
+        this.references.add(new CountedReference(object, collectedCounter, this.collected));
+    }
+
+    /**
+     * @return the number of objects being watched that have not been collected yet
+     */
+    public int size() {
+        return this.references.size();
+    }
+
+    private void countCollected() {
+        while (true) {
+            CountedReference reference;
+            try {
+                reference = (CountedReference)this.collected.remove();
+            }
+            catch (InterruptedException ie) {
+                return;
+            }
+            // Be sure to clear the reference so that the object can actually be collected by the garbage collector
+            reference.clear();
+            this.references.remove(reference);
+            reference.collectedCounter.increment();
+        }
+    }
+
+    /**
+     * A phantom reference that knows which counter to increment
+     */
+    private static final class CountedReference extends PhantomReference<Object> {
+        private final StripedCounter collectedCounter;
+
+        private CountedReference(Object object, StripedCounter collectedCounter, ReferenceQueue<Object> queue) {
+            super(object, queue);
+            this.collectedCounter = collectedCounter;
+        }
+    }
+}
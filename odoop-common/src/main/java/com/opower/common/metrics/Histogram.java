@@ -0,0 +1,136 @@
+package com.opower.common.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative values, such as latencies in nanoseconds, with a bucket for every power of two.
+ * Recording a value is a single atomic increment and never allocates, so it can be done on a hot path, while the
+ * resolution is within a factor of two, which is plenty to tell a cheap operation from an expensive one.
+ * </p><p>
+ * The recorded values are read by {@link #drain draining} the histogram, which hands back everything recorded since
+ * the last time it was drained, so that each report covers the interval since the previous one.  When more than one
+ * reader needs the values, take a {@link #snapshot} of everything recorded instead, and subtract an earlier snapshot
+ * from a later one to get what was recorded in between.
+ *
+ * @author jeff@opower.com
+ */
+public final class Histogram {
+    /**
+     * One bucket for zero and one for each bit a positive long may have as its highest
+     */
+    static final int BUCKETS = Long.SIZE;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * @param value the value to record, where negative values are recorded as zero
+     */
+    public void record(long value) {
+        this.counts.incrementAndGet(bucketOf(value));
+    }
+
+    /**
+     * Take everything that has been recorded since the histogram was last drained.  Each bucket is taken atomically,
+     * so no value is ever lost or counted twice, although values recorded while draining may be left for next time.
+     *
+     * @return the values recorded since the last time
+     */
+    public Snapshot drain() {
+        long[] drained = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            drained[i] = this.counts.getAndSet(i, 0L);
+        }
+        return new Snapshot(drained);
+    }
+
+    /**
+     * Take everything that has been recorded so far, without draining it
+     *
+     * @return all of the values recorded
+     */
+    public Snapshot snapshot() {
+        long[] recorded = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            recorded[i] = this.counts.get(i);
+        }
+        return new Snapshot(recorded);
+    }
+
+    /**
+     * Values of zero (or less) go into the first bucket, and positive values into the bucket of their highest bit
+     */
+    static int bucketOf(long value) {
+        return value <= 0L ? 0 : Long.SIZE - Long.numberOfLeadingZeros(value);
+    }
+
+    /**
+     * The largest value that goes into the bucket
+     */
+    static long upperBoundOf(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1L;
+    }
+
+    /**
+     * The values that were recorded over some interval
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+
+        private Snapshot(long[] counts) {
+            this.counts = counts;
+            long sum = 0L;
+            for (long bucketCount : counts) {
+                sum += bucketCount;
+            }
+            this.count = sum;
+        }
+
+        /**
+         * @param earlier a snapshot of the same histogram that was taken before this one
+         * @return the values that were recorded after the earlier snapshot was taken, up until this one
+         */
+        public Snapshot minus(Snapshot earlier) {
+            long[] difference = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                difference[i] = Math.max(0L, this.counts[i] - earlier.counts[i]);
+            }
+            return new Snapshot(difference);
+        }
+
+        /**
+         * @return the number of values recorded
+         */
+        public long getCount() {
+            return this.count;
+        }
+
+        /**
+         * Get an upper bound on the value at the given percentile, which is at most twice the actual value.
+         *
+         * @param percentile the percentile, from 0 to 100
+         * @return the upper bound of the bucket that the percentile falls in, or 0 if nothing was recorded
+         */
+        public long getPercentile(double percentile) {
+            if (percentile < 0.0 || percentile > 100.0) {
+                throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+            }
+            long rank = (long)Math.ceil(this.count * percentile / 100.0);
+            long seen = 0L;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += this.counts[i];
+                if (seen > 0L && seen >= rank) {
+                    return upperBoundOf(i);
+                }
+            }
+            return 0L;
+        }
+
+        /**
+         * @return an upper bound on the largest value recorded, or 0 if nothing was recorded
+         */
+        public long getMax() {
+            return getPercentile(100.0);
+        }
+    }
+}
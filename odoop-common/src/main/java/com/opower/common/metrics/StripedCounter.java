@@ -0,0 +1,79 @@
+package com.opower.common.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that many threads can increment at once without contending with each other.  Instead of a single
+ * value, the count is spread over a number of stripes, each on its own cache line, and each thread adds to the
+ * stripe picked by its id, so threads on different processors rarely touch the same memory.  Adding to the
+ * counter neither locks nor allocates; reading it sums the stripes, which is meant to be done far less often,
+ * such as when metrics are pushed.
+ * </p><p>
+ * The sum is not an atomic snapshot: increments that happen while it is being taken may or may not be counted.
+ *
+ * @author jeff@opower.com
+ */
+public final class StripedCounter {
+    /**
+     * The number of longs between stripes, so that each stripe is on a cache line of its own
+     */
+    private static final int PADDING = 8;
+    private static final int MAX_STRIPES = 64;
+    private static final int STRIPES = stripesFor(Runtime.getRuntime().availableProcessors());
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    /**
+     * Add one to the count
+     */
+    public void increment() {
+        add(1L);
+    }
+
+    /**
+     * @param delta the amount to add to the count
+     */
+    public void add(long delta) {
+        this.cells.getAndAdd(stripe() * PADDING, delta);
+    }
+
+    /**
+     * @return the sum of everything added to the count so far
+     */
+    public long sum() {
+        long sum = 0L;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += this.cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(sum());
+    }
+
+    /**
+     * Pick the stripe of the current thread, spreading the bits of its id so that consecutive ids do not all land
+     * on neighboring stripes
+     */
+    private static int stripe() {
+        long id = Thread.currentThread().getId();
+        int hash = (int)(id ^ (id >>> 32));
+        hash ^= (hash >>> 16);
+        hash *= 0x85ebca6b;
+        hash ^= (hash >>> 13);
+        return hash & (STRIPES - 1);
+    }
+
+    /**
+     * The number of stripes is the smallest power of two that is at least the number of processors
+     */
+    static int stripesFor(int processors) {
+        int stripes = 1;
+        while (stripes < processors && stripes < MAX_STRIPES) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Classes for counting events on hot paths without contending on locks.
+ */
+package com.opower.common.metrics;
@@ -0,0 +1,226 @@
+package com.opower.common.reflect;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the transitive closure of the classes that a set of classes refer to, by reading the class files
+ * themselves rather than loading the classes.  Every class that a class refers to, whether to call it, to
+ * declare a field or a method with it, or to annotate with it, is named in the constant pool of its class
+ * file, so following those names finds every class that could be needed to load and run the classes.
+ * </p><p>
+ * The closure is bounded by a location, such as a jar or a directory on the class path: only classes that
+ * are found in that same location are followed, and everything else, like the JDK or libraries, is assumed
+ * to be available wherever the classes end up.  Classes that are only ever referred to by name, such as
+ * through {@link Class#forName}, cannot be found this way and need to be named explicitly.
+ *
+ * @author jeff@opower.com
+ */
+public final class ClassClosure {
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final String CLASS_FILE_SUFFIX = ".class";
+
+    // Constant pool tags, from the JVM specification
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    /**
+     * Matches the class names in field, method, and generic signature descriptors, such as
+     * {@code (Ljava/lang/String;[Ljava/util/List<Lcom/opower/Foo;>;)V}
+     */
+    private static final Pattern DESCRIPTOR_CLASS = Pattern.compile("L([\\p{javaJavaIdentifierPart}/$]+)[;<]");
+
+    private ClassClosure() {}
+
+    /**
+     * Find the closure of the named classes within a location.
+     *
+     * @param classLoader the class loader to read the class files through
+     * @param location the location to bound the closure by, as returned by {@link #getLocation}
+     * @param classNames the binary names of the classes to start from; these are included even if they are not
+     *        in the location
+     * @return the class files in the closure, keyed and sorted by their resource names, such as
+     *         {@code com/opower/Foo.class}
+     * @throws ClassNotFoundException if one of the named classes cannot be found
+     * @throws IOException if a class file cannot be read or parsed
+     */
+    public static SortedMap<String, byte[]> find(ClassLoader classLoader, String location, Collection<String> classNames)
+        throws ClassNotFoundException, IOException {
+        SortedMap<String, byte[]> closure = new TreeMap<String, byte[]>();
+        Set<String> seen = new HashSet<String>();
+        Queue<String> pending = new LinkedList<String>();
+        for (String className : classNames) {
+            String internalName = className.replace('.', '/');
+            URL resource = classLoader.getResource(internalName + CLASS_FILE_SUFFIX);
+            if (resource == null) {
+                throw new ClassNotFoundException(className);
+            }
+            if (seen.add(internalName)) {
+                byte[] classFile = read(resource);
+                closure.put(internalName + CLASS_FILE_SUFFIX, classFile);
+                pending.addAll(getReferencedClasses(classFile));
+            }
+        }
+        while (!pending.isEmpty()) {
+            String internalName = pending.remove();
+            if (!seen.add(internalName)) {
+                continue;
+            }
+            URL resource = classLoader.getResource(internalName + CLASS_FILE_SUFFIX);
+            if (resource != null && resource.toString().startsWith(location)) {
+                byte[] classFile = read(resource);
+                closure.put(internalName + CLASS_FILE_SUFFIX, classFile);
+                pending.addAll(getReferencedClasses(classFile));
+            }
+        }
+        return closure;
+    }
+
+    /**
+     * Get the location that a class was loaded from, which is the URL of its class file without the path
+     * to the class file within the jar or directory, such as {@code jar:file:/lib/app.jar!/}
+     *
+     * @param clazz the class to find the location of
+     * @return the location of the class
+     * @throws IllegalArgumentException if the class file cannot be found, as with generated classes
+     */
+    public static String getLocation(Class<?> clazz) {
+        String resourceName = clazz.getName().replace('.', '/') + CLASS_FILE_SUFFIX;
+        ClassLoader classLoader = clazz.getClassLoader();
+        URL resource = classLoader == null
+            ? ClassLoader.getSystemResource(resourceName)
+            : classLoader.getResource(resourceName);
+        if (resource == null) {
+            throw new IllegalArgumentException("Unable to find the class file for " + clazz);
+        }
+        String url = resource.toString();
+        return url.substring(0, url.length() - resourceName.length());
+    }
+
+    /**
+     * Parse the constant pool of a class file for the internal names of the classes it refers to.
+     *
+     * @param classFile the contents of the class file
+     * @return the internal names of the referenced classes, such as {@code java/lang/String}
+     * @throws IOException if the class file cannot be parsed
+     */
+    static Set<String> getReferencedClasses(byte[] classFile) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(classFile));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        // minor and major versions
+        in.readUnsignedShort();
+        in.readUnsignedShort();
+
+        int constantPoolCount = in.readUnsignedShort();
+        String[] utf8s = new String[constantPoolCount];
+        List<Integer> classNameIndexes = new ArrayList<Integer>();
+        for (int i = 1; i < constantPoolCount; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+            case CONSTANT_UTF8:
+                utf8s[i] = in.readUTF();
+                break;
+            case CONSTANT_CLASS:
+                classNameIndexes.add(in.readUnsignedShort());
+                break;
+            case CONSTANT_STRING:
+            case CONSTANT_METHOD_TYPE:
+            case CONSTANT_MODULE:
+            case CONSTANT_PACKAGE:
+                in.skipBytes(2);
+                break;
+            case CONSTANT_METHOD_HANDLE:
+                in.skipBytes(3);
+                break;
+            case CONSTANT_INTEGER:
+            case CONSTANT_FLOAT:
+            case CONSTANT_FIELDREF:
+            case CONSTANT_METHODREF:
+            case CONSTANT_INTERFACE_METHODREF:
+            case CONSTANT_NAME_AND_TYPE:
+            case CONSTANT_DYNAMIC:
+            case CONSTANT_INVOKE_DYNAMIC:
+                in.skipBytes(4);
+                break;
+            case CONSTANT_LONG:
+            case CONSTANT_DOUBLE:
+                in.skipBytes(8);
+                // eight byte constants take up two entries in the pool
+                i++;
+                break;
+            default:
+                throw new IOException("Unknown constant pool tag " + tag + " at index " + i);
+            }
+        }
+
+        Set<String> referencedClasses = new HashSet<String>();
+        Set<Integer> plainClassNameIndexes = new HashSet<Integer>();
+        for (int classNameIndex : classNameIndexes) {
+            String className = utf8s[classNameIndex];
+            // Array classes are named by their descriptors, which are found below along with the rest
+            if (className != null && !className.startsWith("[")) {
+                referencedClasses.add(className);
+                plainClassNameIndexes.add(classNameIndex);
+            }
+        }
+        // Any other UTF8 constant may be a descriptor; anything that only looks like one is harmless,
+        // since it will not be found as a class file
+        for (int i = 1; i < utf8s.length; i++) {
+            if (utf8s[i] != null && !plainClassNameIndexes.contains(i)) {
+                Matcher matcher = DESCRIPTOR_CLASS.matcher(utf8s[i]);
+                while (matcher.find()) {
+                    referencedClasses.add(matcher.group(1));
+                }
+            }
+        }
+        return referencedClasses;
+    }
+
+    private static byte[] read(URL resource) throws IOException {
+        InputStream in = resource.openStream();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+        finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.opower.common.reflect;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Resolves the public default constructors of classes by name and caches them, so that repeatedly instantiating the
+ * same class during deserialization does not pay for {@link Class#forName} and {@link Class#getConstructor} every
+ * time, the latter of which copies the constructor and checks its access on every call.
+ * </p><p>
+ * Unlike Hadoop's {@code ReflectionUtils}, this cache does not keep class loaders alive forever.  A constructor
+ * strongly reaches its class loader through its class, so where a constructor is kept depends on the class loader
+ * it was resolved through.  The class loader of this cache, the system class loader, and their parents outlive the
+ * cache anyway, so the cache keeps their constructors itself.  A class loader that is a {@link ConstructorScope},
+ * such as one for a deployed jar, keeps its own constructors, which are dropped along with it.  For any other class
+ * loader, the cache only keeps weak references to the classes, and looks up their constructors on each call, so
+ * that once nothing else uses the classes from that class loader, the garbage collector is free to collect it
+ * right away.
+ *
+ * @author jeff@opower.com
+ */
+public final class ConstructorCache {
+    private final ConcurrentMap<ClassLoader, ConcurrentMap<String, Constructor<?>>> permanentConstructors =
+        new ConcurrentHashMap<ClassLoader, ConcurrentMap<String, Constructor<?>>>();
+    // A class is strongly reachable from its class loader, so the weak references only clear with the loader
+    private final Map<ClassLoader, ConcurrentMap<String, WeakReference<Class<?>>>> classesByLoader =
+        new WeakHashMap<ClassLoader, ConcurrentMap<String, WeakReference<Class<?>>>>();
+
+    /**
+     * Create a new instance of the named class through its public default constructor.
+     *
+     * @param className the binary name of the class to instantiate
+     * @param classLoader the class loader to resolve the class through
+     * @param type the type the instance is expected to be
+     * @return a new instance of the class
+     * @throws ClassCastException if the class is not of the expected type
+     * @throws Exception if the class cannot be found or instantiated
+     */
+    public <T> T newInstance(String className, ClassLoader classLoader, Class<T> type) throws Exception {
+        return getConstructor(className, classLoader, type).newInstance();
+    }
+
+    /**
+     * Get the public default constructor of the named class, resolving and caching it if it has not been already.
+     *
+     * @param className the binary name of the class
+     * @param classLoader the class loader to resolve the class through
+     * @param type the type the class is expected to be
+     * @return the public default constructor for the class
+     * @throws ClassNotFoundException if the class cannot be found by the class loader
+     * @throws NoSuchMethodException if the class does not have a public default constructor
+     * @throws ClassCastException if the class is not of the expected type
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Constructor<? extends T> getConstructor(String className, ClassLoader classLoader, Class<T> type)
+        throws ClassNotFoundException, NoSuchMethodException {
+        ConcurrentMap<String, Constructor<?>> constructors = getConstructors(classLoader);
+        Constructor<?> constructor;
+        if (constructors == null) {
+            constructor = getClass(className, classLoader).getConstructor();
+        }
+        else {
+            constructor = constructors.get(className);
+            if (constructor == null) {
+                constructor = Class.forName(className, false, classLoader).getConstructor();
+                // Racing threads may each resolve the constructor; they are equivalent, so the last one in wins
+                constructors.put(className, constructor);
+            }
+        }
+        if (!type.isAssignableFrom(constructor.getDeclaringClass())) {
+            throw new ClassCastException(className + " is not a " + type.getName());
+        }
+        return (Constructor<? extends T>)constructor;
+    }
+
+    /**
+     * @return the number of class loaders that currently have classes or constructors kept in this cache, which
+     *         does not count the class loaders that keep their own constructors
+     */
+    public int size() {
+        synchronized (this.classesByLoader) {
+            return this.permanentConstructors.size() + this.classesByLoader.size();
+        }
+    }
+
+    /**
+     * Get the map to keep the constructors resolved through a class loader in, if there is one that does not keep
+     * the class loader alive any longer than it would live anyway
+     */
+    private ConcurrentMap<String, Constructor<?>> getConstructors(ClassLoader classLoader) {
+        if (classLoader instanceof ConstructorScope) {
+            return ((ConstructorScope)classLoader).getConstructors();
+        }
+        if (classLoader == null) {
+            return null;
+        }
+        ConcurrentMap<String, Constructor<?>> constructors = this.permanentConstructors.get(classLoader);
+        if (constructors == null && isPermanent(classLoader)) {
+            ConcurrentMap<String, Constructor<?>> newConstructors = new ConcurrentHashMap<String, Constructor<?>>();
+            constructors = this.permanentConstructors.putIfAbsent(classLoader, newConstructors);
+            if (constructors == null) {
+                constructors = newConstructors;
+            }
+        }
+        return constructors;
+    }
+
+    private static boolean isPermanent(ClassLoader classLoader) {
+        return isSelfOrAncestor(classLoader, ConstructorCache.class.getClassLoader())
+            || isSelfOrAncestor(classLoader, ClassLoader.getSystemClassLoader());
+    }
+
+    private static boolean isSelfOrAncestor(ClassLoader classLoader, ClassLoader descendant) {
+        for (ClassLoader loader = descendant; loader != null; loader = loader.getParent()) {
+            if (loader == classLoader) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Class<?> getClass(String className, ClassLoader classLoader) throws ClassNotFoundException {
+        ConcurrentMap<String, WeakReference<Class<?>>> classes = getClasses(classLoader);
+        WeakReference<Class<?>> reference = classes.get(className);
+        Class<?> clazz = reference == null ? null : reference.get();
+        if (clazz == null) {
+            clazz = Class.forName(className, false, classLoader);
+            // Racing threads may each resolve the class; they get the same one, so the last one in wins
+            classes.put(className, new WeakReference<Class<?>>(clazz));
+        }
+        return clazz;
+    }
+
+    private ConcurrentMap<String, WeakReference<Class<?>>> getClasses(ClassLoader classLoader) {
+        synchronized (this.classesByLoader) {
+            ConcurrentMap<String, WeakReference<Class<?>>> classes = this.classesByLoader.get(classLoader);
+            if (classes == null) {
+                classes = new ConcurrentHashMap<String, WeakReference<Class<?>>>();
+                this.classesByLoader.put(classLoader, classes);
+            }
+            return classes;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.opower.common.reflect;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link ClassLoader} that gives the {@link ConstructorCache} a place to keep the constructors of its classes,
+ * so that they are dropped along with the class loader.  A constructor strongly reaches its class, and so the class
+ * loader, which means that a cache holding one anywhere else would keep the class loader alive.  Class loaders that
+ * can be garbage collected, such as those that load classes from a deployed jar, should implement this.
+ *
+ * @author jeff@opower.com
+ */
+public interface ConstructorScope {
+    /**
+     * @return the public default constructors of the classes resolved through this class loader, by class name
+     */
+    ConcurrentMap<String, Constructor<?>> getConstructors();
+}
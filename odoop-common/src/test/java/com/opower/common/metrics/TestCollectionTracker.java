@@ -0,0 +1,32 @@
+package com.opower.common.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link CollectionTracker}
+ *
+ * @author jeff@opower.com
+ */
+public class TestCollectionTracker {
+    private static final int MAX_GC_ATTEMPTS = 50;
+
+    @Test
+    public void testCollectedObjectsAreCounted() throws Exception {
+        CollectionTracker tracker = new CollectionTracker(getClass().getSimpleName());
+        StripedCounter collected = new StripedCounter();
+        Object reachable = new Object();
+        tracker.track(new Object(), collected);
+        tracker.track(reachable, collected);
+        assertEquals(2, tracker.size());
+
+        for (int i = 0; i < MAX_GC_ATTEMPTS && collected.sum() < 1L; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(1L, collected.sum());
+        assertEquals(1, tracker.size());
+        assertNotNull(reachable);
+    }
+}
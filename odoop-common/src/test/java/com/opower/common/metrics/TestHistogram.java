@@ -0,0 +1,68 @@
+package com.opower.common.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link Histogram}
+ *
+ * @author jeff@opower.com
+ */
+public class TestHistogram {
+    @Test
+    public void testBuckets() {
+        assertEquals(0, Histogram.bucketOf(-5L));
+        assertEquals(0, Histogram.bucketOf(0L));
+        assertEquals(1, Histogram.bucketOf(1L));
+        assertEquals(2, Histogram.bucketOf(2L));
+        assertEquals(2, Histogram.bucketOf(3L));
+        assertEquals(11, Histogram.bucketOf(1024L));
+        assertEquals(Histogram.BUCKETS - 1, Histogram.bucketOf(Long.MAX_VALUE));
+        assertEquals(2047L, Histogram.upperBoundOf(11));
+        assertEquals(Long.MAX_VALUE, Histogram.upperBoundOf(Histogram.BUCKETS - 1));
+    }
+
+    @Test
+    public void testPercentiles() {
+        Histogram histogram = new Histogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(100L);
+        }
+        histogram.record(5000L);
+        Histogram.Snapshot snapshot = histogram.drain();
+        assertEquals(100L, snapshot.getCount());
+        assertEquals(127L, snapshot.getPercentile(50.0));
+        assertEquals(127L, snapshot.getPercentile(99.0));
+        assertEquals(8191L, snapshot.getMax());
+    }
+
+    @Test
+    public void testDrainingStartsOver() {
+        Histogram histogram = new Histogram();
+        histogram.record(1L);
+        assertEquals(1L, histogram.drain().getCount());
+        Histogram.Snapshot empty = histogram.drain();
+        assertEquals(0L, empty.getCount());
+        assertEquals(0L, empty.getMax());
+    }
+
+    @Test
+    public void testSnapshotsCanBeSubtracted() {
+        Histogram histogram = new Histogram();
+        histogram.record(10L);
+        Histogram.Snapshot earlier = histogram.snapshot();
+        histogram.record(1000L);
+        Histogram.Snapshot later = histogram.snapshot();
+        assertEquals(2L, later.getCount());
+        Histogram.Snapshot between = later.minus(earlier);
+        assertEquals(1L, between.getCount());
+        assertEquals(1023L, between.getPercentile(0.0));
+        assertEquals(2L, histogram.drain().getCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPercentile() {
+        new Histogram().drain().getPercentile(101.0);
+    }
+}
@@ -0,0 +1,60 @@
+package com.opower.common.metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link StripedCounter}
+ *
+ * @author jeff@opower.com
+ */
+public class TestStripedCounter {
+    private static final int THREADS = 8;
+    private static final int INCREMENTS_PER_THREAD = 100000;
+
+    @Test
+    public void testSingleThread() {
+        StripedCounter counter = new StripedCounter();
+        assertEquals(0L, counter.sum());
+        counter.increment();
+        counter.add(41L);
+        assertEquals(42L, counter.sum());
+        counter.add(-2L);
+        assertEquals("40", counter.toString());
+    }
+
+    @Test
+    public void testConcurrentIncrementsAreAllCounted() throws Exception {
+        final StripedCounter counter = new StripedCounter();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < THREADS; i++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < INCREMENTS_PER_THREAD; j++) {
+                        counter.increment();
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals((long)THREADS * INCREMENTS_PER_THREAD, counter.sum());
+    }
+
+    @Test
+    public void testStripesArePowersOfTwo() {
+        assertEquals(1, StripedCounter.stripesFor(1));
+        assertEquals(4, StripedCounter.stripesFor(3));
+        assertEquals(8, StripedCounter.stripesFor(8));
+        assertEquals(64, StripedCounter.stripesFor(1000));
+    }
+}
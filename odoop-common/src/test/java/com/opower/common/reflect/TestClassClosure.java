@@ -0,0 +1,72 @@
+package com.opower.common.reflect;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.SortedMap;
+
+import com.opower.common.reflect.closure.ClosureCallee;
+import com.opower.common.reflect.closure.ClosureField;
+import com.opower.common.reflect.closure.ClosureRoot;
+import com.opower.common.reflect.closure.ClosureUnreferenced;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link ClassClosure}
+ *
+ * @author jeff@opower.com
+ */
+public class TestClassClosure {
+    private ClassLoader classLoader;
+    private String location;
+
+    @Before
+    public void setUp() {
+        this.classLoader = getClass().getClassLoader();
+        this.location = ClassClosure.getLocation(ClosureRoot.class);
+    }
+
+    @Test
+    public void testClosureFollowsReferencesWithinTheLocation() throws Exception {
+        SortedMap<String, byte[]> closure = ClassClosure.find(this.classLoader, this.location,
+                Collections.singletonList(ClosureRoot.class.getName()));
+        assertEquals(
+                Arrays.asList(resourceName(ClosureCallee.class), resourceName(ClosureField.class),
+                    resourceName(ClosureRoot.class)),
+                Arrays.asList(closure.keySet().toArray()));
+    }
+
+    @Test
+    public void testExplicitClassesAreIncluded() throws Exception {
+        SortedMap<String, byte[]> closure = ClassClosure.find(this.classLoader, this.location,
+                Arrays.asList(ClosureRoot.class.getName(), ClosureUnreferenced.class.getName(), String.class.getName()));
+        assertTrue(closure.containsKey(resourceName(ClosureUnreferenced.class)));
+        assertTrue(closure.containsKey(resourceName(String.class)));
+        assertFalse(closure.containsKey(resourceName(Object.class)));
+    }
+
+    @Test(expected = ClassNotFoundException.class)
+    public void testUnknownClass() throws Exception {
+        ClassClosure.find(this.classLoader, this.location, Collections.singletonList("com.opower.DoesNotExist"));
+    }
+
+    @Test
+    public void testReferencedClasses() throws Exception {
+        SortedMap<String, byte[]> closure = ClassClosure.find(this.classLoader, this.location,
+                Collections.singletonList(ClosureRoot.class.getName()));
+        Set<String> referencedClasses =
+            ClassClosure.getReferencedClasses(closure.get(resourceName(ClosureRoot.class)));
+        assertTrue(referencedClasses.contains("java/lang/Object"));
+        assertTrue(referencedClasses.contains("java/util/List"));
+        assertTrue(referencedClasses.contains("com/opower/common/reflect/closure/ClosureField"));
+        assertFalse(referencedClasses.contains("com/opower/common/reflect/closure/ClosureUnreferenced"));
+    }
+
+    private static String resourceName(Class<?> clazz) {
+        return clazz.getName().replace('.', '/') + ".class";
+    }
+}
@@ -0,0 +1,131 @@
+package com.opower.common.reflect;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.opower.common.reflect.hide.ReflectionTestClasses;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link ConstructorCache}
+ *
+ * @author jeff@opower.com
+ */
+public class TestConstructorCache {
+    private static final int MAX_GC_ATTEMPTS = 50;
+
+    private ConstructorCache cache;
+    private ClassLoader classLoader;
+
+    @Before
+    public void setUp() {
+        this.cache = new ConstructorCache();
+        this.classLoader = getClass().getClassLoader();
+    }
+
+    @Test
+    public void testNewInstance() throws Exception {
+        Object instance = this.cache.newInstance(ArrayList.class.getName(), this.classLoader, List.class);
+        assertTrue(instance instanceof ArrayList);
+    }
+
+    @Test
+    public void testConstructorIsCached() throws Exception {
+        Constructor<?> first = this.cache.getConstructor(ArrayList.class.getName(), this.classLoader, List.class);
+        Constructor<?> second = this.cache.getConstructor(ArrayList.class.getName(), this.classLoader, List.class);
+        assertSame(first, second);
+        assertEquals(1, this.cache.size());
+    }
+
+    @Test
+    public void testConstructorIsKeptByItsClassLoader() throws Exception {
+        String className = ReflectionTestClasses.publicStaticClassWithPublicConstructor().getClass().getName();
+        ScopedClassLoader scopedLoader = new ScopedClassLoader();
+        Constructor<?> first = this.cache.getConstructor(className, scopedLoader, Object.class);
+        Constructor<?> second = this.cache.getConstructor(className, scopedLoader, Object.class);
+        assertSame(first, second);
+        assertSame(first, scopedLoader.getConstructors().get(className));
+        assertSame(scopedLoader, first.getDeclaringClass().getClassLoader());
+        assertEquals(0, this.cache.size());
+
+        WeakReference<ClassLoader> loaderReference = new WeakReference<ClassLoader>(scopedLoader);
+        scopedLoader = null;
+        first = null;
+        second = null;
+        for (int i = 0; i < MAX_GC_ATTEMPTS && loaderReference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(loaderReference.get());
+    }
+
+    @Test
+    public void testClassLoaderIsNotKeptAlive() throws Exception {
+        // Without a parent, the class loader defines the test class itself instead of delegating
+        URL testClasses = ReflectionTestClasses.class.getProtectionDomain().getCodeSource().getLocation();
+        ClassLoader isolatedLoader = new URLClassLoader(new URL[] { testClasses }, null);
+        String className = ReflectionTestClasses.publicStaticClassWithPublicConstructor().getClass().getName();
+        Object instance = this.cache.newInstance(className, isolatedLoader, Object.class);
+        assertSame(isolatedLoader, instance.getClass().getClassLoader());
+        WeakReference<ClassLoader> loaderReference = new WeakReference<ClassLoader>(isolatedLoader);
+        isolatedLoader = null;
+        instance = null;
+
+        for (int i = 0; i < MAX_GC_ATTEMPTS && loaderReference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(loaderReference.get());
+        assertEquals(0, this.cache.size());
+    }
+
+    @Test
+    public void testConstructorsAreCachedPerClassLoader() throws Exception {
+        ClassLoader childLoader = new URLClassLoader(new URL[0], this.classLoader);
+        this.cache.getConstructor(ArrayList.class.getName(), this.classLoader, List.class);
+        this.cache.getConstructor(ArrayList.class.getName(), childLoader, List.class);
+        assertEquals(2, this.cache.size());
+    }
+
+    @Test(expected = ClassNotFoundException.class)
+    public void testUnknownClass() throws Exception {
+        this.cache.getConstructor("com.opower.DoesNotExist", this.classLoader, Object.class);
+    }
+
+    @Test(expected = ClassCastException.class)
+    public void testWrongType() throws Exception {
+        this.cache.getConstructor(ArrayList.class.getName(), this.classLoader, Runnable.class);
+    }
+
+    @Test(expected = NoSuchMethodException.class)
+    public void testNonPublicConstructor() throws Exception {
+        String className = ReflectionTestClasses.publicStaticClassWithPrivateConstructor().getClass().getName();
+        this.cache.getConstructor(className, this.classLoader, Object.class);
+    }
+
+    /**
+     * Without a parent, this class loader defines the test classes itself instead of delegating
+     */
+    private static final class ScopedClassLoader extends URLClassLoader implements ConstructorScope {
+        private final ConcurrentMap<String, Constructor<?>> constructors = new ConcurrentHashMap<String, Constructor<?>>();
+
+        ScopedClassLoader() {
+            super(new URL[] { ReflectionTestClasses.class.getProtectionDomain().getCodeSource().getLocation() }, null);
+        }
+
+        @Override
+        public ConcurrentMap<String, Constructor<?>> getConstructors() {
+            return this.constructors;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.opower.common.reflect.closure;
+
+/**
+ * Only referred to by a method of {@link ClosureRoot}
+ *
+ * @author jeff@opower.com
+ */
+public class ClosureCallee {
+}
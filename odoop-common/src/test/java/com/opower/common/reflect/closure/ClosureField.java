@@ -0,0 +1,9 @@
+package com.opower.common.reflect.closure;
+
+/**
+ * Only referred to by the generic signature of a field of {@link ClosureRoot}
+ *
+ * @author jeff@opower.com
+ */
+public class ClosureField {
+}
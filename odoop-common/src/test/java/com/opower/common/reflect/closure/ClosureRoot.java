@@ -0,0 +1,17 @@
+package com.opower.common.reflect.closure;
+
+import java.util.List;
+
+/**
+ * The class to start finding a closure from in {@link com.opower.common.reflect.TestClassClosure}
+ *
+ * @author jeff@opower.com
+ */
+public class ClosureRoot {
+    // Only referred to by the generic signature of the field
+    private List<ClosureField> fields;
+
+    public String callee() {
+        return new ClosureCallee().toString();
+    }
+}
@@ -0,0 +1,9 @@
+package com.opower.common.reflect.closure;
+
+/**
+ * Not referred to by any of the other closure classes
+ *
+ * @author jeff@opower.com
+ */
+public class ClosureUnreferenced {
+}
@@ -0,0 +1,197 @@
+package com.opower.hadoop.hbase.test;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Creates and loads tables shaped like the customer table that the query planner documentation describes, so that
+ * benchmarks and tests can run realistic queries against a mini cluster.  Every row is a customer, keyed by
+ * {@link #rowKey}, with a single family {@code d} holding:
+ * <ul>
+ * <li>{@code address}, with a single version</li>
+ * <li>{@code clicks}, with one version per day going back from {@link #NEWEST_TIMESTAMP}</li>
+ * <li>{@code predictions0000} and up, a single version each, like a map of model name to prediction</li>
+ * </ul>
+ * The number of rows, versions of clicks, prediction qualifiers and the size of the values can all be set, and
+ * everything is generated from a seed, so the same settings always load the same cells.
+ *
+ * @author jeff@opower.com
+ */
+public class CustomerTableLoader {
+    /**
+     * The name of the table in the documentation
+     */
+    public static final String TABLE_NAME = "customer";
+    public static final byte[] FAMILY = Bytes.toBytes("d");
+    public static final byte[] ADDRESS = Bytes.toBytes("address");
+    public static final byte[] CLICKS = Bytes.toBytes("clicks");
+    public static final String PREDICTIONS_PREFIX = "predictions";
+    /**
+     * The timestamp of the newest version of every column
+     */
+    public static final long NEWEST_TIMESTAMP = 1350000000000L;
+    /**
+     * The time between versions of the clicks, which is a day
+     */
+    public static final long VERSION_INTERVAL = 86400000L;
+
+    private static final Log LOG = LogFactory.getLog(CustomerTableLoader.class);
+    private static final int PUTS_PER_BATCH = 1000;
+
+    private long seed = 0L;
+    private int rows = 1000;
+    private int versions = 10;
+    private int qualifiers = 10;
+    private int valueSize = 64;
+    private int regions = 1;
+
+    /**
+     * @param row which customer, from 0 up to the number of rows
+     * @return the row key of the customer
+     */
+    public static String rowKey(long row) {
+        return String.format("customer%012d", row);
+    }
+
+    public CustomerTableLoader setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public CustomerTableLoader setRows(int rows) {
+        this.rows = rows;
+        return this;
+    }
+
+    /**
+     * @param versions the number of versions of the clicks of each customer
+     */
+    public CustomerTableLoader setVersions(int versions) {
+        this.versions = versions;
+        return this;
+    }
+
+    /**
+     * @param qualifiers the number of prediction qualifiers of each customer
+     */
+    public CustomerTableLoader setQualifiers(int qualifiers) {
+        this.qualifiers = qualifiers;
+        return this;
+    }
+
+    /**
+     * @param valueSize the number of bytes in every value
+     */
+    public CustomerTableLoader setValueSize(int valueSize) {
+        this.valueSize = valueSize;
+        return this;
+    }
+
+    /**
+     * @param regions the number of regions to split the table into when it is created, evenly by row
+     */
+    public CustomerTableLoader setRegions(int regions) {
+        this.regions = regions;
+        return this;
+    }
+
+    public int getRows() {
+        return this.rows;
+    }
+
+    public int getVersions() {
+        return this.versions;
+    }
+
+    public int getQualifiers() {
+        return this.qualifiers;
+    }
+
+    /**
+     * Create a table with the customer layout, keeping every version, and split into the configured number of
+     * regions
+     *
+     * @param testingUtility the testing utility of the cluster to create the table in
+     * @param tableName the name of the table
+     * @return the new table
+     * @throws IOException if the table cannot be created
+     */
+    public HTable createTable(HBaseTestingUtility testingUtility, String tableName) throws IOException {
+        HTableDescriptor descriptor = new HTableDescriptor(tableName);
+        HColumnDescriptor family = new HColumnDescriptor(FAMILY);
+        family.setMaxVersions(Integer.MAX_VALUE);
+        descriptor.addFamily(family);
+        if (this.regions > 1) {
+            byte[][] splitKeys = new byte[this.regions - 1][];
+            for (int i = 1; i < this.regions; i++) {
+                splitKeys[i - 1] = Bytes.toBytes(rowKey((long)this.rows * i / this.regions));
+            }
+            testingUtility.getHBaseAdmin().createTable(descriptor, splitKeys);
+        }
+        else {
+            testingUtility.getHBaseAdmin().createTable(descriptor);
+        }
+        return new HTable(testingUtility.getConfiguration(), tableName);
+    }
+
+    /**
+     * Load the customers into a table, in batches of puts
+     *
+     * @param table a table with the customer layout
+     * @return the number of cells loaded
+     * @throws IOException if the cells cannot be put
+     */
+    public long load(HTableInterface table) throws IOException {
+        Random random = new Random(this.seed);
+        byte[][] predictions = new byte[this.qualifiers][];
+        for (int i = 0; i < this.qualifiers; i++) {
+            predictions[i] = Bytes.toBytes(String.format("%s%04d", PREDICTIONS_PREFIX, i));
+        }
+        long cells = 0L;
+        List<Put> batch = new ArrayList<Put>(PUTS_PER_BATCH);
+        for (int row = 0; row < this.rows; row++) {
+            Put put = new Put(Bytes.toBytes(rowKey(row)));
+            put.add(FAMILY, ADDRESS, NEWEST_TIMESTAMP, randomValue(random));
+            for (int version = 0; version < this.versions; version++) {
+                put.add(FAMILY, CLICKS, NEWEST_TIMESTAMP - version * VERSION_INTERVAL, randomValue(random));
+            }
+            for (byte[] prediction : predictions) {
+                put.add(FAMILY, prediction, NEWEST_TIMESTAMP, randomValue(random));
+            }
+            cells += put.size();
+            batch.add(put);
+            if (batch.size() == PUTS_PER_BATCH) {
+                table.put(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            table.put(batch);
+        }
+        table.flushCommits();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Loaded %d cells in %d rows into %s", cells, this.rows,
+                        Bytes.toString(table.getTableName())));
+        }
+        return cells;
+    }
+
+    private byte[] randomValue(Random random) {
+        byte[] value = new byte[this.valueSize];
+        random.nextBytes(value);
+        return value;
+    }
+}
@@ -4,24 +4,52 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.util.Bytes;
 
 import org.junit.runners.BlockJUnit4ClassRunner;
+import org.junit.runners.model.FrameworkMethod;
 import org.junit.runners.model.InitializationError;
 import org.junit.runners.model.Statement;
 
+import java.io.IOException;
+import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * <p>A {@link org.junit.runner.Runner JUnit runner} that boots up a {@link org.apache.hadoop.hbase.MiniHBaseCluster}
- * for the lifespan of all tests that are run, thus allowing you to take the performance penalty of
- * booting the cluster once instead of with each test class that is run.  The flip side of this is that
- * each test that uses the mini cluster must definitely clean up after itself so that it does not affect
- * any other test that may run.
+ * the first time a test class asks for it and keeps it up for the lifespan of all tests that are run,
+ * thus allowing you to take the performance penalty of booting the cluster once instead of with each
+ * test class that is run.  The flip side of this is that
+ * each test that uses the mini cluster must not affect any other test that may run, which is simplest
+ * when every table it creates is in its own {@link TableNamespace}.
  * </p><p>
  * When a test class is run with this runner and has an {@link HBaseTestingUtility} member or static
  * field, that field will be populated with the {@link HBaseTestingUtility} that is shared for all
- * test classes in the test run.
+ * test classes in the test run.  Likewise, a {@link TableNamespace} member or static field will be
+ * populated with a namespace that is unique to the test class, and every table in that namespace is
+ * dropped in the background once the test class is done.
+ * </p><p>
+ * A test of a filter that needs nothing but a region to scan can ask for a {@link LocalRegionHarness}
+ * member or static field instead, which will be populated with a harness of standalone regions for
+ * the test class, and is closed once the test class is done.  If that is all it asks for, then the
+ * mini cluster is not booted for it at all.
+ * </p><p>
+ * An {@link HTable} field annotated with {@link PooledTable} will be populated with an empty table
+ * from the {@link TablePool} of the mini cluster, for each test if it is a member field, or for the
+ * whole test class if it is a static field, and the table is handed back to the pool afterwards.
+ * Tests that use pooled tables spend next to no time waiting on tables to be created and dropped.
+ * </p><p>
+ * Test classes that keep their tables in their namespaces can run at the same time against the one
+ * cluster, such as with surefire's {@code parallel=classes}, since the cluster is booted only once no
+ * matter how many classes ask for it at the same time.  Forking a JVM per test class would boot a
+ * cluster per fork, and defeat the purpose of this runner.
  * </p><p>
  * This class is highly influenced by Spring's SpringJunit4ClassRunner and TestContextManager.
  * </p>
@@ -32,6 +60,8 @@ public class HBaseTestRunner extends BlockJUnit4ClassRunner {
     private static final Log LOG = LogFactory.getLog(HBaseTestRunner.class);
 
     private static HBaseTestingUtility hBaseTestingUtility;
+    private static ExecutorService namespaceDropper;
+    private static TablePool tablePool;
 
     private static synchronized HBaseTestingUtility initializeTestingUtility() throws Exception {
         if (hBaseTestingUtility == null) {
@@ -40,12 +70,24 @@ public class HBaseTestRunner extends BlockJUnit4ClassRunner {
             }
             hBaseTestingUtility = new HBaseTestingUtility();
             hBaseTestingUtility.startMiniCluster();
+            tablePool = new TablePool(hBaseTestingUtility);
+            namespaceDropper = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "TableNamespaceDropper");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
             Runtime.getRuntime().addShutdownHook(new Thread() {
                 @Override
                 public void run() {
                     if (LOG.isDebugEnabled()) {
                         LOG.debug("Shutting down mini cluster");
                     }
+                    // Whatever has not been dropped yet goes away with the cluster
+                    namespaceDropper.shutdownNow();
+                    tablePool.shutdown();
                     try {
                         hBaseTestingUtility.shutdownMiniCluster();
                     }
@@ -58,23 +100,62 @@ public class HBaseTestRunner extends BlockJUnit4ClassRunner {
         return hBaseTestingUtility;
     }
 
+    private static synchronized TablePool getTablePool() throws Exception {
+        initializeTestingUtility();
+        return tablePool;
+    }
+
+    /**
+     * Get the {@link HBaseTestingUtility} that is shared by all of the tests, booting the mini cluster if it is not
+     * already running, so that code run outside of JUnit, such as a benchmark, can use the same cluster.
+     *
+     * @return the shared testing utility
+     * @throws Exception if the mini cluster cannot be started
+     */
+    public static HBaseTestingUtility getTestingUtility() throws Exception {
+        return initializeTestingUtility();
+    }
+
+    // Guarded by this; only created once a test asks for it
+    private TableNamespace tableNamespace;
+    // Guarded by this; only created once a test asks for it
+    private LocalRegionHarness localRegionHarness;
+
     public HBaseTestRunner(Class<?> testClass) throws InitializationError {
         super(testClass);
     }
 
+    /**
+     * Checks that every field annotated with {@link PooledTable} is an {@link HTable} with column families.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    protected void collectInitializationErrors(List<Throwable> errors) {
+        super.collectInitializationErrors(errors);
+        for (Field field : findAnnotatedFields(getTestClass().getJavaClass(), PooledTable.class)) {
+            if (!field.getType().equals(HTable.class)) {
+                errors.add(new Exception(String.format("Pooled table field %s should be an HTable", field)));
+            }
+            if (field.getAnnotation(PooledTable.class).families().length == 0) {
+                errors.add(new Exception(String.format("Pooled table field %s should have column families", field)));
+            }
+        }
+    }
+
     /**
      * Prepares a test suite for running with a {@link org.apache.hadoop.hbase.MiniHBaseCluster}.
      * Instatiates an {@link HBaseTestingUtility} if one is not already instantiated for the test
      * suite and populates any member field in the current test class with the resulting
-     * {@link HBaseTestingUtility}.
+     * {@link HBaseTestingUtility}, with the {@link TableNamespace} of the test class, with
+     * the {@link LocalRegionHarness} of the test class, and with tables from the {@link TablePool}.
      *
      * {@inheritDoc}
      */
     @Override
     protected Object createTest() throws Exception {
         Object testInstance = super.createTest();
-        HBaseTestingUtility testingUtility = initializeTestingUtility();
-        initializeTestInstance(testInstance, testingUtility);
+        initializeTestInstance(testInstance);
         return testInstance;
     }
 
@@ -82,7 +163,8 @@ public class HBaseTestRunner extends BlockJUnit4ClassRunner {
      * Prepares a test suite for running with a {@link org.apache.hadoop.hbase.MiniHBaseCluster}.
      * Instatiates an {@link HBaseTestingUtility} if one is not already instantiated for the test
      * suite and populates any static field in the current test class with the resulting
-     * {@link HBaseTestingUtility}.
+     * {@link HBaseTestingUtility}, with the {@link TableNamespace} of the test class, with
+     * the {@link LocalRegionHarness} of the test class, and with tables from the {@link TablePool}.
      *
      * {@inheritDoc}
      */
@@ -93,42 +175,204 @@ public class HBaseTestRunner extends BlockJUnit4ClassRunner {
         return new Statement() {
             @Override
             public void evaluate() throws Throwable {
-                HBaseTestingUtility testingUtility = initializeTestingUtility();
-                populateHBaseTestingUtility(null, testClass, testingUtility);
+                populateFields(null, testClass);
                 beforeClasses.evaluate();
             }
         };
     }
 
-    private void initializeTestInstance(Object test, HBaseTestingUtility testingUtility) throws Exception {
-        populateHBaseTestingUtility(test, test.getClass(), testingUtility);
+    /**
+     * Hands the tables in the member fields of the test back to the {@link TablePool} once the test is done.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    protected Statement withAfters(FrameworkMethod method, final Object target, Statement statement) {
+        final Statement afters = super.withAfters(method, target, statement);
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                try {
+                    afters.evaluate();
+                }
+                finally {
+                    releasePooledTables(target, target.getClass());
+                }
+            }
+        };
     }
 
-    private void populateHBaseTestingUtility(Object test, Class clazz, HBaseTestingUtility testingUtility) throws Exception {
-        if (clazz == null || clazz.equals(Object.class)) {
+    /**
+     * Hands the tables in the static fields of the test class back to the {@link TablePool}, drops the
+     * {@link TableNamespace} of the test class in the background, and closes the {@link LocalRegionHarness}
+     * of the test class once the test class is done, if any test asked for them.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    protected Statement withAfterClasses(Statement statement) {
+        final Statement afterClasses = super.withAfterClasses(statement);
+        final Class testClass = getTestClass().getJavaClass();
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                try {
+                    afterClasses.evaluate();
+                }
+                finally {
+                    releasePooledTables(null, testClass);
+                    closeLocalRegionHarness();
+                    dropTableNamespace();
+                }
+            }
+        };
+    }
+
+    private synchronized TableNamespace getTableNamespace() throws Exception {
+        if (this.tableNamespace == null) {
+            this.tableNamespace = new TableNamespace(initializeTestingUtility(), getTestClass().getJavaClass());
+        }
+        return this.tableNamespace;
+    }
+
+    private synchronized LocalRegionHarness getLocalRegionHarness() throws IOException {
+        if (this.localRegionHarness == null) {
+            this.localRegionHarness = new LocalRegionHarness();
+        }
+        return this.localRegionHarness;
+    }
+
+    private synchronized void closeLocalRegionHarness() {
+        if (this.localRegionHarness == null) {
             return;
         }
+        try {
+            this.localRegionHarness.close();
+        }
+        catch (IOException ioe) {
+            LOG.warn("Unable to close local region harness", ioe);
+        }
+        this.localRegionHarness = null;
+    }
 
-        Field[] declaredFields = clazz.getDeclaredFields();
-        for (Field field : declaredFields) {
-            if (field.getType().equals(HBaseTestingUtility.class)) {
-                field.setAccessible(true);
-                if (Modifier.isStatic(field.getModifiers())) {
-                    field.set(null, testingUtility);
+    private synchronized void dropTableNamespace() {
+        if (this.tableNamespace == null) {
+            return;
+        }
+        final TableNamespace namespace = this.tableNamespace;
+        this.tableNamespace = null;
+        namespaceDropper.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    int tables = namespace.drop();
                     if (LOG.isDebugEnabled()) {
-                        LOG.debug(String.format("Set static field %s in class %s", field, clazz));
+                        LOG.debug(String.format("Dropped %d tables in namespace %s", tables, namespace));
                     }
                 }
-                else if (test != null) {
-                    field.set(test, testingUtility);
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug(String.format("Set field %s in %s", field, test));
-                    }
+                catch (IOException ioe) {
+                    LOG.warn("Unable to drop tables in namespace " + namespace, ioe);
+                }
+            }
+        });
+    }
+
+    private void initializeTestInstance(Object test) throws Exception {
+        populateFields(test, test.getClass());
+    }
+
+    /**
+     * Only what the test class asks for is created, so that a class that only needs a harness does not boot the cluster
+     */
+    private void populateFields(Object test, Class clazz) throws Exception {
+        Field testingUtilityField = findField(clazz, HBaseTestingUtility.class);
+        if (testingUtilityField != null) {
+            populateField(test, testingUtilityField, initializeTestingUtility());
+        }
+        Field namespaceField = findField(clazz, TableNamespace.class);
+        if (isPopulated(test, namespaceField)) {
+            populateField(test, namespaceField, getTableNamespace());
+        }
+        Field harnessField = findField(clazz, LocalRegionHarness.class);
+        if (isPopulated(test, harnessField)) {
+            populateField(test, harnessField, getLocalRegionHarness());
+        }
+        for (Field tableField : findAnnotatedFields(clazz, PooledTable.class)) {
+            // A static table is taken once for the test class, not again for each test
+            if (Modifier.isStatic(tableField.getModifiers()) == (test == null)) {
+                PooledTable pooledTable = tableField.getAnnotation(PooledTable.class);
+                populateField(test, tableField,
+                        getTablePool().take(pooledTable.families(), pooledTable.maxVersions(), pooledTable.reset()));
+            }
+        }
+    }
+
+    private static void releasePooledTables(Object test, Class clazz) throws Exception {
+        for (Field tableField : findAnnotatedFields(clazz, PooledTable.class)) {
+            if (Modifier.isStatic(tableField.getModifiers()) != (test == null)) {
+                continue;
+            }
+            tableField.setAccessible(true);
+            HTable table = (HTable)tableField.get(test);
+            if (table == null) {
+                continue;
+            }
+            tableField.set(test, null);
+            PooledTable pooledTable = tableField.getAnnotation(PooledTable.class);
+            try {
+                getTablePool().release(table, pooledTable.families(), pooledTable.maxVersions(), pooledTable.reset());
+            }
+            catch (IOException ioe) {
+                LOG.warn(String.format("Unable to hand table %s back to the pool", Bytes.toString(table.getTableName())),
+                        ioe);
+            }
+        }
+    }
+
+    private static boolean isPopulated(Object test, Field field) {
+        return field != null && (test != null || Modifier.isStatic(field.getModifiers()));
+    }
+
+    private static Field findField(Class clazz, Class<?> type) {
+        if (clazz == null || clazz.equals(Object.class)) {
+            return null;
+        }
+
+        Field[] declaredFields = clazz.getDeclaredFields();
+        for (Field field : declaredFields) {
+            if (field.getType().equals(type)) {
+                return field;
+            }
+        }
+        // Try finding the field in a super-class
+        return findField(clazz.getSuperclass(), type);
+    }
+
+    private static List<Field> findAnnotatedFields(Class clazz, Class<? extends Annotation> annotationType) {
+        List<Field> fields = new ArrayList<Field>();
+        for (Class current = clazz; current != null && !current.equals(Object.class); current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (field.isAnnotationPresent(annotationType)) {
+                    fields.add(field);
                 }
-                return;
             }
         }
-        // Try populating the field in a super-class
-        populateHBaseTestingUtility(test, clazz.getSuperclass(), testingUtility);
+        return fields;
+    }
+
+    private static void populateField(Object test, Field field, Object value) throws Exception {
+        field.setAccessible(true);
+        if (Modifier.isStatic(field.getModifiers())) {
+            field.set(null, value);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(String.format("Set static field %s in class %s", field, field.getDeclaringClass()));
+            }
+        }
+        else if (test != null) {
+            field.set(test, value);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(String.format("Set field %s in %s", field, test));
+            }
+        }
     }
 }
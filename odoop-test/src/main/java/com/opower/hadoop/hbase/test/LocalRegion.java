@@ -0,0 +1,145 @@
+package com.opower.hadoop.hbase.test;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.regionserver.HRegion;
+import org.apache.hadoop.hbase.regionserver.RegionScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A standalone {@link HRegion} on the local file system, created by a {@link LocalRegionHarness}, that scans with
+ * the same region scanner code that a region server does.  A {@link org.apache.hadoop.hbase.filter.Filter} set on a
+ * {@link Scan} given to {@link #scan} sees exactly what it would see on a server, seek hints, {@code NEXT_COL},
+ * {@link org.apache.hadoop.hbase.filter.FilterList}s and all, but without ZooKeeper, HDFS, RPCs or a cluster to boot.
+ * </p><p>
+ * Cells that are loaded stay in the memstore until the region is {@link #flush flushed}, so a test can check its
+ * filter against the store files, the memstore, or both at once.
+ *
+ * @author jeff@opower.com
+ */
+public final class LocalRegion {
+    private final HRegion region;
+
+    LocalRegion(HRegion region) {
+        this.region = region;
+    }
+
+    /**
+     * @return the region itself, for anything this class does not cover
+     */
+    public HRegion getRegion() {
+        return this.region;
+    }
+
+    /**
+     * Put a row into the region
+     *
+     * @param put the row to put
+     * @throws IOException if the row cannot be put
+     */
+    public void put(Put put) throws IOException {
+        this.region.put(put);
+    }
+
+    /**
+     * Put cells into the region, in any order, with the cells of each row put together
+     *
+     * @param keyValues the cells to put
+     * @return the number of cells that were put
+     * @throws IOException if the cells cannot be put
+     */
+    public long load(Iterable<KeyValue> keyValues) throws IOException {
+        long cells = 0L;
+        Put put = null;
+        for (KeyValue keyValue : keyValues) {
+            if (put != null && !Bytes.equals(put.getRow(), keyValue.getRow())) {
+                this.region.put(put);
+                put = null;
+            }
+            if (put == null) {
+                put = new Put(keyValue.getRow());
+            }
+            put.add(keyValue);
+            cells++;
+        }
+        if (put != null) {
+            this.region.put(put);
+        }
+        return cells;
+    }
+
+    /**
+     * Flush the memstore of the region into store files
+     *
+     * @throws IOException if the memstore cannot be flushed
+     */
+    public void flush() throws IOException {
+        this.region.flushcache();
+    }
+
+    /**
+     * Scan the region, like a client scanning a table of one region would.  The scan is written out and read back
+     * in before it is run, just as it is sent to a region server, so that the filter that is run is the one that was
+     * deserialized on the server, not the one the test created.
+     *
+     * @param scan the scan to run
+     * @return every row that the scan returned
+     * @throws IOException if the scan fails
+     */
+    public List<Result> scan(Scan scan) throws IOException {
+        List<Result> results = new ArrayList<Result>();
+        RegionScanner scanner = this.region.getScanner(copy(scan));
+        try {
+            boolean more;
+            do {
+                List<KeyValue> keyValues = new ArrayList<KeyValue>();
+                more = scanner.next(keyValues);
+                if (!keyValues.isEmpty()) {
+                    results.add(new Result(keyValues));
+                }
+            } while (more);
+        }
+        finally {
+            scanner.close();
+        }
+        return results;
+    }
+
+    /**
+     * Close the region and delete its write-ahead log
+     *
+     * @throws IOException if the region cannot be closed
+     */
+    void close() throws IOException {
+        try {
+            this.region.close();
+        }
+        finally {
+            this.region.getLog().closeAndDelete();
+        }
+    }
+
+    private static Scan copy(Scan scan) throws IOException {
+        DataOutputBuffer out = new DataOutputBuffer();
+        scan.write(out);
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(out.getData(), out.getLength());
+        Scan copy = new Scan();
+        copy.readFields(in);
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return this.region.getRegionNameAsString();
+    }
+}
@@ -0,0 +1,122 @@
+package com.opower.hadoop.hbase.test;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.regionserver.HRegion;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates {@link LocalRegion}s, each a standalone {@link HRegion} in a temporary directory on the local file system,
+ * for testing filters with the real region scanner in milliseconds instead of against the whole mini cluster.  Each
+ * region covers every row of its table, and keeps every version of every cell, so that the filter decides what comes
+ * back, not the column family.
+ * </p><p>
+ * When a test class is run with the {@link HBaseTestRunner} and has a {@link LocalRegionHarness} member or static
+ * field, that field will be populated with a harness for that test class, and every region it created is closed and
+ * deleted once the test class is done.  A test class that asks for nothing but a harness does not boot the mini
+ * cluster at all.
+ *
+ * @author jeff@opower.com
+ */
+public final class LocalRegionHarness {
+    private static final Log LOG = LogFactory.getLog(LocalRegionHarness.class);
+
+    private final Configuration configuration;
+    private final File directory;
+    // Guarded by this
+    private final List<LocalRegion> regions = new ArrayList<LocalRegion>();
+    // Guarded by this
+    private int regionsCreated;
+
+    /**
+     * Create a harness with its regions in a new temporary directory
+     *
+     * @throws IOException if the directory cannot be created
+     */
+    public LocalRegionHarness() throws IOException {
+        this.configuration = HBaseConfiguration.create();
+        // The regions and their logs are on the local file system, whatever the configuration on the class path says
+        this.configuration.set("fs.default.name", "file:///");
+        this.directory = File.createTempFile(LocalRegionHarness.class.getSimpleName(), "");
+        if (!this.directory.delete() || !this.directory.mkdir()) {
+            throw new IOException("Unable to create temporary directory " + this.directory);
+        }
+    }
+
+    /**
+     * @return the configuration that the regions are created with, which can be changed before creating one
+     */
+    public Configuration getConfiguration() {
+        return this.configuration;
+    }
+
+    /**
+     * Create a region of a table with the given column families
+     *
+     * @param tableName the name of the table the region is part of
+     * @param families the column families of the table
+     * @return the new region
+     * @throws IOException if the region cannot be created
+     */
+    public LocalRegion createRegion(String tableName, byte[]... families) throws IOException {
+        HTableDescriptor tableDescriptor = new HTableDescriptor(tableName);
+        for (byte[] family : families) {
+            HColumnDescriptor columnDescriptor = new HColumnDescriptor(family);
+            columnDescriptor.setMaxVersions(Integer.MAX_VALUE);
+            tableDescriptor.addFamily(columnDescriptor);
+        }
+        return createRegion(tableDescriptor);
+    }
+
+    /**
+     * Create a region of a table with the given descriptor, for when the column families need more than their names
+     *
+     * @param tableDescriptor the descriptor of the table the region is part of
+     * @return the new region
+     * @throws IOException if the region cannot be created
+     */
+    public synchronized LocalRegion createRegion(HTableDescriptor tableDescriptor) throws IOException {
+        // Each region gets a root directory of its own, so that regions of the same table do not collide
+        File rootDirectory = new File(this.directory, String.valueOf(this.regionsCreated++));
+        HRegionInfo regionInfo = new HRegionInfo(tableDescriptor.getName(), null, null);
+        HRegion region = HRegion.createHRegion(regionInfo, new Path(rootDirectory.getAbsolutePath()),
+                this.configuration, tableDescriptor);
+        LocalRegion localRegion = new LocalRegion(region);
+        this.regions.add(localRegion);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Created region %s in %s", localRegion, rootDirectory));
+        }
+        return localRegion;
+    }
+
+    /**
+     * Close every region that was created and delete them all
+     *
+     * @throws IOException if the directory of the regions cannot be deleted
+     */
+    public synchronized void close() throws IOException {
+        for (LocalRegion region : this.regions) {
+            try {
+                region.close();
+            }
+            catch (IOException ioe) {
+                LOG.warn("Unable to close region " + region, ioe);
+            }
+        }
+        this.regions.clear();
+        FileUtil.fullyDelete(this.directory);
+    }
+}
@@ -0,0 +1,60 @@
+package com.opower.hadoop.hbase.test;
+
+import org.apache.hadoop.hbase.HColumnDescriptor;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an {@link org.apache.hadoop.hbase.client.HTable} field of a test class run with the {@link HBaseTestRunner}
+ * as one to populate with an empty table from the {@link TablePool}, instead of the test creating and dropping a
+ * table of its own.  A member field gets a table for each test, and a static field gets one for the whole test class.
+ * The table is handed back to the pool once the test or the test class is done, so the test must not drop it, and
+ * need not close it.
+ * </p><p>
+ * The name of the table is made up by the pool, so a test that needs it, such as in a query, must ask the table
+ * itself.
+ *
+ * @author jeff@opower.com
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface PooledTable {
+    /**
+     * How a table is made empty again once it is handed back to the pool
+     */
+    enum Reset {
+        /**
+         * A table that was written to, even if only to delete cells, is dropped in the background, and the next test
+         * gets one of the spares that are created ahead of time.  A table that was not written to is reused as is.
+         */
+        SWAP,
+        /**
+         * Every row of the table is deleted and the table is reused, which is faster than waiting for a spare when
+         * tests use up the spares faster than they can be created.  The deletes mask any cell put afterwards with an
+         * explicit timestamp older than the deletes, until the table is major compacted, so only use this for tests
+         * that let the region servers set the timestamps.  A table reused this way is only handed to tests that also
+         * ask for this reset, and a table with cells newer than the deletes is swapped.
+         */
+        DELETE
+    }
+
+    /**
+     * The names of the column families of the table
+     */
+    String[] families();
+
+    /**
+     * The maximum number of versions each column family keeps
+     */
+    int maxVersions() default HColumnDescriptor.DEFAULT_VERSIONS;
+
+    /**
+     * How the table is made empty again once it is handed back
+     */
+    Reset reset() default Reset.SWAP;
+}
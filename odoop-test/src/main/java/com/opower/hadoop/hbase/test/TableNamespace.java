@@ -0,0 +1,112 @@
+package com.opower.hadoop.hbase.test;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.client.HBaseAdmin;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * The tables that belong to one test class on the shared mini cluster.  HBase has no namespaces of its own, so a
+ * namespace is a prefix that is unique to the test class, and every table named through it starts with that prefix.
+ * Test classes that keep their tables inside of their namespace cannot collide with each other, even when they run
+ * at the same time, and do not need to clean up after themselves, since every table in the namespace is dropped
+ * once the test class is done.
+ * </p><p>
+ * When a test class is run with the {@link HBaseTestRunner} and has a {@link TableNamespace} member or static field,
+ * that field will be populated with the namespace of that test class.
+ *
+ * @author jeff@opower.com
+ */
+public final class TableNamespace {
+    private static final Log LOG = LogFactory.getLog(TableNamespace.class);
+    private static final AtomicInteger COUNT = new AtomicInteger();
+
+    private final HBaseTestingUtility testingUtility;
+    private final String prefix;
+
+    TableNamespace(HBaseTestingUtility testingUtility, Class<?> testClass) {
+        this.testingUtility = testingUtility;
+        this.prefix = String.format("%s_%d_", testClass.getSimpleName(), COUNT.incrementAndGet());
+    }
+
+    /**
+     * @return the prefix of every table in this namespace
+     */
+    public String getPrefix() {
+        return this.prefix;
+    }
+
+    /**
+     * Get the full name of a table in this namespace
+     *
+     * @param name the name of the table within the namespace
+     * @return the name of the table on the cluster
+     */
+    public String getTableName(String name) {
+        return this.prefix + name;
+    }
+
+    /**
+     * Create a table in this namespace with the given column families
+     *
+     * @param name the name of the table within the namespace
+     * @param families the column families of the table
+     * @return the new table
+     * @throws IOException if the table cannot be created
+     */
+    public HTable createTable(String name, byte[]... families) throws IOException {
+        return this.testingUtility.createTable(Bytes.toBytes(getTableName(name)), families);
+    }
+
+    /**
+     * Create a table in this namespace with the given column families, each of which keeps the given number of versions
+     *
+     * @param name the name of the table within the namespace
+     * @param families the column families of the table
+     * @param maxVersions the number of versions each column family keeps
+     * @return the new table
+     * @throws IOException if the table cannot be created
+     */
+    public HTable createTable(String name, byte[][] families, int maxVersions) throws IOException {
+        return this.testingUtility.createTable(Bytes.toBytes(getTableName(name)), families, maxVersions);
+    }
+
+    /**
+     * Disable and delete every table in this namespace
+     *
+     * @return the number of tables that were dropped
+     * @throws IOException if a table cannot be dropped
+     */
+    public int drop() throws IOException {
+        HBaseAdmin admin = new HBaseAdmin(this.testingUtility.getConfiguration());
+        try {
+            HTableDescriptor[] tables = admin.listTables(Pattern.compile(Pattern.quote(this.prefix) + ".*"));
+            for (HTableDescriptor table : tables) {
+                if (admin.isTableEnabled(table.getName())) {
+                    admin.disableTable(table.getName());
+                }
+                admin.deleteTable(table.getName());
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(String.format("Dropped table %s", table.getNameAsString()));
+                }
+            }
+            return tables.length;
+        }
+        finally {
+            admin.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.prefix;
+    }
+}
@@ -0,0 +1,308 @@
+package com.opower.hadoop.hbase.test;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.HBaseAdmin;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
+import org.apache.hadoop.hbase.regionserver.HRegion;
+import org.apache.hadoop.hbase.regionserver.Store;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps empty tables on the mini cluster ready for the {@link PooledTable} fields of tests, since creating and
+ * dropping a table takes seconds, while handing out one that already exists takes no time at all.  Tables are pooled
+ * by their layout, which is their column families, how many versions those keep, and how they are reset, since a
+ * table reset by deleting its rows keeps the delete markers, which no test that asked for a swapped table expects.
+ * The first test to ask for a
+ * layout waits for its table to be created, but from then on, {@value #SPARES} spares of each layout are created in
+ * the background, and dirty tables are dropped in the background, so that tests only wait on the cluster when they
+ * use up tables faster than it can create them.
+ * </p><p>
+ * There is one pool for the mini cluster of the {@link HBaseTestRunner}, which populates the fields.
+ *
+ * @author jeff@opower.com
+ */
+public final class TablePool {
+    private static final Log LOG = LogFactory.getLog(TablePool.class);
+
+    /**
+     * The number of empty tables of each layout kept ready once a test has asked for that layout
+     */
+    public static final int SPARES = 2;
+
+    private static final String TABLE_NAME_PREFIX = "pooled_";
+    private static final int DELETE_BATCH_SIZE = 1000;
+    // Shared by every pool, so that the tables of one never collide with those of another
+    private static final AtomicInteger TABLES_CREATED = new AtomicInteger();
+
+    private final HBaseTestingUtility testingUtility;
+    private final ConcurrentMap<Layout, BlockingQueue<String>> spares =
+        new ConcurrentHashMap<Layout, BlockingQueue<String>>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "TablePool");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    TablePool(HBaseTestingUtility testingUtility) {
+        this.testingUtility = testingUtility;
+    }
+
+    /**
+     * Take an empty table from the pool, creating one if there is no spare
+     *
+     * @param families the names of the column families of the table
+     * @param maxVersions the maximum number of versions each column family keeps
+     * @param reset how the table will be made empty again once it is handed back
+     * @return the table, which must be handed back with {@link #release}
+     * @throws IOException if a table needs to be created and cannot be
+     */
+    public HTable take(String[] families, int maxVersions, PooledTable.Reset reset) throws IOException {
+        Layout layout = new Layout(families, maxVersions, reset);
+        BlockingQueue<String> layoutSpares = getSpares(layout);
+        String tableName = layoutSpares.poll();
+        if (tableName == null) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(String.format("No spare table of layout %s", layout));
+            }
+            tableName = createTable(layout);
+        }
+        createSparesInBackground(layout);
+        return new HTable(this.testingUtility.getConfiguration(), tableName);
+    }
+
+    /**
+     * Hand a table back to the pool once a test is done with it, so that it can be made empty again
+     *
+     * @param table a table taken from this pool
+     * @param families the names of the column families the table was taken with
+     * @param maxVersions the maximum number of versions the table was taken with
+     * @param reset how the table was taken to be made empty again
+     * @throws IOException if the table cannot be made empty again
+     */
+    public void release(HTable table, String[] families, int maxVersions, PooledTable.Reset reset) throws IOException {
+        Layout layout = new Layout(families, maxVersions, reset);
+        String tableName = Bytes.toString(table.getTableName());
+        boolean reusable = false;
+        try {
+            // Any puts still in the write buffer count as having been written
+            table.flushCommits();
+            if (reset == PooledTable.Reset.DELETE) {
+                deleteRows(table);
+                reusable = isEmpty(table);
+            }
+            else {
+                // A table that scans empty may still hold delete markers, which would mask the puts of the next test
+                reusable = !isWritten(table);
+            }
+        }
+        finally {
+            table.close();
+        }
+        if (reusable) {
+            getSpares(layout).offer(tableName);
+        }
+        else {
+            dropTableInBackground(tableName);
+        }
+    }
+
+    /**
+     * @return the names of the spare tables of a layout right now
+     */
+    Collection<String> getSpareTableNames(String[] families, int maxVersions, PooledTable.Reset reset) {
+        return new ArrayList<String>(getSpares(new Layout(families, maxVersions, reset)));
+    }
+
+    /**
+     * Stop creating and dropping tables in the background, which is only done when the mini cluster shuts down
+     */
+    void shutdown() {
+        this.executor.shutdownNow();
+    }
+
+    private BlockingQueue<String> getSpares(Layout layout) {
+        BlockingQueue<String> layoutSpares = this.spares.get(layout);
+        if (layoutSpares == null) {
+            BlockingQueue<String> newSpares = new LinkedBlockingQueue<String>();
+            layoutSpares = this.spares.putIfAbsent(layout, newSpares);
+            if (layoutSpares == null) {
+                layoutSpares = newSpares;
+            }
+        }
+        return layoutSpares;
+    }
+
+    private String createTable(Layout layout) throws IOException {
+        String tableName = TABLE_NAME_PREFIX + TABLES_CREATED.incrementAndGet();
+        byte[][] families = new byte[layout.families.length][];
+        for (int i = 0; i < families.length; i++) {
+            families[i] = Bytes.toBytes(layout.families[i]);
+        }
+        this.testingUtility.createTable(Bytes.toBytes(tableName), families, layout.maxVersions).close();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Created table %s of layout %s", tableName, layout));
+        }
+        return tableName;
+    }
+
+    private void createSparesInBackground(final Layout layout) {
+        this.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                BlockingQueue<String> layoutSpares = getSpares(layout);
+                try {
+                    while (layoutSpares.size() < SPARES) {
+                        layoutSpares.offer(createTable(layout));
+                    }
+                }
+                catch (IOException ioe) {
+                    LOG.warn(String.format("Unable to create a spare table of layout %s", layout), ioe);
+                }
+            }
+        });
+    }
+
+    private void dropTableInBackground(final String tableName) {
+        this.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    HBaseAdmin admin = new HBaseAdmin(TablePool.this.testingUtility.getConfiguration());
+                    try {
+                        admin.disableTable(tableName);
+                        admin.deleteTable(tableName);
+                    }
+                    finally {
+                        admin.close();
+                    }
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug(String.format("Dropped table %s", tableName));
+                    }
+                }
+                catch (IOException ioe) {
+                    LOG.warn(String.format("Unable to drop table %s", tableName), ioe);
+                }
+            }
+        });
+    }
+
+    private static Scan createRowKeyScan() {
+        Scan scan = new Scan();
+        scan.setFilter(new FilterList(FilterList.Operator.MUST_PASS_ALL,
+                    Arrays.<Filter>asList(new FirstKeyOnlyFilter(), new KeyOnlyFilter())));
+        return scan;
+    }
+
+    /**
+     * Whether any region of a table holds a cell or a delete marker, in its memstore or in its store files, which
+     * asks the regions themselves, since the mini cluster runs in this JVM and HBase 0.92 has no raw scans
+     */
+    private boolean isWritten(HTable table) {
+        for (HRegion region : this.testingUtility.getMiniHBaseCluster().getRegions(table.getTableName())) {
+            if (region.getMemstoreSize().get() > 0) {
+                return true;
+            }
+            for (Store store : region.getStores().values()) {
+                if (store.getSize() > 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isEmpty(HTable table) throws IOException {
+        ResultScanner scanner = table.getScanner(createRowKeyScan());
+        try {
+            return scanner.next() == null;
+        }
+        finally {
+            scanner.close();
+        }
+    }
+
+    private static void deleteRows(HTable table) throws IOException {
+        Scan scan = createRowKeyScan();
+        scan.setCaching(DELETE_BATCH_SIZE);
+        ResultScanner scanner = table.getScanner(scan);
+        try {
+            List<Delete> deletes = new ArrayList<Delete>();
+            for (Result result = scanner.next(); result != null; result = scanner.next()) {
+                deletes.add(new Delete(result.getRow()));
+                if (deletes.size() == DELETE_BATCH_SIZE) {
+                    table.delete(deletes);
+                    deletes.clear();
+                }
+            }
+            table.delete(deletes);
+        }
+        finally {
+            scanner.close();
+        }
+    }
+
+    /**
+     * The column families of a table, in order, how many versions they keep, and how the table is reset
+     */
+    private static final class Layout {
+        private final String[] families;
+        private final int maxVersions;
+        private final PooledTable.Reset reset;
+
+        Layout(String[] families, int maxVersions, PooledTable.Reset reset) {
+            this.families = families.clone();
+            Arrays.sort(this.families);
+            this.maxVersions = maxVersions;
+            this.reset = reset;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Layout)) {
+                return false;
+            }
+            Layout layout = (Layout)other;
+            return this.maxVersions == layout.maxVersions && this.reset == layout.reset
+                && Arrays.equals(this.families, layout.families);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * Arrays.hashCode(this.families) + this.maxVersions) + this.reset.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s with %d versions, reset by %s", Arrays.toString(this.families), this.maxVersions,
+                    this.reset);
+        }
+    }
+}
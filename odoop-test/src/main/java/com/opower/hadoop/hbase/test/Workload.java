@@ -0,0 +1,19 @@
+package com.opower.hadoop.hbase.test;
+
+/**
+ * One kind of operation for a {@link WorkloadRunner} to run over and over, such as a query or a scan with a
+ * filter.  The same workload is run by every thread at once, so it must be thread safe.
+ *
+ * @author jeff@opower.com
+ */
+public interface Workload {
+    /**
+     * Run the operation once
+     *
+     * @param thread which of the runner's threads is running the operation, from 0 up to the number of threads
+     * @param operation which of the thread's operations this is, counting from 0
+     * @return the number of rows the operation read
+     * @throws Exception if the operation fails, which fails the whole run
+     */
+    long run(int thread, int operation) throws Exception;
+}
@@ -0,0 +1,94 @@
+package com.opower.hadoop.hbase.test;
+
+import java.util.Arrays;
+
+/**
+ * What happened when a {@link WorkloadRunner} ran a {@link Workload}: how many operations and rows there were,
+ * how long the whole run took, and the distribution of how long each operation took.  The latencies are exact,
+ * since every one of them is kept.
+ *
+ * @author jeff@opower.com
+ */
+public final class WorkloadResult {
+    private static final double NANOS_PER_MILLI = 1000000.0;
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+
+    private final String name;
+    private final int threads;
+    private final long rows;
+    private final long elapsedNanos;
+    private final long[] latencyNanos;
+
+    WorkloadResult(String name, int threads, long rows, long elapsedNanos, long[] latencyNanos) {
+        this.name = name;
+        this.threads = threads;
+        this.rows = rows;
+        this.elapsedNanos = elapsedNanos;
+        this.latencyNanos = latencyNanos.clone();
+        Arrays.sort(this.latencyNanos);
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public int getThreads() {
+        return this.threads;
+    }
+
+    public long getOperations() {
+        return this.latencyNanos.length;
+    }
+
+    public long getRows() {
+        return this.rows;
+    }
+
+    /**
+     * @return how long the measured operations took from the first starting to the last finishing
+     */
+    public long getElapsedNanos() {
+        return this.elapsedNanos;
+    }
+
+    /**
+     * @return the number of operations finished per second over the whole run
+     */
+    public double getOperationsPerSecond() {
+        return this.latencyNanos.length * NANOS_PER_SECOND / Math.max(1L, this.elapsedNanos);
+    }
+
+    /**
+     * @return the number of rows read per second over the whole run
+     */
+    public double getRowsPerSecond() {
+        return this.rows * NANOS_PER_SECOND / Math.max(1L, this.elapsedNanos);
+    }
+
+    /**
+     * @param percentile the percentile, from 0 to 100
+     * @return the latency of the operation at that percentile, or 0 if there were none
+     */
+    public long getLatencyNanos(double percentile) {
+        if (percentile < 0.0 || percentile > 100.0) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        }
+        if (this.latencyNanos.length == 0) {
+            return 0L;
+        }
+        int rank = (int)Math.ceil(this.latencyNanos.length * percentile / 100.0);
+        return this.latencyNanos[Math.max(0, rank - 1)];
+    }
+
+    /**
+     * @return one line with the throughput and latency percentiles, in milliseconds
+     */
+    @Override
+    public String toString() {
+        return String.format("%s, %d threads: %d ops, %.1f ops/s, %.1f rows/s, "
+                    + "latency ms p50 %.3f, p90 %.3f, p99 %.3f, max %.3f",
+                    this.name, this.threads, getOperations(), getOperationsPerSecond(), getRowsPerSecond(),
+                    getLatencyNanos(50.0) / NANOS_PER_MILLI, getLatencyNanos(90.0) / NANOS_PER_MILLI,
+                    getLatencyNanos(99.0) / NANOS_PER_MILLI, getLatencyNanos(100.0) / NANOS_PER_MILLI);
+    }
+}
@@ -0,0 +1,119 @@
+package com.opower.hadoop.hbase.test;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs a {@link Workload} on a fixed number of threads at once, so that throughput and latency can be measured at
+ * a controlled concurrency, such as against the mini cluster of the {@link HBaseTestRunner}.  Each thread runs a
+ * number of warm up operations that are not measured, then waits for the others, so that the measured operations
+ * all run at the full concurrency and none of them pay for loading classes or opening connections.
+ *
+ * @author jeff@opower.com
+ */
+public class WorkloadRunner {
+    private static final Log LOG = LogFactory.getLog(WorkloadRunner.class);
+
+    private final int threads;
+    private final int warmUpOperations;
+    private final int operations;
+
+    /**
+     * @param threads the number of threads to run the workload on at once
+     * @param warmUpOperations the number of operations each thread runs before measuring
+     * @param operations the number of measured operations each thread runs
+     */
+    public WorkloadRunner(int threads, int warmUpOperations, int operations) {
+        if (threads < 1 || warmUpOperations < 0 || operations < 1) {
+            throw new IllegalArgumentException(String.format(
+                        "Invalid workload: %d threads, %d warm up operations, %d operations",
+                        threads, warmUpOperations, operations));
+        }
+        this.threads = threads;
+        this.warmUpOperations = warmUpOperations;
+        this.operations = operations;
+    }
+
+    /**
+     * @param name the name to report the workload under
+     * @param workload the workload to run
+     * @return what happened
+     * @throws Exception the first exception thrown by the workload, which stops the run
+     */
+    public WorkloadResult run(String name, final Workload workload) throws Exception {
+        final long[] startNanos = new long[1];
+        final CyclicBarrier measuring = new CyclicBarrier(this.threads, new Runnable() {
+            @Override
+            public void run() {
+                startNanos[0] = System.nanoTime();
+            }
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+        try {
+            CompletionService<long[]> completionService = new ExecutorCompletionService<long[]>(executor);
+            for (int i = 0; i < this.threads; i++) {
+                final int thread = i;
+                completionService.submit(new Callable<long[]>() {
+                    @Override
+                    public long[] call() throws Exception {
+                        return runThread(workload, thread, measuring);
+                    }
+                });
+            }
+            long[] latencyNanos = new long[this.threads * this.operations];
+            long rows = 0L;
+            // Take the threads as they finish, so that the first failure is seen as soon as it happens, and is the
+            // one that actually caused the run to stop
+            for (int i = 0; i < this.threads; i++) {
+                long[] threadResult;
+                try {
+                    threadResult = completionService.take().get();
+                }
+                catch (ExecutionException ee) {
+                    if (ee.getCause() instanceof Exception) {
+                        throw (Exception)ee.getCause();
+                    }
+                    throw ee;
+                }
+                rows += threadResult[this.operations];
+                System.arraycopy(threadResult, 0, latencyNanos, i * this.operations, this.operations);
+            }
+            WorkloadResult result = new WorkloadResult(name, this.threads, rows, System.nanoTime() - startNanos[0],
+                    latencyNanos);
+            if (LOG.isInfoEnabled()) {
+                LOG.info(result);
+            }
+            return result;
+        }
+        finally {
+            // Interrupting the other threads breaks the barrier for good, both for those already waiting on a failed
+            // thread and for those yet to reach it, unlike resetting it, which would leave the latter waiting forever
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the latency of each measured operation, followed by the number of rows they read
+     */
+    private long[] runThread(Workload workload, int thread, CyclicBarrier measuring) throws Exception {
+        for (int operation = 0; operation < this.warmUpOperations; operation++) {
+            workload.run(thread, operation);
+        }
+        measuring.await();
+        long[] result = new long[this.operations + 1];
+        for (int operation = 0; operation < this.operations; operation++) {
+            long operationStartNanos = System.nanoTime();
+            result[this.operations] += workload.run(thread, this.warmUpOperations + operation);
+            result[operation] = System.nanoTime() - operationStartNanos;
+        }
+        return result;
+    }
+}
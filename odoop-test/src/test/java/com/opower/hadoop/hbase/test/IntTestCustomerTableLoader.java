@@ -0,0 +1,45 @@
+package com.opower.hadoop.hbase.test;
+
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link CustomerTableLoader} against the shared mini cluster
+ *
+ * @author jeff@opower.com
+ */
+@RunWith(HBaseTestRunner.class)
+public class IntTestCustomerTableLoader {
+    private HBaseTestingUtility hbaseTestingUtility;
+    private TableNamespace tableNamespace;
+
+    @Test
+    public void testLoadedRowsHaveTheConfiguredShape() throws Exception {
+        CustomerTableLoader loader = new CustomerTableLoader().setRows(20).setVersions(3).setQualifiers(4)
+            .setValueSize(8).setRegions(2);
+        HTable table = loader.createTable(this.hbaseTestingUtility,
+                this.tableNamespace.getTableName(CustomerTableLoader.TABLE_NAME));
+        try {
+            assertEquals(20L * (1 + 3 + 4), loader.load(table));
+            assertEquals(2, table.getStartKeys().length);
+
+            Get get = new Get(Bytes.toBytes(CustomerTableLoader.rowKey(7)));
+            get.setMaxVersions();
+            Result result = table.get(get);
+            assertEquals(8, result.size());
+            assertEquals(3, result.getColumn(CustomerTableLoader.FAMILY, CustomerTableLoader.CLICKS).size());
+            assertEquals(8, result.getValue(CustomerTableLoader.FAMILY, CustomerTableLoader.ADDRESS).length);
+        }
+        finally {
+            table.close();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.opower.hadoop.hbase.test;
+
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.client.HBaseAdmin;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link HBaseTestRunner} by creating a test that is run with it and validating
+ * that the appropriate behaviors have occurred, specifically that a {@link TableNamespace}
+ * unique to the test class is populated and that its tables can be dropped.
+ *
+ * @author jeff@opower.com
+ */
+@RunWith(HBaseTestRunner.class)
+public class IntTestHBaseTestRunnerNamespace {
+    private HBaseTestingUtility hbaseTestingUtility;
+    private TableNamespace tableNamespace;
+
+    @Before
+    public void setUp() {
+        assertNotNull(this.tableNamespace);
+    }
+
+    @Test
+    public void testTablesAreInTheNamespace() throws Exception {
+        assertTrue(this.tableNamespace.getPrefix(),
+                this.tableNamespace.getPrefix().startsWith(getClass().getSimpleName() + "_"));
+        HTable table = this.tableNamespace.createTable("a", Bytes.toBytes("f"));
+        table.close();
+        HTable other = this.tableNamespace.createTable("b", Bytes.toBytes("f"));
+        other.close();
+        assertEquals(this.tableNamespace.getTableName("a"), Bytes.toString(table.getTableName()));
+
+        HBaseAdmin admin = this.hbaseTestingUtility.getHBaseAdmin();
+        assertTrue(admin.tableExists(this.tableNamespace.getTableName("a")));
+        assertEquals(2, this.tableNamespace.drop());
+        assertFalse(admin.tableExists(this.tableNamespace.getTableName("a")));
+        assertFalse(admin.tableExists(this.tableNamespace.getTableName("b")));
+        assertEquals(0, this.tableNamespace.drop());
+    }
+}
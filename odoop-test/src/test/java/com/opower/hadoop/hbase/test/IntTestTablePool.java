@@ -0,0 +1,129 @@
+package com.opower.hadoop.hbase.test;
+
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link TablePool} and the {@link PooledTable} fields that the {@link HBaseTestRunner} populates from it
+ *
+ * @author jeff@opower.com
+ */
+@RunWith(HBaseTestRunner.class)
+public class IntTestTablePool {
+    private static final byte[] FAMILY = Bytes.toBytes("a");
+    private static final byte[] QUALIFIER = Bytes.toBytes("q");
+    private static final String[] FAMILIES = new String[] { "a" };
+
+    @PooledTable(families = { "a", "b" }, reset = PooledTable.Reset.DELETE)
+    private static HTable sharedTable;
+
+    private HBaseTestingUtility hbaseTestingUtility;
+    @PooledTable(families = "a", maxVersions = 5)
+    private HTable table;
+
+    @BeforeClass
+    public static void setUpClass() {
+        assertNotNull(sharedTable);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        assertNotNull(this.table);
+        assertEquals(5, this.table.getTableDescriptor().getFamily(FAMILY).getMaxVersions());
+        assertEquals(0, countRows(this.table));
+        // Whichever test runs second gets a clean table, whether a spare or this one reused
+        this.table.put(createPut("row", 1L));
+        this.table.put(createPut("row", 2L));
+    }
+
+    @Test
+    public void testPooledTableIsEmptyForEachTest() throws Exception {
+        assertEquals(1, countRows(this.table));
+        assertEquals(2, sharedTable.getTableDescriptor().getFamilies().size());
+    }
+
+    @Test
+    public void testPooledTableIsEmptyForAnotherTest() throws Exception {
+        assertEquals(1, countRows(this.table));
+    }
+
+    @Test
+    public void testTablesAreReusedOrSwapped() throws Exception {
+        TablePool pool = new TablePool(this.hbaseTestingUtility);
+        try {
+            PooledTable.Reset swap = PooledTable.Reset.SWAP;
+            HTable untouched = pool.take(FAMILIES, 1, swap);
+            String untouchedName = Bytes.toString(untouched.getTableName());
+            pool.release(untouched, FAMILIES, 1, swap);
+            assertTrue(pool.getSpareTableNames(FAMILIES, 1, swap).contains(untouchedName));
+
+            HTable written = pool.take(FAMILIES, 1, swap);
+            String writtenName = Bytes.toString(written.getTableName());
+            written.put(createPut("row", 1L));
+            pool.release(written, FAMILIES, 1, swap);
+            assertFalse(pool.getSpareTableNames(FAMILIES, 1, swap).contains(writtenName));
+
+            // The delete marker would mask a later put with an older timestamp, so the table cannot be reused
+            HTable masked = pool.take(FAMILIES, 1, swap);
+            String maskedName = Bytes.toString(masked.getTableName());
+            masked.put(createPut("row", 2L));
+            masked.delete(new Delete(Bytes.toBytes("row")));
+            assertEquals(0, countRows(masked));
+            pool.release(masked, FAMILIES, 1, swap);
+            assertFalse(pool.getSpareTableNames(FAMILIES, 1, swap).contains(maskedName));
+
+            PooledTable.Reset delete = PooledTable.Reset.DELETE;
+            HTable deleted = pool.take(FAMILIES, 1, delete);
+            String deletedName = Bytes.toString(deleted.getTableName());
+            assertEquals(0, countRows(deleted));
+            deleted.put(createPut("row", 1L));
+            pool.release(deleted, FAMILIES, 1, delete);
+            assertTrue(pool.getSpareTableNames(FAMILIES, 1, delete).contains(deletedName));
+            assertFalse(pool.getSpareTableNames(FAMILIES, 1, swap).contains(deletedName));
+
+            HTable swapped = pool.take(FAMILIES, 1, delete);
+            String swappedName = Bytes.toString(swapped.getTableName());
+            assertEquals(0, countRows(swapped));
+            // A cell from the future survives the deletes, so the table cannot be reused
+            swapped.put(createPut("row", Long.MAX_VALUE - 1L));
+            pool.release(swapped, FAMILIES, 1, delete);
+            assertFalse(pool.getSpareTableNames(FAMILIES, 1, delete).contains(swappedName));
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Put createPut(String row, long timestamp) {
+        Put put = new Put(Bytes.toBytes(row));
+        put.add(FAMILY, QUALIFIER, timestamp, Bytes.toBytes(timestamp));
+        return put;
+    }
+
+    private static int countRows(HTable table) throws Exception {
+        int rows = 0;
+        ResultScanner scanner = table.getScanner(new Scan());
+        try {
+            for (Result result = scanner.next(); result != null; result = scanner.next()) {
+                rows++;
+            }
+        }
+        finally {
+            scanner.close();
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,101 @@
+package com.opower.hadoop.hbase.test;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.ColumnPrefixFilter;
+import org.apache.hadoop.hbase.filter.ColumnRangeFilter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.PrefixFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link LocalRegionHarness} and its {@link LocalRegion}s, run with the {@link HBaseTestRunner} without
+ * ever booting the mini cluster
+ *
+ * @author jeff@opower.com
+ */
+@RunWith(HBaseTestRunner.class)
+public class TestLocalRegionHarness {
+    private static final byte[] FAMILY = Bytes.toBytes("f");
+    private static final String[] QUALIFIERS = new String[] { "a", "b", "pa", "pb", "pc" };
+    private static final int ROWS = 10;
+    private static final int VERSIONS = 3;
+
+    private LocalRegionHarness localRegionHarness;
+    private LocalRegion region;
+
+    @Before
+    public void setUp() throws Exception {
+        assertNotNull(this.localRegionHarness);
+        this.region = this.localRegionHarness.createRegion("t", FAMILY);
+        // Half of the rows end up in a store file and the other half stay in the memstore
+        assertEquals(ROWS / 2 * QUALIFIERS.length * VERSIONS, this.region.load(createKeyValues(0, ROWS / 2)));
+        this.region.flush();
+        assertEquals(ROWS / 2 * QUALIFIERS.length * VERSIONS, this.region.load(createKeyValues(ROWS / 2, ROWS)));
+    }
+
+    @Test
+    public void testScanReadsStoreFilesAndMemstore() throws Exception {
+        List<Result> results = this.region.scan(new Scan());
+        assertEquals(ROWS, results.size());
+        for (int row = 0; row < ROWS; row++) {
+            assertEquals("row" + row, Bytes.toString(results.get(row).getRow()));
+            assertEquals(QUALIFIERS.length, results.get(row).size());
+            assertEquals(VERSIONS, Bytes.toLong(results.get(row).getValue(FAMILY, Bytes.toBytes("a"))));
+        }
+
+        Scan scan = new Scan();
+        scan.setMaxVersions();
+        assertEquals(QUALIFIERS.length * VERSIONS, this.region.scan(scan).get(0).size());
+    }
+
+    @Test
+    public void testFilterListWithSeekHints() throws Exception {
+        Scan scan = new Scan();
+        scan.setMaxVersions(2);
+        FilterList filter = new FilterList(FilterList.Operator.MUST_PASS_ALL);
+        filter.addFilter(new PrefixFilter(Bytes.toBytes("row")));
+        filter.addFilter(new ColumnPrefixFilter(Bytes.toBytes("p")));
+        filter.addFilter(new ColumnRangeFilter(Bytes.toBytes("pb"), true, null, false));
+        scan.setFilter(filter);
+
+        List<Result> results = this.region.scan(scan);
+        assertEquals(ROWS, results.size());
+        for (Result result : results) {
+            assertEquals(2 * 2, result.size());
+            assertEquals("pb", Bytes.toString(result.raw()[0].getQualifier()));
+            assertEquals(VERSIONS, result.raw()[0].getTimestamp());
+            assertEquals("pc", Bytes.toString(result.raw()[2].getQualifier()));
+        }
+    }
+
+    @Test
+    public void testRegionsOfTheSameTable() throws Exception {
+        LocalRegion other = this.localRegionHarness.createRegion("t", FAMILY);
+        assertEquals(0, other.scan(new Scan()).size());
+        assertEquals(ROWS, this.region.scan(new Scan()).size());
+    }
+
+    private static List<KeyValue> createKeyValues(int fromRow, int toRow) {
+        List<KeyValue> keyValues = new ArrayList<KeyValue>();
+        for (int row = fromRow; row < toRow; row++) {
+            for (String qualifier : QUALIFIERS) {
+                for (long version = 1; version <= VERSIONS; version++) {
+                    keyValues.add(new KeyValue(Bytes.toBytes("row" + row), FAMILY, Bytes.toBytes(qualifier), version,
+                                Bytes.toBytes(version)));
+                }
+            }
+        }
+        return keyValues;
+    }
+}
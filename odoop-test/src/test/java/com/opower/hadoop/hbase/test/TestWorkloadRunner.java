@@ -0,0 +1,79 @@
+package com.opower.hadoop.hbase.test;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link WorkloadRunner}
+ *
+ * @author jeff@opower.com
+ */
+public class TestWorkloadRunner {
+    @Test
+    public void testEveryThreadRunsWarmUpAndMeasuredOperations() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final Set<String> seen = Collections.synchronizedSet(new HashSet<String>());
+        WorkloadResult result = new WorkloadRunner(3, 2, 5).run("test", new Workload() {
+            @Override
+            public long run(int thread, int operation) {
+                calls.incrementAndGet();
+                seen.add(thread + ":" + operation);
+                return 10L;
+            }
+        });
+
+        assertEquals(21, calls.get());
+        assertEquals(21, seen.size());
+        assertTrue(seen.contains("2:6"));
+        assertEquals("test", result.getName());
+        assertEquals(3, result.getThreads());
+        assertEquals(15L, result.getOperations());
+        assertEquals(150L, result.getRows());
+        assertTrue(result.getLatencyNanos(50.0) <= result.getLatencyNanos(100.0));
+    }
+
+    @Test
+    public void testLatencyPercentilesAreExact() {
+        WorkloadResult result = new WorkloadResult("test", 1, 0L, 1000000000L, new long[] { 5L, 1L, 4L, 2L, 3L });
+        assertEquals(1L, result.getLatencyNanos(0.0));
+        assertEquals(3L, result.getLatencyNanos(50.0));
+        assertEquals(5L, result.getLatencyNanos(90.0));
+        assertEquals(5L, result.getLatencyNanos(100.0));
+        assertEquals(5.0, result.getOperationsPerSecond(), 0.001);
+    }
+
+    @Test(expected = IOException.class)
+    public void testFailureStopsTheRun() throws Exception {
+        new WorkloadRunner(4, 1, 100).run("failing", new Workload() {
+            @Override
+            public long run(int thread, int operation) throws IOException {
+                if (thread == 3 && operation == 0) {
+                    throw new IOException("failed");
+                }
+                return 1L;
+            }
+        });
+    }
+
+    @Test(expected = IOException.class, timeout = 10000)
+    public void testFailureBeforeTheOthersReachTheBarrierStopsTheRun() throws Exception {
+        new WorkloadRunner(4, 1, 100).run("failing", new Workload() {
+            @Override
+            public long run(int thread, int operation) throws Exception {
+                if (thread == 0) {
+                    throw new IOException("failed");
+                }
+                // The other threads are still warming up when the first one fails
+                Thread.sleep(100L);
+                return 1L;
+            }
+        });
+    }
+}